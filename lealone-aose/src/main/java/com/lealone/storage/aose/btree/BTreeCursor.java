@@ -75,6 +75,43 @@ public class BTreeCursor<K, V> implements StorageMapCursor<K, V> {
         return false;
     }
 
+    // 从当前位置往上找到一定包含from的最小子树，然后从这个子树往下定位，
+    // 多个相邻的范围依次查找时通常还在同一个leaf page或相邻的leaf page中，不必每次都从root page开始
+    @Override
+    public boolean seek(K from) {
+        CursorPos p = pos;
+        while (p != null && p.parent != null) {
+            Page page = p.page;
+            int keyCount = page.getKeyCount();
+            if (page.isLeaf()) {
+                if (keyCount > 0 && compare(from, page.getKey(0)) >= 0
+                        && compare(from, page.getKey(keyCount - 1)) <= 0) {
+                    break;
+                }
+            } else {
+                // 在两个分隔key之间，说明from一定在这个子树中
+                int x = page.getPageIndex(from);
+                if (x > 0 && x < keyCount) {
+                    break;
+                }
+            }
+            p = p.parent;
+        }
+        if (p == null || p.parent == null) {
+            // 要从头开始找时用map当前的root page，root page可能已经换过了
+            pos = null;
+            min(map.getRootPage(), from);
+        } else {
+            pos = p.parent;
+            min(p.page, from);
+        }
+        return true;
+    }
+
+    private int compare(Object a, Object b) {
+        return map.getKeyType().compare(a, b);
+    }
+
     /**
      * Fetch the next entry that is equal or larger than the given key, starting
      * from the given page. This method retains the stack.
@@ -350,7 +350,8 @@ public class BTreeStorage {
     }
 
     private synchronized void executeSave(boolean appendModeEnabled, int dirtyMemory) {
-        DataBuffer chunkBody = DataBuffer.createDirect(dirtyMemory);
+        // 写完就不再用了，从当前调度器的池中分配
+        DataBuffer chunkBody = DataBuffer.createPooled(dirtyMemory);
         boolean appendMode = false;
         try {
             Chunk c;
@@ -376,6 +377,8 @@ public class BTreeStorage {
             }
         } catch (IllegalStateException e) {
             throw panic(e);
+        } finally {
+            chunkBody.release();
         }
     }
 
@@ -331,11 +331,15 @@ public class Chunk {
         removedPageCount = removedPages.size();
         writeHeader();
         if (removedPageCount > 0) {
-            DataBuffer buff = DataBuffer.createDirect();
-            for (long pos : removedPages) {
-                buff.putLong(pos);
+            DataBuffer buff = DataBuffer.createPooled(removedPageCount * 8);
+            try {
+                for (long pos : removedPages) {
+                    buff.putLong(pos);
+                }
+                fileStorage.writeFully(getFilePos(removedPageOffset), buff.getAndFlipBuffer());
+            } finally {
+                buff.release();
             }
-            fileStorage.writeFully(getFilePos(removedPageOffset), buff.getAndFlipBuffer());
         }
         fileStorage.sync();
     }
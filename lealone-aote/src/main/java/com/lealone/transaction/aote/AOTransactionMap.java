@@ -211,6 +211,12 @@ public class AOTransactionMap<K, V> implements TransactionMap<K, V> {
                 }
                 return false;
             }
+
+            @Override
+            public boolean seek(K from) {
+                value = null;
+                return cursor.seek(from);
+            }
         };
     }
 
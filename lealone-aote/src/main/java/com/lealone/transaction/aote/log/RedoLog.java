@@ -128,7 +128,11 @@ public class RedoLog {
                                 for (StorageMap<Object, Object> im : indexMaps) {
                                     StorageDataType ikt = im.getKeyType();
                                     Object indexKey = ikt.convertToIndexKey(key, value);
-                                    im.remove(indexKey);
+                                    if (indexKey instanceof Object[]) { // 全文索引一条记录对应多个key
+                                        for (Object k : (Object[]) indexKey)
+                                            im.remove(k);
+                                    } else if (indexKey != null) // 部分索引可能不包含这条记录
+                                        im.remove(indexKey);
                                 }
                             }
                         }
@@ -147,7 +151,11 @@ public class RedoLog {
                         for (StorageMap<Object, Object> im : indexMaps) {
                             StorageDataType ikt = im.getKeyType();
                             Object indexKey = ikt.convertToIndexKey(key, value);
-                            im.put(indexKey, indexKey, handler);
+                            if (indexKey instanceof Object[]) {
+                                for (Object k : (Object[]) indexKey)
+                                    im.put(k, k, handler);
+                            } else if (indexKey != null)
+                                im.put(indexKey, indexKey, handler);
                         }
                     }
                 }
@@ -22,6 +22,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.lealone.client.jdbc.JdbcConnection;
 import com.lealone.client.jdbc.JdbcDriver;
+import com.lealone.client.jdbc.JdbcPipeline;
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.IOUtils;
 import com.lealone.common.util.JdbcUtils;
@@ -61,6 +62,18 @@ public class LealoneClient {
         return getConnection(ci).get();
     }
 
+    /**
+     * Create a pipeline that sends statements on the connection without waiting
+     * for the responses of the previous ones.
+     *
+     * @param conn the connection
+     * @return the pipeline
+     * @throws SQLException if the connection is closed
+     */
+    public static JdbcPipeline createPipeline(JdbcConnection conn) throws SQLException {
+        return conn.createPipeline();
+    }
+
     private static final int MAX_ROW_BUFFER = 5000;
     private static final int HISTORY_COUNT = 20;
     // Windows: '\u00b3';
@@ -15,6 +15,7 @@ import com.lealone.common.exceptions.DbException;
 import com.lealone.common.trace.Trace;
 import com.lealone.common.util.Utils;
 import com.lealone.db.ConnectionInfo;
+import com.lealone.db.Constants;
 import com.lealone.db.SysProperties;
 import com.lealone.db.async.AsyncCallback;
 import com.lealone.db.async.Future;
@@ -23,6 +24,7 @@ import com.lealone.db.result.Result;
 import com.lealone.db.value.Value;
 import com.lealone.net.TransferInputStream;
 import com.lealone.server.protocol.Packet;
+import com.lealone.server.protocol.batch.BatchStatementBulkLoad;
 import com.lealone.server.protocol.batch.BatchStatementPreparedUpdate;
 import com.lealone.server.protocol.batch.BatchStatementUpdateAck;
 import com.lealone.server.protocol.ps.PreparedStatementClose;
@@ -227,4 +229,21 @@ public class ClientPreparedSQLCommand extends ClientSQLCommand {
         }
         return ac;
     }
+
+    public boolean isBulkLoadSupported() {
+        return session.getProtocolVersion() >= Constants.TCP_PROTOCOL_VERSION_8;
+    }
+
+    // 当前语句必须是只有参数的INSERT语句，rows是一块按参数顺序排列的记录
+    public Future<Integer> executeBulkLoad(List<Value[]> rows, boolean direct) {
+        try {
+            prepareIfRequired();
+            Packet packet = new BatchStatementBulkLoad(commandId, direct, parameters.size(), rows);
+            return session.<Integer, StatementUpdateAck> send(packet, ack -> {
+                return ack.updateCount;
+            });
+        } catch (Throwable t) {
+            return failedFuture(t);
+        }
+    }
 }
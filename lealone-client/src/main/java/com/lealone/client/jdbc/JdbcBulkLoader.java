@@ -0,0 +1,122 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.client.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.db.SysProperties;
+import com.lealone.db.api.ErrorCode;
+import com.lealone.db.session.Session;
+import com.lealone.db.value.DataType;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueNull;
+
+// 类似COPY的批量导入，攒够一块记录后按列编码一次发给服务器，
+// 服务器先检查整块记录，再按主键排序后写入，自动提交模式下每一块提交一次
+public class JdbcBulkLoader implements AutoCloseable {
+
+    private final JdbcPreparedStatement ps;
+    private final Session session;
+    private final int columnCount;
+    private int blockSize = SysProperties.CLIENT_BULK_LOAD_BLOCK_SIZE;
+    private boolean direct;
+    private ArrayList<Value[]> rows = new ArrayList<>();
+    private long rowCount;
+
+    JdbcBulkLoader(JdbcPreparedStatement ps, Session session, int columnCount) {
+        this.ps = ps;
+        this.session = session;
+        this.columnCount = columnCount;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        if (blockSize <= 0)
+            throw DbException.getInvalidValueException("blockSize", blockSize);
+        this.blockSize = blockSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Allow the server to write the rows without undo log and row locks.
+     * Only used for tables in auto-commit mode that have no other index,
+     * constraint, trigger or LOB column, when the rows of a block are placed
+     * after all existing rows. Such rows are visible at once and can not be
+     * rolled back.
+     *
+     * @param direct whether direct writes are allowed
+     */
+    public void setDirect(boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * Get the number of rows inserted so far.
+     *
+     * @return the row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void addRow(Object... values) throws SQLException {
+        checkClosed();
+        if (values.length != columnCount) {
+            throw DbException.toSQLException(DbException.get(ErrorCode.COLUMN_COUNT_DOES_NOT_MATCH));
+        }
+        Value[] row = new Value[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            Object x = values[i];
+            row[i] = x == null ? ValueNull.INSTANCE : DataType.convertToValue(session, x, Value.UNKNOWN);
+        }
+        rows.add(row);
+        if (rows.size() >= blockSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Send the pending rows to the server.
+     *
+     * @return the number of inserted rows
+     */
+    public int flush() throws SQLException {
+        checkClosed();
+        if (rows.isEmpty())
+            return 0;
+        ArrayList<Value[]> block = rows;
+        rows = new ArrayList<>(Math.min(blockSize, 1024));
+        int count = ps.executeBulkLoad(block, direct);
+        rowCount += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (rows == null)
+            return;
+        try {
+            flush();
+        } finally {
+            rows = null;
+            ps.close();
+        }
+    }
+
+    private void checkClosed() throws SQLException {
+        if (rows == null) {
+            throw DbException.toSQLException(DbException.get(ErrorCode.OBJECT_CLOSED));
+        }
+    }
+}
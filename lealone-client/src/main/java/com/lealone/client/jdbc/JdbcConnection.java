@@ -369,6 +369,72 @@ public class JdbcConnection extends JdbcWrapper implements Connection {
         return prepareStatement(sql);
     }
 
+    /**
+     * Creates a bulk loader that inserts rows into the given table in blocks.
+     * If no column names are given, all columns of the table are used.
+     *
+     * @param tableName the table name
+     * @param columnNames the column names
+     * @return the bulk loader
+     * @throws SQLException if the connection is closed or the table does not exist
+     */
+    public JdbcBulkLoader createBulkLoader(String tableName, String... columnNames) throws SQLException {
+        if (isDebugEnabled()) {
+            debugCode("createBulkLoader(" + quote(tableName) + ", " + quoteArray(columnNames) + ");");
+        }
+        int columnCount = columnNames.length;
+        if (columnCount == 0) {
+            try (PreparedStatement ps = prepareStatement("SELECT * FROM " + tableName)) {
+                columnCount = ps.getMetaData().getColumnCount();
+            }
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName);
+        if (columnNames.length > 0)
+            sql.append('(').append(String.join(", ", columnNames)).append(')');
+        sql.append(" VALUES(");
+        for (int i = 0; i < columnCount; i++) {
+            if (i > 0)
+                sql.append(", ");
+            sql.append('?');
+        }
+        sql.append(')');
+        JdbcPreparedStatement ps = (JdbcPreparedStatement) prepareStatement(sql.toString());
+        return new JdbcBulkLoader(ps, session, columnCount);
+    }
+
+    /**
+     * Creates a pipeline that sends statements on this connection without
+     * waiting for the responses of the previous ones.
+     *
+     * @return the pipeline
+     * @throws SQLException if the connection is closed
+     */
+    public JdbcPipeline createPipeline() throws SQLException {
+        return createPipeline(SysProperties.CLIENT_PIPELINE_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a pipeline that sends statements on this connection without
+     * waiting for the responses of the previous ones.
+     *
+     * @param maxInFlight the maximum number of statements that are not synced
+     * @return the pipeline
+     * @throws SQLException if the connection is closed
+     */
+    public JdbcPipeline createPipeline(int maxInFlight) throws SQLException {
+        if (isDebugEnabled()) {
+            debugCode("createPipeline(" + maxInFlight + ");");
+        }
+        try {
+            checkClosed();
+            if (maxInFlight <= 0)
+                throw DbException.getInvalidValueException("maxInFlight", maxInFlight);
+            return new JdbcPipeline(this, maxInFlight);
+        } catch (Exception e) {
+            throw logAndConvert(e);
+        }
+    }
+
     /**
      * Prepare a statement that will automatically close when the result set is
      * closed. This method is used to retrieve database meta data.
@@ -0,0 +1,139 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.client.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.common.trace.TraceObject;
+import com.lealone.common.trace.TraceObjectType;
+import com.lealone.db.api.ErrorCode;
+import com.lealone.db.async.Future;
+import com.lealone.db.scheduler.SchedulerThread;
+
+// 在同一个连接上连续发送多条互不依赖的语句，不用等前一条语句的响应回来再发下一条，
+// 响应按packetId匹配到各自的Future，服务器端同一个session中的语句依然按发送的顺序执行。
+// 跟Statement一样，一个pipeline只能在一个线程中使用
+public class JdbcPipeline implements AutoCloseable {
+
+    private final JdbcConnection conn;
+    private final int maxInFlight;
+    // 按发送顺序排列，还没有同步过的语句
+    private final ArrayDeque<Future<?>> inFlight = new ArrayDeque<>();
+    private JdbcStatement updateStatement;
+    private SQLException firstError;
+    private boolean closed;
+
+    JdbcPipeline(JdbcConnection conn, int maxInFlight) {
+        this.conn = conn;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Get the number of statements that were sent but not synced yet.
+     *
+     * @return the number of statements
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Send an update statement without waiting for the response.
+     *
+     * @param sql the SQL statement
+     * @return the future of the update count
+     */
+    public Future<Integer> executeUpdate(String sql) throws SQLException {
+        beforeSend();
+        // 更新语句没有结果集，可以共用一个Statement
+        if (updateStatement == null)
+            updateStatement = conn.createStatement();
+        return afterSend(updateStatement.executeUpdateAsync(sql));
+    }
+
+    /**
+     * Send a query without waiting for the response.
+     * The statement of the result set is closed with the result set.
+     *
+     * @param sql the SQL statement
+     * @return the future of the result set
+     */
+    public Future<ResultSet> executeQuery(String sql) throws SQLException {
+        beforeSend();
+        // 每个结果集用自己的Statement，否则后面的查询会关闭前面的结果集
+        int id = TraceObject.getNextTraceId(TraceObjectType.STATEMENT);
+        JdbcStatement stmt = new JdbcStatement(conn, id, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY, true);
+        return afterSend(stmt.executeQueryAsync(sql));
+    }
+
+    private void beforeSend() throws SQLException {
+        if (closed) {
+            throw DbException.toSQLException(DbException.get(ErrorCode.OBJECT_CLOSED));
+        }
+        // 在调度线程中等待会让响应无法处理，此时不限制数量
+        if (SchedulerThread.isScheduler())
+            return;
+        // 服务器端按顺序执行，所以等最早发送的那条语句就够了
+        while (inFlight.size() >= maxInFlight) {
+            awaitOldest();
+        }
+    }
+
+    private <T> Future<T> afterSend(Future<T> future) {
+        inFlight.add(future);
+        return future;
+    }
+
+    private void awaitOldest() {
+        Future<?> future = inFlight.poll();
+        try {
+            future.get();
+        } catch (Throwable t) {
+            if (firstError == null)
+                firstError = DbException.toSQLException(t);
+        }
+    }
+
+    /**
+     * Wait until the responses of all sent statements have arrived.
+     * The failure of each statement is also reported by its own future.
+     *
+     * @throws SQLException the first failure since the last sync
+     */
+    public void sync() throws SQLException {
+        while (!inFlight.isEmpty()) {
+            awaitOldest();
+        }
+        if (firstError != null) {
+            SQLException e = firstError;
+            firstError = null;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed)
+            return;
+        try {
+            sync();
+        } finally {
+            closed = true;
+            if (updateStatement != null) {
+                updateStatement.close();
+                updateStatement = null;
+            }
+        }
+    }
+}
@@ -374,6 +374,41 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
         }).get();
     }
 
+    /**
+     * Inserts one block of rows through the bulk load protocol.
+     * If the server does not support it, the rows are executed as a batch.
+     *
+     * @param rows the rows, one value per parameter
+     * @param direct whether the server may write the rows without undo log
+     * @return the number of inserted rows
+     */
+    int executeBulkLoad(List<Value[]> rows, boolean direct) throws SQLException {
+        if (command instanceof ClientPreparedSQLCommand
+                && ((ClientPreparedSQLCommand) command).isBulkLoadSupported()) {
+            return conn.<Integer> executeAsyncTask(ac -> {
+                debugCodeCall("executeBulkLoad");
+                checkAndClose();
+                setExecutingStatement(command);
+                ((ClientPreparedSQLCommand) command).executeBulkLoad(rows, direct).onComplete(ar -> {
+                    setExecutingStatement(null);
+                    if (ar.isSucceeded())
+                        ac.setAsyncResult(ar.getResult());
+                    else
+                        setAsyncResult(ac, ar.getCause());
+                });
+            }).get();
+        }
+        batchParameters = new ArrayList<>(rows);
+        int[] results = executeBatch();
+        int count = 0;
+        for (int r : results) {
+            if (r < 0)
+                throw new JdbcBatchUpdateException(null, results);
+            count += r;
+        }
+        return count;
+    }
+
     @Override
     protected Future<Integer> executeBatchUpdateAsync(int index) {
         Value[] parameterValues = batchParameters.get(index);
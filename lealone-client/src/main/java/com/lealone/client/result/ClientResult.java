@@ -7,15 +7,18 @@ package com.lealone.client.result;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import com.lealone.client.session.ClientSession;
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.Utils;
+import com.lealone.db.Constants;
 import com.lealone.db.SysProperties;
 import com.lealone.db.async.AsyncCallback;
 import com.lealone.db.result.Result;
 import com.lealone.db.value.Value;
 import com.lealone.net.TransferInputStream;
+import com.lealone.server.protocol.result.ColumnarRowBatch;
 import com.lealone.server.protocol.result.ResultChangeId;
 import com.lealone.server.protocol.result.ResultClose;
 import com.lealone.server.protocol.result.ResultFetchRows;
@@ -40,7 +43,16 @@ public abstract class ClientResult implements Result {
     protected Value[] currentRow;
     protected final int rowCount;
     protected int rowId, rowOffset;
-    protected ArrayList<Value[]> result;
+    protected List<Value[]> result;
+    protected boolean isEnd; // 后端的结果集已经读完了
+    // 从TCP_PROTOCOL_VERSION_7开始每一批记录都是按列编码的
+    protected final boolean columnar;
+
+    // 用户设置的fetchSize，自适应调整时不会小于它
+    private int minFetchSize;
+    // 正在预取的下一批记录，最多只预取一批
+    private AsyncCallback<RowBatch> prefetch;
+    private long batchStartTime;
 
     public ClientResult(ClientSession session, TransferInputStream in, int resultId, int columnCount,
             int rowCount, int fetchSize) throws IOException {
@@ -54,14 +66,72 @@ public abstract class ClientResult implements Result {
         }
         rowId = -1;
         result = Utils.newSmallArrayList();
+        columnar = session.getProtocolVersion() >= Constants.TCP_PROTOCOL_VERSION_7;
         this.fetchSize = fetchSize;
+        minFetchSize = fetchSize;
         fetchRows(false);
     }
 
     @Override
     public abstract boolean next();
 
-    protected abstract void fetchRows(boolean sendFetch);
+    // 切换到下一批记录，sendFetch为false时直接从查询结果的响应包中读第一批记录
+    protected void fetchRows(boolean sendFetch) {
+        session.checkClosed();
+        try {
+            int consumed = result.size();
+            rowOffset += consumed;
+            RowBatch batch;
+            if (!sendFetch) {
+                batch = readRowBatch(in, getFetchCount(rowOffset));
+            } else if (prefetch != null) {
+                long elapsed = System.nanoTime() - batchStartTime;
+                AsyncCallback<RowBatch> ac = prefetch;
+                prefetch = null;
+                batch = ac.get();
+                adjustFetchSize(consumed, elapsed, batch.fetchTime);
+            } else {
+                batch = fetchAndReadRows(getFetchCount(rowOffset));
+            }
+            result = batch.rows;
+            isEnd = batch.isEnd || rowCount >= 0 && rowOffset + result.size() >= rowCount;
+            batchStartTime = System.nanoTime();
+        } catch (IOException e) {
+            throw DbException.convertIOException(e, null);
+        }
+        if (isEnd) {
+            // 第一批记录就是全部记录时服务器端已经关闭结果集了
+            if (!sendFetch && session.getProtocolVersion() >= Constants.TCP_PROTOCOL_VERSION_10)
+                resultId = -1;
+            sendClose();
+        }
+    }
+
+    private int getFetchCount(int offset) {
+        return rowCount < 0 ? fetchSize : Math.min(fetchSize, rowCount - offset);
+    }
+
+    // 当前这一批记录读到一半时就提前取下一批，读剩下的记录时下一批记录已经在传输了
+    protected void prefetchIfNeeded() {
+        if (prefetch != null || isEnd || !SysProperties.CLIENT_RESULT_SET_PREFETCH || session.isBio())
+            return;
+        if (rowId - rowOffset < result.size() / 2)
+            return;
+        int count = getFetchCount(rowOffset + result.size());
+        if (count > 0)
+            prefetch = sendFetch(count);
+    }
+
+    // 按读记录的速度调整下一次取的记录数，让预取的那一批记录在读完当前这一批的后一半之前就能到达，
+    // 读得快就增大，读得慢就减小，但不会小于用户设置的fetchSize，也不会超过上限
+    private void adjustFetchSize(int consumed, long elapsed, long fetchTime) {
+        if (consumed <= 0 || elapsed <= 0)
+            return;
+        // 在一次往返的时间里能读完的记录数，预取是在读到一半时发出的，所以要乘2
+        long rows = 2L * consumed * fetchTime / elapsed;
+        rows = Math.min(rows, SysProperties.CLIENT_RESULT_SET_MAX_FETCH_SIZE);
+        fetchSize = (int) Math.max(minFetchSize, rows);
+    }
 
     @Override
     public String getAlias(int i) {
@@ -117,6 +187,7 @@ public abstract class ClientResult implements Result {
     public void reset() {
         rowId = -1;
         currentRow = null;
+        prefetch = null;
         if (session == null) {
             return;
         }
@@ -173,30 +244,61 @@ public abstract class ClientResult implements Result {
         }
     }
 
-    protected abstract void readRows(TransferInputStream in, int fetchSize) throws IOException;
+    private RowBatch readRowBatch(TransferInputStream in, int fetchSize) throws IOException {
+        if (fetchSize <= 0) {
+            return new RowBatch(Utils.newSmallArrayList(), false);
+        }
+        if (columnar) {
+            ColumnarRowBatch batch = ColumnarRowBatch.read(in, columns.length);
+            return new RowBatch(batch, batch.isEnd());
+        }
+        ArrayList<Value[]> rows = Utils.newSmallArrayList();
+        for (int r = 0; r < fetchSize; r++) {
+            if (!in.readBoolean()) {
+                return new RowBatch(rows, true);
+            }
+            int len = columns.length;
+            Value[] values = new Value[len];
+            for (int i = 0; i < len; i++) {
+                Value v = in.readValue();
+                values[i] = v;
+            }
+            rows.add(values);
+        }
+        return new RowBatch(rows, false);
+    }
+
+    private RowBatch fetchAndReadRows(int fetchSize) {
+        return sendFetch(fetchSize).get();
+    }
 
-    protected void fetchAndReadRows(int fetchSize) {
-        AsyncCallback<Void> ac = session.createCallback();
-        session.execute(ac, () -> {
+    private AsyncCallback<RowBatch> sendFetch(int fetchSize) {
+        ClientSession s = session;
+        int id = resultId;
+        long start = System.nanoTime();
+        AsyncCallback<RowBatch> ac = s.createCallback();
+        s.execute(ac, () -> {
             // 在调度线程中运行，总是线程安全的
             // 让客户端的调度线程负责从输入流中读取结果集
-            session.<Void, ResultFetchRowsAck> send(new ResultFetchRows(resultId, fetchSize), ack -> {
+            s.<Void, ResultFetchRowsAck> send(new ResultFetchRows(id, fetchSize), ack -> {
                 TransferInputStream in = (TransferInputStream) ack.in;
                 try {
-                    readRows(in, fetchSize);
-                    ac.setAsyncResult((Void) null);
+                    RowBatch batch = readRowBatch(in, fetchSize);
+                    batch.fetchTime = System.nanoTime() - start;
+                    ac.setAsyncResult(batch);
                 } catch (Throwable t) {
                     ac.setAsyncResult(t);
                 }
                 return null;
-            });
+            }).onFailure(t -> ac.setAsyncResult(t)); // 服务器端取记录时出错了
         });
-        ac.get();
+        return ac;
     }
 
     @Override
     public void close() {
         result = null;
+        prefetch = null;
         sendClose();
     }
 
@@ -208,8 +310,12 @@ public abstract class ClientResult implements Result {
             if (resultId > 0
                     && resultId <= session.getCurrentId() - SysProperties.SERVER_CACHED_OBJECTS / 2) {
                 // object is too old - we need to map it to a new id
+                int oldId = resultId;
                 int newId = session.getNextId();
-                session.send(new ResultChangeId(resultId, newId)); // 不需要响应
+                // 跟取结果集一样要在调度线程中发送，这样也能保证在下一次取结果集之前发出
+                ClientSession s = session;
+                AsyncCallback<Void> ac = s.createCallback();
+                s.execute(ac, () -> s.send(new ResultChangeId(oldId, newId))); // 不需要响应
                 resultId = newId;
             }
         } catch (Exception e) {
@@ -230,10 +336,23 @@ public abstract class ClientResult implements Result {
     @Override
     public void setFetchSize(int fetchSize) {
         this.fetchSize = fetchSize;
+        minFetchSize = fetchSize;
     }
 
     @Override
     public boolean needToClose() {
         return true;
     }
+
+    private static class RowBatch {
+
+        final List<Value[]> rows;
+        final boolean isEnd;
+        long fetchTime; // 从发出fetch到读完这一批记录所用的时间
+
+        RowBatch(List<Value[]> rows, boolean isEnd) {
+            this.rows = rows;
+            this.isEnd = isEnd;
+        }
+    }
 }
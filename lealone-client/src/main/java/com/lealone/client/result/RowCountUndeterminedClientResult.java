@@ -8,16 +8,10 @@ package com.lealone.client.result;
 import java.io.IOException;
 
 import com.lealone.client.session.ClientSession;
-import com.lealone.common.exceptions.DbException;
-import com.lealone.db.value.Value;
 import com.lealone.net.TransferInputStream;
 
 public class RowCountUndeterminedClientResult extends ClientResult {
 
-    // 不能在这初始化为false，在super的构造函数中会调用fetchRows有可能把isEnd设为true了，
-    // 如果初始化为false，相当于在调用完super(...)后再执行isEnd = false，这时前面的值就被覆盖了。
-    private boolean isEnd;
-
     public RowCountUndeterminedClientResult(ClientSession session, TransferInputStream in, int resultId,
             int columnCount, int fetchSize) throws IOException {
         super(session, in, resultId, columnCount, -1, fetchSize);
@@ -42,6 +36,7 @@ public class RowCountUndeterminedClientResult extends ClientResult {
             }
         }
         currentRow = result.get(rowId - rowOffset);
+        prefetchIfNeeded();
         return true;
 
     }
@@ -50,39 +45,4 @@ public class RowCountUndeterminedClientResult extends ClientResult {
     public int getRowCount() {
         return Integer.MAX_VALUE; // 不能返回-1，JdbcResultSet那边会抛异常
     }
-
-    @Override
-    protected void fetchRows(boolean sendFetch) {
-        session.checkClosed();
-        try {
-            rowOffset += result.size();
-            result.clear();
-            if (sendFetch) {
-                fetchAndReadRows(fetchSize);
-            } else {
-                readRows(in, fetchSize);
-            }
-        } catch (IOException e) {
-            throw DbException.convertIOException(e, null);
-        }
-    }
-
-    @Override
-    protected void readRows(TransferInputStream in, int fetchSize) throws IOException {
-        for (int r = 0; r < fetchSize; r++) {
-            if (!in.readBoolean()) {
-                isEnd = true;
-                break;
-            }
-            int len = columns.length;
-            Value[] values = new Value[len];
-            for (int i = 0; i < len; i++) {
-                Value v = in.readValue();
-                values[i] = v;
-            }
-            result.add(values);
-        }
-        if (isEnd)
-            sendClose();
-    }
 }
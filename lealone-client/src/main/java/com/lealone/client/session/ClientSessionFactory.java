@@ -144,6 +144,7 @@ public class ClientSessionFactory extends SessionFactoryBase {
                     clientSession.setRunMode(ack.runMode);
                     clientSession.setInvalid(ack.invalid);
                     clientSession.setConsistencyLevel(ack.consistencyLevel);
+                    tcpConnection.setServerLoad(ack.schedulerLoad);
                     return clientSession;
                 };
                 Future<ClientSession> f = clientSession.send(packet, ackPacketHandler);
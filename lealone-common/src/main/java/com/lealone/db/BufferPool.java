@@ -0,0 +1,225 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.db;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map.Entry;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.common.logging.Logger;
+import com.lealone.db.scheduler.Scheduler;
+import com.lealone.db.scheduler.SchedulerThread;
+
+// 每个调度器一个的direct buffer池，按2的n次方分成多个大小级别，每个级别是一个简单的栈，
+// 只在所属调度器的线程中分配和回收，不需要加锁；其他线程分配时直接new，回收时直接丢给GC
+public class BufferPool {
+
+    public static final int MIN_SIZE_CLASS_SHIFT = 10; // 1K
+    public static final int MAX_SIZE_CLASS_SHIFT = 22; // 4M，跟DataBuffer.MAX_REUSE_CAPACITY一样
+    private static final int MAX_BUFFERS_PER_CLASS = 64;
+
+    private final Scheduler owner;
+    private final int maxSize;
+    private final ByteBuffer[][] freeBuffers;
+    private final int[] freeCounts;
+    private int pooledBytes;
+
+    // 调试模式下记住每个buffer是在哪里分配的
+    private final IdentityHashMap<ByteBuffer, Throwable> acquiredBuffers;
+
+    private long acquireCount;
+    private long hitCount;
+    private long releaseCount;
+    private long discardCount;
+
+    public BufferPool(Scheduler owner) {
+        this(owner, SysProperties.BUFFER_POOL_MAX_SIZE, SysProperties.BUFFER_POOL_LEAK_DETECTION);
+    }
+
+    public BufferPool(Scheduler owner, int maxSize, boolean leakDetection) {
+        this.owner = owner;
+        this.maxSize = maxSize;
+        int classCount = MAX_SIZE_CLASS_SHIFT - MIN_SIZE_CLASS_SHIFT + 1;
+        freeBuffers = new ByteBuffer[classCount][];
+        freeCounts = new int[classCount];
+        for (int i = 0; i < classCount; i++) {
+            int n = maxSize >>> (MIN_SIZE_CLASS_SHIFT + i);
+            freeBuffers[i] = new ByteBuffer[Math.max(1, Math.min(MAX_BUFFERS_PER_CLASS, n))];
+        }
+        acquiredBuffers = leakDetection ? new IdentityHashMap<>() : null;
+    }
+
+    /**
+     * Get the buffer pool of the current scheduler thread.
+     *
+     * @return the buffer pool, or null if the current thread is not a scheduler thread
+     */
+    public static BufferPool getCurrent() {
+        Scheduler scheduler = SchedulerThread.currentScheduler();
+        return scheduler == null ? null : scheduler.getBufferPool();
+    }
+
+    /**
+     * Get the capacity of the size class that can hold the given number of bytes.
+     *
+     * @param capacity the number of bytes
+     * @return the capacity of the size class, or the given capacity if it is too large to be pooled
+     */
+    public static int getSizeClassCapacity(int capacity) {
+        if (capacity <= 1 << MIN_SIZE_CLASS_SHIFT)
+            return 1 << MIN_SIZE_CLASS_SHIFT;
+        if (capacity > 1 << MAX_SIZE_CLASS_SHIFT)
+            return capacity;
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private static int getSizeClass(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - MIN_SIZE_CLASS_SHIFT;
+    }
+
+    private boolean isOwnerThread() {
+        return owner == null || SchedulerThread.currentScheduler() == owner;
+    }
+
+    /**
+     * Get a cleared direct buffer with at least the given capacity.
+     *
+     * @param capacity the minimum capacity
+     * @return the buffer
+     */
+    public ByteBuffer acquire(int capacity) {
+        int c = getSizeClassCapacity(capacity);
+        if (c > 1 << MAX_SIZE_CLASS_SHIFT || !isOwnerThread())
+            return ByteBuffer.allocateDirect(capacity);
+        acquireCount++;
+        int sizeClass = getSizeClass(c);
+        ByteBuffer buffer;
+        int count = freeCounts[sizeClass];
+        if (count > 0) {
+            hitCount++;
+            count--;
+            buffer = freeBuffers[sizeClass][count];
+            freeBuffers[sizeClass][count] = null;
+            freeCounts[sizeClass] = count;
+            pooledBytes -= c;
+            buffer.clear();
+        } else {
+            buffer = ByteBuffer.allocateDirect(c);
+        }
+        if (acquiredBuffers != null)
+            acquiredBuffers.put(buffer, new Throwable("Buffer acquired here"));
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer and all its slices must not be used any more.
+     *
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !isOwnerThread())
+            return;
+        if (acquiredBuffers != null && acquiredBuffers.remove(buffer) == null && isPooled(buffer)) {
+            throw DbException.getInternalError("Buffer released twice");
+        }
+        releaseCount++;
+        int c = buffer.capacity();
+        // 只回收大小正好是某个级别的direct buffer
+        if (!buffer.isDirect() || c > 1 << MAX_SIZE_CLASS_SHIFT || c != getSizeClassCapacity(c)
+                || pooledBytes + c > maxSize) {
+            discardCount++;
+            return;
+        }
+        int sizeClass = getSizeClass(c);
+        int count = freeCounts[sizeClass];
+        if (count >= freeBuffers[sizeClass].length) {
+            discardCount++;
+            return;
+        }
+        freeBuffers[sizeClass][count] = buffer;
+        freeCounts[sizeClass] = count + 1;
+        pooledBytes += c;
+    }
+
+    /**
+     * Stop tracking a buffer that is kept until the end, it is not reported as leaked.
+     *
+     * @param buffer the buffer
+     */
+    public void forget(ByteBuffer buffer) {
+        if (acquiredBuffers != null && buffer != null)
+            acquiredBuffers.remove(buffer);
+    }
+
+    private boolean isPooled(ByteBuffer buffer) {
+        int c = buffer.capacity();
+        if (c > 1 << MAX_SIZE_CLASS_SHIFT || c != getSizeClassCapacity(c))
+            return false;
+        int sizeClass = getSizeClass(c);
+        for (int i = 0, count = freeCounts[sizeClass]; i < count; i++) {
+            if (freeBuffers[sizeClass][i] == buffer)
+                return true;
+        }
+        return false;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getReleaseCount() {
+        return releaseCount;
+    }
+
+    public long getDiscardCount() {
+        return discardCount;
+    }
+
+    public int getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * Get the number of buffers that were acquired but not released yet.
+     * Only available if leak detection is enabled.
+     *
+     * @return the number of buffers, or -1 if leak detection is disabled
+     */
+    public int getLeakedBufferCount() {
+        return acquiredBuffers == null ? -1 : acquiredBuffers.size();
+    }
+
+    /**
+     * Drop all pooled buffers and report the buffers that were not released.
+     *
+     * @param logger the logger
+     */
+    public void close(Logger logger) {
+        for (int i = 0; i < freeBuffers.length; i++) {
+            for (int j = 0; j < freeCounts[i]; j++)
+                freeBuffers[i][j] = null;
+            freeCounts[i] = 0;
+        }
+        pooledBytes = 0;
+        if (acquiredBuffers != null && !acquiredBuffers.isEmpty()) {
+            for (Entry<ByteBuffer, Throwable> e : acquiredBuffers.entrySet()) {
+                logger.warn("Buffer leaked: " + e.getKey(), e.getValue());
+            }
+            acquiredBuffers.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool[acquire=" + acquireCount + ", hit=" + hitCount + ", release=" + releaseCount
+                + ", discard=" + discardCount + ", pooledBytes=" + pooledBytes + "]";
+    }
+}
@@ -443,6 +443,7 @@ public class ConnectionInfo implements Cloneable {
             // 这些参数不需要传给server
             prop.remove(ConnectionSetting.IS_SHARED.name());
             prop.remove(ConnectionSetting.MAX_SHARED_SIZE.name());
+            prop.remove(ConnectionSetting.MAX_POOL_SIZE.name());
         }
         String[] keys = new String[prop.size()];
         prop.keySet().toArray(keys);
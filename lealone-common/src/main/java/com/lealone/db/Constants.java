@@ -62,6 +62,27 @@ public class Constants {
      */
     public static final int TCP_PROTOCOL_VERSION_6 = 6;
 
+    /**
+     * The TCP protocol version number 7, result rows are encoded column by column.
+     */
+    public static final int TCP_PROTOCOL_VERSION_7 = 7;
+
+    /**
+     * The TCP protocol version number 8, rows can be bulk loaded.
+     */
+    public static final int TCP_PROTOCOL_VERSION_8 = 8;
+
+    /**
+     * The TCP protocol version number 9, the session init ack carries the load of the server scheduler.
+     */
+    public static final int TCP_PROTOCOL_VERSION_9 = 9;
+
+    /**
+     * The TCP protocol version number 10, a query result that fits in the first batch is closed
+     * by the server.
+     */
+    public static final int TCP_PROTOCOL_VERSION_10 = 10;
+
     /**
      * The min TCP protocol version number.
      */
@@ -70,12 +91,12 @@ public class Constants {
     /**
      * The max TCP protocol version number.
      */
-    public static final int TCP_PROTOCOL_VERSION_MAX = TCP_PROTOCOL_VERSION_6;
+    public static final int TCP_PROTOCOL_VERSION_MAX = TCP_PROTOCOL_VERSION_10;
 
     /**
      * The current TCP protocol version number.
      */
-    public static final int TCP_PROTOCOL_VERSION_CURRENT = TCP_PROTOCOL_VERSION_6;
+    public static final int TCP_PROTOCOL_VERSION_CURRENT = TCP_PROTOCOL_VERSION_10;
 
     /**
      * Constant meaning both numbers and text is allowed in SQL statements.
@@ -12,6 +12,7 @@ import java.nio.ByteBuffer;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -100,6 +101,11 @@ public class DataBuffer {
 
     private boolean direct;
 
+    // 不为null时扩容用的buffer从池中分配，扩容后被替换的buffer先记下来，
+    // 等到clear时(此时不会再有slice在用)再一起还给池
+    private BufferPool pool;
+    private ArrayList<ByteBuffer> retiredBuffers;
+
     /**
      * Create a new buffer for the given handler.
      * The handler will decide what type of buffer is created.
@@ -136,6 +142,36 @@ public class DataBuffer {
         return new DataBuffer(null, MIN_GROW, true);
     }
 
+    /**
+     * Create a direct buffer that grows with buffers of the given pool.
+     * The replaced buffers are returned to the pool when the buffer is cleared.
+     *
+     * @param pool the buffer pool, or null
+     * @return the buffer
+     */
+    public static DataBuffer createDirect(BufferPool pool) {
+        DataBuffer buffer = new DataBuffer(null, MIN_GROW, true);
+        buffer.pool = pool;
+        return buffer;
+    }
+
+    /**
+     * Create a direct buffer with a buffer of the current scheduler's pool.
+     * The buffer must be returned with {@link #release()} after use.
+     *
+     * @param capacity the initial capacity
+     * @return the buffer
+     */
+    public static DataBuffer createPooled(int capacity) {
+        BufferPool pool = BufferPool.getCurrent();
+        if (pool == null)
+            return createDirect(capacity);
+        DataBuffer buffer = new DataBuffer(pool.acquire(capacity));
+        buffer.direct = true;
+        buffer.pool = pool;
+        return buffer;
+    }
+
     protected DataBuffer() {
         this(null, MIN_GROW);
     }
@@ -498,14 +534,64 @@ public class DataBuffer {
      */
     public DataBuffer clear() {
         if (buff.limit() > MAX_REUSE_CAPACITY) {
+            retire(buff);
             buff = reuse;
         } else if (buff != reuse) {
+            retire(reuse);
             reuse = buff;
         }
+        if (retiredBuffers != null)
+            releaseRetiredBuffers();
         buff.clear();
         return this;
     }
 
+    /**
+     * Return all buffers to the pool. This buffer and its slices must not be used any more.
+     */
+    public void release() {
+        if (pool != null) {
+            retire(buff);
+            if (reuse != buff)
+                retire(reuse);
+            buff = reuse = null;
+            releaseRetiredBuffers();
+        }
+        buff = reuse = null;
+    }
+
+    /**
+     * Stop using the pool. The buffers in use are kept and not returned to the pool.
+     */
+    public void detachPool() {
+        if (pool != null) {
+            pool.forget(buff);
+            pool.forget(reuse);
+            if (retiredBuffers != null) {
+                for (ByteBuffer buffer : retiredBuffers)
+                    pool.forget(buffer);
+                retiredBuffers = null;
+            }
+            pool = null;
+        }
+    }
+
+    private void retire(ByteBuffer buffer) {
+        if (pool == null)
+            return;
+        if (retiredBuffers == null)
+            retiredBuffers = new ArrayList<>(4);
+        retiredBuffers.add(buffer);
+    }
+
+    private void releaseRetiredBuffers() {
+        for (ByteBuffer buffer : retiredBuffers) {
+            if (buffer != buff && buffer != reuse)
+                pool.release(buffer);
+        }
+        retiredBuffers.clear();
+    }
+
     /**
      * Get the byte buffer.
      *
@@ -570,7 +656,7 @@ public class DataBuffer {
             throw new OutOfMemoryError("Capacity: " + newCapacity + " needed: " + needed);
         }
         try {
-            buff = allocate(newCapacity);
+            buff = pool != null ? pool.acquire(newCapacity) : allocate(newCapacity);
         } catch (OutOfMemoryError e) {
             throw new OutOfMemoryError("Capacity: " + newCapacity);
         }
@@ -579,8 +665,13 @@ public class DataBuffer {
         buff.put(temp);
         buff.position(pos);
         if (newCapacity <= MAX_REUSE_CAPACITY) {
+            if (reuse != temp)
+                retire(reuse);
             reuse = buff;
         }
+        // 被替换的buffer可能还有slice在用，所以不能马上还给池
+        if (temp != reuse)
+            retire(temp);
     }
 
     /**
@@ -35,6 +35,9 @@ public enum DbSetting {
     QUERY_CACHE_SIZE,
     RECOMPILE_ALWAYS,
     ROWID,
+    SHARED_PLAN_CACHE_SIZE,
+    SHARED_RESULT_CACHE_SIZE,
+    SUBQUERY_CACHE_SIZE,
     DEFAULT_STORAGE_ENGINE,
     DEFAULT_SQL_ENGINE,
     DEFAULT_TRANSACTION_ENGINE,
@@ -56,6 +56,23 @@ public class SysProperties {
      */
     public static final String ALLOWED_CLASSES = getProperty("allowed.classes", "*");
 
+    /**
+     * System property <code>buffer.pool.leak.detection</code>
+     * (default: false).<br />
+     * Remember where each pooled buffer was acquired and report the buffers
+     * that were not released when the scheduler stops.
+     */
+    public static final boolean BUFFER_POOL_LEAK_DETECTION = getProperty("buffer.pool.leak.detection",
+            false);
+
+    /**
+     * System property <code>buffer.pool.max.size</code>
+     * (default: 16 MB).<br />
+     * The maximum number of bytes each scheduler keeps in its buffer pool.
+     */
+    public static final int BUFFER_POOL_MAX_SIZE = getProperty("buffer.pool.max.size",
+            16 * 1024 * 1024);
+
     /**
      * System property <code>check</code> (default: true).<br />
      * Assertions in the database engine.
@@ -68,6 +85,48 @@ public class SysProperties {
      */
     public static final boolean CHECK2 = getProperty("check2", false);
 
+    /**
+     * System property <code>client.bulk.load.block.size</code>
+     * (default: 4096).<br />
+     * The number of rows a bulk loader sends to the server in one block.
+     */
+    public static final int CLIENT_BULK_LOAD_BLOCK_SIZE = getProperty("client.bulk.load.block.size",
+            4096);
+
+    /**
+     * System property <code>client.pipeline.max.in.flight</code>
+     * (default: 128).<br />
+     * The number of statements a pipeline sends on one connection before it
+     * waits for the oldest response.
+     */
+    public static final int CLIENT_PIPELINE_MAX_IN_FLIGHT = getProperty(
+            "client.pipeline.max.in.flight", 128);
+
+    /**
+     * System property <code>client.pool.hot.load</code>
+     * (default: 64).<br />
+     * The server scheduler load at which the client opens another shared
+     * connection to the same server instead of adding sessions to a busy one.
+     */
+    public static final int CLIENT_POOL_HOT_LOAD = getProperty("client.pool.hot.load", 64);
+
+    /**
+     * System property <code>client.resultset.max.fetch.size</code>
+     * (default: 10000).<br />
+     * The upper bound of the adaptive fetch size a client result set grows to
+     * when rows are consumed faster than they arrive.
+     */
+    public static final int CLIENT_RESULT_SET_MAX_FETCH_SIZE = getProperty(
+            "client.resultset.max.fetch.size", 10000);
+
+    /**
+     * System property <code>client.resultset.prefetch</code> (default: true).<br />
+     * Request the next batch of a client result set while the current one
+     * is still being read.
+     */
+    public static final boolean CLIENT_RESULT_SET_PREFETCH = getProperty("client.resultset.prefetch",
+            true);
+
     /**
      * System property <code>client.trace.directory</code> (default: trace.db/).<br />
      * Directory where the trace files of the JDBC client are stored (only for client / server).
@@ -165,4 +165,12 @@ public interface Result extends ManualCloseable {
      */
     int getFetchSize();
 
+    /**
+     * Produce the next rows before they are sent, so that an error is raised
+     * before the response is written.
+     *
+     * @param count the number of rows
+     */
+    default void prepareNextRows(int count) {
+    }
 }
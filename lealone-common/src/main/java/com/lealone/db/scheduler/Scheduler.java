@@ -8,6 +8,7 @@ package com.lealone.db.scheduler;
 import java.nio.channels.Selector;
 
 import com.lealone.common.logging.Logger;
+import com.lealone.db.BufferPool;
 import com.lealone.db.DataBuffer;
 import com.lealone.db.async.AsyncTaskHandler;
 import com.lealone.db.session.Session;
@@ -62,4 +63,6 @@ public interface Scheduler extends AsyncTaskHandler, Runnable {
     NetBuffer getInputBuffer();
 
     NetBuffer getOutputBuffer();
+
+    BufferPool getBufferPool();
 }
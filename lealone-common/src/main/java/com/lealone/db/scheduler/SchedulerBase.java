@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.lealone.common.util.MapUtils;
+import com.lealone.db.BufferPool;
 import com.lealone.db.DataBuffer;
 import com.lealone.db.RunMode;
 import com.lealone.db.async.AsyncPeriodicTask;
@@ -100,6 +101,14 @@ public abstract class SchedulerBase implements Scheduler {
 
     protected void onStopped() {
         thread = null;
+        if (bufferPool != null) {
+            // 全局buffer会一直用到最后，不算泄漏
+            if (inputBuffer != null)
+                inputBuffer.getDataBuffer().detachPool();
+            if (outputBuffer != null)
+                outputBuffer.getDataBuffer().detachPool();
+            bufferPool.close(getLogger());
+        }
     }
 
     @Override
@@ -200,7 +209,7 @@ public abstract class SchedulerBase implements Scheduler {
     @Override
     public NetBuffer getInputBuffer() {
         if (inputBuffer == null)
-            inputBuffer = new NetBuffer(DataBuffer.createDirect());
+            inputBuffer = new NetBuffer(DataBuffer.createDirect(getBufferPool()));
         return inputBuffer;
     }
 
@@ -209,7 +218,16 @@ public abstract class SchedulerBase implements Scheduler {
     @Override
     public NetBuffer getOutputBuffer() {
         if (outputBuffer == null)
-            outputBuffer = new NetBuffer(DataBuffer.createDirect());
+            outputBuffer = new NetBuffer(DataBuffer.createDirect(getBufferPool()));
         return outputBuffer;
     }
+
+    protected BufferPool bufferPool;
+
+    @Override
+    public BufferPool getBufferPool() {
+        if (bufferPool == null)
+            bufferPool = new BufferPool(this);
+        return bufferPool;
+    }
 }
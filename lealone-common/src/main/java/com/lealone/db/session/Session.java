@@ -130,7 +130,7 @@ public interface Session extends Closeable {
 
     ConnectionInfo getConnectionInfo();
 
-    // 以后协议修改了再使用版本号区分
+    // 客户端和服务器端协商好的协议版本，按版本号决定协议包的编码方式
     default void setProtocolVersion(int version) {
     }
 
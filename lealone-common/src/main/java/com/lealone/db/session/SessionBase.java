@@ -33,6 +33,7 @@ public abstract class SessionBase implements Session {
     protected String targetNodes;
     protected RunMode runMode;
     protected int consistencyLevel;
+    protected int protocolVersion = Constants.TCP_PROTOCOL_VERSION_CURRENT;
 
     protected TraceSystem traceSystem;
 
@@ -101,6 +102,16 @@ public abstract class SessionBase implements Session {
         return consistencyLevel;
     }
 
+    @Override
+    public void setProtocolVersion(int version) {
+        protocolVersion = version;
+    }
+
+    @Override
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
     @Override
     public void setRunMode(RunMode runMode) {
         this.runMode = runMode;
@@ -27,6 +27,8 @@ public interface NetOutputStream {
 
     NetOutputStream writeBytes(byte[] data) throws IOException;
 
+    NetOutputStream writeBytes(byte[] buff, int off, int len) throws IOException;
+
     NetOutputStream writeBoolean(boolean x) throws IOException;
 
     void writeValue(Value v) throws IOException;
@@ -5,6 +5,7 @@
  */
 package com.lealone.server.protocol;
 
+import com.lealone.server.protocol.batch.BatchStatementBulkLoad;
 import com.lealone.server.protocol.batch.BatchStatementPreparedUpdate;
 import com.lealone.server.protocol.batch.BatchStatementUpdate;
 import com.lealone.server.protocol.batch.BatchStatementUpdateAck;
@@ -84,6 +85,7 @@ public class PacketDecoders {
         register(PacketType.BATCH_STATEMENT_UPDATE, BatchStatementUpdate.decoder);
         register(PacketType.BATCH_STATEMENT_UPDATE_ACK, BatchStatementUpdateAck.decoder);
         register(PacketType.BATCH_STATEMENT_PREPARED_UPDATE, BatchStatementPreparedUpdate.decoder);
+        register(PacketType.BATCH_STATEMENT_BULK_LOAD, BatchStatementBulkLoad.decoder);
 
         register(PacketType.RESULT_FETCH_ROWS, ResultFetchRows.decoder);
         register(PacketType.RESULT_FETCH_ROWS_ACK, ResultFetchRowsAck.decoder);
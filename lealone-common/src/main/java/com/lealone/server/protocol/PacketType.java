@@ -35,6 +35,7 @@ public enum PacketType {
     BATCH_STATEMENT_UPDATE(40),
     BATCH_STATEMENT_UPDATE_ACK(41),
     BATCH_STATEMENT_PREPARED_UPDATE(42), // ACK直接用BATCH_STATEMENT_UPDATE_ACK
+    BATCH_STATEMENT_BULK_LOAD(43), // ACK直接用STATEMENT_UPDATE_ACK
 
     RESULT_FETCH_ROWS(50),
     RESULT_FETCH_ROWS_ACK(51),
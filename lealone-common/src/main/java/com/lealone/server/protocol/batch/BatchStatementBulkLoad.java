@@ -0,0 +1,64 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.server.protocol.batch;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.lealone.db.value.Value;
+import com.lealone.net.NetInputStream;
+import com.lealone.net.NetOutputStream;
+import com.lealone.server.protocol.Packet;
+import com.lealone.server.protocol.PacketDecoder;
+import com.lealone.server.protocol.PacketType;
+import com.lealone.server.protocol.result.ColumnarRowBatch;
+
+// 批量导入的一块记录，commandId对应一条只有参数的INSERT语句，记录按列编码，从TCP_PROTOCOL_VERSION_8开始使用
+public class BatchStatementBulkLoad implements Packet {
+
+    public final int commandId;
+    public final boolean direct;
+    public final int columnCount;
+    public final List<Value[]> rows;
+
+    public BatchStatementBulkLoad(int commandId, boolean direct, int columnCount, List<Value[]> rows) {
+        this.commandId = commandId;
+        this.direct = direct;
+        this.columnCount = columnCount;
+        this.rows = rows;
+    }
+
+    @Override
+    public PacketType getType() {
+        return PacketType.BATCH_STATEMENT_BULK_LOAD;
+    }
+
+    @Override
+    public PacketType getAckType() {
+        return PacketType.STATEMENT_UPDATE_ACK;
+    }
+
+    @Override
+    public void encode(NetOutputStream out, int version) throws IOException {
+        out.writeInt(commandId);
+        out.writeBoolean(direct);
+        out.writeInt(columnCount);
+        ColumnarRowBatch.write(out, rows, columnCount, true);
+    }
+
+    public static final Decoder decoder = new Decoder();
+
+    private static class Decoder implements PacketDecoder<BatchStatementBulkLoad> {
+        @Override
+        public BatchStatementBulkLoad decode(NetInputStream in, int version) throws IOException {
+            int commandId = in.readInt();
+            boolean direct = in.readBoolean();
+            int columnCount = in.readInt();
+            List<Value[]> rows = ColumnarRowBatch.read(in, columnCount);
+            return new BatchStatementBulkLoad(commandId, direct, columnCount, rows);
+        }
+    }
+}
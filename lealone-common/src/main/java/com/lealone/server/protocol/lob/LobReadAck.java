@@ -16,9 +16,15 @@ import com.lealone.server.protocol.PacketType;
 public class LobReadAck implements AckPacket {
 
     public final byte[] buff;
+    public final int length; // 只在服务器端编码时使用，buff中的有效字节数
 
     public LobReadAck(byte[] buff) {
+        this(buff, buff.length);
+    }
+
+    public LobReadAck(byte[] buff, int length) {
         this.buff = buff;
+        this.length = length;
     }
 
     @Override
@@ -28,7 +34,7 @@ public class LobReadAck implements AckPacket {
 
     @Override
     public void encode(NetOutputStream out, int version) throws IOException {
-        out.writeBytes(buff);
+        out.writeBytes(buff, 0, length);
     }
 
     public static final Decoder decoder = new Decoder();
@@ -0,0 +1,569 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.server.protocol.result;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.lealone.common.compress.CompressTool;
+import com.lealone.common.exceptions.DbException;
+import com.lealone.common.util.DataUtils;
+import com.lealone.db.DataBuffer;
+import com.lealone.db.result.Result;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueBoolean;
+import com.lealone.db.value.ValueByte;
+import com.lealone.db.value.ValueDate;
+import com.lealone.db.value.ValueDecimal;
+import com.lealone.db.value.ValueDouble;
+import com.lealone.db.value.ValueFloat;
+import com.lealone.db.value.ValueInt;
+import com.lealone.db.value.ValueLong;
+import com.lealone.db.value.ValueNull;
+import com.lealone.db.value.ValueShort;
+import com.lealone.db.value.ValueString;
+import com.lealone.db.value.ValueStringFixed;
+import com.lealone.db.value.ValueStringIgnoreCase;
+import com.lealone.db.value.ValueTime;
+import com.lealone.db.value.ValueTimestamp;
+import com.lealone.db.value.ValueUuid;
+import com.lealone.net.NetInputStream;
+import com.lealone.net.NetOutputStream;
+
+// 按列编码的一批结果集记录，从TCP_PROTOCOL_VERSION_7开始使用。
+// 格式: 行数 + 是否结束 + 是否压缩 + 数据块(所有列的类型 + 按列编码的值) + 其他类型的列(还是用writeValue按列写)
+// 每一列先写列的类型，不再给每个值都写类型，可以为null的列再加一个null位图，
+// 整数和日期时间类型写与上一个值的差值，重复值多的字符串列用字典编码，数据块比较大时再用LZF压缩。
+// 客户端读到的是原始字节，第一次访问记录时才解码成基本类型的数组，取某一行时才创建Value。
+public class ColumnarRowBatch extends AbstractList<Value[]> {
+
+    // 整列都是null
+    private static final int ALL_NULL = Value.NULL;
+    // 混合了多种类型的列或不支持按列编码的类型，比如LOB、ARRAY
+    private static final int GENERIC = Value.UNKNOWN;
+
+    private static final byte PLAIN = 0;
+    private static final byte DICTIONARY = 1;
+
+    // 数据块小于这个值时压缩的效果不明显，不值得花时间压缩
+    private static final int COMPRESS_THRESHOLD = 1024;
+
+    private final int rowCount;
+    private final int columnCount;
+    private final boolean isEnd;
+    private final int[] types;
+    private final Value[][] genericColumns;
+    private ByteBuffer data; // 位置指向第一列的值
+    private Column[] columns;
+
+    private ColumnarRowBatch(int rowCount, int columnCount, boolean isEnd, int[] types,
+            Value[][] genericColumns, ByteBuffer data) {
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.isEnd = isEnd;
+        this.types = types;
+        this.genericColumns = genericColumns;
+        this.data = data;
+    }
+
+    public boolean isEnd() {
+        return isEnd;
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public Value[] get(int index) {
+        if (index < 0 || index >= rowCount)
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + rowCount);
+        if (columns == null)
+            decode();
+        Value[] row = new Value[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            row[i] = columns[i].get(index);
+        }
+        return row;
+    }
+
+    private void decode() {
+        Column[] columns = new Column[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            int type = types[i];
+            if (type == GENERIC)
+                columns[i] = new GenericColumn(genericColumns[i]);
+            else if (type == ALL_NULL)
+                columns[i] = new GenericColumn(null);
+            else
+                columns[i] = new TypedColumn(type, data, rowCount);
+        }
+        this.columns = columns;
+        data = null;
+    }
+
+    public static ColumnarRowBatch read(NetInputStream in, int columnCount) throws IOException {
+        int rowCount = in.readInt();
+        boolean isEnd = in.readBoolean();
+        if (rowCount == 0)
+            return new ColumnarRowBatch(0, columnCount, isEnd, null, null, null);
+        boolean compressed = in.readBoolean();
+        byte[] bytes = in.readBytes();
+        if (compressed)
+            bytes = CompressTool.getInstance().expand(bytes);
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        int[] types = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            types[i] = DataUtils.readVarInt(data);
+        }
+        // 其他类型的列跟在数据块后面，只能从输入流中直接读，其他列等第一次访问时再解码
+        Value[][] genericColumns = new Value[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            if (types[i] == GENERIC) {
+                Value[] values = new Value[rowCount];
+                for (int r = 0; r < rowCount; r++) {
+                    values[r] = in.readValue();
+                }
+                genericColumns[i] = values;
+            }
+        }
+        return new ColumnarRowBatch(rowCount, columnCount, isEnd, types, genericColumns, data);
+    }
+
+    public static boolean write(NetOutputStream out, Result result, int count) throws IOException {
+        // 跟按行编码时一样，不需要记录时什么都不写
+        if (count <= 0)
+            return false;
+        int columnCount = result.getVisibleColumnCount();
+        ArrayList<Value[]> rows = new ArrayList<>(Math.min(count, 1024));
+        boolean isEnd = false;
+        try {
+            for (int i = 0; i < count; i++) {
+                if (result.next()) {
+                    rows.add(Arrays.copyOf(result.currentRow(), columnCount));
+                } else {
+                    isEnd = true;
+                    break;
+                }
+            }
+        } catch (Throwable e) {
+            // 跟按行编码时一样，发生异常时先写一个结束标记，后面再跟一个异常包
+            out.writeInt(0);
+            out.writeBoolean(true);
+            throw DbException.convert(e);
+        }
+        write(out, rows, columnCount, isEnd);
+        return isEnd;
+    }
+
+    // 批量导入时客户端也用这个格式发送记录
+    public static void write(NetOutputStream out, List<Value[]> rows, int columnCount, boolean isEnd)
+            throws IOException {
+        int rowCount = rows.size();
+        out.writeInt(rowCount);
+        out.writeBoolean(isEnd);
+        if (rowCount == 0)
+            return;
+        DataBuffer buff = DataBuffer.createHeap();
+        int[] types = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            types[i] = getColumnType(rows, i);
+            buff.putVarInt(types[i]);
+        }
+        for (int i = 0; i < columnCount; i++) {
+            if (types[i] != GENERIC && types[i] != ALL_NULL)
+                writeColumn(buff, rows, i, types[i]);
+        }
+        byte[] data = Arrays.copyOf(buff.getBytes(), buff.length());
+        boolean compressed = false;
+        if (data.length >= COMPRESS_THRESHOLD) {
+            byte[] compressedData = CompressTool.getInstance().compress(data, "LZF");
+            if (compressedData.length < data.length) {
+                data = compressedData;
+                compressed = true;
+            }
+        }
+        out.writeBoolean(compressed);
+        out.writeBytes(data);
+        for (int i = 0; i < columnCount; i++) {
+            if (types[i] == GENERIC) {
+                for (int r = 0; r < rowCount; r++) {
+                    out.writeValue(rows.get(r)[i]);
+                }
+            }
+        }
+    }
+
+    private static int getColumnType(List<Value[]> rows, int column) {
+        int type = ALL_NULL;
+        for (int r = 0, size = rows.size(); r < size; r++) {
+            int t = rows.get(r)[column].getType();
+            if (t == Value.NULL)
+                continue;
+            if (type == ALL_NULL)
+                type = t;
+            else if (type != t)
+                return GENERIC;
+        }
+        return type == ALL_NULL || TypedColumn.isSupported(type) ? type : GENERIC;
+    }
+
+    private static void writeColumn(DataBuffer buff, List<Value[]> rows, int column, int type) {
+        int rowCount = rows.size();
+        byte[] nulls = null;
+        for (int r = 0; r < rowCount; r++) {
+            if (rows.get(r)[column] == ValueNull.INSTANCE) {
+                if (nulls == null)
+                    nulls = new byte[(rowCount + 7) >>> 3];
+                nulls[r >>> 3] |= 1 << (r & 7);
+            }
+        }
+        if (nulls == null) {
+            buff.put((byte) 0);
+        } else {
+            buff.put((byte) 1);
+            buff.put(nulls);
+        }
+        switch (type) {
+        case Value.BOOLEAN: {
+            byte[] bits = new byte[(rowCount + 7) >>> 3];
+            for (int r = 0; r < rowCount; r++) {
+                Value v = rows.get(r)[column];
+                if (v != ValueNull.INSTANCE && v.getBoolean())
+                    bits[r >>> 3] |= 1 << (r & 7);
+            }
+            buff.put(bits);
+            break;
+        }
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DATE:
+        case Value.TIME: {
+            long last = 0;
+            for (int r = 0; r < rowCount; r++) {
+                Value v = rows.get(r)[column];
+                if (v != ValueNull.INSTANCE) {
+                    long x = getLong(v, type);
+                    buff.putVarLong(zigzag(x - last));
+                    last = x;
+                }
+            }
+            break;
+        }
+        case Value.TIMESTAMP: {
+            long last = 0;
+            for (int r = 0; r < rowCount; r++) {
+                Value v = rows.get(r)[column];
+                if (v != ValueNull.INSTANCE) {
+                    ValueTimestamp ts = (ValueTimestamp) v;
+                    buff.putVarLong(zigzag(ts.getDateValue() - last));
+                    buff.putVarLong(ts.getNanos());
+                    last = ts.getDateValue();
+                }
+            }
+            break;
+        }
+        case Value.UUID: {
+            for (int r = 0; r < rowCount; r++) {
+                Value v = rows.get(r)[column];
+                if (v != ValueNull.INSTANCE) {
+                    ValueUuid uuid = (ValueUuid) v;
+                    buff.putLong(uuid.getHigh());
+                    buff.putLong(uuid.getLow());
+                }
+            }
+            break;
+        }
+        case Value.DOUBLE: {
+            for (int r = 0; r < rowCount; r++) {
+                Value v = rows.get(r)[column];
+                if (v != ValueNull.INSTANCE)
+                    buff.putDouble(v.getDouble());
+            }
+            break;
+        }
+        case Value.FLOAT: {
+            for (int r = 0; r < rowCount; r++) {
+                Value v = rows.get(r)[column];
+                if (v != ValueNull.INSTANCE)
+                    buff.putFloat(v.getFloat());
+            }
+            break;
+        }
+        default:
+            writeStringColumn(buff, rows, column);
+        }
+    }
+
+    private static void writeStringColumn(DataBuffer buff, List<Value[]> rows, int column) {
+        int rowCount = rows.size();
+        // 不同的值不超过一半时才用字典编码
+        HashMap<String, Integer> dictionary = new HashMap<>();
+        int maxDictionarySize = rowCount / 2;
+        for (int r = 0; r < rowCount && dictionary.size() <= maxDictionarySize; r++) {
+            Value v = rows.get(r)[column];
+            if (v != ValueNull.INSTANCE)
+                dictionary.putIfAbsent(v.getString(), dictionary.size());
+        }
+        if (dictionary.size() <= maxDictionarySize) {
+            buff.put(DICTIONARY);
+            String[] strings = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> e : dictionary.entrySet()) {
+                strings[e.getValue()] = e.getKey();
+            }
+            buff.putVarInt(strings.length);
+            for (String s : strings) {
+                writeString(buff, s);
+            }
+            for (int r = 0; r < rowCount; r++) {
+                Value v = rows.get(r)[column];
+                if (v != ValueNull.INSTANCE)
+                    buff.putVarInt(dictionary.get(v.getString()));
+            }
+        } else {
+            buff.put(PLAIN);
+            for (int r = 0; r < rowCount; r++) {
+                Value v = rows.get(r)[column];
+                if (v != ValueNull.INSTANCE)
+                    writeString(buff, v.getString());
+            }
+        }
+    }
+
+    private static void writeString(DataBuffer buff, String s) {
+        int len = s.length();
+        buff.putVarInt(len);
+        buff.putStringData(s, len);
+    }
+
+    private static long getLong(Value v, int type) {
+        switch (type) {
+        case Value.DATE:
+            return ((ValueDate) v).getDateValue();
+        case Value.TIME:
+            return ((ValueTime) v).getNanos();
+        default:
+            return v.getLong();
+        }
+    }
+
+    // 让绝对值小的负数也只占很少的字节
+    private static long zigzag(long x) {
+        return (x << 1) ^ (x >> 63);
+    }
+
+    private static long unzigzag(long x) {
+        return (x >>> 1) ^ -(x & 1);
+    }
+
+    private static abstract class Column {
+        abstract Value get(int row);
+    }
+
+    private static class GenericColumn extends Column {
+
+        private final Value[] values;
+
+        GenericColumn(Value[] values) {
+            this.values = values;
+        }
+
+        @Override
+        Value get(int row) {
+            return values == null ? ValueNull.INSTANCE : values[row];
+        }
+    }
+
+    // 解码后的值按行号放在基本类型的数组里，null值对应的位置不用
+    private static class TypedColumn extends Column {
+
+        private final int type;
+        private byte[] nulls;
+        private long[] longs;
+        private long[] longs2;
+        private double[] doubles;
+        private int[] indexes;
+        private Value[] dictionary;
+        private String[] strings;
+
+        TypedColumn(int type, ByteBuffer buff, int rowCount) {
+            this.type = type;
+            if (buff.get() != 0) {
+                nulls = new byte[(rowCount + 7) >>> 3];
+                buff.get(nulls);
+            }
+            switch (type) {
+            case Value.BOOLEAN: {
+                byte[] bits = new byte[(rowCount + 7) >>> 3];
+                buff.get(bits);
+                longs = new long[rowCount];
+                for (int r = 0; r < rowCount; r++) {
+                    longs[r] = (bits[r >>> 3] >>> (r & 7)) & 1;
+                }
+                break;
+            }
+            case Value.BYTE:
+            case Value.SHORT:
+            case Value.INT:
+            case Value.LONG:
+            case Value.DATE:
+            case Value.TIME: {
+                longs = new long[rowCount];
+                long last = 0;
+                for (int r = 0; r < rowCount; r++) {
+                    if (!isNull(r)) {
+                        last += unzigzag(DataUtils.readVarLong(buff));
+                        longs[r] = last;
+                    }
+                }
+                break;
+            }
+            case Value.TIMESTAMP: {
+                longs = new long[rowCount];
+                longs2 = new long[rowCount];
+                long last = 0;
+                for (int r = 0; r < rowCount; r++) {
+                    if (!isNull(r)) {
+                        last += unzigzag(DataUtils.readVarLong(buff));
+                        longs[r] = last;
+                        longs2[r] = DataUtils.readVarLong(buff);
+                    }
+                }
+                break;
+            }
+            case Value.UUID: {
+                longs = new long[rowCount];
+                longs2 = new long[rowCount];
+                for (int r = 0; r < rowCount; r++) {
+                    if (!isNull(r)) {
+                        longs[r] = buff.getLong();
+                        longs2[r] = buff.getLong();
+                    }
+                }
+                break;
+            }
+            case Value.DOUBLE:
+            case Value.FLOAT: {
+                doubles = new double[rowCount];
+                for (int r = 0; r < rowCount; r++) {
+                    if (!isNull(r))
+                        doubles[r] = type == Value.DOUBLE ? buff.getDouble() : buff.getFloat();
+                }
+                break;
+            }
+            default:
+                if (buff.get() == DICTIONARY) {
+                    // 字典里的每个值只创建一次Value，所有引用它的行共享
+                    int size = DataUtils.readVarInt(buff);
+                    dictionary = new Value[size];
+                    for (int i = 0; i < size; i++) {
+                        dictionary[i] = createValue(readString(buff));
+                    }
+                    indexes = new int[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        if (!isNull(r))
+                            indexes[r] = DataUtils.readVarInt(buff);
+                    }
+                } else {
+                    strings = new String[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        if (!isNull(r))
+                            strings[r] = readString(buff);
+                    }
+                }
+            }
+        }
+
+        private boolean isNull(int row) {
+            return nulls != null && (nulls[row >>> 3] & (1 << (row & 7))) != 0;
+        }
+
+        private Value createValue(String s) {
+            switch (type) {
+            case Value.STRING_IGNORECASE:
+                return ValueStringIgnoreCase.get(s);
+            case Value.STRING_FIXED:
+                return ValueStringFixed.get(s);
+            case Value.DECIMAL:
+                return ValueDecimal.get(new BigDecimal(s));
+            default:
+                return ValueString.get(s);
+            }
+        }
+
+        @Override
+        Value get(int row) {
+            if (isNull(row))
+                return ValueNull.INSTANCE;
+            switch (type) {
+            case Value.BOOLEAN:
+                return ValueBoolean.get(longs[row] != 0);
+            case Value.BYTE:
+                return ValueByte.get((byte) longs[row]);
+            case Value.SHORT:
+                return ValueShort.get((short) longs[row]);
+            case Value.INT:
+                return ValueInt.get((int) longs[row]);
+            case Value.LONG:
+                return ValueLong.get(longs[row]);
+            case Value.DATE:
+                return ValueDate.fromDateValue(longs[row]);
+            case Value.TIME:
+                return ValueTime.fromNanos(longs[row]);
+            case Value.TIMESTAMP:
+                return ValueTimestamp.fromDateValueAndNanos(longs[row], longs2[row]);
+            case Value.UUID:
+                return ValueUuid.get(longs[row], longs2[row]);
+            case Value.DOUBLE:
+                return ValueDouble.get(doubles[row]);
+            case Value.FLOAT:
+                return ValueFloat.get((float) doubles[row]);
+            default:
+                if (dictionary != null)
+                    return dictionary[indexes[row]];
+                return createValue(strings[row]);
+            }
+        }
+
+        static boolean isSupported(int type) {
+            switch (type) {
+            case Value.BOOLEAN:
+            case Value.BYTE:
+            case Value.SHORT:
+            case Value.INT:
+            case Value.LONG:
+            case Value.DATE:
+            case Value.TIME:
+            case Value.TIMESTAMP:
+            case Value.UUID:
+            case Value.DOUBLE:
+            case Value.FLOAT:
+            case Value.DECIMAL:
+            case Value.STRING:
+            case Value.STRING_IGNORECASE:
+            case Value.STRING_FIXED:
+                return true;
+            default:
+                return false;
+            }
+        }
+
+        private static String readString(ByteBuffer buff) {
+            int len = DataUtils.readVarInt(buff);
+            return DataUtils.readString(buff, len);
+        }
+    }
+}
@@ -8,6 +8,7 @@ package com.lealone.server.protocol.result;
 import java.io.IOException;
 
 import com.lealone.common.exceptions.DbException;
+import com.lealone.db.Constants;
 import com.lealone.db.result.Result;
 import com.lealone.db.value.Value;
 import com.lealone.net.NetInputStream;
@@ -41,7 +42,7 @@ public class ResultFetchRowsAck implements AckPacket {
 
     @Override
     public void encode(NetOutputStream out, int version) throws IOException {
-        writeRow(out, result, count);
+        writeRow(out, result, count, version);
     }
 
     public static final Decoder decoder = new Decoder();
@@ -53,7 +54,12 @@ public class ResultFetchRowsAck implements AckPacket {
         }
     }
 
-    public static void writeRow(NetOutputStream out, Result result, int count) throws IOException {
+    // 返回true表示结果集的记录已经全部写完
+    public static boolean writeRow(NetOutputStream out, Result result, int count, int version)
+            throws IOException {
+        if (version >= Constants.TCP_PROTOCOL_VERSION_7) {
+            return ColumnarRowBatch.write(out, result, count);
+        }
         try {
             int visibleColumnCount = result.getVisibleColumnCount();
             for (int i = 0; i < count; i++) {
@@ -65,9 +71,10 @@ public class ResultFetchRowsAck implements AckPacket {
                     }
                 } else {
                     out.writeBoolean(false);
-                    break;
+                    return true;
                 }
             }
+            return false;
         } catch (Throwable e) {
             // 如果取结果集的下一行记录时发生了异常，
             // 结果集包必须加一个结束标记，结果集包后面跟一个异常包。
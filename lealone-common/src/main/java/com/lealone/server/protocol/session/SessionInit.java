@@ -73,13 +73,9 @@ public class SessionInit implements Packet {
                 throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + minClientVersion,
                         "" + Constants.TCP_PROTOCOL_VERSION_MAX);
             }
-            int clientVersion;
+            // 使用双方都支持的最高版本，老的客户端连到新的服务器时也能用它自己的最高版本
             int maxClientVersion = in.readInt();
-            if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_MAX) {
-                clientVersion = Constants.TCP_PROTOCOL_VERSION_CURRENT;
-            } else {
-                clientVersion = minClientVersion;
-            }
+            int clientVersion = Math.min(maxClientVersion, Constants.TCP_PROTOCOL_VERSION_CURRENT);
             ConnectionInfo ci = createConnectionInfo(in);
             return new SessionInit(ci, clientVersion);
         }
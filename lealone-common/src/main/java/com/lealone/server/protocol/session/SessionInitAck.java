@@ -23,15 +23,22 @@ public class SessionInitAck implements AckPacket {
     public final RunMode runMode;
     public final boolean invalid;
     public final int consistencyLevel;
+    public final long schedulerLoad; // 服务器端调度器的负载，-1表示未知
 
     public SessionInitAck(int clientVersion, boolean autoCommit, String targetNodes, RunMode runMode,
             boolean invalid, int consistencyLevel) {
+        this(clientVersion, autoCommit, targetNodes, runMode, invalid, consistencyLevel, -1);
+    }
+
+    public SessionInitAck(int clientVersion, boolean autoCommit, String targetNodes, RunMode runMode,
+            boolean invalid, int consistencyLevel, long schedulerLoad) {
         this.clientVersion = clientVersion;
         this.autoCommit = autoCommit;
         this.targetNodes = targetNodes;
         this.runMode = runMode;
         this.invalid = invalid;
         this.consistencyLevel = consistencyLevel;
+        this.schedulerLoad = schedulerLoad;
     }
 
     @Override
@@ -49,6 +56,9 @@ public class SessionInitAck implements AckPacket {
             out.writeBoolean(invalid);
             out.writeInt(consistencyLevel);
         }
+        if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_9) {
+            out.writeLong(schedulerLoad);
+        }
     }
 
     public static final Decoder decoder = new Decoder();
@@ -63,8 +73,11 @@ public class SessionInitAck implements AckPacket {
                 RunMode runMode = RunMode.valueOf(in.readString());
                 boolean invalid = in.readBoolean();
                 int consistencyLevel = in.readInt();
+                long schedulerLoad = -1;
+                if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_9)
+                    schedulerLoad = in.readLong();
                 return new SessionInitAck(clientVersion, autoCommit, targetNodes, runMode, invalid,
-                        consistencyLevel);
+                        consistencyLevel, schedulerLoad);
             } else {
                 return new SessionInitAck(clientVersion, autoCommit, null, RunMode.CLIENT_SERVER, false,
                         0);
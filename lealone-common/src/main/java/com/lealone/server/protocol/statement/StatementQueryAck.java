@@ -24,6 +24,9 @@ public class StatementQueryAck implements AckPacket {
     public final int fetchSize;
     public final NetInputStream in;
 
+    // 服务器端编码后才知道，第一批记录是否已经是全部记录
+    private boolean isEnd;
+
     public StatementQueryAck(Result result, int rowCount, int fetchSize) {
         this.result = result;
         this.rowCount = rowCount;
@@ -54,7 +57,14 @@ public class StatementQueryAck implements AckPacket {
         for (int i = 0; i < columnCount; i++) {
             PreparedStatementGetMetaDataAck.writeColumn(out, result, i);
         }
-        ResultFetchRowsAck.writeRow(out, result, fetchSize);
+        isEnd = ResultFetchRowsAck.writeRow(out, result, fetchSize, version);
+        // 知道记录总数时，第一批记录就包含所有记录也算写完了，跟客户端的判断方式一样
+        if (rowCount >= 0 && fetchSize >= rowCount)
+            isEnd = true;
+    }
+
+    public boolean isEnd() {
+        return isEnd;
     }
 
     // ----------------------------------------------------------------
@@ -45,6 +45,7 @@ import com.lealone.db.index.IndexType;
 import com.lealone.db.lock.DbObjectLock;
 import com.lealone.db.plugin.PluggableEngine;
 import com.lealone.db.plugin.PluginObject;
+import com.lealone.db.result.SharedResultCache;
 import com.lealone.db.row.Row;
 import com.lealone.db.scheduler.InternalScheduler;
 import com.lealone.db.scheduler.SchedulerLock;
@@ -56,6 +57,7 @@ import com.lealone.db.schema.TriggerObject;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.session.Session;
 import com.lealone.db.session.SessionStatus;
+import com.lealone.db.session.SharedPlanCache;
 import com.lealone.db.stats.QueryStatisticsData;
 import com.lealone.db.table.Column;
 import com.lealone.db.table.CreateTableData;
@@ -202,6 +204,8 @@ public class Database extends DbObjectBase implements DataHandler {
     private ConnectionInfo lastConnectionInfo;
 
     private final TableAlterHistory tableAlterHistory = new TableAlterHistory();
+    private final SharedPlanCache sharedPlanCache = new SharedPlanCache(this);
+    private final SharedResultCache sharedResultCache = new SharedResultCache(this);
     private final ConcurrentHashMap<Integer, DataHandler> dataHandlers = new ConcurrentHashMap<>();
 
     private String[] hostIds;
@@ -662,6 +666,14 @@ public class Database extends DbObjectBase implements DataHandler {
         return modificationMetaId.get();
     }
 
+    public SharedPlanCache getSharedPlanCache() {
+        return sharedPlanCache;
+    }
+
+    public SharedResultCache getSharedResultCache() {
+        return sharedResultCache;
+    }
+
     public long getNextModificationMetaId() {
         // if the meta data has been modified, the data is modified as well
         // (because MetaTable returns modificationDataId)
@@ -238,6 +238,34 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean rowId = get(DbSetting.ROWID, true);
 
+    /**
+     * Database setting <code>SHARED_PLAN_CACHE_SIZE</code> (default: 256).<br />
+     * The size of the database wide statement cache, in number of cached
+     * statements. Statements that are removed from the query cache of a session
+     * are kept here, so that other sessions with the same user and schema can
+     * execute the same SQL statement without parsing and optimizing it again.
+     * Set to 0 to disable the cache.
+     */
+    public final int sharedPlanCacheSize = get(DbSetting.SHARED_PLAN_CACHE_SIZE, 256);
+
+    /**
+     * Database setting <code>SHARED_RESULT_CACHE_SIZE</code> (default: 16384).<br />
+     * The memory budget of the database wide query result cache, in KB.
+     * Results of deterministic queries over regular tables are shared between
+     * sessions, and are only invalidated if one of the tables that the query
+     * reads is modified. Set to 0 to disable the cache.
+     */
+    public final int sharedResultCacheSize = get(DbSetting.SHARED_RESULT_CACHE_SIZE, 16384);
+
+    /**
+     * Database setting <code>SUBQUERY_CACHE_SIZE</code> (default: 1024).<br />
+     * The maximum number of results of a correlated subquery that are cached
+     * per distinct value of the outer columns while a statement is executed.
+     * Set to 0 to disable the cache and the rewrite of correlated subqueries
+     * to hash lookups.
+     */
+    public final int subqueryCacheSize = get(DbSetting.SUBQUERY_CACHE_SIZE, 1024);
+
     /**
      * Database setting <code>DEFAULT_STORAGE_ENGINE</code>
      * (default: AOSE).<br />
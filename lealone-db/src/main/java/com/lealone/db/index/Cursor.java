@@ -50,4 +50,16 @@ public interface Cursor {
      */
     boolean next();
 
+    /**
+     * Reposition the cursor to a new range of the same index.
+     * Only sorted indexes support this, the current position is reused
+     * so that adjacent ranges can be read without searching from the root.
+     *
+     * @param first the first row of the range (inclusive)
+     * @param last the last row of the range (inclusive)
+     * @return false if the cursor does not support it
+     */
+    default boolean seek(SearchRow first, SearchRow last) {
+        return false;
+    }
 }
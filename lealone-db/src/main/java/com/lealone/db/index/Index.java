@@ -5,6 +5,8 @@
  */
 package com.lealone.db.index;
 
+import java.util.LinkedHashMap;
+
 import com.lealone.common.exceptions.DbException;
 import com.lealone.db.async.AsyncResultHandler;
 import com.lealone.db.result.SortOrder;
@@ -15,6 +17,7 @@ import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Column;
 import com.lealone.db.table.Table;
 import com.lealone.db.value.Value;
+import com.lealone.sql.IExpression;
 import com.lealone.storage.CursorParameters;
 
 /**
@@ -46,6 +49,35 @@ public interface Index extends SchemaObject {
      */
     IndexColumn[] getIndexColumns();
 
+    /**
+     * Get the columns that are stored in the index but are not part of the key.
+     *
+     * @return the include columns, or null if there are none
+     */
+    default IndexColumn[] getIncludeColumns() {
+        return null;
+    }
+
+    /**
+     * Get the condition of a partial index. Only the rows that match the condition are indexed.
+     *
+     * @return the condition, or null if all rows are indexed
+     */
+    default IExpression getPredicate() {
+        return null;
+    }
+
+    /**
+     * Check if all the given columns can be read from the index alone,
+     * so that the row does not need to be read from the table.
+     *
+     * @param columnIndexes the column ids
+     * @return true if the index covers all columns
+     */
+    default boolean isCovering(int[] columnIndexes) {
+        return false;
+    }
+
     /**
      * Get the indexed columns.
      *
@@ -121,6 +153,18 @@ public interface Index extends SchemaObject {
 
     Cursor find(ServerSession session, CursorParameters<SearchRow> parameters);
 
+    /**
+     * Search a full-text index and rank the matching rows.
+     *
+     * @param session the session
+     * @param text the text to search
+     * @param limit the maximum number of rows, or 0 for no limit
+     * @return the row keys and their scores, ordered by score from high to low
+     */
+    default LinkedHashMap<Long, Double> searchText(ServerSession session, String text, int limit) {
+        throw DbException.getUnsupportedException("search text");
+    }
+
     /**
      * Check if the index can directly look up the lowest or highest value of a
      * column.
@@ -200,6 +244,39 @@ public interface Index extends SchemaObject {
      */
     double getCost(ServerSession session, int[] masks, SortOrder sortOrder);
 
+    /**
+     * Estimate the cost to search for rows given the search mask and the
+     * columns that are read from each row.
+     *
+     * @param session the session
+     * @param masks per-column comparison bit masks
+     * @param sortOrder the sort order
+     * @param columnIndexes the ids of the columns that are read, or null
+     * @return the estimated cost
+     */
+    default double getCost(ServerSession session, int[] masks, SortOrder sortOrder,
+            int[] columnIndexes) {
+        return getCost(session, masks, sortOrder);
+    }
+
+    /**
+     * Estimate the cost to search for rows given the search mask, the estimated
+     * selectivity of the conditions on each column and the columns that are
+     * read from each row.
+     *
+     * @param session the session
+     * @param masks per-column comparison bit masks
+     * @param selectivities per-column fraction of rows that match the conditions,
+     *            a negative element means unknown, null if nothing is known
+     * @param sortOrder the sort order
+     * @param columnIndexes the ids of the columns that are read, or null
+     * @return the estimated cost
+     */
+    default double getCost(ServerSession session, int[] masks, double[] selectivities,
+            SortOrder sortOrder, int[] columnIndexes) {
+        return getCost(session, masks, sortOrder, columnIndexes);
+    }
+
     default void setLastIndexedRowKey(Long rowKey) {
     }
 
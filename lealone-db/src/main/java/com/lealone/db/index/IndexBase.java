@@ -21,6 +21,7 @@ import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Column;
 import com.lealone.db.table.Table;
 import com.lealone.db.value.Value;
+import com.lealone.sql.IExpression;
 import com.lealone.storage.CursorParameters;
 import com.lealone.transaction.Transaction;
 
@@ -37,7 +38,10 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
     protected IndexColumn[] indexColumns;
     protected Column[] columns;
     protected int[] columnIds;
+    protected IndexColumn[] includeColumns;
+    protected IExpression predicate;
     protected IndexOperator indexOperator;
+    private long distinctKeyCount; // 多字段索引的字段组合的不重复值个数，由ANALYZE统计
 
     /**
      * Initialize the base index.
@@ -86,6 +90,16 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
         return indexColumns;
     }
 
+    @Override
+    public IndexColumn[] getIncludeColumns() {
+        return includeColumns;
+    }
+
+    @Override
+    public IExpression getPredicate() {
+        return predicate;
+    }
+
     @Override
     public Column[] getColumns() {
         return columns;
@@ -96,6 +110,23 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
         return columnIds;
     }
 
+    // 表达式索引的虚拟字段排在表的普通字段之后，表的字段个数变化后字段id也会跟着变
+    public void updateColumnIds() {
+        if (columns != null) {
+            for (int i = 0, len = columns.length; i < len; i++) {
+                columnIds[i] = columns[i].getColumnId();
+            }
+        }
+    }
+
+    public long getDistinctKeyCount() {
+        return distinctKeyCount;
+    }
+
+    public void setDistinctKeyCount(long distinctKeyCount) {
+        this.distinctKeyCount = distinctKeyCount;
+    }
+
     @Override
     public int getColumnIndex(Column col) { // 并不是返回列id，而是索引字段列表中的位置
         for (int i = 0, len = columns.length; i < len; i++) {
@@ -239,8 +270,25 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
      * @param sortOrder the sort order
      * @return the estimated cost
      */
-    // 代价的计算总体上是围绕行数进行的
     protected long getCostRangeIndex(int[] masks, long rowCount, SortOrder sortOrder) {
+        return getCostRangeIndex(masks, null, rowCount, sortOrder);
+    }
+
+    /**
+     * Calculate the cost for the given mask as if this index was a typical
+     * b-tree range index, using the estimated selectivity of the conditions
+     * on each column if available.
+     *
+     * @param masks the search mask
+     * @param selectivities the estimated fraction of rows that match the
+     *            conditions of each column, a negative element means unknown
+     * @param rowCount the number of rows in the index
+     * @param sortOrder the sort order
+     * @return the estimated cost
+     */
+    // 代价的计算总体上是围绕行数进行的
+    protected long getCostRangeIndex(int[] masks, double[] selectivities, long rowCount,
+            SortOrder sortOrder) {
         rowCount += Constants.COST_ROW_OFFSET;
         long cost = rowCount;
         long rows = rowCount;
@@ -252,6 +300,8 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
             Column column = columns[i];
             int index = column.getColumnId();
             int mask = masks[index];
+            // 有统计信息时按估算的选择率计算满足条件的行数，没有时才用下面的经验值
+            double s = selectivities == null ? -1 : selectivities[index];
             // 代价比较:
             // EQUALITY < RANGE < END < START
             // 如果索引字段列表的第一个字段在Where中是RANGE、START、END，那么索引字段列表中的其他字段就不需要再计算cost了，
@@ -268,6 +318,16 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
                     cost = 3;
                     break;
                 }
+                if (s >= 0) {
+                    // 假设多个字段之间相互独立，选择率直接相乘
+                    rows = Math.max((long) (rows * s), 1);
+                    // 字段之间有相关性时相乘的结果偏小，用字段组合的不重复值个数修正
+                    if (i == len - 1 && distinctKeyCount > 0) {
+                        rows = Math.max(rows, rowCount / distinctKeyCount);
+                    }
+                    cost = 2 + rows;
+                    continue;
+                }
                 totalSelectivity = 100
                         - ((100 - totalSelectivity) * (100 - column.getSelectivity()) / 100);
                 // totalSelectivity变大时distinctRows变大
@@ -278,6 +338,9 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
                 // distinctRows变大，则rowCount / distinctRows变小，rows也变小
                 rows = Math.max(rowCount / distinctRows, 1);
                 cost = 2 + rows; // rows也变小，所以cost也变小
+            } else if (s >= 0 && (mask & (IndexConditionType.START | IndexConditionType.END)) != 0) {
+                cost = 2 + Math.max((long) (rows * s), 1);
+                break;
             } else if ((mask & IndexConditionType.RANGE) == IndexConditionType.RANGE) {
                 // 见TableFilter.getBestPlanItem中的注释
                 cost = 2 + rows / 4; // rows开始时加了1000，所以rows / 4总是大于1的
@@ -397,6 +460,22 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
             buff.append(" COMMENT ").append(StringUtils.quoteStringSQL(comment));
         }
         buff.append('(').append(getColumnListSQL()).append(')');
+        if (indexType.isText()) {
+            buff.append(" USING ").append(indexType.getTextTokenizer());
+        }
+        if (includeColumns != null) {
+            buff.append(" INCLUDE(");
+            for (int i = 0; i < includeColumns.length; i++) {
+                if (i > 0) {
+                    buff.append(", ");
+                }
+                buff.append(includeColumns[i].column.getSQL());
+            }
+            buff.append(')');
+        }
+        if (predicate != null) {
+            buff.append(" WHERE ").append(StringUtils.unEnclose(predicate.getSQL()));
+        }
         return buff.toString();
     }
 
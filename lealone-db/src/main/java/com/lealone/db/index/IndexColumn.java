@@ -8,6 +8,7 @@ package com.lealone.db.index;
 import com.lealone.db.result.SortOrder;
 import com.lealone.db.table.Column;
 import com.lealone.db.table.Table;
+import com.lealone.sql.IExpression;
 
 /**
  * This represents a column item of an index. This is required because some
@@ -31,13 +32,20 @@ public class IndexColumn {
      */
     public int sortType = SortOrder.ASCENDING;
 
+    /**
+     * The expression of an expression index, or null if this is a plain column.
+     * The column is then a virtual column of the table that holds the value of the expression.
+     */
+    public IExpression expression;
+
     /**
      * Get the SQL snippet for this index column.
      *
      * @return the SQL snippet
      */
     public String getSQL() {
-        StringBuilder buff = new StringBuilder(column.getSQL());
+        StringBuilder buff = new StringBuilder(
+                expression != null ? expression.getSQL() : column.getSQL());
         if ((sortType & SortOrder.DESCENDING) != 0) {
             buff.append(" DESC");
         }
@@ -81,7 +89,9 @@ public class IndexColumn {
      */
     public static void mapColumns(IndexColumn[] indexColumns, Table table) {
         for (IndexColumn col : indexColumns) {
-            col.column = table.getColumn(col.columnName);
+            if (col.expression == null) {
+                col.column = table.getColumn(col.columnName);
+            }
         }
     }
 }
@@ -31,4 +31,9 @@ public class IndexConditionType {
      * A bit of a search mask meaning 'the condition is always false'.
      */
     public static final int ALWAYS_FALSE = 8;
+
+    /**
+     * A bit of a search mask meaning 'contains all the given substrings'.
+     */
+    public static final int CONTAINS = 16;
 }
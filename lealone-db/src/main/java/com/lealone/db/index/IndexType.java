@@ -16,6 +16,7 @@ public class IndexType {
     private boolean scan;
     private boolean delegate;
     private boolean belongsToConstraint;
+    private String textTokenizer;
 
     /**
      * Create a primary key index.
@@ -73,6 +74,18 @@ public class IndexType {
         return type;
     }
 
+    /**
+     * Create a full-text index.
+     *
+     * @param tokenizer the name of the tokenizer, NGRAM or FULLTEXT
+     * @return the index type
+     */
+    public static IndexType createText(String tokenizer) {
+        IndexType type = new IndexType();
+        type.textTokenizer = tokenizer;
+        return type;
+    }
+
     /**
      * Create a scan pseudo-index.
      *
@@ -120,6 +133,24 @@ public class IndexType {
         return scan;
     }
 
+    /**
+     * Is this a full-text index?
+     *
+     * @return true if it is a full-text index
+     */
+    public boolean isText() {
+        return textTokenizer != null;
+    }
+
+    /**
+     * Get the name of the tokenizer of a full-text index.
+     *
+     * @return the tokenizer name, or null if this is not a full-text index
+     */
+    public String getTextTokenizer() {
+        return textTokenizer;
+    }
+
     public boolean isDelegate() {
         return delegate;
     }
@@ -76,7 +76,7 @@ public class IndexKeyType extends StandardDataType {
 
     @Override
     public Object convertToIndexKey(Object key, Object value) {
-        return index.convertToKey((Row) value);
+        return index.convertToIndexKey((Row) value);
     }
 
     @Override
@@ -51,6 +51,10 @@ public class StandardDataType extends StorageDataTypeBase {
         int al = ax.length;
         int bl = bx.length;
         int len = Math.min(al, bl);
+        // 覆盖索引的include字段放在rowId后面，不参与比较
+        if (len > sortTypes.length) {
+            len = sortTypes.length;
+        }
         // 唯一索引key不需要比较最后的rowId
         int size = isUniqueKey() ? len - 1 : len;
         for (int i = 0; i < size; i++) {
@@ -60,7 +64,9 @@ public class StandardDataType extends StorageDataTypeBase {
                 return comp;
             }
         }
-        if (len < al) {
+        if (len == sortTypes.length) {
+            return 0;
+        } else if (len < al) {
             return -1;
         } else if (len < bl) {
             return 1;
@@ -67,7 +67,14 @@ public class StandardDelegateIndex extends StandardIndex {
 
     @Override
     public double getCost(ServerSession session, int[] masks, SortOrder sortOrder) {
-        return 10 * getCostRangeIndex(masks, mainIndex.getRowCountApproximation(), sortOrder);
+        return getCost(session, masks, null, sortOrder, null);
+    }
+
+    @Override
+    public double getCost(ServerSession session, int[] masks, double[] selectivities,
+            SortOrder sortOrder, int[] columnIndexes) {
+        return 10 * getCostRangeIndex(masks, selectivities, mainIndex.getRowCountApproximation(),
+                sortOrder);
     }
 
     @Override
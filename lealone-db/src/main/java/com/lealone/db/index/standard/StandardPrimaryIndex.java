@@ -303,6 +303,40 @@ public class StandardPrimaryIndex extends StandardIndex {
         return row;
     }
 
+    /**
+     * 批量读取记录，keys必须已经按从小到大排好序，读到的记录按相同的顺序放到rows中，已经删除的记录为null。
+     * 用同一个cursor按顺序定位，相邻的key只需要在当前的page中往后找，不需要每次都从root开始查找。
+     *
+     * @param session the session
+     * @param keys the sorted row keys
+     * @param size the number of keys
+     * @param columnIndexes the columns to read, or null for all columns
+     * @param rows the rows, same order as the keys
+     */
+    public void getRows(ServerSession session, long[] keys, int size, int[] columnIndexes,
+            Row[] rows) {
+        TransactionMap<Row, Row> map = getMap(session);
+        TransactionMapCursor<Row, Row> cursor = null;
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            if (i > 0 && keys[i - 1] == key) {
+                rows[i] = rows[i - 1];
+                continue;
+            }
+            Row from = new Row(key, null);
+            if (cursor == null || !cursor.seek(from)) {
+                cursor = map.cursor(CursorParameters.create(from, columnIndexes));
+            }
+            Row row = null;
+            // 已经删除了或者当前事务看不到时，cursor会停在后面的记录上
+            if (cursor.next() && cursor.getKey().getKey() == key) {
+                row = cursor.getValue();
+                row.setKey(key);
+            }
+            rows[i] = row;
+        }
+    }
+
     public Row getRow(Lockable lockable, long key) {
         if (lockable.getLockedValue() == null) // 已经删除了
             return null;
@@ -406,12 +440,12 @@ public class StandardPrimaryIndex extends StandardIndex {
         return pk == null ? null : new Row(pk.getKey(), null);
     }
 
-    private static class StandardPrimaryIndexCursor extends StandardIndexCursor {
+    private class StandardPrimaryIndexCursor extends StandardIndexCursor {
 
         private final ServerSession session;
         private final StandardTable table;
         private final TransactionMapCursor<Row, Row> cursor;
-        private final Row last;
+        private Row last;
         private Row row;
 
         public StandardPrimaryIndexCursor(ServerSession session, StandardTable table,
@@ -440,6 +474,16 @@ public class StandardPrimaryIndex extends StandardIndex {
             return false;
         }
 
+        @Override
+        public boolean seek(SearchRow first, SearchRow last) {
+            if (cursor.seek(getPK(first))) {
+                this.last = getPK(last);
+                row = null;
+                return true;
+            }
+            return false;
+        }
+
         private void createRow() {
             row = cursor.getValue();
             int version = row.getVersion();
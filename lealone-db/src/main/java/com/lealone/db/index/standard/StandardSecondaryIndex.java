@@ -5,7 +5,10 @@
  */
 package com.lealone.db.index.standard;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 
 import com.lealone.common.exceptions.DbException;
@@ -14,6 +17,7 @@ import com.lealone.db.async.AsyncResultHandler;
 import com.lealone.db.index.Cursor;
 import com.lealone.db.index.Index;
 import com.lealone.db.index.IndexColumn;
+import com.lealone.db.index.IndexConditionType;
 import com.lealone.db.index.IndexOperator;
 import com.lealone.db.index.IndexType;
 import com.lealone.db.lock.Lockable;
@@ -23,10 +27,13 @@ import com.lealone.db.row.SearchRow;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Column;
 import com.lealone.db.table.StandardTable;
+import com.lealone.db.value.CompareMode;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueEnum;
+import com.lealone.db.value.ValueInt;
 import com.lealone.db.value.ValueLong;
 import com.lealone.db.value.ValueNull;
+import com.lealone.sql.IExpression;
 import com.lealone.storage.Storage;
 import com.lealone.storage.StorageSetting;
 import com.lealone.transaction.Transaction;
@@ -41,31 +48,93 @@ public class StandardSecondaryIndex extends StandardIndex {
 
     private final StandardTable table;
     private final String mapName;
+    private final boolean hash;
+    private final int firstKeyColumn; // 索引字段在key中的开始位置
     private final int keyColumns;
+    private final int includeCount;
     private final TransactionMap<IndexKey, IndexKey> dataMap;
 
+    // 表达式索引和部分索引用它来计算表达式和索引条件
+    private final IExpression.Evaluator evaluator;
+    private final boolean hasExpressions;
+    // 更新这些字段时才需要更新索引，包括索引字段、include字段以及表达式和索引条件中用到的字段
+    private final Column[] dependentColumns;
+
     private Long lastIndexedRowKey;
     private boolean building;
 
     public StandardSecondaryIndex(ServerSession session, StandardTable table, int id, String indexName,
             IndexType indexType, IndexColumn[] indexColumns) {
+        this(session, table, id, indexName, indexType, indexColumns, null);
+    }
+
+    public StandardSecondaryIndex(ServerSession session, StandardTable table, int id, String indexName,
+            IndexType indexType, IndexColumn[] indexColumns, IndexColumn[] includeColumns) {
+        this(session, table, id, indexName, indexType, indexColumns, includeColumns, null, null);
+    }
+
+    public StandardSecondaryIndex(ServerSession session, StandardTable table, int id, String indexName,
+            IndexType indexType, IndexColumn[] indexColumns, IndexColumn[] includeColumns,
+            IExpression predicate, IExpression.Evaluator evaluator) {
         super(table, id, indexName, indexType, indexColumns);
         this.table = table;
+        this.includeColumns = includeColumns;
+        this.predicate = predicate;
+        this.evaluator = evaluator;
         mapName = table.getMapNameForIndex(id);
         if (!database.isStarting()) {
             checkIndexColumnTypes(indexColumns);
+            if (includeColumns != null)
+                checkIndexColumnTypes(includeColumns);
+            if (indexType.isHash())
+                checkHashIndexColumnTypes(indexColumns);
         }
+        // hash索引在key的最前面多放一个所有索引字段的hash值，
+        // 相同的索引字段值总是放在一起，查找时按hash值直接定位，不要求索引字段可以排序
+        hash = indexType.isHash();
+        firstKeyColumn = hash ? 1 : 0;
         // always store the row key in the map key,
         // even for unique indexes, as some of the index columns could be null
-        keyColumns = indexColumns.length + 1;
+        keyColumns = firstKeyColumn + indexColumns.length + 1;
+        // include字段放在row key的后面，只保存不参与比较，查询只用到索引字段和include字段时不需要回表
+        includeCount = includeColumns == null ? 0 : includeColumns.length;
+
+        boolean hasExpressions = false;
+        HashSet<Column> set = new HashSet<>();
+        for (IndexColumn c : indexColumns) {
+            if (c.expression != null) {
+                hasExpressions = true;
+                c.expression.getColumns(set);
+            } else {
+                set.add(c.column);
+            }
+        }
+        for (int i = 0; i < includeCount; i++) {
+            set.add(includeColumns[i].column);
+        }
+        if (predicate != null) {
+            predicate.getColumns(set);
+        }
+        this.hasExpressions = hasExpressions;
+        ArrayList<Column> list = new ArrayList<>(set.size());
+        for (Column c : set) {
+            // 表达式中可能有其他表的字段(比如子查询)，只需要当前表的
+            if (c.getTable() == table) {
+                list.add(c);
+            }
+        }
+        dependentColumns = list.toArray(new Column[0]);
 
         dataMap = openMap(session, mapName);
     }
 
     private TransactionMap<IndexKey, IndexKey> openMap(ServerSession session, String mapName) {
         int[] sortTypes = new int[keyColumns];
+        if (hash) {
+            sortTypes[0] = SortOrder.ASCENDING;
+        }
         for (int i = 0; i < indexColumns.length; i++) {
-            sortTypes[i] = indexColumns[i].sortType;
+            sortTypes[firstKeyColumn + i] = indexColumns[i].sortType;
         }
         sortTypes[keyColumns - 1] = SortOrder.ASCENDING;
 
@@ -129,8 +198,13 @@ public class StandardSecondaryIndex extends StandardIndex {
 
     @Override
     public void add(ServerSession session, Row row, AsyncResultHandler<Integer> handler) {
+        Value[] columnArray = row.getColumns();
+        if (!isIndexed(session, columnArray)) {
+            onComplete(handler);
+            return;
+        }
         final TransactionMap<IndexKey, IndexKey> map = getMap(session);
-        final IndexKey key = convertToKey(row);
+        final IndexKey key = convertToKey(row, getIndexValues(session, columnArray));
 
         map.addIfAbsent(key, key, ar -> {
             if (ar.isSucceeded() && ar.getResult().intValue() == Transaction.OPERATION_DATA_DUPLICATE) {
@@ -156,16 +230,8 @@ public class StandardSecondaryIndex extends StandardIndex {
             needUpdate = true;
         } else {
             Value[] newColumns = newRow.getColumns();
-            // 只有索引字段被更新时且新值和旧值不同时才更新索引
-            for (Column c : columns) {
-                int cid = c.getColumnId();
-                if (StandardPrimaryIndex.containsColumn(updateColumns, cid)) {
-                    if (oldColumns[cid].compareTo(newColumns[cid]) != 0) {
-                        needUpdate = true;
-                        break;
-                    }
-                }
-            }
+            // 只有索引用到的字段被更新时且新值和旧值不同时才更新索引
+            needUpdate = isChanged(dependentColumns, oldColumns, newColumns, updateColumns);
         }
         if (needUpdate)
             super.update(session, oldRow, newRow, oldColumns, updateColumns, isLockedBySelf, handler);
@@ -173,11 +239,28 @@ public class StandardSecondaryIndex extends StandardIndex {
             onComplete(handler);
     }
 
+    private static boolean isChanged(Column[] columns, Value[] oldColumns, Value[] newColumns,
+            int[] updateColumns) {
+        for (Column c : columns) {
+            int cid = c.getColumnId();
+            if (StandardPrimaryIndex.containsColumn(updateColumns, cid)) {
+                if (oldColumns[cid].compareTo(newColumns[cid]) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public void remove(ServerSession session, Row row, Value[] oldColumns, boolean isLockedBySelf,
             AsyncResultHandler<Integer> handler) {
+        if (!isIndexed(session, oldColumns)) {
+            onComplete(handler);
+            return;
+        }
         TransactionMap<IndexKey, IndexKey> map = getMap(session);
-        IndexKey key = convertToKey(row, oldColumns);
+        IndexKey key = convertToKey(row, getIndexValues(session, oldColumns));
         Lockable lockable = map.getLockableValue(key);
         if (!isLockedBySelf && map.isLocked(lockable))
             onComplete(handler, map.addWaitingTransaction(lockable));
@@ -185,7 +268,36 @@ public class StandardSecondaryIndex extends StandardIndex {
             onComplete(handler, map.tryRemove(key, lockable, isLockedBySelf));
     }
 
-    private void runIndexOperations(ServerSession session) {
+    // 部分索引只包含满足索引条件的记录
+    protected boolean isIndexed(ServerSession session, Value[] columnArray) {
+        if (predicate == null) {
+            return true;
+        }
+        Value v = evaluate(session, predicate, columnArray);
+        return v != ValueNull.INSTANCE && v.getBoolean();
+    }
+
+    // 表达式索引的虚拟字段不在表的记录中，先计算出来放到扩展后的数组中
+    protected Value[] getIndexValues(ServerSession session, Value[] columnArray) {
+        if (!hasExpressions) {
+            return columnArray;
+        }
+        Value[] values = Arrays.copyOf(columnArray,
+                columnArray.length + table.getExpressionColumns().length);
+        for (IndexColumn c : indexColumns) {
+            if (c.expression != null) {
+                values[c.column.getColumnId()] = evaluate(session, c.expression, columnArray);
+            }
+        }
+        return values;
+    }
+
+    private Value evaluate(ServerSession session, IExpression e, Value[] columnArray) {
+        // evaluator不保存当前记录，多个事务可以同时计算
+        return evaluator.getExpressionValue(session, e, new Row(columnArray));
+    }
+
+    protected void runIndexOperations(ServerSession session) {
         IndexOperator indexOperator = getIndexOperator();
         if (indexOperator != null && indexOperator.hasPendingIndexOperation()) {
             indexOperator.run(session);
@@ -195,9 +307,11 @@ public class StandardSecondaryIndex extends StandardIndex {
     @Override
     public Cursor find(ServerSession session, SearchRow first, SearchRow last) {
         runIndexOperations(session);
-        IndexKey min = convertToKey(first);
-        if (min != null) {
-            min.columns[keyColumns - 1] = ValueLong.get(Long.MIN_VALUE);
+        IndexKey min = convertToMinKey(first);
+        if (hash && (!isFullKey(min) || !isFullKey(convertToKey(last)))) {
+            // 没有给出所有索引字段的值时无法计算hash值，只能遍历整个索引，由查询条件过滤
+            min = null;
+            last = null;
         }
         TransactionMap<IndexKey, IndexKey> map = getMap(session);
         if (isBuilding()) {
@@ -226,6 +340,36 @@ public class StandardSecondaryIndex extends StandardIndex {
         }
     }
 
+    private IndexKey convertToMinKey(SearchRow first) {
+        IndexKey min = convertToKey(first);
+        if (min != null) {
+            min.columns[keyColumns - 1] = ValueLong.get(Long.MIN_VALUE);
+        }
+        return min;
+    }
+
+    private boolean isFullKey(IndexKey key) {
+        if (key == null) {
+            return false;
+        }
+        for (int i = firstKeyColumn, len = keyColumns - 1; i < len; i++) {
+            if (key.columns[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // redo时把表的记录转成索引key，部分索引不包含的记录返回null
+    Object convertToIndexKey(Row row) {
+        ServerSession session = database.getSystemSession();
+        Value[] columnArray = row.getColumns();
+        if (!isIndexed(session, columnArray)) {
+            return null;
+        }
+        return convertToKey(row, getIndexValues(session, columnArray));
+    }
+
     public IndexKey convertToKey(SearchRow r) {
         if (r == null)
             return null;
@@ -235,7 +379,7 @@ public class StandardSecondaryIndex extends StandardIndex {
     private IndexKey convertToKey(SearchRow r, Value[] columnArray) {
         if (r == null)
             return null;
-        Value[] array = new Value[keyColumns];
+        Value[] array = new Value[keyColumns + includeCount];
         for (int i = 0; i < columns.length; i++) {
             Column c = columns[i];
             int idx = c.getColumnId();
@@ -243,30 +387,143 @@ public class StandardSecondaryIndex extends StandardIndex {
             if (v != null) {
                 if (c.isEnumType()) {
                     try {
-                        array[i] = c.convert(v);
+                        array[firstKeyColumn + i] = c.convert(v);
                     } catch (Throwable t) {
-                        array[i] = ValueEnum.get(-1);
+                        array[firstKeyColumn + i] = ValueEnum.get(-1);
                     }
                 } else {
-                    array[i] = v.convertTo(c.getType());
+                    array[firstKeyColumn + i] = v.convertTo(c.getType());
                 }
             }
         }
+        if (hash) {
+            array[0] = ValueInt.get(getHashCode(array));
+        }
         array[keyColumns - 1] = r.getPrimaryKey();
+        for (int i = 0; i < includeCount; i++) {
+            Column c = includeColumns[i].column;
+            Value v = columnArray[c.getColumnId()];
+            if (v != null) {
+                array[keyColumns + i] = v.convertTo(c.getType());
+            }
+        }
         return new IndexKey(array);
     }
 
+    private int getHashCode(Value[] array) {
+        int h = 0;
+        for (int i = firstKeyColumn, len = keyColumns - 1; i < len; i++) {
+            Value v = array[i];
+            h = 31 * h + (v == null ? 0 : getHashCode(v));
+        }
+        return h;
+    }
+
+    // 设置了collation后，按collation相等的两个字符串hashCode可能不同，
+    // 没法算出跟比较的结果一致的hash值，所以不支持。collation只能在没有表时修改，建索引时检查就够了
+    private void checkHashIndexColumnTypes(IndexColumn[] columns) {
+        if (CompareMode.OFF.equals(database.getCompareMode().getName()))
+            return;
+        for (IndexColumn c : columns) {
+            switch (c.column.getType()) {
+            case Value.STRING:
+            case Value.STRING_FIXED:
+            case Value.STRING_IGNORECASE:
+                throw DbException.getUnsupportedException(
+                        "HASH index on a string column with a collation: " + c.column.getCreateSQL());
+            }
+        }
+    }
+
+    // hash值要跟比较的结果一致，DECIMAL的hashCode跟scale有关，1.5和1.50相等但hashCode不同
+    private static int getHashCode(Value v) {
+        if (v.getType() == Value.DECIMAL)
+            return v.getBigDecimal().stripTrailingZeros().hashCode();
+        return v.hashCode();
+    }
+
     @Override
     public double getCost(ServerSession session, int[] masks, SortOrder sortOrder) {
+        return getCost(session, masks, sortOrder, null);
+    }
+
+    @Override
+    public double getCost(ServerSession session, int[] masks, SortOrder sortOrder,
+            int[] columnIndexes) {
+        return getCost(session, masks, null, sortOrder, columnIndexes);
+    }
+
+    @Override
+    public double getCost(ServerSession session, int[] masks, double[] selectivities,
+            SortOrder sortOrder, int[] columnIndexes) {
+        if (hash) {
+            // 所有索引字段都是等值条件时才能用hash索引
+            if (masks == null) {
+                return Long.MAX_VALUE;
+            }
+            for (Column column : columns) {
+                int mask = masks[column.getColumnId()];
+                if ((mask & IndexConditionType.EQUALITY) != IndexConditionType.EQUALITY) {
+                    return Long.MAX_VALUE;
+                }
+            }
+            return 2;
+        }
+        // 覆盖索引不需要按row key回表读取记录，所以代价更低
+        int factor = isCovering(columnIndexes) ? 5 : 10;
         try {
-            return 10 * getCostRangeIndex(masks, dataMap.getRawSize(), sortOrder);
+            return factor
+                    * getCostRangeIndex(masks, selectivities, dataMap.getRawSize(), sortOrder);
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
     }
 
+    @Override
+    public boolean isCovering(int[] columnIndexes) {
+        if (columnIndexes == null) {
+            return false;
+        }
+        int mainIndexColumn = table.getScanIndex(null).getMainIndexColumn();
+        for (int cid : columnIndexes) {
+            if (cid < 0 || cid == mainIndexColumn || containsColumn(cid)) {
+                continue;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean containsColumn(int cid) {
+        for (int id : columnIds) {
+            if (id == cid) {
+                return true;
+            }
+        }
+        for (int i = 0; i < includeCount; i++) {
+            if (includeColumns[i].column.getColumnId() == cid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 部分索引不包含所有记录，不能用来求min、max，也不能当成全表扫描
+    @Override
+    public boolean canGetFirstOrLast() {
+        return !hash && predicate == null;
+    }
+
+    @Override
+    public boolean canScan() {
+        return !hash && predicate == null;
+    }
+
     @Override
     public SearchRow findFirstOrLast(ServerSession session, boolean first) {
+        if (hash) {
+            throw DbException.getUnsupportedException("HASH");
+        }
         runIndexOperations(session);
         TransactionMap<IndexKey, IndexKey> map = getMap(session);
         IndexKey key = first ? map.firstKey() : map.lastKey();
@@ -284,7 +541,7 @@ public class StandardSecondaryIndex extends StandardIndex {
 
     @Override
     public boolean supportsDistinctQuery() {
-        return true;
+        return !hash && predicate == null;
     }
 
     @Override
@@ -316,7 +573,7 @@ public class StandardSecondaryIndex extends StandardIndex {
         getMap(session).clear();
     }
 
-    private TransactionMap<IndexKey, IndexKey> getMap(ServerSession session) {
+    protected TransactionMap<IndexKey, IndexKey> getMap(ServerSession session) {
         if (session == null) {
             return dataMap;
         }
@@ -326,12 +583,26 @@ public class StandardSecondaryIndex extends StandardIndex {
     @Override
     public boolean needRebuild() {
         try {
-            return dataMap.getRawSize() == 0;
+            if (dataMap.getRawSize() == 0)
+                return true;
+            // 老版本中多字段的hash索引也是StandardSecondaryIndex，但是key的最前面没有hash值，
+            // 没法按新的格式读，只能清空后重建
+            if (hash && isOldHashLayout()) {
+                dataMap.getRawMap().clear();
+                return true;
+            }
+            return false;
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
     }
 
+    // 老的key是[索引字段, row key]，新的key是[hash, 索引字段, row key, include字段]，老版本没有include字段
+    private boolean isOldHashLayout() {
+        Object key = dataMap.getRawMap().firstKey();
+        return key instanceof IndexKey && ((IndexKey) key).columns.length == keyColumns - 1;
+    }
+
     /**
      * Convert array of values to a SearchRow.
      *
@@ -340,18 +611,21 @@ public class StandardSecondaryIndex extends StandardIndex {
      */
     private SearchRow convertToSearchRow(IndexKey key) {
         Value[] array = key.columns;
-        int len = array.length - 1;
-        SearchRow searchRow = table.getTemplateRow();
+        int len = keyColumns - 1;
+        SearchRow searchRow = table.getTemplateSearchRow();
         searchRow.setKey((array[len]).getLong());
         Column[] cols = getColumns();
-        for (int i = 0; i < len; i++) {
+        for (int i = 0; i < cols.length; i++) {
             Column c = cols[i];
             int idx = c.getColumnId();
-            Value v = array[i];
+            Value v = array[firstKeyColumn + i];
             if (c.isEnumType())
                 v = c.convert(v);
             searchRow.setValue(idx, v);
         }
+        for (int i = 0; i < includeCount && keyColumns + i < array.length; i++) {
+            searchRow.setValue(includeColumns[i].column.getColumnId(), array[keyColumns + i]);
+        }
         int idx = table.getScanIndex(null).getMainIndexColumn();
         if (idx >= 0) {
             Column c = table.getColumn(idx);
@@ -361,16 +635,42 @@ public class StandardSecondaryIndex extends StandardIndex {
         return searchRow;
     }
 
+    static final int MIN_BATCH_SIZE = 8;
+    static final int MAX_BATCH_SIZE = 256;
+
     private abstract class StandardSecondaryIndexCursor extends StandardIndexCursor {
 
         private final ServerSession session;
         private SearchRow searchRow;
         private Row row;
+        protected SearchRow last;
+        private Value lastHash;
+
+        // 批量回表(multi-range read)，先从索引中读一批记录，
+        // 需要回表时按row key排序后用一个cursor顺序读取，返回的顺序还是索引的顺序
+        private SearchRow[] batch;
+        private int batchCount;
+        private int batchIndex;
+        private boolean batchFetched;
+        private boolean exhausted;
+        private long[] keys;
+        private Row[] rows;
+        private int[] batchColumnIndexes; // 这一批记录读取了哪些字段，为null时读取了所有字段
 
         public StandardSecondaryIndexCursor(ServerSession session) {
             this.session = session;
         }
 
+        protected void enableBatchFetch() {
+            batch = new SearchRow[MIN_BATCH_SIZE];
+        }
+
+        protected void resetBatch() {
+            batchCount = 0;
+            batchIndex = 0;
+            exhausted = false;
+        }
+
         @Override
         public Row get() {
             return get(null);
@@ -379,7 +679,19 @@ public class StandardSecondaryIndex extends StandardIndex {
         @Override
         public Row get(int[] columnIndexes) {
             if (row == null && searchRow != null) {
-                row = table.getRow(session, searchRow.getKey(), columnIndexes);
+                if (batch != null) {
+                    if (!batchFetched) {
+                        fetchBatch(columnIndexes);
+                    }
+                    if (containsAll(batchColumnIndexes, columnIndexes)) {
+                        row = getBatchRow(searchRow.getKey());
+                    } else {
+                        // 需要的字段不在这一批记录中，只能单独再读一次
+                        row = table.getRow(session, searchRow.getKey(), columnIndexes);
+                    }
+                } else {
+                    row = table.getRow(session, searchRow.getKey(), columnIndexes);
+                }
             }
             return row;
         }
@@ -391,11 +703,70 @@ public class StandardSecondaryIndex extends StandardIndex {
 
         @Override
         public boolean next() {
-            searchRow = nextSearchRow();
+            searchRow = batch != null ? nextBatchSearchRow() : nextSearchRow();
             row = null; // 延迟构建
             return searchRow != null;
         }
 
+        private SearchRow nextBatchSearchRow() {
+            if (++batchIndex < batchCount) {
+                return batch[batchIndex];
+            }
+            if (exhausted) {
+                return null;
+            }
+            // 批次大小逐步翻倍，只读少量记录(比如有limit)时不会多回表
+            if (batchCount == batch.length && batch.length < MAX_BATCH_SIZE) {
+                batch = new SearchRow[batch.length * 2];
+            }
+            batchCount = 0;
+            batchIndex = 0;
+            batchFetched = false;
+            while (batchCount < batch.length) {
+                SearchRow r = nextSearchRow();
+                if (r == null) {
+                    exhausted = true;
+                    break;
+                }
+                batch[batchCount++] = r;
+            }
+            return batchCount > 0 ? batch[0] : null;
+        }
+
+        private void fetchBatch(int[] columnIndexes) {
+            if (keys == null || keys.length < batchCount) {
+                keys = new long[batch.length];
+                rows = new Row[batch.length];
+            }
+            for (int i = 0; i < batchCount; i++) {
+                keys[i] = batch[i].getKey();
+            }
+            Arrays.sort(keys, 0, batchCount);
+            table.getRows(session, keys, batchCount, columnIndexes, rows);
+            batchColumnIndexes = columnIndexes;
+            batchFetched = true;
+        }
+
+        // 两个数组都是按字段id排好序的
+        private boolean containsAll(int[] fetched, int[] requested) {
+            if (fetched == null || fetched == requested) {
+                return true;
+            }
+            if (requested == null) {
+                return false;
+            }
+            for (int id : requested) {
+                if (Arrays.binarySearch(fetched, id) < 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private Row getBatchRow(long key) {
+            int i = Arrays.binarySearch(keys, 0, batchCount, key);
+            return i >= 0 ? rows[i] : null;
+        }
+
         protected SearchRow createSearchRow(IndexKey key) {
             if (key == null)
                 return null;
@@ -403,12 +774,27 @@ public class StandardSecondaryIndex extends StandardIndex {
                 return convertToSearchRow(key);
         }
 
+        // 总是读当前事务可见的值，而不是map中的key：
+        // 正在被删除时要读老的，唯一索引的记录被其他事务更新时，map中的key会被替换成未提交的新key，
+        // 它的include字段值和row key对当前事务都是不可见的
         protected IndexKey getIndexKey(TransactionMapCursor<IndexKey, IndexKey> tmCursor) {
-            IndexKey current = tmCursor.getKey();
-            // 正在被删除时，读老的
-            if (current.getLockedValue() == null)
-                current = tmCursor.getValue();
-            return current;
+            return tmCursor.getValue();
+        }
+
+        protected void setLast(SearchRow last) {
+            this.last = last;
+            lastHash = hash && last != null ? convertToKey(last).columns[0] : null;
+        }
+
+        protected boolean isAfterLast(IndexKey key, SearchRow searchRow) {
+            if (last == null) {
+                return false;
+            }
+            // hash值不同说明已经超出范围了，hash值相同时再按索引字段比较
+            if (lastHash != null && !lastHash.equals(key.columns[0])) {
+                return true;
+            }
+            return compareRows(searchRow, last) > 0;
         }
 
         protected abstract SearchRow nextSearchRow();
@@ -417,13 +803,13 @@ public class StandardSecondaryIndex extends StandardIndex {
     private class SsiRegularCursor extends StandardSecondaryIndexCursor {
 
         private final TransactionMapCursor<IndexKey, IndexKey> tmCursor;
-        private final SearchRow last;
 
         public SsiRegularCursor(ServerSession session, TransactionMapCursor<IndexKey, IndexKey> tmCursor,
                 SearchRow last) {
             super(session);
             this.tmCursor = tmCursor;
-            this.last = last;
+            setLast(last);
+            enableBatchFetch();
         }
 
         @Override
@@ -432,7 +818,7 @@ public class StandardSecondaryIndex extends StandardIndex {
             if (tmCursor.next()) {
                 IndexKey current = getIndexKey(tmCursor);
                 searchRow = createSearchRow(current);
-                if (searchRow != null && last != null && compareRows(searchRow, last) > 0) {
+                if (searchRow != null && isAfterLast(current, searchRow)) {
                     searchRow = null;
                 }
             } else {
@@ -440,12 +826,25 @@ public class StandardSecondaryIndex extends StandardIndex {
             }
             return searchRow;
         }
+
+        @Override
+        public boolean seek(SearchRow first, SearchRow last) {
+            IndexKey min = convertToMinKey(first);
+            if (hash && (!isFullKey(min) || !isFullKey(convertToKey(last)))) {
+                return false;
+            }
+            if (tmCursor.seek(min)) {
+                setLast(last);
+                resetBatch();
+                return true;
+            }
+            return false;
+        }
     }
 
     private class SsiBuildingCursor extends StandardSecondaryIndexCursor {
 
         private TransactionMapCursor<IndexKey, IndexKey> tmCursor;
-        private final SearchRow last;
         private final Cursor primaryCursor;
 
         public SsiBuildingCursor(ServerSession session,
@@ -453,8 +852,8 @@ public class StandardSecondaryIndex extends StandardIndex {
                 Cursor primaryCursor) {
             super(session);
             this.tmCursor = tmCursor;
-            this.last = last;
             this.primaryCursor = primaryCursor;
+            setLast(last);
         }
 
         @Override
@@ -464,7 +863,7 @@ public class StandardSecondaryIndex extends StandardIndex {
                 if (tmCursor.next()) {
                     IndexKey current = getIndexKey(tmCursor);
                     searchRow = createSearchRow(current);
-                    if (searchRow != null && last != null && compareRows(searchRow, last) > 0) {
+                    if (searchRow != null && isAfterLast(current, searchRow)) {
                         searchRow = null;
                     }
                 } else {
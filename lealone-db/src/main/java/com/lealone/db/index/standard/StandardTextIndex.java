@@ -0,0 +1,410 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.db.index.standard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.db.Constants;
+import com.lealone.db.async.AsyncResultHandler;
+import com.lealone.db.index.Cursor;
+import com.lealone.db.index.IndexColumn;
+import com.lealone.db.index.IndexConditionType;
+import com.lealone.db.index.IndexType;
+import com.lealone.db.lock.Lockable;
+import com.lealone.db.result.SortOrder;
+import com.lealone.db.row.Row;
+import com.lealone.db.row.SearchRow;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.table.Column;
+import com.lealone.db.table.StandardTable;
+import com.lealone.db.value.DataType;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueArray;
+import com.lealone.db.value.ValueInt;
+import com.lealone.db.value.ValueLong;
+import com.lealone.db.value.ValueNull;
+import com.lealone.db.value.ValueString;
+import com.lealone.sql.IExpression;
+import com.lealone.transaction.Transaction;
+import com.lealone.transaction.TransactionMap;
+import com.lealone.transaction.TransactionMapCursor;
+
+/**
+ * 全文索引(倒排索引)
+ *
+ * 字段值切分成多个token，每个token对应索引中的一个key: [token, row key, token出现的次数]，
+ * 同一个token的所有row key按顺序放在一起就是这个token的posting list。
+ * 每个key只属于一条记录，并发修改不同的记录时不会在同一个posting list上发生冲突，
+ * 相邻key的前缀相同，由存储层的page压缩。
+ *
+ * NGRAM索引可以用于LIKE '%abc%'，找到的记录是超集，还需要由查询条件过滤，
+ * 两种索引都可以通过MATCH函数做全文检索并按相关度排序。
+ *
+ * @author zhh
+ */
+public class StandardTextIndex extends StandardSecondaryIndex {
+
+    // BM25的参数，没有保存文本长度，所以不做长度归一化
+    private static final double K1 = 1.2;
+
+    private final StandardTable table;
+    private final TextTokenizer tokenizer;
+    private final Column column;
+
+    public StandardTextIndex(ServerSession session, StandardTable table, int id, String indexName,
+            IndexType indexType, IndexColumn[] indexColumns, IExpression predicate,
+            IExpression.Evaluator evaluator) {
+        super(session, table, id, indexName, indexType, checkIndexColumns(indexColumns), null,
+                predicate, evaluator);
+        this.table = table;
+        tokenizer = TextTokenizer.get(indexType.getTextTokenizer());
+        column = indexColumns[0].column;
+    }
+
+    private static IndexColumn[] checkIndexColumns(IndexColumn[] indexColumns) {
+        if (indexColumns.length != 1 || !DataType.isStringType(indexColumns[0].column.getType())) {
+            throw DbException.getUnsupportedException(
+                    "Full-text index must have exactly one string column");
+        }
+        return indexColumns;
+    }
+
+    @Override
+    public void add(ServerSession session, Row row, AsyncResultHandler<Integer> handler) {
+        IndexKey[] keys = getIndexKeys(session, row, row.getColumns());
+        if (keys == null) {
+            onComplete(handler);
+            return;
+        }
+        TransactionMap<IndexKey, IndexKey> map = getMap(session);
+        AtomicInteger count = new AtomicInteger(keys.length);
+        AtomicBoolean isFailed = new AtomicBoolean();
+        for (IndexKey key : keys) {
+            map.addIfAbsent(key, key, ar -> {
+                // 每个key都包含row key，不会违反唯一性，只要有一个出错了就把它当成最终结果
+                if (ar.isFailed()) {
+                    if (isFailed.compareAndSet(false, true))
+                        onException(handler, ar.getCause());
+                } else if (count.decrementAndGet() == 0 && !isFailed.get()) {
+                    onComplete(handler);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void remove(ServerSession session, Row row, Value[] oldColumns, boolean isLockedBySelf,
+            AsyncResultHandler<Integer> handler) {
+        IndexKey[] keys = getIndexKeys(session, row, oldColumns);
+        if (keys == null) {
+            onComplete(handler);
+            return;
+        }
+        TransactionMap<IndexKey, IndexKey> map = getMap(session);
+        for (IndexKey key : keys) {
+            Lockable lockable = map.getLockableValue(key);
+            if (lockable == null) {
+                continue;
+            }
+            if (!isLockedBySelf && map.isLocked(lockable)) {
+                onComplete(handler, map.addWaitingTransaction(lockable));
+                return;
+            }
+            int result = map.tryRemove(key, lockable, isLockedBySelf);
+            if (result != Transaction.OPERATION_COMPLETE) {
+                onComplete(handler, result);
+                return;
+            }
+        }
+        onComplete(handler);
+    }
+
+    @Override
+    Object convertToIndexKey(Row row) {
+        return getIndexKeys(database.getSystemSession(), row, row.getColumns());
+    }
+
+    private IndexKey[] getIndexKeys(ServerSession session, SearchRow row, Value[] columnArray) {
+        if (!isIndexed(session, columnArray)) {
+            return null;
+        }
+        Value v = getIndexValues(session, columnArray)[column.getColumnId()];
+        if (v == null || v == ValueNull.INSTANCE) {
+            return null;
+        }
+        Map<String, Integer> tokens = tokenizer.tokenize(v.getString());
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        IndexKey[] keys = new IndexKey[tokens.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> e : tokens.entrySet()) {
+            keys[i++] = new IndexKey(new Value[] { ValueString.get(e.getKey()), row.getPrimaryKey(),
+                    ValueInt.get(e.getValue()) });
+        }
+        return keys;
+    }
+
+    @Override
+    public Cursor find(ServerSession session, SearchRow first, SearchRow last) {
+        runIndexOperations(session);
+        Value v = first == null ? null : first.getValue(column.getColumnId());
+        Posting posting = null;
+        // 正在构建时索引还不完整
+        if (v != null && !isBuilding()) {
+            posting = findAll(session, getSearchTokens(v));
+        }
+        if (posting == null) {
+            // 没有可用的token，只能遍历整个表，由查询条件过滤
+            return table.getScanIndex(session).find(session, null, null);
+        }
+        return new StiCursor(session, posting.keys, posting.size);
+    }
+
+    // LIKE条件传过来的是去掉通配符之后的多个子串
+    private HashSet<String> getSearchTokens(Value v) {
+        HashSet<String> tokens = new HashSet<>();
+        if (v instanceof ValueArray) {
+            for (Value s : ((ValueArray) v).getList()) {
+                tokens.addAll(tokenizer.tokenize(s.getString()).keySet());
+            }
+        } else if (v != ValueNull.INSTANCE) {
+            tokens.addAll(tokenizer.tokenize(v.getString()).keySet());
+        }
+        return tokens;
+    }
+
+    // 求所有token的posting list的交集，从最短的开始
+    private Posting findAll(ServerSession session, HashSet<String> tokens) {
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        TransactionMap<IndexKey, IndexKey> map = getMap(session);
+        ArrayList<Posting> list = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Posting p = readPosting(map, token);
+            if (p.size == 0) {
+                return p;
+            }
+            list.add(p);
+        }
+        list.sort((a, b) -> Integer.compare(a.size, b.size));
+        Posting result = list.get(0);
+        for (int i = 1, size = list.size(); i < size && result.size > 0; i++) {
+            result = result.intersect(list.get(i));
+        }
+        return result;
+    }
+
+    private Posting readPosting(TransactionMap<IndexKey, IndexKey> map, String token) {
+        Value t = ValueString.get(token);
+        IndexKey from = new IndexKey(new Value[] { t, ValueLong.get(Long.MIN_VALUE) });
+        TransactionMapCursor<IndexKey, IndexKey> cursor = map.cursor(from);
+        Posting p = new Posting();
+        while (cursor.next()) {
+            IndexKey key = cursor.getKey();
+            // 正在被删除时，读老的
+            if (key.getLockedValue() == null)
+                key = cursor.getValue();
+            Value[] columns = key.columns;
+            if (!t.equals(columns[0])) {
+                break;
+            }
+            p.add(columns[1].getLong(), columns.length > 2 ? columns[2].getInt() : 1);
+        }
+        return p;
+    }
+
+    @Override
+    public LinkedHashMap<Long, Double> searchText(ServerSession session, String text, int limit) {
+        runIndexOperations(session);
+        TransactionMap<IndexKey, IndexKey> map = getMap(session);
+        long rowCount = table.getRowCountApproximation();
+        HashMap<Long, double[]> scores = new HashMap<>();
+        for (String token : tokenizer.tokenize(text).keySet()) {
+            Posting p = readPosting(map, token);
+            if (p.size == 0) {
+                continue;
+            }
+            // 包含token的记录越少，token越重要
+            double n = Math.max(rowCount, p.size);
+            double idf = Math.log(1 + (n - p.size + 0.5) / (p.size + 0.5));
+            for (int i = 0; i < p.size; i++) {
+                double tf = p.counts[i];
+                double[] score = scores.get(p.keys[i]);
+                if (score == null) {
+                    score = new double[1];
+                    scores.put(p.keys[i], score);
+                }
+                score[0] += idf * tf * (K1 + 1) / (tf + K1);
+            }
+        }
+        ArrayList<Map.Entry<Long, double[]>> list = new ArrayList<>(scores.entrySet());
+        list.sort((a, b) -> {
+            int c = Double.compare(b.getValue()[0], a.getValue()[0]);
+            return c != 0 ? c : Long.compare(a.getKey(), b.getKey());
+        });
+        int size = limit > 0 ? Math.min(limit, list.size()) : list.size();
+        LinkedHashMap<Long, Double> result = new LinkedHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            Map.Entry<Long, double[]> e = list.get(i);
+            result.put(e.getKey(), e.getValue()[0]);
+        }
+        return result;
+    }
+
+    // 只有LIKE '%abc%'这样的条件才用全文索引
+    @Override
+    public double getCost(ServerSession session, int[] masks, double[] selectivities,
+            SortOrder sortOrder, int[] columnIndexes) {
+        if (masks == null || !tokenizer.supportsLike()
+                || (masks[column.getColumnId()] & IndexConditionType.CONTAINS) == 0) {
+            return Long.MAX_VALUE;
+        }
+        long rowCount = table.getRowCountApproximation() + Constants.COST_ROW_OFFSET;
+        return 10 * (2 + rowCount / 10);
+    }
+
+    @Override
+    public boolean isCovering(int[] columnIndexes) {
+        return false;
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public boolean canScan() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsDistinctQuery() {
+        return false;
+    }
+
+    @Override
+    public SearchRow findFirstOrLast(ServerSession session, boolean first) {
+        throw DbException.getUnsupportedException("full-text index");
+    }
+
+    @Override
+    public Cursor findDistinct(ServerSession session) {
+        throw DbException.getUnsupportedException("full-text index");
+    }
+
+    // 一个token对应的row key列表，按row key排序
+    private static class Posting {
+
+        long[] keys = new long[8];
+        int[] counts = new int[8];
+        int size;
+
+        void add(long key, int count) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            keys[size] = key;
+            counts[size] = count;
+            size++;
+        }
+
+        Posting intersect(Posting other) {
+            Posting p = new Posting();
+            int i = 0, j = 0;
+            while (i < size && j < other.size) {
+                long a = keys[i], b = other.keys[j];
+                if (a == b) {
+                    p.add(a, counts[i]);
+                    i++;
+                    j++;
+                } else if (a < b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return p;
+        }
+    }
+
+    // 按row key的顺序批量回表
+    private class StiCursor extends StandardIndexCursor {
+
+        private final ServerSession session;
+        private final long[] keys;
+        private final int size;
+        private int index = -1;
+        private SearchRow searchRow;
+        private Row row;
+
+        private Row[] rows;
+        private int batchStart;
+        private int batchSize;
+
+        StiCursor(ServerSession session, long[] keys, int size) {
+            this.session = session;
+            this.keys = keys;
+            this.size = size;
+        }
+
+        @Override
+        public Row get() {
+            return get(null);
+        }
+
+        @Override
+        public Row get(int[] columnIndexes) {
+            if (row == null && searchRow != null) {
+                if (rows == null || index >= batchStart + batchSize) {
+                    fetchBatch(columnIndexes);
+                }
+                row = rows[index - batchStart];
+            }
+            return row;
+        }
+
+        // 批次大小逐步翻倍，只读少量记录(比如有limit)时不会多回表
+        private void fetchBatch(int[] columnIndexes) {
+            int n = rows == null ? MIN_BATCH_SIZE : Math.min(rows.length * 2, MAX_BATCH_SIZE);
+            if (rows == null || rows.length < n) {
+                rows = new Row[n];
+            }
+            batchStart = index;
+            batchSize = Math.min(n, size - index);
+            long[] batchKeys = Arrays.copyOfRange(keys, batchStart, batchStart + batchSize);
+            table.getRows(session, batchKeys, batchSize, columnIndexes, rows);
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return searchRow;
+        }
+
+        @Override
+        public boolean next() {
+            row = null;
+            if (++index >= size) {
+                searchRow = null;
+                return false;
+            }
+            searchRow = table.getTemplateSearchRow();
+            searchRow.setKey(keys[index]);
+            return true;
+        }
+    }
+}
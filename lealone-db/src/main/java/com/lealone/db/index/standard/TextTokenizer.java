@@ -0,0 +1,97 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.db.index.standard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.lealone.common.exceptions.DbException;
+
+// 全文索引的分词器，返回每个token和它在文本中出现的次数。
+// 字符逐个转成小写后再切分，子串转换后还是原文本转换后的子串，
+// 所以文本包含某个子串时一定包含这个子串的所有token，用索引找到的记录是LIKE结果的超集。
+abstract class TextTokenizer {
+
+    public static final String NGRAM = "NGRAM";
+    public static final String FULLTEXT = "FULLTEXT";
+
+    public static TextTokenizer get(String name) {
+        if (NGRAM.equals(name))
+            return new NgramTokenizer();
+        else if (FULLTEXT.equals(name))
+            return new WordTokenizer();
+        else
+            throw DbException.getUnsupportedException("tokenizer " + name);
+    }
+
+    public abstract Map<String, Integer> tokenize(String text);
+
+    // 能否用来查找LIKE '%abc%'，按单词切分时'abc'可能只是某个单词的一部分，所以不能用
+    public abstract boolean supportsLike();
+
+    protected static void addToken(Map<String, Integer> tokens, String token) {
+        Integer count = tokens.get(token);
+        tokens.put(token, count == null ? 1 : count + 1);
+    }
+
+    // 先转大写再转小写，忽略大小写比较时相等的两个字符转换后也相等
+    protected static char normalize(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    // 把文本切成相邻的3个字符(trigram)，少于3个字符的文本没有token
+    private static class NgramTokenizer extends TextTokenizer {
+
+        private static final int GRAM_LENGTH = 3;
+
+        @Override
+        public Map<String, Integer> tokenize(String text) {
+            HashMap<String, Integer> tokens = new HashMap<>();
+            int len = text.length();
+            if (len < GRAM_LENGTH) {
+                return tokens;
+            }
+            char[] chars = new char[len];
+            for (int i = 0; i < len; i++) {
+                chars[i] = normalize(text.charAt(i));
+            }
+            for (int i = 0; i <= len - GRAM_LENGTH; i++) {
+                addToken(tokens, new String(chars, i, GRAM_LENGTH));
+            }
+            return tokens;
+        }
+
+        @Override
+        public boolean supportsLike() {
+            return true;
+        }
+    }
+
+    // 按字母和数字之外的字符切分单词
+    private static class WordTokenizer extends TextTokenizer {
+
+        @Override
+        public Map<String, Integer> tokenize(String text) {
+            HashMap<String, Integer> tokens = new HashMap<>();
+            StringBuilder buff = new StringBuilder();
+            for (int i = 0, len = text.length(); i <= len; i++) {
+                char c = i < len ? text.charAt(i) : ' ';
+                if (Character.isLetterOrDigit(c)) {
+                    buff.append(normalize(c));
+                } else if (buff.length() > 0) {
+                    addToken(tokens, buff.toString());
+                    buff.setLength(0);
+                }
+            }
+            return tokens;
+        }
+
+        @Override
+        public boolean supportsLike() {
+            return false;
+        }
+    }
+}
@@ -110,4 +110,9 @@ public class DelegatedResult implements Result {
     public int getFetchSize() {
         return result.getFetchSize();
     }
+
+    @Override
+    public void prepareNextRows(int count) {
+        result.prepareNextRows(count);
+    }
 }
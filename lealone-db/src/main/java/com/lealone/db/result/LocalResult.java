@@ -12,6 +12,7 @@ import java.util.List;
 
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.Utils;
+import com.lealone.db.Constants;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.util.ValueHashMap;
 import com.lealone.db.value.DataType;
@@ -314,6 +315,27 @@ public class LocalResult implements Result, ResultTarget {
         return rowCount;
     }
 
+    /**
+     * Estimate the memory used by the rows of this result.
+     *
+     * @return the memory in bytes, or -1 if the rows are not (only) kept in memory
+     */
+    public long getMemory() {
+        if (external != null || rows == null || rows.size() < rowCount) {
+            return -1;
+        }
+        long memory = 0;
+        for (int i = 0, size = rows.size(); i < size; i++) {
+            Value[] row = rows.get(i);
+            memory += Constants.MEMORY_OBJECT + row.length * Constants.MEMORY_POINTER;
+            for (Value v : row) {
+                if (v != null)
+                    memory += v.getMemory();
+            }
+        }
+        return memory;
+    }
+
     /**
      * Set the number of rows that this result will return at the maximum.
      *
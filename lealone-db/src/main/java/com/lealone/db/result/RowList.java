@@ -0,0 +1,101 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.db.result;
+
+import java.util.ArrayList;
+
+import com.lealone.db.Database;
+import com.lealone.db.index.standard.StandardDataType;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueArray;
+import com.lealone.db.value.ValueLong;
+import com.lealone.storage.Storage;
+import com.lealone.storage.StorageMap;
+
+// 单线程操作，可以按下标读写的记录列表
+// 记录数不超过maxMemoryRows时放在内存中，超过后跟ResultTempMap一样全部写到临时map中，key是记录的下标
+public class RowList {
+
+    private final ServerSession session;
+    private final int maxMemoryRows;
+    private final ArrayList<Value[]> rows = new ArrayList<>();
+    private StorageMap<Value, ValueArray> storageMap;
+    private int size;
+
+    public RowList(ServerSession session) {
+        this.session = session;
+        maxMemoryRows = session.getDatabase().getMaxMemoryRows();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(Value[] row) {
+        if (storageMap != null) {
+            storageMap.put(ValueLong.get(size), ValueArray.get(row));
+        } else {
+            rows.add(row);
+            if (rows.size() > maxMemoryRows) {
+                openMap(row.length);
+                for (int i = 0, n = rows.size(); i < n; i++) {
+                    storageMap.put(ValueLong.get(i), ValueArray.get(rows.get(i)));
+                }
+                rows.clear();
+            }
+        }
+        size++;
+    }
+
+    // 在临时map中时每次返回的是新的数组，修改记录要调用setValue
+    public Value[] get(int index) {
+        if (storageMap != null) {
+            return storageMap.get(ValueLong.get(index)).getList();
+        }
+        return rows.get(index);
+    }
+
+    public void setValue(int index, int columnIndex, Value v) {
+        if (storageMap != null) {
+            Value[] row = get(index);
+            row[columnIndex] = v;
+            storageMap.put(ValueLong.get(index), ValueArray.get(row));
+        } else {
+            rows.get(index)[columnIndex] = v;
+        }
+    }
+
+    // 临时map也删掉，下一批记录不多时还是放在内存中
+    public void clear() {
+        rows.clear();
+        size = 0;
+        if (storageMap != null) {
+            try {
+                storageMap.remove();
+            } finally {
+                storageMap = null;
+            }
+        }
+    }
+
+    private void openMap(int columnCount) {
+        Database db = session.getDatabase();
+        int[] sortTypes = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            sortTypes[i] = SortOrder.ASCENDING;
+        }
+        StandardDataType keyType = new StandardDataType(db, db.getCompareMode(),
+                new int[] { SortOrder.ASCENDING });
+        StandardDataType valueType = new StandardDataType(db, db.getCompareMode(), sortTypes);
+        Storage storage = db.getStorage(db.getDefaultStorageEngineName());
+        storageMap = storage.openMap(storage.nextTemporaryMapName(), keyType, valueType, null);
+    }
+}
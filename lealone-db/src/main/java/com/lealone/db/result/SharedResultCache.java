@@ -0,0 +1,154 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.db.result;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.lealone.db.Database;
+import com.lealone.db.auth.User;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.value.Value;
+
+// 数据库级别的查询结果缓存，多个session之间共享只读取普通表的确定性查询的结果。
+// 每个结果记下查询用到的那些表的最大修改id，只有这些表被修改后结果才失效，其他表的写操作不影响它。
+public class SharedResultCache {
+
+    private final Database database;
+    // 按访问顺序排列，超出内存预算时淘汰最近最少使用的结果
+    private final LinkedHashMap<Key, Entry> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long memory;
+    private long modificationMetaId = -1;
+
+    public SharedResultCache(Database database) {
+        this.database = database;
+    }
+
+    private long getMaxMemory() {
+        return database.getSettings().sharedResultCacheSize * 1024L;
+    }
+
+    public synchronized LocalResult get(ServerSession session, String sql, Value[] params, int limit,
+            long modificationId) {
+        if (results.isEmpty() || !checkModificationMetaId())
+            return null;
+        Key key = new Key(session, sql, params, limit);
+        Entry e = results.get(key);
+        if (e == null)
+            return null;
+        if (e.modificationId != modificationId) {
+            results.remove(key);
+            memory -= e.memory;
+            return null;
+        }
+        return e.result.createShallowCopy(session);
+    }
+
+    public synchronized void put(ServerSession session, String sql, Value[] params, int limit,
+            long modificationId, LocalResult result) {
+        long maxMemory = getMaxMemory();
+        if (maxMemory <= 0) {
+            clear();
+            return;
+        }
+        checkModificationMetaId();
+        // 太大的结果或者放在磁盘上的结果都不缓存
+        long m = result.getMemory();
+        if (m < 0 || m > maxMemory / 4)
+            return;
+        Entry e = new Entry(result.createShallowCopy(session), modificationId, m);
+        if (e.result == null)
+            return;
+        Entry old = results.put(new Key(session, sql, params, limit), e);
+        if (old != null)
+            memory -= old.memory;
+        memory += m;
+        Iterator<Entry> iterator = results.values().iterator();
+        while (memory > maxMemory && iterator.hasNext()) {
+            memory -= iterator.next().memory;
+            iterator.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        results.clear();
+        memory = 0;
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    // 执行DDL后表的结构可能变了，所有缓存的结果都失效
+    private boolean checkModificationMetaId() {
+        long id = database.getModificationMetaId();
+        if (id != modificationMetaId) {
+            clear();
+            modificationMetaId = id;
+            return false;
+        }
+        return true;
+    }
+
+    private static class Entry {
+
+        final LocalResult result;
+        final long modificationId;
+        final long memory;
+
+        Entry(LocalResult result, long modificationId, long memory) {
+            this.result = result;
+            this.modificationId = modificationId;
+            this.memory = memory;
+        }
+    }
+
+    // 同样的sql、用户、schema和搜索路径解析出来的执行计划是一样的，再加上参数和limit就能确定结果
+    private static class Key {
+
+        private final User user;
+        private final String schemaName;
+        private final String[] schemaSearchPath;
+        private final String sql;
+        private final Value[] params;
+        private final int limit;
+        private final int hashCode;
+
+        Key(ServerSession session, String sql, Value[] params, int limit) {
+            user = session.getUser();
+            schemaName = session.getCurrentSchemaName();
+            schemaSearchPath = session.getSchemaSearchPath();
+            this.sql = sql;
+            this.params = params;
+            this.limit = limit;
+            int h = sql.hashCode();
+            h = 31 * h + Arrays.hashCode(params);
+            h = 31 * h + schemaName.hashCode();
+            h = 31 * h + Arrays.hashCode(schemaSearchPath);
+            h = 31 * h + user.hashCode();
+            hashCode = 31 * h + limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && user == other.user && limit == other.limit
+                    && sql.equals(other.sql) && Arrays.equals(params, other.params)
+                    && schemaName.equals(other.schemaName)
+                    && Arrays.equals(schemaSearchPath, other.schemaSearchPath);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
@@ -47,7 +48,7 @@ import com.lealone.db.scheduler.Scheduler;
 import com.lealone.db.scheduler.SchedulerThread;
 import com.lealone.db.schema.Schema;
 import com.lealone.db.table.Table;
-import com.lealone.db.util.ExpiringMap;
+import com.lealone.db.util.ExpiringIntMap;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueLob;
 import com.lealone.db.value.ValueNull;
@@ -112,6 +113,7 @@ public class ServerSession extends SessionBase implements InternalSession {
     private final long sessionStart = System.currentTimeMillis();
     private long transactionStart;
     private long currentCommandStart;
+    private long currentCommandId; // 每开始执行一条新的顶层语句就加1
     private HashMap<String, Value> variables;
     private HashSet<Result> temporaryResults;
     private int queryTimeout;
@@ -122,6 +124,8 @@ public class ServerSession extends SessionBase implements InternalSession {
     private SmallLRUCache<String, PreparedSQLStatement> queryCache;
     private long modificationMetaID = -1;
 
+    private HashSet<Table> modifiedTables; // 当前事务修改过的表
+    private Table lastModifiedTable;
     private boolean containsDDL;
     private boolean containsDatabaseStatement;
 
@@ -158,6 +162,8 @@ public class ServerSession extends SessionBase implements InternalSession {
         this.queryCacheSize = queryCacheSize;
         if (queryCacheSize <= 0) {
             clearQueryCache();
+        } else if (queryCache != null) {
+            queryCache.setMaxSize(queryCacheSize);
         }
     }
 
@@ -483,11 +489,20 @@ public class ServerSession extends SessionBase implements InternalSession {
                 }
             }
         }
-        SQLParser parser = createParser();
-        ps = parser.parse(sql).prepare();
+        ps = null;
+        if (queryCache != null) {
+            // 先看看其他session有没有用过同样的语句
+            ps = database.getSharedPlanCache().take(this, sql);
+            if (ps != null)
+                ps.reuse(this);
+        }
+        if (ps == null) {
+            SQLParser parser = createParser();
+            ps = parser.parse(sql).prepare();
+        }
         if (queryCache != null) {
             if (ps.isCacheable()) {
-                queryCache.put(sql, ps);
+                putQueryCache(sql, ps);
             }
         }
         if (fetchSize != -1)
@@ -495,11 +510,47 @@ public class ServerSession extends SessionBase implements InternalSession {
         return ps;
     }
 
+    private void putQueryCache(String sql, PreparedSQLStatement ps) {
+        // 被挤出去的语句放到数据库级别的共享缓存中，其他session还能接着用
+        if (!queryCache.containsKey(sql)) {
+            Iterator<Map.Entry<String, PreparedSQLStatement>> iterator = queryCache.entrySet()
+                    .iterator();
+            while (queryCache.size() >= queryCacheSize && iterator.hasNext()) {
+                Map.Entry<String, PreparedSQLStatement> e = iterator.next();
+                iterator.remove();
+                releaseStatement(e.getKey(), e.getValue());
+            }
+        }
+        queryCache.put(sql, ps);
+    }
+
+    private void releaseQueryCache() {
+        if (queryCache != null) {
+            for (Map.Entry<String, PreparedSQLStatement> e : queryCache.entrySet()) {
+                releaseStatement(e.getKey(), e.getValue());
+            }
+            queryCache = null;
+        }
+    }
+
+    private void releaseStatement(String sql, PreparedSQLStatement ps) {
+        // 还在执行或者被客户端的PreparedStatement引用的语句不能给其他session用
+        if (ps.canReuse() && database.getSettings().sharedPlanCacheSize > 0 && !isCached(ps)
+                && ps.isShareable()) {
+            database.getSharedPlanCache().offer(this, sql, ps);
+        }
+    }
+
+    private boolean isCached(ManualCloseable v) {
+        return cache != null && cache.containsValue(v);
+    }
+
     private short executingStatements;
 
     public void startCurrentCommand(PreparedSQLStatement statement) {
         if (executingStatements++ == 0) {
             currentCommand = statement;
+            currentCommandId++;
             if (queryTimeout > 0) {
                 long now = System.currentTimeMillis();
                 currentCommandStart = now;
@@ -611,7 +662,6 @@ public class ServerSession extends SessionBase implements InternalSession {
     private void beforeCommit() {
         addLobTask();
         checkCommitRollback();
-        checkDataModification();
         sessionStatus = SessionStatus.TRANSACTION_COMMITTING;
     }
 
@@ -621,13 +671,32 @@ public class ServerSession extends SessionBase implements InternalSession {
         }
     }
 
-    private void checkDataModification() {
-        // 手动提交时，如果更新了数据，让缓存失效，这样其他还没结束的事务就算开启了缓存也能读到新数据
-        if (!isAutoCommit() && transaction.getSavepointId() > 0)
-            database.getNextModificationDataId();
+    public void addModifiedTable(Table table) {
+        if (table != lastModifiedTable) {
+            if (modifiedTables == null)
+                modifiedTables = new HashSet<>();
+            modifiedTables.add(table);
+            lastModifiedTable = table;
+        }
+    }
+
+    public boolean containsModifiedTables() {
+        return modifiedTables != null;
+    }
+
+    private void updateModifiedTables() {
+        // 事务提交或回滚后，让修改过的表上缓存的查询结果失效，这样其他事务就算开启了缓存也能读到新数据
+        if (modifiedTables != null) {
+            for (Table table : modifiedTables) {
+                table.updateMaxDataModificationId();
+            }
+            modifiedTables = null;
+            lastModifiedTable = null;
+        }
     }
 
     private void endTransaction() {
+        updateModifiedTables();
         containsDDL = false;
         containsDatabaseStatement = false;
         wakeUpWaitingSchedulers();
@@ -803,6 +872,7 @@ public class ServerSession extends SessionBase implements InternalSession {
         if (!closed) {
             try {
                 database.checkPowerOff();
+                releaseQueryCache();
                 closeAllCache();
                 cleanTempTables(true);
                 database.removeSession(this);
@@ -972,6 +1042,11 @@ public class ServerSession extends SessionBase implements InternalSession {
         return currentCommandStart;
     }
 
+    // 语句执行期间有效的缓存可以用它判断是否还属于当前语句
+    public long getCurrentCommandId() {
+        return currentCommandId;
+    }
+
     public boolean getAllowLiterals() {
         return allowLiterals;
     }
@@ -981,12 +1056,14 @@ public class ServerSession extends SessionBase implements InternalSession {
     }
 
     public void setCurrentSchema(Schema schema) {
-        modificationId++;
-        this.currentSchemaName = schema.getName();
+        setCurrentSchemaName(schema.getName());
     }
 
     public void setCurrentSchemaName(String currentSchemaName) {
         modificationId++;
+        // 缓存的语句是按原来的schema解析的
+        if (!currentSchemaName.equals(this.currentSchemaName))
+            clearQueryCache();
         this.currentSchemaName = currentSchemaName;
     }
 
@@ -1136,6 +1213,7 @@ public class ServerSession extends SessionBase implements InternalSession {
 
     public void setSchemaSearchPath(String[] schemas) {
         modificationId++;
+        clearQueryCache();
         this.schemaSearchPath = schemas;
     }
 
@@ -1280,6 +1358,10 @@ public class ServerSession extends SessionBase implements InternalSession {
         return objectId++;
     }
 
+    public boolean hasTransaction() {
+        return transaction != null;
+    }
+
     @Override
     public Transaction getTransaction() {
         if (transaction != null)
@@ -1488,7 +1570,7 @@ public class ServerSession extends SessionBase implements InternalSession {
         throw DbException.getInternalError();
     }
 
-    private ExpiringMap<Integer, ManualCloseable> cache; // 缓存PreparedStatement和结果集
+    private ExpiringIntMap<ManualCloseable> cache; // 缓存PreparedStatement和结果集
     private SmallLRUCache<String, InputStream> lobCache; // 大多数情况下都不使用lob，所以延迟初始化
 
     private void closeAllCache() {
@@ -1508,19 +1590,19 @@ public class ServerSession extends SessionBase implements InternalSession {
         }
     }
 
-    public void setCache(ExpiringMap<Integer, ManualCloseable> cache) {
+    public void setCache(ExpiringIntMap<ManualCloseable> cache) {
         this.cache = cache;
     }
 
-    public void addCache(Integer k, ManualCloseable v) {
+    public void addCache(int k, ManualCloseable v) {
         cache.put(k, v);
     }
 
-    public ManualCloseable getCache(Integer k) {
+    public ManualCloseable getCache(int k) {
         return cache.get(k);
     }
 
-    public ManualCloseable removeCache(Integer k, boolean ifAvailable) {
+    public ManualCloseable removeCache(int k, boolean ifAvailable) {
         return cache.remove(k, ifAvailable);
     }
 
@@ -1622,6 +1704,18 @@ public class ServerSession extends SessionBase implements InternalSession {
         this.olapBatchSize = olapBatchSize;
     }
 
+    // 默认关闭，打开后没有排序、分组和去重的查询会边读边把记录返回给客户端，
+    // 服务器端只保留下一批要fetch的记录，此时结果集的总行数是未知的
+    private boolean streamingResult;
+
+    public boolean isStreamingResult() {
+        return streamingResult;
+    }
+
+    public void setStreamingResult(boolean streamingResult) {
+        this.streamingResult = streamingResult;
+    }
+
     public Map<String, String> getSettings() {
         Map<String, String> settings = new LinkedHashMap<>(SessionSetting.values().length);
         for (SessionSetting setting : SessionSetting.values()) {
@@ -1662,6 +1756,9 @@ public class ServerSession extends SessionBase implements InternalSession {
             case OLAP_BATCH_SIZE:
                 v = olapBatchSize;
                 break;
+            case STREAMING_RESULT:
+                v = streamingResult;
+                break;
             }
             settings.put(setting.name(), v == null ? "null" : v.toString());
         }
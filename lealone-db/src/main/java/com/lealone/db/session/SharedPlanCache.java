@@ -0,0 +1,133 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.db.session;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.lealone.db.Database;
+import com.lealone.db.auth.User;
+import com.lealone.sql.PreparedSQLStatement;
+
+// 数据库级别的语句缓存，多个session之间共享已经解析和优化好的语句。
+// 每个session的queryCache里的语句只给当前session用，被挤出queryCache或session关闭时，
+// 空闲的语句才放到这里，其他session取走后切换成自己的session再用，所以同一个语句不会被两个session同时执行。
+public class SharedPlanCache {
+
+    private final Database database;
+    // 按访问顺序排列，同样的sql可能有多个空闲的语句
+    private final LinkedHashMap<Key, ArrayDeque<PreparedSQLStatement>> statements = //
+            new LinkedHashMap<>(16, 0.75f, true);
+    private int size;
+    private long modificationMetaId = -1;
+
+    public SharedPlanCache(Database database) {
+        this.database = database;
+    }
+
+    public synchronized PreparedSQLStatement take(ServerSession session, String sql) {
+        if (size == 0 || !checkModificationMetaId())
+            return null;
+        Key key = new Key(session, sql);
+        ArrayDeque<PreparedSQLStatement> queue = statements.get(key);
+        if (queue == null)
+            return null;
+        PreparedSQLStatement ps = queue.poll();
+        if (queue.isEmpty())
+            statements.remove(key);
+        size--;
+        return ps;
+    }
+
+    public synchronized void offer(ServerSession session, String sql, PreparedSQLStatement ps) {
+        int maxSize = database.getSettings().sharedPlanCacheSize;
+        if (maxSize <= 0) {
+            clear();
+            return;
+        }
+        checkModificationMetaId();
+        // 语句在元数据变化前就已经编译好了，不能再用
+        if (ps.getModificationMetaId() != modificationMetaId)
+            return;
+        Key key = new Key(session, sql);
+        ArrayDeque<PreparedSQLStatement> queue = statements.get(key);
+        if (queue == null) {
+            queue = new ArrayDeque<>(1);
+            statements.put(key, queue);
+        }
+        queue.add(ps);
+        size++;
+        // 淘汰最近最少使用的语句
+        Iterator<Map.Entry<Key, ArrayDeque<PreparedSQLStatement>>> iterator = statements.entrySet()
+                .iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            ArrayDeque<PreparedSQLStatement> q = iterator.next().getValue();
+            size -= q.size();
+            iterator.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        statements.clear();
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // 执行DDL后所有缓存的语句都失效了
+    private boolean checkModificationMetaId() {
+        long id = database.getModificationMetaId();
+        if (id != modificationMetaId) {
+            clear();
+            modificationMetaId = id;
+            return false;
+        }
+        return true;
+    }
+
+    // 解析sql时会按当前用户检查权限，并且按当前schema和搜索路径查找表，所以它们都要一样
+    private static class Key {
+
+        private final User user;
+        private final String schemaName;
+        private final String[] schemaSearchPath;
+        private final String sql;
+        private final int hashCode;
+
+        Key(ServerSession session, String sql) {
+            user = session.getUser();
+            schemaName = session.getCurrentSchemaName();
+            schemaSearchPath = session.getSchemaSearchPath();
+            this.sql = sql;
+            int h = sql.hashCode();
+            h = 31 * h + schemaName.hashCode();
+            h = 31 * h + Arrays.hashCode(schemaSearchPath);
+            hashCode = 31 * h + user.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && user == other.user && sql.equals(other.sql)
+                    && schemaName.equals(other.schemaName)
+                    && Arrays.equals(schemaSearchPath, other.schemaSearchPath);
+        }
+    }
+}
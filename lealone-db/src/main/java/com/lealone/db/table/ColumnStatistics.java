@@ -0,0 +1,311 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.db.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.db.value.CompareMode;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueArray;
+import com.lealone.db.value.ValueDouble;
+import com.lealone.db.value.ValueLong;
+import com.lealone.db.value.ValueNull;
+
+// 字段的统计信息，由ANALYZE采样得到，优化器用它估算条件的选择率(满足条件的记录数占总记录数的比例)。
+// 包括null值的比例、不重复值的个数、出现次数最多的一些值(MCV)和它们的频率，
+// 以及除去null和MCV之后剩下的值的等深直方图(每个桶中的值的个数大致相同)，这样数据分布不均匀时也能估算得比较准。
+public class ColumnStatistics {
+
+    public static final int MAX_MCV_COUNT = 10;
+    public static final int MAX_BUCKET_COUNT = 20;
+
+    private final double nullFraction;
+    private final long distinctCount;
+    private final Value[] mcvValues; // 按值排序
+    private final double[] mcvFrequencies;
+    private final Value[] histogramBounds; // 按值排序，桶的个数是histogramBounds.length - 1
+    private final double histogramFraction; // 直方图中的值占总记录数的比例
+
+    public ColumnStatistics(double nullFraction, long distinctCount, Value[] mcvValues,
+            double[] mcvFrequencies, Value[] histogramBounds) {
+        this.nullFraction = nullFraction;
+        this.distinctCount = distinctCount;
+        this.mcvValues = mcvValues;
+        this.mcvFrequencies = mcvFrequencies;
+        this.histogramBounds = histogramBounds;
+        double f = 1 - nullFraction;
+        for (double mf : mcvFrequencies) {
+            f -= mf;
+        }
+        histogramFraction = f < 0 ? 0 : f;
+    }
+
+    public double getNullFraction() {
+        return nullFraction;
+    }
+
+    public long getDistinctCount() {
+        return distinctCount;
+    }
+
+    public Value[] getMcvValues() {
+        return mcvValues;
+    }
+
+    public double[] getMcvFrequencies() {
+        return mcvFrequencies;
+    }
+
+    public Value[] getHistogramBounds() {
+        return histogramBounds;
+    }
+
+    // 不知道具体的值时(比如参数和join条件)，按不重复值的个数平均分配
+    public double getAverageEqualSelectivity() {
+        return distinctCount <= 0 ? 1 - nullFraction : (1 - nullFraction) / distinctCount;
+    }
+
+    // 估算"字段 = v"的选择率，v是null时估算"字段 IS NULL"的选择率
+    public double getEqualSelectivity(Value v, CompareMode mode) {
+        if (v == ValueNull.INSTANCE) {
+            return nullFraction;
+        }
+        int i = binarySearch(mcvValues, v, mode);
+        if (i >= 0) {
+            return mcvFrequencies[i];
+        }
+        int len = histogramBounds.length;
+        if (len == 0 || v.compareTo(histogramBounds[0], mode) < 0
+                || v.compareTo(histogramBounds[len - 1], mode) > 0) {
+            return 0;
+        }
+        long d = distinctCount - mcvValues.length;
+        return histogramFraction / (d <= 0 ? 1 : d);
+    }
+
+    // 估算"low <(=) 字段 <(=) high"的选择率，low或high是null时表示没有下限或上限
+    public double getRangeSelectivity(Value low, boolean lowInclusive, Value high,
+            boolean highInclusive, CompareMode mode) {
+        double s = 0;
+        for (int i = 0; i < mcvValues.length; i++) {
+            Value v = mcvValues[i];
+            if (low != null) {
+                int c = v.compareTo(low, mode);
+                if (c < 0 || c == 0 && !lowInclusive)
+                    continue;
+            }
+            if (high != null) {
+                int c = v.compareTo(high, mode);
+                if (c > 0 || c == 0 && !highInclusive)
+                    continue;
+            }
+            s += mcvFrequencies[i];
+        }
+        if (histogramBounds.length > 0) {
+            double from = low == null ? 0 : getHistogramPosition(low, mode);
+            double to = high == null ? 1 : getHistogramPosition(high, mode);
+            if (to > from) {
+                s += histogramFraction * (to - from);
+            }
+        }
+        return s;
+    }
+
+    // 返回直方图中小于v的值所占的比例，落在某个桶中间时，数字类型按线性插值计算，其他类型按桶的一半计算
+    private double getHistogramPosition(Value v, CompareMode mode) {
+        Value[] bounds = histogramBounds;
+        int buckets = bounds.length - 1;
+        if (v.compareTo(bounds[0], mode) <= 0) {
+            return 0;
+        }
+        if (v.compareTo(bounds[buckets], mode) >= 0) {
+            return 1;
+        }
+        // 找到bounds[i] < v <= bounds[i + 1]
+        int low = 0, high = buckets - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (bounds[mid].compareTo(v, mode) < 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        double fraction = 0.5;
+        if (isNumeric(v) && isNumeric(bounds[low]) && isNumeric(bounds[low + 1])) {
+            double lo = bounds[low].getDouble();
+            double hi = bounds[low + 1].getDouble();
+            if (hi > lo) {
+                fraction = (v.getDouble() - lo) / (hi - lo);
+                fraction = fraction < 0 ? 0 : fraction > 1 ? 1 : fraction;
+            }
+        }
+        return (low + fraction) / buckets;
+    }
+
+    private static boolean isNumeric(Value v) {
+        switch (v.getType()) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DECIMAL:
+        case Value.DOUBLE:
+        case Value.FLOAT:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static int binarySearch(Value[] values, Value v, CompareMode mode) {
+        int low = 0, high = values.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = values[mid].compareTo(v, mode);
+            if (c < 0)
+                low = mid + 1;
+            else if (c > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    // 格式: (nullFraction, distinctCount, (MCV), (MCV的频率), (直方图的边界))
+    public String getSQL() {
+        Value[] frequencies = new Value[mcvFrequencies.length];
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = ValueDouble.get(mcvFrequencies[i]);
+        }
+        Value[] values = { ValueDouble.get(nullFraction), ValueLong.get(distinctCount),
+                ValueArray.get(mcvValues), ValueArray.get(frequencies),
+                ValueArray.get(histogramBounds) };
+        return ValueArray.get(values).getSQL();
+    }
+
+    /**
+     * Create the statistics from the value generated by {@link #getSQL()}.
+     *
+     * @param v the value
+     * @param column the column
+     * @return the statistics, or null if the value is not valid any more
+     */
+    public static ColumnStatistics get(Value v, Column column) {
+        try {
+            Value[] values = ((ValueArray) v.convertTo(Value.ARRAY)).getList();
+            Value[] mcvValues = convert(values[2], column);
+            Value[] frequencies = ((ValueArray) values[3].convertTo(Value.ARRAY)).getList();
+            double[] mcvFrequencies = new double[frequencies.length];
+            for (int i = 0; i < frequencies.length; i++) {
+                mcvFrequencies[i] = frequencies[i].getDouble();
+            }
+            return new ColumnStatistics(values[0].getDouble(), values[1].getLong(), mcvValues,
+                    mcvFrequencies, convert(values[4], column));
+        } catch (DbException | ClassCastException | ArrayIndexOutOfBoundsException e) {
+            // 字段类型变了或格式不对时丢弃统计信息，下次ANALYZE时会重新生成
+            return null;
+        }
+    }
+
+    private static Value[] convert(Value v, Column column) {
+        Value[] values = ((ValueArray) v.convertTo(Value.ARRAY)).getList();
+        Value[] converted = new Value[values.length];
+        for (int i = 0; i < values.length; i++) {
+            converted[i] = column.convert(values[i]);
+        }
+        return converted;
+    }
+
+    /**
+     * Create the statistics from the sample values of a column.
+     *
+     * @param sample the sample values, including NULL values
+     * @param distinctCount the estimated number of distinct values of the whole column
+     * @param mode the compare mode
+     * @return the statistics, or null if the sample is empty
+     */
+    public static ColumnStatistics create(ArrayList<Value> sample, long distinctCount,
+            CompareMode mode) {
+        int rows = sample.size();
+        if (rows == 0) {
+            return null;
+        }
+        ArrayList<Value> list = new ArrayList<>(rows);
+        for (Value v : sample) {
+            if (v != ValueNull.INSTANCE) {
+                list.add(v);
+            }
+        }
+        double nullFraction = (double) (rows - list.size()) / rows;
+        Comparator<Value> comparator = (v1, v2) -> v1.compareTo(v2, mode);
+        Value[] values = list.toArray(new Value[list.size()]);
+        Arrays.sort(values, comparator);
+
+        // 排序后相同的值是相邻的，记下每个不同值第一次出现的位置
+        int[] starts = new int[values.length + 1];
+        int sampleDistinct = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i].compareTo(values[i - 1], mode) != 0) {
+                starts[sampleDistinct++] = i;
+            }
+        }
+        starts[sampleDistinct] = values.length;
+        if (distinctCount < sampleDistinct) {
+            distinctCount = sampleDistinct;
+        }
+
+        // 出现次数明显比平均次数多的值才作为MCV
+        Integer[] candidates = new Integer[sampleDistinct];
+        int candidateCount = 0;
+        double threshold = sampleDistinct == 0 ? 0 : 1.25 * values.length / sampleDistinct;
+        for (int i = 0; i < sampleDistinct; i++) {
+            int count = starts[i + 1] - starts[i];
+            if (count > 1 && count > threshold) {
+                candidates[candidateCount++] = i;
+            }
+        }
+        Arrays.sort(candidates, 0, candidateCount,
+                (i1, i2) -> (starts[i2 + 1] - starts[i2]) - (starts[i1 + 1] - starts[i1]));
+        int mcvCount = Math.min(candidateCount, MAX_MCV_COUNT);
+        boolean[] isMcv = new boolean[sampleDistinct];
+        for (int i = 0; i < mcvCount; i++) {
+            isMcv[candidates[i]] = true;
+        }
+        Value[] mcvValues = new Value[mcvCount];
+        double[] mcvFrequencies = new double[mcvCount];
+        ArrayList<Value> rest = new ArrayList<>(values.length);
+        for (int i = 0, j = 0; i < sampleDistinct; i++) {
+            if (isMcv[i]) {
+                mcvValues[j] = values[starts[i]];
+                mcvFrequencies[j] = (double) (starts[i + 1] - starts[i]) / rows;
+                j++;
+            } else {
+                for (int k = starts[i]; k < starts[i + 1]; k++) {
+                    rest.add(values[k]);
+                }
+            }
+        }
+
+        // 剩下的值已经排好序了，按相同的个数切分成多个桶，只记录桶的边界
+        Value[] bounds;
+        int m = rest.size();
+        if (m == 0) {
+            bounds = new Value[0];
+        } else {
+            int buckets = Math.min(MAX_BUCKET_COUNT, Math.max(m - 1, 1));
+            bounds = new Value[buckets + 1];
+            for (int i = 0; i <= buckets; i++) {
+                bounds[i] = rest.get((int) ((long) i * (m - 1) / buckets));
+            }
+        }
+        return new ColumnStatistics(nullFraction, distinctCount, mcvValues, mcvFrequencies, bounds);
+    }
+}
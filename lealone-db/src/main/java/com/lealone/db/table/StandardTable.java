@@ -33,11 +33,10 @@ import com.lealone.db.index.IndexOperator;
 import com.lealone.db.index.IndexOperator.IndexOperation;
 import com.lealone.db.index.IndexRebuilder;
 import com.lealone.db.index.IndexType;
-import com.lealone.db.index.hash.NonUniqueHashIndex;
-import com.lealone.db.index.hash.UniqueHashIndex;
 import com.lealone.db.index.standard.StandardDelegateIndex;
 import com.lealone.db.index.standard.StandardPrimaryIndex;
 import com.lealone.db.index.standard.StandardSecondaryIndex;
+import com.lealone.db.index.standard.StandardTextIndex;
 import com.lealone.db.lock.DbObjectLock;
 import com.lealone.db.result.SortOrder;
 import com.lealone.db.row.Row;
@@ -47,6 +46,7 @@ import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Column.EnumColumn;
 import com.lealone.db.value.DataType;
 import com.lealone.db.value.Value;
+import com.lealone.sql.IExpression;
 import com.lealone.storage.StorageEngine;
 import com.lealone.storage.StorageMap;
 import com.lealone.storage.StorageSetting;
@@ -251,6 +251,11 @@ public class StandardTable extends Table {
         return primaryIndex.getRow(session, key, columnIndexes);
     }
 
+    public void getRows(ServerSession session, long[] keys, int size, int[] columnIndexes,
+            Row[] rows) {
+        primaryIndex.getRows(session, keys, size, columnIndexes, rows);
+    }
+
     @Override
     public Row getRow(Row oldRow) {
         return primaryIndex.getRow(oldRow, oldRow.getKey());
@@ -258,6 +263,7 @@ public class StandardTable extends Table {
 
     @Override
     public Index addIndex(ServerSession session, String indexName, int indexId, IndexColumn[] cols,
+            IndexColumn[] includeColumns, IExpression predicate, IExpression.Evaluator evaluator,
             IndexType indexType, boolean create, String indexComment, DbObjectLock lock) {
         if (indexType.isPrimaryKey()) {
             for (IndexColumn c : cols) {
@@ -282,14 +288,23 @@ public class StandardTable extends Table {
             }
             if (mainIndexColumn != -1) {
                 index = createDelegateIndex(indexId, indexName, indexType, mainIndexColumn);
-            } else if (indexType.isHash() && cols.length <= 1) {
-                if (indexType.isUnique()) {
-                    index = new UniqueHashIndex(this, indexId, indexName, indexType, cols);
-                } else {
-                    index = new NonUniqueHashIndex(this, indexId, indexName, indexType, cols);
-                }
             } else {
-                index = new StandardSecondaryIndex(session, this, indexId, indexName, indexType, cols);
+                for (IndexColumn c : cols) {
+                    if (c.expression != null) {
+                        addExpressionColumn(c);
+                    }
+                }
+                try {
+                    if (indexType.isText())
+                        index = new StandardTextIndex(session, this, indexId, indexName, indexType,
+                                cols, predicate, evaluator);
+                    else
+                        index = new StandardSecondaryIndex(session, this, indexId, indexName,
+                                indexType, cols, includeColumns, predicate, evaluator);
+                } catch (Throwable t) {
+                    removeExpressionColumns(cols);
+                    throw t;
+                }
             }
         }
         index.setTemporary(isTemporary());
@@ -394,7 +409,7 @@ public class StandardTable extends Table {
     @Override
     public void addRow(ServerSession session, Row row, AsyncResultHandler<Integer> handler) {
         row.setVersion(getVersion());
-        lastModificationId = database.getNextModificationDataId();
+        setLastModificationId(session);
         if (containsLargeObject()) {
             AsyncResultHandler<Integer> topHandler = handler;
             // 增加row全部成功后再连接大对象
@@ -459,7 +474,7 @@ public class StandardTable extends Table {
     public void updateRow(ServerSession session, Row oldRow, Row newRow, int[] updateColumns,
             boolean isLockedBySelf, AsyncResultHandler<Integer> handler) {
         newRow.setVersion(getVersion());
-        lastModificationId = database.getNextModificationDataId();
+        setLastModificationId(session);
         ArrayList<Index> oldIndexes = indexesSync;
         int size = oldIndexes.size();
         AtomicInteger count = new AtomicInteger(size);
@@ -493,7 +508,7 @@ public class StandardTable extends Table {
     @Override
     public void removeRow(ServerSession session, Row row, boolean isLockedBySelf,
             AsyncResultHandler<Integer> handler) {
-        lastModificationId = database.getNextModificationDataId();
+        setLastModificationId(session);
         ArrayList<Index> oldIndexes = indexesSync;
         int size = oldIndexes.size();
         AtomicInteger count = new AtomicInteger(size);
@@ -530,7 +545,7 @@ public class StandardTable extends Table {
 
     @Override
     public void truncate(ServerSession session) {
-        lastModificationId = database.getNextModificationDataId();
+        setLastModificationId(session);
         ArrayList<Index> oldIndexes = indexes;
         for (int i = oldIndexes.size() - 1; i >= 0; i--) {
             Index index = oldIndexes.get(i);
@@ -595,6 +610,17 @@ public class StandardTable extends Table {
         return lastModificationId;
     }
 
+    @Override
+    public void updateMaxDataModificationId() {
+        lastModificationId = database.getNextModificationDataId();
+    }
+
+    // 事务结束时还要再改一次，因为事务提交前其他事务读不到新数据，在这期间缓存的查询结果也要失效
+    private void setLastModificationId(ServerSession session) {
+        lastModificationId = database.getNextModificationDataId();
+        session.addModifiedTable(this);
+    }
+
     @Override
     public boolean containsLargeObject() {
         return largeObjectColumns != null;
@@ -6,6 +6,7 @@
 package com.lealone.db.table;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -24,6 +25,7 @@ import com.lealone.db.auth.Right;
 import com.lealone.db.constraint.Constraint;
 import com.lealone.db.constraint.ConstraintReferential;
 import com.lealone.db.index.Index;
+import com.lealone.db.index.IndexBase;
 import com.lealone.db.index.IndexColumn;
 import com.lealone.db.index.IndexType;
 import com.lealone.db.lock.DbObjectLock;
@@ -88,6 +90,10 @@ public abstract class Table extends SchemaObjectBase {
     private boolean onCommitTruncate;
     private Row nullRow;
 
+    // 表达式索引中的每个表达式对应一个虚拟字段，字段id排在表的普通字段之后，
+    // 查询条件中出现相同的表达式时就能跟普通字段一样生成IndexCondition
+    private volatile IndexColumn[] expressionColumns = new IndexColumn[0];
+
     private int version;
     private String packageName;
     private String codePath;
@@ -177,6 +183,48 @@ public abstract class Table extends SchemaObjectBase {
      */
     public Index addIndex(ServerSession session, String indexName, int indexId, IndexColumn[] cols,
             IndexType indexType, boolean create, String indexComment, DbObjectLock lock) {
+        return addIndex(session, indexName, indexId, cols, null, indexType, create, indexComment, lock);
+    }
+
+    /**
+     * Create an index for this table that also stores the given non-key columns
+     *
+     * @param session the session
+     * @param indexName the name of the index
+     * @param indexId the id
+     * @param cols the index columns
+     * @param includeColumns the columns stored in the index but not used as key, or null
+     * @param indexType the index type
+     * @param create whether this is a new index
+     * @param indexComment the comment
+     * @return the index
+     */
+    public Index addIndex(ServerSession session, String indexName, int indexId, IndexColumn[] cols,
+            IndexColumn[] includeColumns, IndexType indexType, boolean create, String indexComment,
+            DbObjectLock lock) {
+        return addIndex(session, indexName, indexId, cols, includeColumns, null, null, indexType,
+                create, indexComment, lock);
+    }
+
+    /**
+     * Create an index that may contain expressions and may only index the rows
+     * that match the given condition.
+     *
+     * @param session the session
+     * @param indexName the name of the index
+     * @param indexId the id
+     * @param cols the index columns, the expressions are added as virtual columns
+     * @param includeColumns the columns stored in the index but not used as key, or null
+     * @param predicate the condition of a partial index, or null
+     * @param evaluator the evaluator of the expressions and the condition
+     * @param indexType the index type
+     * @param create whether this is a new index
+     * @param indexComment the comment
+     * @return the index
+     */
+    public Index addIndex(ServerSession session, String indexName, int indexId, IndexColumn[] cols,
+            IndexColumn[] includeColumns, IExpression predicate, IExpression.Evaluator evaluator,
+            IndexType indexType, boolean create, String indexComment, DbObjectLock lock) {
         throw newUnsupportedException();
     }
 
@@ -300,6 +348,14 @@ public abstract class Table extends SchemaObjectBase {
      */
     public abstract long getMaxDataModificationId();
 
+    /**
+     * Change the data modification id after a transaction that modified this
+     * table has ended, so that query results cached before are not used any
+     * longer.
+     */
+    public void updateMaxDataModificationId() {
+    }
+
     /**
      * Check if the table is deterministic.
      *
@@ -430,6 +486,59 @@ public abstract class Table extends SchemaObjectBase {
             columnMap.put(columnName, col);
             col.setTable(this, i);
         }
+        if (expressionColumns != null && expressionColumns.length > 0) {
+            updateExpressionColumnIds();
+        }
+    }
+
+    public IndexColumn[] getExpressionColumns() {
+        return expressionColumns;
+    }
+
+    public synchronized void addExpressionColumn(IndexColumn indexColumn) {
+        IndexColumn[] old = expressionColumns;
+        IndexColumn[] newArray = Arrays.copyOf(old, old.length + 1);
+        newArray[old.length] = indexColumn;
+        indexColumn.column.setTable(this, columns.length + old.length);
+        expressionColumns = newArray;
+    }
+
+    public synchronized void removeExpressionColumns(IndexColumn[] indexColumns) {
+        ArrayList<IndexColumn> list = new ArrayList<>(Arrays.asList(expressionColumns));
+        if (list.removeAll(Arrays.asList(indexColumns))) {
+            expressionColumns = list.toArray(new IndexColumn[0]);
+            updateExpressionColumnIds();
+        }
+    }
+
+    private void updateExpressionColumnIds() {
+        IndexColumn[] array = expressionColumns;
+        for (int i = 0; i < array.length; i++) {
+            array[i].column.setTable(this, columns.length + i);
+        }
+        ArrayList<Index> indexes = getIndexes();
+        if (indexes != null) {
+            for (Index index : indexes) {
+                if (index instanceof IndexBase) {
+                    ((IndexBase) index).updateColumnIds();
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the virtual column of an expression index.
+     *
+     * @param expressionSQL the SQL of the expression without table alias
+     * @return the column, or null if no expression index contains the expression
+     */
+    public Column findExpressionColumn(String expressionSQL) {
+        for (IndexColumn c : expressionColumns) {
+            if (c.expression.getSQL().equals(expressionSQL)) {
+                return c.column;
+            }
+        }
+        return null;
     }
 
     public void setNewColumns(Column[] columns) {
@@ -543,6 +652,9 @@ public abstract class Table extends SchemaObjectBase {
                     continue;
                 }
                 if (index.getColumnIndex(col) < 0) {
+                    if (isReferencedColumn(index, col)) {
+                        throw DbException.get(ErrorCode.COLUMN_IS_REFERENCED_1, index.getSQL());
+                    }
                     continue;
                 }
                 if (index.getColumns().length == 1) {
@@ -567,6 +679,11 @@ public abstract class Table extends SchemaObjectBase {
         return new Row(new Value[columns.length]);
     }
 
+    // 查找索引时用的SearchRow，要包含表达式索引的虚拟字段
+    public Row getTemplateSearchRow() {
+        return new Row(new Value[columns.length + expressionColumns.length]);
+    }
+
     public synchronized Row getNullRow() {
         if (nullRow == null) {
             nullRow = new Row(new Value[columns.length]);
@@ -705,6 +822,9 @@ public abstract class Table extends SchemaObjectBase {
                 }
             }
         }
+        if (expressionColumns.length > 0 && index.getIndexColumns() != null) {
+            removeExpressionColumns(index.getIndexColumns());
+        }
     }
 
     /**
@@ -823,6 +943,15 @@ public abstract class Table extends SchemaObjectBase {
         }
     }
 
+    /**
+     * Check whether this table has any trigger.
+     *
+     * @return true if it has
+     */
+    public boolean hasTrigger() {
+        return triggers != null && !triggers.isEmpty();
+    }
+
     /**
      * Check whether this table has a select trigger.
      *
@@ -940,6 +1069,30 @@ public abstract class Table extends SchemaObjectBase {
         return checkForeignKeyConstraints;
     }
 
+    // 字段出现在include字段、索引表达式或部分索引的条件中
+    private static boolean isReferencedColumn(Index index, Column col) {
+        IndexColumn[] includeColumns = index.getIncludeColumns();
+        if (includeColumns != null) {
+            for (IndexColumn c : includeColumns) {
+                if (c.column.equals(col)) {
+                    return true;
+                }
+            }
+        }
+        HashSet<Column> columns = new HashSet<>();
+        if (index.getIndexColumns() != null) {
+            for (IndexColumn c : index.getIndexColumns()) {
+                if (c.expression != null) {
+                    c.expression.getColumns(columns);
+                }
+            }
+        }
+        if (index.getPredicate() != null) {
+            index.getPredicate().getColumns(columns);
+        }
+        return columns.contains(col);
+    }
+
     /**
      * Get the index that has the given column as the first element.
      * This method returns null if no matching index is found.
@@ -5,12 +5,18 @@
  */
 package com.lealone.db.table;
 
+import java.util.ArrayList;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.lealone.common.util.StatementBuilder;
+import com.lealone.db.Constants;
 import com.lealone.db.auth.Right;
+import com.lealone.db.index.Index;
+import com.lealone.db.index.IndexBase;
 import com.lealone.db.result.Result;
 import com.lealone.db.session.ServerSession;
+import com.lealone.db.value.CompareMode;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueNull;
 import com.lealone.sql.PreparedSQLStatement;
@@ -92,25 +98,48 @@ public class TableAnalyzer {
         if (columns.length == 0) {
             return;
         }
-        StatementBuilder buff = new StatementBuilder("SELECT ");
+        // 用APPROX_COUNT_DISTINCT估算不重复值的个数，内存占用是固定的，
+        // 不再像SELECTIVITY那样超过一定数量后只能粗略累加
+        StatementBuilder buff = new StatementBuilder("SELECT COUNT(*)");
+        StatementBuilder sampleBuff = new StatementBuilder("SELECT ");
         for (Column col : columns) {
-            buff.appendExceptFirst(", ");
+            buff.append(", ");
+            sampleBuff.appendExceptFirst(", ");
             int type = col.getType();
             if (type == Value.BLOB || type == Value.CLOB) {
                 // can not index LOB columns, so calculating
                 // the selectivity is not required
-                buff.append("MAX(NULL)");
+                buff.append("MAX(NULL), MAX(NULL)");
+                sampleBuff.append("NULL");
             } else {
-                buff.append("SELECTIVITY(").append(col.getSQL()).append(')');
+                // APPROX_COUNT_DISTINCT不算NULL，跟以前的SELECTIVITY一样，有NULL时把NULL也算成一个值，
+                // 所以还要用COUNT(col)看看有没有NULL
+                buff.append("APPROX_COUNT_DISTINCT(").append(col.getSQL()).append("), COUNT(")
+                        .append(col.getSQL()).append(')');
+                sampleBuff.append(col.getSQL());
             }
         }
+        // 多字段索引还要统计字段组合的不重复值个数，字段之间有相关性时不能简单地把选择率相乘
+        ArrayList<IndexBase> indexes = getMultiColumnIndexes(table);
+        for (IndexBase index : indexes) {
+            buff.append(", APPROX_COUNT_DISTINCT((");
+            int i = 0;
+            for (Column col : index.getColumns()) {
+                buff.append(i++ == 0 ? "" : ", ").append(col.getSQL());
+            }
+            buff.append("))");
+        }
         buff.append(" FROM ").append(table.getSQL());
+        sampleBuff.append(" FROM ").append(table.getSQL());
         if (sample > 0) {
             buff.append(" LIMIT 1 SAMPLE_SIZE ").append(sample);
+            sampleBuff.append(" LIMIT ").append(sample);
         }
         String sql = buff.toString();
+        String sampleSql = sampleBuff.toString();
+        int sampleSize = sample > 0 ? sample : session.getDatabase().getSettings().analyzeSample;
         if (manual) {
-            analyzeTable(session, table, sql);
+            analyzeTable(session, table, sql, sampleSql, sampleSize, indexes);
         } else {
             // 如果是在执行insert/update/delete时触发，需要异步通过新任务的方式执行
             // 不能在同一个session中嵌套执行，这样会修改session的状态，导致各种并发问题
@@ -118,7 +147,7 @@ public class TableAnalyzer {
                 // 如果有多个线程要执行analyze，只需要其中一个执行即可
                 if (analyzing.compareAndSet(false, true)) {
                     try {
-                        analyzeTable(session, table, sql);
+                        analyzeTable(session, table, sql, sampleSql, sampleSize, indexes);
                     } finally {
                         analyzing.set(false);
                     }
@@ -127,20 +156,91 @@ public class TableAnalyzer {
         }
     }
 
-    private static void analyzeTable(ServerSession session, Table table, String sql) {
+    private static ArrayList<IndexBase> getMultiColumnIndexes(Table table) {
+        ArrayList<IndexBase> list = new ArrayList<>();
+        int columnCount = table.getColumns().length;
+        for (Index index : table.getIndexes()) {
+            Column[] columns = index.getColumns();
+            if (!(index instanceof IndexBase) || columns == null || columns.length < 2
+                    || index.getIndexType().isText()) {
+                continue;
+            }
+            boolean expression = false;
+            for (Column col : columns) {
+                // 表达式索引的虚拟字段不能直接查询
+                if (col.getColumnId() >= columnCount) {
+                    expression = true;
+                    break;
+                }
+            }
+            if (!expression) {
+                list.add((IndexBase) index);
+            }
+        }
+        return list;
+    }
+
+    private static void analyzeTable(ServerSession session, Table table, String sql,
+            String sampleSql, int sampleSize, ArrayList<IndexBase> indexes) {
         // 执行updateMeta时会修改modificationMetaID，所以queryCache不起作用
         PreparedSQLStatement command = session.prepareStatement(sql);
         Column[] columns = table.getColumns();
         Result result = command.query(0);
         result.next();
+        Value[] row = result.currentRow();
+        long count = row[0].getLong();
         for (int i = 0; i < columns.length; i++) {
-            Value v = result.currentRow()[i];
+            Value v = row[2 * i + 1];
             if (v != ValueNull.INSTANCE) {
-                int selectivity = v.getInt();
-                columns[i].setSelectivity(selectivity);
+                long distinctCount = v.getLong();
+                if (row[2 * i + 2].getLong() < count)
+                    distinctCount++;
+                columns[i].setSelectivity(getSelectivity(count, distinctCount));
+            }
+        }
+        for (int i = 0, size = indexes.size(); i < size; i++) {
+            indexes.get(i).setDistinctKeyCount(row[2 * columns.length + 1 + i].getLong());
+        }
+
+        // 采样的记录超过sampleSize时用蓄水池抽样，保证每条记录被选中的概率相同
+        ArrayList<Value[]> rows = new ArrayList<>();
+        Random random = new Random();
+        long seen = 0;
+        result = session.prepareStatement(sampleSql).query(0);
+        while (result.next()) {
+            Value[] r = result.currentRow();
+            if (rows.size() < sampleSize) {
+                rows.add(r);
+            } else {
+                long j = (long) (random.nextDouble() * (seen + 1));
+                if (j < sampleSize) {
+                    rows.set((int) j, r);
+                }
             }
+            seen++;
+        }
+        CompareMode mode = session.getDatabase().getCompareMode();
+        for (int i = 0; i < columns.length; i++) {
+            Value v = row[2 * i + 1];
+            if (v == ValueNull.INSTANCE) {
+                continue;
+            }
+            ArrayList<Value> values = new ArrayList<>(rows.size());
+            for (Value[] r : rows) {
+                values.add(r[i]);
+            }
+            columns[i].setStatistics(ColumnStatistics.create(values, v.getLong(), mode));
         }
         session.getDatabase().updateMeta(session, table);
         session.asyncCommit();
     }
+
+    // 返回(100 * distinctCount/rowCount)
+    private static int getSelectivity(long count, long distinctCount) {
+        if (count == 0) {
+            return Constants.SELECTIVITY_DEFAULT;
+        }
+        int s = (int) (100 * distinctCount / count);
+        return s <= 0 ? 1 : s > 100 ? 100 : s;
+    }
 }
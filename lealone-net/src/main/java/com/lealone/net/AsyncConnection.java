@@ -89,6 +89,19 @@ public abstract class AsyncConnection {
         return 0;
     }
 
+    // 以下三个值用于在连接池中挑选负载最轻的连接
+    public long getServerLoad() {
+        return 0;
+    }
+
+    public int getInFlightCount() {
+        return 0;
+    }
+
+    public long getAverageLatency() {
+        return 0;
+    }
+
     public boolean isServer() {
         return isServer;
     }
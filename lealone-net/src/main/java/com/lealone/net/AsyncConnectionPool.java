@@ -11,6 +11,7 @@ import java.util.Map;
 
 import com.lealone.common.util.MapUtils;
 import com.lealone.db.ConnectionSetting;
+import com.lealone.db.SysProperties;
 
 public class AsyncConnectionPool {
 
@@ -25,6 +26,7 @@ public class AsyncConnectionPool {
         }
     }
 
+    // 返回null时会新建一条连接，服务器端会把新连接分给另一个调度器
     public AsyncConnection getConnection(Map<String, String> config) {
         if (!isShared(config)) {
             // 专用连接如果空闲了也可以直接复用
@@ -35,22 +37,39 @@ public class AsyncConnectionPool {
             return null;
         }
         AsyncConnection best = null;
-        int min = Integer.MAX_VALUE;
+        long min = Long.MAX_VALUE;
+        int sharedCount = 0;
+        boolean allHot = true;
+        int hotLoad = SysProperties.CLIENT_POOL_HOT_LOAD;
         for (AsyncConnection c : list) {
             int maxSharedSize = c.getMaxSharedSize();
             if (maxSharedSize == 1)
                 continue;
+            sharedCount++;
             int size = c.getSharedSize();
             if (maxSharedSize > 0 && size >= maxSharedSize)
                 continue;
-            if (size < min) {
+            if (c.getServerLoad() < hotLoad)
+                allHot = false;
+            long score = getScore(c);
+            if (score < min) {
                 best = c;
-                min = size;
+                min = score;
             }
         }
+        // 所有可用连接对应的服务器端调度器都很忙时，再开一条连接分摊负载，已有的session不会迁移
+        if (best != null && allHot && sharedCount < getMaxPoolSize(config))
+            return null;
         return best;
     }
 
+    // 分数越小越空闲，服务器端调度器的负载、还没收到响应的请求数和共享的session数越多越忙，
+    // 再乘上平均响应时间，这样网络慢或服务器端处理慢的连接也会少分一些session
+    static long getScore(AsyncConnection c) {
+        long load = 1 + c.getSharedSize() + c.getInFlightCount() + c.getServerLoad();
+        return load * (1 + c.getAverageLatency());
+    }
+
     public void addConnection(AsyncConnection conn) {
         list.add(conn);
     }
@@ -86,6 +105,12 @@ public class AsyncConnectionPool {
             return 1; // 独享模式
     }
 
+    // 共享模式下因为服务器端调度器太忙而新开的连接最多有几条
+    public static int getMaxPoolSize(Map<String, String> config) {
+        return MapUtils.getInt(config, ConnectionSetting.MAX_POOL_SIZE.name(),
+                Runtime.getRuntime().availableProcessors());
+    }
+
     public static boolean isShared(Map<String, String> config) {
         // 为null时默认是共享模式
         return MapUtils.getBoolean(config, ConnectionSetting.IS_SHARED.name(), true);
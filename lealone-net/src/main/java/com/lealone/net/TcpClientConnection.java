@@ -32,6 +32,12 @@ public class TcpClientConnection extends TransferConnection {
 
     private Throwable pendingException;
 
+    // 连接对应的服务器端调度器的负载，每次在这条连接上创建session时由服务器返回，-1表示未知
+    private long serverLoad = -1;
+    // 响应时间的指数加权平均值(毫秒)的8倍，跟TCP估算RTT的方式一样，新值占1/8，
+    // 放大8倍是为了不丢掉小于8毫秒的变化
+    private long scaledLatency;
+
     public TcpClientConnection(WritableChannel writableChannel, NetClient netClient, int maxSharedSize,
             NetBuffer inBuffer, NetBuffer outBuffer) {
         super(writableChannel, false, inBuffer, outBuffer);
@@ -137,12 +143,19 @@ public class TcpClientConnection extends TransferConnection {
             }
             return;
         }
+        if (ac.getStartTime() > 0)
+            updateLatency(System.currentTimeMillis() - ac.getStartTime());
         if (e != null)
             ac.setAsyncResult(e);
         else
             ac.run(in);
     }
 
+    private void updateLatency(long latency) {
+        if (latency >= 0)
+            scaledLatency += latency - (scaledLatency >> 3);
+    }
+
     private void onRunModeChanged(TransferInputStream in) throws IOException {
         int sessionId = in.readInt();
         Session session = getSession(sessionId);
@@ -187,4 +200,24 @@ public class TcpClientConnection extends TransferConnection {
     public int getMaxSharedSize() {
         return maxSharedSize;
     }
+
+    public void setServerLoad(long serverLoad) {
+        if (serverLoad >= 0)
+            this.serverLoad = serverLoad;
+    }
+
+    @Override
+    public long getServerLoad() {
+        return serverLoad < 0 ? 0 : serverLoad;
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return callbackMap.size();
+    }
+
+    @Override
+    public long getAverageLatency() {
+        return scaledLatency >> 3;
+    }
 }
@@ -54,11 +54,14 @@ public class TransferOutputStream implements NetOutputStream {
 
     private final DataOutputStream out;
     private final GlobalNetBufferOutputStream outBuffer;
+    // 基本类型和字符串直接写到全局buffer中，不再经过DataOutputStream逐个字节写
+    private final DataBuffer dataBuffer;
     private Session session; // 每次写新的包时可以指定新的session
 
     public TransferOutputStream(WritableChannel writableChannel, NetBuffer buffer) {
         outBuffer = new GlobalNetBufferOutputStream(writableChannel, buffer);
         out = new DataOutputStream(outBuffer);
+        dataBuffer = buffer.getDataBuffer();
     }
 
     public DataOutputStream getDataOutputStream() {
@@ -114,7 +117,7 @@ public class TransferOutputStream implements NetOutputStream {
      */
     @Override
     public TransferOutputStream writeBoolean(boolean x) throws IOException {
-        out.writeByte((byte) (x ? 1 : 0));
+        dataBuffer.put((byte) (x ? 1 : 0));
         return this;
     }
 
@@ -125,7 +128,7 @@ public class TransferOutputStream implements NetOutputStream {
      * @return itself
      */
     private TransferOutputStream writeByte(byte x) throws IOException {
-        out.writeByte(x);
+        dataBuffer.put(x);
         return this;
     }
 
@@ -137,7 +140,7 @@ public class TransferOutputStream implements NetOutputStream {
      */
     @Override
     public TransferOutputStream writeInt(int x) throws IOException {
-        out.writeInt(x);
+        dataBuffer.putInt(x);
         return this;
     }
 
@@ -149,7 +152,7 @@ public class TransferOutputStream implements NetOutputStream {
      */
     @Override
     public TransferOutputStream writeLong(long x) throws IOException {
-        out.writeLong(x);
+        dataBuffer.putLong(x);
         return this;
     }
 
@@ -160,7 +163,7 @@ public class TransferOutputStream implements NetOutputStream {
      * @return itself
      */
     private TransferOutputStream writeDouble(double i) throws IOException {
-        out.writeDouble(i);
+        dataBuffer.putDouble(i);
         return this;
     }
 
@@ -171,7 +174,7 @@ public class TransferOutputStream implements NetOutputStream {
      * @return itself
      */
     private TransferOutputStream writeFloat(float i) throws IOException {
-        out.writeFloat(i);
+        dataBuffer.putFloat(i);
         return this;
     }
 
@@ -184,12 +187,18 @@ public class TransferOutputStream implements NetOutputStream {
     @Override
     public TransferOutputStream writeString(String s) throws IOException {
         if (s == null) {
-            out.writeInt(-1);
+            dataBuffer.putInt(-1);
         } else {
             int len = s.length();
-            out.writeInt(len);
-            for (int i = 0; i < len; i++) {
-                out.writeChar(s.charAt(i));
+            dataBuffer.putInt(len);
+            // 按块预留空间，块内的字符直接写入ByteBuffer，不用每个字符都检查一次容量
+            for (int i = 0; i < len;) {
+                int end = Math.min(len, i + STRING_CHUNK_SIZE);
+                dataBuffer.checkCapacity((end - i) * 2);
+                ByteBuffer buff = dataBuffer.getBuffer();
+                for (; i < end; i++) {
+                    buff.putChar(s.charAt(i));
+                }
             }
         }
         return this;
@@ -209,9 +218,9 @@ public class TransferOutputStream implements NetOutputStream {
             if (data.hasArray()) {
                 writeBytes(data.array(), data.arrayOffset(), data.limit());
             } else {
-                byte[] bytes = new byte[data.limit()];
-                data.get(bytes);
-                writeBytes(bytes);
+                // direct buffer直接复制到全局buffer，不需要中转的字节数组
+                writeInt(data.limit());
+                dataBuffer.put(data);
             }
         }
         return this;
@@ -229,7 +238,7 @@ public class TransferOutputStream implements NetOutputStream {
             writeInt(-1);
         } else {
             writeInt(data.length);
-            out.write(data);
+            dataBuffer.put(data);
         }
         return this;
     }
@@ -242,9 +251,10 @@ public class TransferOutputStream implements NetOutputStream {
      * @param len the length
      * @return itself
      */
+    @Override
     public TransferOutputStream writeBytes(byte[] buff, int off, int len) throws IOException {
         writeInt(len);
-        out.write(buff, off, len);
+        dataBuffer.put(buff, off, len);
         return this;
     }
 
@@ -336,6 +346,10 @@ public class TransferOutputStream implements NetOutputStream {
             }
             writeLong(length);
             if (type == Value.BLOB) {
+                // 一次性预留好空间，避免大的BLOB在复制过程中反复扩容
+                if (length <= MAX_LOB_RESERVE_SIZE) {
+                    dataBuffer.checkCapacity((int) length);
+                }
                 long written = IOUtils.copyAndCloseInput(v.getInputStream(), out);
                 if (written != length) {
                     throw DbException.get(ErrorCode.CONNECTION_BROKEN_1,
@@ -454,6 +468,8 @@ public class TransferOutputStream implements NetOutputStream {
     }
 
     private static final int LOB_MAGIC = 0x1234;
+    private static final int STRING_CHUNK_SIZE = 4096;
+    private static final int MAX_LOB_RESERVE_SIZE = 16 * 1024 * 1024;
 
     public static void verifyLobMagic(int magic) {
         if (magic != TransferOutputStream.LOB_MAGIC) {
@@ -338,6 +338,12 @@ public class NioEventLoop implements NetEventLoop {
         if (writeImmediately) {
             SelectionKey key = channel.getSelectionKey();
             if (key != null && key.isValid()) {
+                // 前面还有没写完的包时要排在它们后面，跟它们一起用gathering write写出
+                if (!channel.getBuffers().isEmpty()) {
+                    channel.addBuffer(buffer);
+                    batchWrite(key, channel.getSocketChannel(), channel.getBuffers());
+                    return;
+                }
                 if (write(key, channel.getSocketChannel(), buffer))
                     return;
             } else {
@@ -0,0 +1,246 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.db.util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.common.logging.Logger;
+import com.lealone.common.logging.LoggerFactory;
+import com.lealone.db.api.ErrorCode;
+import com.lealone.db.async.AsyncPeriodicTask;
+import com.lealone.db.async.AsyncTaskHandler;
+
+// 只在单线程中使用，跟ExpiringMap一样，但是key只能是int
+//
+// key是客户端分配的递增id，所以直接用id的低位当槽位数组的下标，
+// 整个id也存到槽里，相当于带了代数的句柄，下标相同但代数不同的id不会被认错，
+// 冲突时往后线性探测，删除时把后面的元素往前移，不用墓碑。
+// 跟HashMap相比，put和remove时不用创建Entry和Integer对象，查找也只是访问几个数组。
+public class ExpiringIntMap<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExpiringIntMap.class);
+
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values; // 为null表示空槽
+    private long[] lastAccessTimes;
+    private int mask;
+    private int size;
+
+    private final long expirationNanos;
+    private final AsyncTaskHandler asyncTaskHandler;
+    private final AsyncPeriodicTask task;
+
+    /**
+     *
+     * @param defaultExpiration the TTL for objects in the map in milliseconds
+     */
+    public ExpiringIntMap(AsyncTaskHandler asyncTaskHandler, long defaultExpiration,
+            Consumer<V> postExpireHook) {
+        this.asyncTaskHandler = asyncTaskHandler;
+        expirationNanos = defaultExpiration * 1000 * 1000;
+        init(MIN_CAPACITY);
+        if (defaultExpiration > 0) {
+            task = new AsyncPeriodicTask(1000, () -> removeExpired(postExpireHook));
+            asyncTaskHandler.addPeriodicTask(task);
+        } else {
+            task = null;
+        }
+    }
+
+    private void init(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        lastAccessTimes = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public AsyncPeriodicTask getAsyncPeriodicTask() {
+        return task;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeExpired(Consumer<V> postExpireHook) {
+        long now = System.nanoTime();
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            Object v = values[i];
+            if (v != null && now - lastAccessTimes[i] > expirationNanos) {
+                n++;
+                removeAt(i);
+                if (postExpireHook != null)
+                    postExpireHook.accept((V) v);
+                // 后面的元素可能移到了当前槽，需要再检查一次
+                i--;
+            }
+        }
+        if (logger.isTraceEnabled())
+            logger.trace("Expired {} entries", n);
+    }
+
+    public void close() {
+        for (Object v : values) {
+            if (v instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) v).close();
+                } catch (Throwable t) {
+                    // ignore
+                }
+            }
+        }
+        Arrays.fill(values, null);
+        size = 0;
+        if (task != null)
+            asyncTaskHandler.removePeriodicTask(task);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    // 按引用比较
+    public boolean containsValue(Object value) {
+        if (value == null)
+            return false;
+        for (Object v : values) {
+            if (v == value)
+                return true;
+        }
+        return false;
+    }
+
+    private int indexOf(int key) {
+        int i = key & mask;
+        while (values[i] != null) {
+            if (keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        assert value != null;
+        int i = key & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                Object old = values[i];
+                values[i] = value;
+                lastAccessTimes[i] = System.nanoTime();
+                return (V) old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        lastAccessTimes[i] = System.nanoTime();
+        // 最多用一半的槽，这样探测的长度很短
+        if (++size > values.length >>> 1)
+            resize(values.length << 1);
+        return null;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] oldLastAccessTimes = lastAccessTimes;
+        init(capacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = oldKeys[j] & mask;
+                while (values[i] != null)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                lastAccessTimes[i] = oldLastAccessTimes[j];
+            }
+        }
+    }
+
+    public V get(int key) {
+        return get(key, false);
+    }
+
+    public V remove(int key) {
+        return remove(key, false);
+    }
+
+    /**
+     * Get an object from the map if it is stored.
+     *
+     * @param key the key of the object
+     * @param ifAvailable only return it if available, otherwise return null
+     * @return the object or null
+     * @throws DbException if isAvailable is false and the object has not been found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key, boolean ifAvailable) {
+        int i = indexOf(key);
+        if (i < 0)
+            return notFound(ifAvailable);
+        lastAccessTimes[i] = System.nanoTime();
+        return (V) values[i];
+    }
+
+    /**
+     * Remove an object from the map.
+     *
+     * @param key the key of the object
+     * @param ifAvailable only return it if available, otherwise return null
+     * @return the object or null
+     * @throws DbException if isAvailable is false and the object has not been found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key, boolean ifAvailable) {
+        int i = indexOf(key);
+        if (i < 0)
+            return notFound(ifAvailable);
+        Object v = values[i];
+        removeAt(i);
+        return (V) v;
+    }
+
+    private V notFound(boolean ifAvailable) {
+        if (!ifAvailable) {
+            throw DbException.get(ErrorCode.OBJECT_CLOSED);
+        }
+        return null;
+    }
+
+    // 把同一段连续槽中后面的元素往前移，保证每个元素到它的起始槽之间没有空槽
+    private void removeAt(int i) {
+        values[i] = null;
+        size--;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null)
+                return;
+            int home = keys[j] & mask;
+            // home在(i, j]这个循环区间里时不能移动
+            boolean stay = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stay) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                lastAccessTimes[i] = lastAccessTimes[j];
+                values[j] = null;
+                i = j;
+            }
+        }
+    }
+}
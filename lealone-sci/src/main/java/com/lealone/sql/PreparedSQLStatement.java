@@ -42,6 +42,20 @@ public interface PreparedSQLStatement extends SQLStatement, ManualCloseable {
         return false;
     }
 
+    // 能否放到数据库级别的共享缓存中给其他session重用
+    default boolean isShareable() {
+        return false;
+    }
+
+    // 其他session重用时要先切换session
+    default void reuse(Session session) {
+        reuse();
+    }
+
+    default long getModificationMetaId() {
+        return -1;
+    }
+
     default boolean isDDL() {
         return false;
     }
@@ -88,6 +102,9 @@ public interface PreparedSQLStatement extends SQLStatement, ManualCloseable {
 
         PreparedSQLStatement getStatement();
 
+        // 查询结果可以边执行边通过服务器端的游标返回给客户端，每次最多缓存fetchSize条记录
+        default void enableStreaming(int fetchSize) {
+        }
     }
 
     static class YieldableCommand {
@@ -26,6 +26,17 @@ public interface StorageMapCursor<K, V> {
 
     boolean next();
 
+    /**
+     * Reposition the cursor before the first key that is equal or larger than the given key,
+     * the same as creating a new cursor from this key, but the current position can be reused.
+     *
+     * @param from the key to search
+     * @return false if the cursor does not support it
+     */
+    default boolean seek(K from) {
+        return false;
+    }
+
     default void forEachRemaining(Consumer<? super K> action) {
         Objects.requireNonNull(action);
         while (next())
@@ -15,7 +15,7 @@ import com.lealone.db.api.ErrorCode;
 import com.lealone.db.scheduler.Scheduler;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.session.Session;
-import com.lealone.db.util.ExpiringMap;
+import com.lealone.db.util.ExpiringIntMap;
 import com.lealone.net.TransferInputStream;
 import com.lealone.net.WritableChannel;
 import com.lealone.server.handler.PacketHandler;
@@ -150,13 +150,12 @@ public class TcpServerConnection extends AsyncServerConnection {
             // 还需要当前连接做限定，因为每个连接可以接入多个客户端session，不同连接中的sessionId是可以相同的，
             // 把sessions这个字段放在连接实例中可以减少并发访问的冲突。
             session.setScheduler(scheduler);
-            session.setCache(new ExpiringMap<>(scheduler, tcpServer.getSessionTimeout(), cObject -> {
+            session.setCache(new ExpiringIntMap<>(scheduler, tcpServer.getSessionTimeout(), v -> {
                 try {
-                    cObject.value.close();
+                    v.close();
                 } catch (Exception e) {
                     logger.warn(e.getMessage());
                 }
-                return null;
             }));
             ServerSessionInfo si = new ServerSessionInfo(scheduler, this, session, sessionId,
                     tcpServer.getSessionTimeout());
@@ -169,7 +168,8 @@ public class TcpServerConnection extends AsyncServerConnection {
             throws Exception {
         out.writeResponseHeader(session, packetId, Session.STATUS_OK);
         SessionInitAck ack = new SessionInitAck(packet.clientVersion, session.isAutoCommit(),
-                session.getTargetNodes(), session.getRunMode(), session.isInvalid(), 0);
+                session.getTargetNodes(), session.getRunMode(), session.isInvalid(), 0,
+                scheduler.getLoad());
         ack.encode(out, packet.clientVersion);
         out.flush();
     }
@@ -6,21 +6,28 @@
 package com.lealone.server.handler;
 
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.lealone.common.exceptions.DbException;
+import com.lealone.db.api.ErrorCode;
 import com.lealone.db.command.CommandParameter;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.value.Value;
 import com.lealone.server.protocol.Packet;
 import com.lealone.server.protocol.PacketType;
+import com.lealone.server.protocol.batch.BatchStatementBulkLoad;
 import com.lealone.server.protocol.batch.BatchStatementPreparedUpdate;
 import com.lealone.server.protocol.batch.BatchStatementUpdate;
 import com.lealone.server.protocol.batch.BatchStatementUpdateAck;
+import com.lealone.server.protocol.statement.StatementUpdateAck;
 import com.lealone.server.scheduler.LinkableTask;
 import com.lealone.server.scheduler.PacketHandleTask;
 import com.lealone.sql.PreparedSQLStatement;
+import com.lealone.sql.dml.Insert;
 import com.lealone.sql.dml.MerSert;
+import com.lealone.sql.dml.UpDel;
 
 //先把批量语句转成AsyncTask再按先后顺序一个个处理
 class BatchStatementPacketHandlers extends PacketHandlers {
@@ -28,6 +35,7 @@ class BatchStatementPacketHandlers extends PacketHandlers {
     static void register() {
         register(PacketType.BATCH_STATEMENT_UPDATE, new Update());
         register(PacketType.BATCH_STATEMENT_PREPARED_UPDATE, new PreparedUpdate());
+        register(PacketType.BATCH_STATEMENT_BULK_LOAD, new BulkLoad());
     }
 
     private static class Update implements PacketHandler<BatchStatementUpdate> {
@@ -64,6 +72,8 @@ class BatchStatementPacketHandlers extends PacketHandlers {
                     .getCache(packet.commandId);
             if (command instanceof MerSert && ((MerSert) command).getQuery() == null)
                 return handleMerSert(task, packet, (MerSert) command);
+            else if (command instanceof UpDel)
+                return handleUpDel(task, packet, (UpDel) command);
             else
                 return handleOhter(task, packet, command);
         }
@@ -91,6 +101,30 @@ class BatchStatementPacketHandlers extends PacketHandlers {
             return null;
         }
 
+        // 所有参数组在同一个循环中执行，只调度一次，每一组参数返回各自更新或删除的记录数，
+        // 出错的那组参数只回滚它自己的修改并返回EXECUTE_FAILED
+        private Packet handleUpDel(PacketHandleTask task, BatchStatementPreparedUpdate packet,
+                UpDel command) {
+            command.setBatchParameterValues(packet.batchParameterValues);
+            LinkableTask subTask = new LinkableTask() {
+                @Override
+                public void run() {
+                    PreparedSQLStatement.Yieldable<?> yieldable = command.createYieldableUpdate(ar -> {
+                        int[] results = command.getBatchUpdateCounts();
+                        command.setBatchParameterValues(null);
+                        if (ar.isFailed() || results == null) {
+                            results = new int[packet.size];
+                            Arrays.fill(results, Statement.EXECUTE_FAILED);
+                        }
+                        task.sendResponse(new BatchStatementUpdateAck(results.length, results));
+                    });
+                    task.submitYieldableCommand(yieldable);
+                }
+            };
+            task.si().submitTask(subTask, true);
+            return null;
+        }
+
         private Packet handleOhter(PacketHandleTask task, BatchStatementPreparedUpdate packet,
                 PreparedSQLStatement command) {
             ServerSession session = task.session;
@@ -122,6 +156,28 @@ class BatchStatementPacketHandlers extends PacketHandlers {
         }
     }
 
+    // 每一块记录作为一条INSERT语句执行，自动提交模式下每一块提交一次，只产生一条redo log
+    private static class BulkLoad implements PacketHandler<BatchStatementBulkLoad> {
+        @Override
+        public Packet handle(PacketHandleTask task, BatchStatementBulkLoad packet) {
+            PreparedSQLStatement command = (PreparedSQLStatement) task.session
+                    .getCache(packet.commandId);
+            if (!(command instanceof Insert))
+                throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "bulk load: " + command);
+            Insert insert = (Insert) command;
+            insert.setBulkLoadRows(packet.rows, packet.direct);
+            PreparedSQLStatement.Yieldable<?> yieldable = insert.createYieldableUpdate(ar -> {
+                insert.setBulkLoadRows(null, false);
+                if (ar.isSucceeded())
+                    task.sendResponse(new StatementUpdateAck(ar.getResult()));
+                else
+                    task.sendError(ar.getCause());
+            });
+            task.submitYieldableCommand(yieldable);
+            return null;
+        }
+    }
+
     private static void submitYieldableCommand(PacketHandleTask task, PreparedSQLStatement command,
             int[] results, AtomicInteger count, int index, boolean autoCommit) {
         PreparedSQLStatement.Yieldable<?> yieldable = command.createYieldableUpdate(ar -> {
@@ -66,12 +66,8 @@ public class LobPacketHandlers extends PacketHandlers {
                 length = Math.min(16 * Constants.IO_BUFFER_SIZE, length);
                 byte[] buff = new byte[length];
                 length = IOUtils.readFully(cachedInputStream, buff);
-                if (length != buff.length) {
-                    byte[] newBuff = new byte[length];
-                    System.arraycopy(buff, 0, newBuff, 0, length);
-                    buff = newBuff;
-                }
-                return new LobReadAck(buff);
+                // 读到末尾时不足length也不用再复制一次，编码时只写有效的字节
+                return new LobReadAck(buff, length);
             } catch (IOException e) {
                 throw DbException.convert(e);
             }
@@ -7,6 +7,7 @@ package com.lealone.server.handler;
 
 import java.util.List;
 
+import com.lealone.db.Constants;
 import com.lealone.db.command.CommandParameter;
 import com.lealone.db.result.Result;
 import com.lealone.db.value.Value;
@@ -100,23 +101,34 @@ public class PacketHandlers {
                             task.sendError(ar.getCause());
                         }
                     });
+            // 客户端按fetchSize分批取记录，服务器端不用一次性生成所有记录
+            yieldable.enableStreaming(packet.fetchSize);
             task.submitYieldableCommand(yieldable);
         }
 
         protected void sendResult(PacketHandleTask task, QueryPacket packet, Result result) {
-            task.session.addCache(packet.resultId, result);
+            boolean isEnd = false;
             try {
                 int rowCount = result.getRowCount();
                 int fetch = packet.fetchSize;
                 if (rowCount != -1)
                     fetch = Math.min(rowCount, packet.fetchSize);
-                task.sendResponse(createAckPacket(task, result, rowCount, fetch));
+                StatementQueryAck ack = createAckPacket(task, result, rowCount, fetch);
+                task.sendResponse(ack);
+                isEnd = ack.isEnd();
             } catch (Exception e) {
                 task.sendError(e);
             }
+            // 第一批记录就是全部记录时直接关闭结果集，客户端不用再发ResultClose，
+            // 否则缓存起来等客户端继续取，同一个session的下一个包要等这里执行完才会处理
+            if (isEnd && task.session.getProtocolVersion() >= Constants.TCP_PROTOCOL_VERSION_10)
+                result.close();
+            else
+                task.session.addCache(packet.resultId, result);
         }
 
-        protected Packet createAckPacket(PacketHandleTask task, Result result, int rowCount, int fetch) {
+        protected StatementQueryAck createAckPacket(PacketHandleTask task, Result result, int rowCount,
+                int fetch) {
             return new StatementQueryAck(result, rowCount, fetch);
         }
     }
@@ -29,6 +29,8 @@ class ResultPacketHandlers extends PacketHandlers {
         @Override
         public Packet handle(ServerSession session, ResultFetchRows packet) {
             Result result = (Result) session.getCache(packet.resultId);
+            // 出错时由PacketHandleTask通过sendError返回给客户端
+            result.prepareNextRows(packet.count);
             return new ResultFetchRowsAck(result, packet.count);
         }
     }
@@ -49,6 +49,7 @@ import com.lealone.db.table.Column.EnumColumn;
 import com.lealone.db.table.Column.ListColumn;
 import com.lealone.db.table.Column.MapColumn;
 import com.lealone.db.table.Column.SetColumn;
+import com.lealone.db.table.ColumnStatistics;
 import com.lealone.db.table.CreateTableData;
 import com.lealone.db.table.DummyTable;
 import com.lealone.db.table.RangeTable;
@@ -152,8 +153,10 @@ import com.lealone.sql.expression.SequenceValue;
 import com.lealone.sql.expression.ValueExpression;
 import com.lealone.sql.expression.Variable;
 import com.lealone.sql.expression.Wildcard;
+import com.lealone.sql.expression.aggregate.AApproxPercentile;
 import com.lealone.sql.expression.aggregate.AGroupConcat;
 import com.lealone.sql.expression.aggregate.Aggregate;
+import com.lealone.sql.expression.aggregate.BuiltInAggregate;
 import com.lealone.sql.expression.aggregate.JavaAggregate;
 import com.lealone.sql.expression.condition.CompareLike;
 import com.lealone.sql.expression.condition.Comparison;
@@ -170,6 +173,8 @@ import com.lealone.sql.expression.function.StringFunction;
 import com.lealone.sql.expression.function.SystemFunction;
 import com.lealone.sql.expression.function.TableFunction;
 import com.lealone.sql.expression.subquery.SubQuery;
+import com.lealone.sql.expression.window.Window;
+import com.lealone.sql.expression.window.WindowFunction;
 import com.lealone.sql.optimizer.SingleColumnResolver;
 import com.lealone.sql.optimizer.TableFilter;
 import com.lealone.sql.optimizer.TableFilter.TableFilterVisitor;
@@ -865,10 +870,30 @@ public class SQLParserBase implements SQLParser {
     }
 
     protected IndexColumn[] parseIndexColumnList() {
+        return parseIndexColumnList(false);
+    }
+
+    // CREATE INDEX的字段列表中还可以是表达式，例如: CREATE INDEX idx ON t(LOWER(name))
+    protected IndexColumn[] parseIndexColumnList(boolean allowExpressions) {
         ArrayList<IndexColumn> columns = Utils.newSmallArrayList();
         do {
             IndexColumn column = new IndexColumn();
-            column.columnName = readColumnIdentifier();
+            if (!allowExpressions) {
+                column.columnName = readColumnIdentifier();
+            } else if (currentTokenType == IDENTIFIER) {
+                int start = lastParseIndex;
+                String columnName = readColumnIdentifier();
+                if (isToken(",") || isToken(")") || isToken("ASC") || isToken("DESC")
+                        || isToken("NULLS")) {
+                    column.columnName = columnName;
+                } else {
+                    parseIndex = start;
+                    read();
+                    column.expression = readExpression();
+                }
+            } else {
+                column.expression = readExpression();
+            }
             columns.add(column);
             if (readIf("ASC")) {
                 // ignore
@@ -2199,7 +2224,6 @@ public class SQLParserBase implements SQLParser {
         if (currentSelect == null) {
             throw getSyntaxError();
         }
-        currentSelect.setGroupQuery();
         Expression r;
         if (aggregateType == Aggregate.COUNT) {
             if (readIf("*")) {
@@ -2235,14 +2259,118 @@ public class SQLParserBase implements SQLParser {
                 agg.setGroupConcatSeparator(readExpression());
             }
             r = agg;
+        } else if (aggregateType == Aggregate.APPROX_PERCENTILE) {
+            AApproxPercentile agg = new AApproxPercentile(Aggregate.APPROX_PERCENTILE, readExpression(),
+                    currentSelect, false);
+            read(",");
+            agg.setPercentile(readExpression());
+            r = agg;
         } else {
             boolean distinct = readIf("DISTINCT");
             r = Aggregate.create(aggregateType, readExpression(), currentSelect, distinct);
         }
         read(")");
+        // 带OVER的聚合函数是窗口函数，不会让当前select变成group by查询
+        if (readIf("OVER")) {
+            if (aggregateType == Aggregate.GROUP_CONCAT || ((BuiltInAggregate) r).isDistinct()) {
+                throw DbException.getUnsupportedException(r.getSQL() + " OVER");
+            }
+            read("(");
+            return addWindowFunction(new WindowFunction((BuiltInAggregate) r, readWindow()));
+        }
+        currentSelect.setGroupQuery();
         return r;
     }
 
+    protected Expression readWindowFunction(int type) {
+        if (currentSelect == null) {
+            throw getSyntaxError();
+        }
+        ArrayList<Expression> argList = Utils.newSmallArrayList();
+        if (type == WindowFunction.LAG || type == WindowFunction.LEAD) {
+            // LAG(x [, offset [, default]])
+            do {
+                argList.add(readExpression());
+            } while (argList.size() < 3 && readIf(","));
+        }
+        read(")");
+        read("OVER");
+        read("(");
+        Expression[] args = argList.toArray(new Expression[argList.size()]);
+        return addWindowFunction(new WindowFunction(type, args, readWindow()));
+    }
+
+    private WindowFunction addWindowFunction(WindowFunction function) {
+        if (currentSelect == null) {
+            throw getSyntaxError();
+        }
+        currentSelect.addWindowFunction(function);
+        return function;
+    }
+
+    // 调用之前已经读过OVER (
+    protected Window readWindow() {
+        ArrayList<Expression> partitionBy = null;
+        ArrayList<SelectOrderBy> orderBy = null;
+        if (readIf("PARTITION")) {
+            read("BY");
+            partitionBy = Utils.newSmallArrayList();
+            do {
+                partitionBy.add(readExpression());
+            } while (readIf(","));
+        }
+        if (readIf("ORDER")) {
+            read("BY");
+            orderBy = parseSimpleOrderList();
+        }
+        Window window;
+        boolean rows = readIf("ROWS");
+        if (rows || readIf("RANGE")) {
+            long start;
+            long end;
+            if (readIf("BETWEEN")) {
+                start = readWindowFrameBound();
+                read("AND");
+                end = readWindowFrameBound();
+            } else {
+                start = readWindowFrameBound();
+                end = 0;
+            }
+            if (start == Window.UNBOUNDED_FOLLOWING || end == Window.UNBOUNDED_PRECEDING || start > end) {
+                throw getSyntaxError();
+            }
+            if (!rows && (start != Window.UNBOUNDED_PRECEDING && start != 0
+                    || end != Window.UNBOUNDED_FOLLOWING && end != 0)) {
+                throw DbException.getUnsupportedException("RANGE with offset");
+            }
+            window = new Window(partitionBy, orderBy, true, rows, start, end);
+        } else {
+            window = new Window(partitionBy, orderBy);
+        }
+        read(")");
+        return window;
+    }
+
+    private long readWindowFrameBound() {
+        if (readIf("UNBOUNDED")) {
+            if (readIf("PRECEDING")) {
+                return Window.UNBOUNDED_PRECEDING;
+            }
+            read("FOLLOWING");
+            return Window.UNBOUNDED_FOLLOWING;
+        }
+        if (readIf("CURRENT")) {
+            read("ROW");
+            return 0;
+        }
+        long offset = readPositiveInt();
+        if (readIf("PRECEDING")) {
+            return -offset;
+        }
+        read("FOLLOWING");
+        return offset;
+    }
+
     protected ArrayList<SelectOrderBy> parseSimpleOrderList() {
         ArrayList<SelectOrderBy> orderList = Utils.newSmallArrayList();
         do {
@@ -2254,6 +2382,14 @@ public class SQLParserBase implements SQLParser {
             } else {
                 readIf("ASC");
             }
+            if (readIf("NULLS")) {
+                if (readIf("FIRST")) {
+                    order.nullsFirst = true;
+                } else {
+                    read("LAST");
+                    order.nullsLast = true;
+                }
+            }
             orderList.add(order);
         } while (readIf(","));
         return orderList;
@@ -2305,6 +2441,13 @@ public class SQLParserBase implements SQLParser {
         return Aggregate.getAggregateType(name);
     }
 
+    protected int getWindowFunctionType(String name) {
+        if (!identifiersToUpper) {
+            name = StringUtils.toUpperEnglish(name);
+        }
+        return WindowFunction.getWindowFunctionType(name);
+    }
+
     protected Expression readFunction(Schema schema, String name) {
         if (schema != null) {
             UserAggregate aggregate = schema.findAggregate(session, name);
@@ -2317,6 +2460,10 @@ public class SQLParserBase implements SQLParser {
         if (agg >= 0) {
             return readAggregate(agg, name);
         }
+        int windowFunctionType = getWindowFunctionType(name);
+        if (windowFunctionType >= 0) {
+            return readWindowFunction(windowFunctionType);
+        }
         Function function = Function.getFunction(database, name);
         if (function == null) {
             UserAggregate aggregate = getSchema(session.getCurrentSchemaName()).findAggregate(session,
@@ -2465,8 +2612,12 @@ public class SQLParserBase implements SQLParser {
             read(")");
             read("OVER");
             read("(");
-            read(")");
-            return new Rownum(currentSelect == null ? currentStatement : currentSelect);
+            // 空窗口时就是ROWNUM
+            if (readIf(")")) {
+                return new Rownum(currentSelect == null ? currentStatement : currentSelect);
+            }
+            return addWindowFunction(new WindowFunction(WindowFunction.ROW_NUMBER,
+                    new Expression[0], readWindow()));
         default:
             if (!readIf(")")) {
                 int i = 0;
@@ -3939,6 +4090,11 @@ public class SQLParserBase implements SQLParser {
             int value = readPositiveInt();
             column.setSelectivity(value);
         }
+        if (readIf("STATISTICS")) {
+            // 由ANALYZE生成，见ColumnStatistics.getSQL
+            Value value = readExpression().optimize(session).getValue(session);
+            column.setStatistics(ColumnStatistics.get(value, column));
+        }
         String comment = readCommentIf();
         if (comment != null) {
             column.setComment(comment);
@@ -4265,7 +4421,7 @@ public class SQLParserBase implements SQLParser {
             command.setIndexName(indexName);
             command.setComment(readCommentIf());
             read("(");
-            command.setIndexColumns(parseIndexColumnList());
+            command.setIndexColumns(parseIndexColumnList(!primaryKey));
 
             if (readIf("USING")) {
                 if (hash) {
@@ -4275,11 +4431,28 @@ public class SQLParserBase implements SQLParser {
                     // default
                 } else if (readIf("HASH")) {
                     hash = true;
+                } else if (!primaryKey && !unique && readIf("NGRAM")) {
+                    command.setTextTokenizer("NGRAM"); // 全文索引，按trigram切分
+                } else if (!primaryKey && !unique && readIf("FULLTEXT")) {
+                    command.setTextTokenizer("FULLTEXT"); // 全文索引，按单词切分
                 } else {
                     throw getSyntaxError();
                 }
 
             }
+            if (!primaryKey && !command.isTextIndex() && readIf("INCLUDE")) {
+                read("(");
+                String[] names = parseColumnList();
+                IndexColumn[] includeColumns = new IndexColumn[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    includeColumns[i] = new IndexColumn();
+                    includeColumns[i].columnName = names[i];
+                }
+                command.setIncludeColumns(includeColumns);
+            }
+            if (!primaryKey && readIf("WHERE")) {
+                command.setPredicate(readExpression());
+            }
             command.setHash(hash);
             return command;
         }
@@ -7,11 +7,13 @@ package com.lealone.sql;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.trace.Trace;
 import com.lealone.common.util.StatementBuilder;
 import com.lealone.db.Database;
+import com.lealone.db.DbObject;
 import com.lealone.db.SysProperties;
 import com.lealone.db.api.DatabaseEventListener;
 import com.lealone.db.api.ErrorCode;
@@ -22,7 +24,9 @@ import com.lealone.db.async.Future;
 import com.lealone.db.command.CommandParameter;
 import com.lealone.db.result.Result;
 import com.lealone.db.session.ServerSession;
+import com.lealone.db.session.Session;
 import com.lealone.db.session.SessionStatus;
+import com.lealone.db.table.Table;
 import com.lealone.db.value.Value;
 import com.lealone.sql.executor.YieldableBase;
 import com.lealone.sql.executor.YieldableLocalUpdate;
@@ -183,6 +187,7 @@ public abstract class StatementBase implements PreparedSQLStatement, ParsedSQLSt
      *
      * @return the meta data modification id
      */
+    @Override
     public long getModificationMetaId() {
         return modificationMetaId;
     }
@@ -453,11 +458,46 @@ public abstract class StatementBase implements PreparedSQLStatement, ParsedSQLSt
         }
     }
 
+    @Override
+    public void reuse(Session session) {
+        setSession((ServerSession) session);
+        reuse();
+    }
+
     @Override
     public void close() {
         canReuse = true;
     }
 
+    /**
+     * Check if a statement that depends on the given objects can be shared
+     * between sessions. Views, function tables and temporary tables are bound
+     * to the session that created them, so only statements over regular tables
+     * can be shared.
+     *
+     * @param dependencies the objects the statement depends on
+     * @return true if it can be shared
+     */
+    protected static boolean isShareable(Set<DbObject> dependencies) {
+        for (DbObject obj : dependencies) {
+            if (obj instanceof Table) {
+                Table table = (Table) obj;
+                if (table.isTemporary()) {
+                    return false;
+                }
+                switch (table.getTableType()) {
+                case STANDARD_TABLE:
+                case RANGE_TABLE:
+                case DUMMY_TABLE:
+                    break;
+                default:
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Prepare this statement.
      */
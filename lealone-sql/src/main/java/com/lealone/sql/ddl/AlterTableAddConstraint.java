@@ -369,7 +369,7 @@ public class AlterTableAddConstraint extends SchemaStatement {
     }
 
     private static boolean canUseUniqueIndex(Index idx, Table table, IndexColumn[] cols) {
-        if (idx.getTable() != table || !idx.getIndexType().isUnique()) {
+        if (idx.getTable() != table || !idx.getIndexType().isUnique() || !isPlainIndex(idx)) {
             return false;
         }
         Column[] indexCols = idx.getColumns();
@@ -390,12 +390,31 @@ public class AlterTableAddConstraint extends SchemaStatement {
         return true;
     }
 
+    // 部分索引不包含所有记录，表达式索引的虚拟字段也不在表的记录中，全文索引的key是token，都不能给约束使用
+    private static boolean isPlainIndex(Index index) {
+        if (index.getPredicate() != null || index.getIndexType().isText()) {
+            return false;
+        }
+        IndexColumn[] cols = index.getIndexColumns();
+        if (cols != null) {
+            for (IndexColumn c : cols) {
+                if (c.expression != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private static boolean canUseIndex(Index existingIndex, Table table, IndexColumn[] cols,
             boolean moreColumnsOk) {
         if (existingIndex.getTable() != table || existingIndex.getCreateSQL() == null) {
             // can't use the scan index or index of another table
             return false;
         }
+        if (!isPlainIndex(existingIndex)) {
+            return false;
+        }
         Column[] indexCols = existingIndex.getColumns();
 
         if (moreColumnsOk) {
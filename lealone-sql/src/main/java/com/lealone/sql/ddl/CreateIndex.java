@@ -5,6 +5,8 @@
  */
 package com.lealone.sql.ddl;
 
+import java.util.HashSet;
+
 import com.lealone.common.exceptions.DbException;
 import com.lealone.db.Constants;
 import com.lealone.db.DbObjectType;
@@ -15,8 +17,14 @@ import com.lealone.db.index.IndexType;
 import com.lealone.db.lock.DbObjectLock;
 import com.lealone.db.schema.Schema;
 import com.lealone.db.session.ServerSession;
+import com.lealone.db.table.Column;
 import com.lealone.db.table.Table;
+import com.lealone.sql.IExpression;
 import com.lealone.sql.SQLStatement;
+import com.lealone.sql.expression.Expression;
+import com.lealone.sql.expression.ExpressionColumn;
+import com.lealone.sql.expression.visitor.ExpressionVisitorFactory;
+import com.lealone.sql.optimizer.RowColumnResolver;
 
 /**
  * This class represents the statement
@@ -30,8 +38,11 @@ public class CreateIndex extends SchemaStatement {
     private String tableName;
     private String indexName;
     private IndexColumn[] indexColumns;
+    private IndexColumn[] includeColumns;
+    private Expression predicate;
     private boolean ifNotExists;
     private boolean primaryKey, unique, hash;
+    private String textTokenizer;
     private String comment;
 
     public CreateIndex(ServerSession session, Schema schema) {
@@ -55,6 +66,14 @@ public class CreateIndex extends SchemaStatement {
         this.indexColumns = columns;
     }
 
+    public void setIncludeColumns(IndexColumn[] columns) {
+        this.includeColumns = columns;
+    }
+
+    public void setPredicate(Expression predicate) {
+        this.predicate = predicate;
+    }
+
     public void setIfNotExists(boolean ifNotExists) {
         this.ifNotExists = ifNotExists;
     }
@@ -71,6 +90,14 @@ public class CreateIndex extends SchemaStatement {
         this.hash = b;
     }
 
+    public void setTextTokenizer(String textTokenizer) {
+        this.textTokenizer = textTokenizer;
+    }
+
+    public boolean isTextIndex() {
+        return textTokenizer != null;
+    }
+
     public void setComment(String comment) {
         this.comment = comment;
     }
@@ -106,14 +133,74 @@ public class CreateIndex extends SchemaStatement {
                 throw DbException.get(ErrorCode.SECOND_PRIMARY_KEY);
             }
             indexType = IndexType.createPrimaryKey(hash);
+        } else if (textTokenizer != null) {
+            indexType = IndexType.createText(textTokenizer);
         } else if (unique) {
             indexType = IndexType.createUnique(hash);
         } else {
             indexType = IndexType.createNonUnique(hash);
         }
         IndexColumn.mapColumns(indexColumns, table);
+        if (includeColumns != null) {
+            IndexColumn.mapColumns(includeColumns, table);
+            checkIncludeColumns();
+        }
+        IExpression.Evaluator evaluator = prepareExpressions(table);
         boolean create = !session.getDatabase().isStarting();
-        table.addIndex(session, indexName, id, indexColumns, indexType, create, comment, lock);
+        table.addIndex(session, indexName, id, indexColumns, includeColumns, predicate, evaluator,
+                indexType, create, comment, lock);
         return 0;
     }
+
+    // 索引中的表达式当成表的虚拟字段，字段名就是表达式的SQL，
+    // 部分索引的条件也跟表达式一样，在增删改记录时按记录的字段值计算
+    private IExpression.Evaluator prepareExpressions(Table table) {
+        RowColumnResolver resolver = null;
+        for (IndexColumn c : indexColumns) {
+            if (c.expression == null) {
+                continue;
+            }
+            if (resolver == null) {
+                resolver = new RowColumnResolver(session, table);
+            }
+            Expression e = (Expression) resolver.optimizeExpression(session, c.expression);
+            if (e instanceof ExpressionColumn) {
+                // 只是加了括号的普通字段
+                c.column = ((ExpressionColumn) e).getColumn();
+                c.expression = null;
+                continue;
+            }
+            checkDeterministic(e);
+            c.expression = e;
+            c.column = new Column(e.getSQL(), e.getType(), e.getPrecision(), e.getScale(),
+                    e.getDisplaySize());
+        }
+        if (predicate != null) {
+            if (resolver == null) {
+                resolver = new RowColumnResolver(session, table);
+            }
+            predicate = (Expression) resolver.optimizeExpression(session, predicate);
+            checkDeterministic(predicate);
+        }
+        return resolver;
+    }
+
+    private static void checkDeterministic(Expression e) {
+        if (!e.accept(ExpressionVisitorFactory.getDeterministicVisitor())) {
+            throw DbException.getUnsupportedException("non-deterministic expression: " + e.getSQL());
+        }
+    }
+
+    // include字段不能跟索引字段重复，也不能重复出现
+    private void checkIncludeColumns() {
+        HashSet<Column> set = new HashSet<>();
+        for (IndexColumn c : indexColumns) {
+            set.add(c.column);
+        }
+        for (IndexColumn c : includeColumns) {
+            if (!set.add(c.column)) {
+                throw DbException.get(ErrorCode.DUPLICATE_COLUMN_NAME_1, c.column.getSQL());
+            }
+        }
+    }
 }
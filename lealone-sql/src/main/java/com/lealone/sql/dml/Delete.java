@@ -46,7 +46,8 @@ public class Delete extends UpDel {
             condition.mapColumns(tableFilter, 0);
             condition = condition.optimize(session);
             condition.createIndexConditions(session, tableFilter);
-            tableFilter.createColumnIndexes(condition);
+            tableFilter.setColumnIndexes(tableFilter.createColumnIndexes(condition));
+            tableFilter.setFullCondition(condition); // 用来判断能否使用部分索引
         }
         tableFilter.preparePlan(session, 1);
         return this;
@@ -88,13 +89,14 @@ public class Delete extends UpDel {
 
         private void removeRow(Row row) {
             Value[] oldColumns = row.getColumns();
+            int batchIndex = this.batchIndex;
             onPendingOperationStart();
             table.removeRow(session, row, true, ar -> {
                 if (ar.isSucceeded() && table.fireRow()) {
                     Row oldRow = new Row(row.getKey(), oldColumns);
                     table.fireAfterRow(session, oldRow, null, false);
                 }
-                onPendingOperationComplete(ar);
+                onRowComplete(batchIndex, ar);
             });
         }
     }
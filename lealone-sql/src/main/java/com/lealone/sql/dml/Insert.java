@@ -5,14 +5,28 @@
  */
 package com.lealone.sql.dml;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.StatementBuilder;
+import com.lealone.db.DbObject;
+import com.lealone.db.api.ErrorCode;
 import com.lealone.db.api.Trigger;
 import com.lealone.db.async.AsyncResultHandler;
 import com.lealone.db.auth.Right;
+import com.lealone.db.constraint.Constraint;
+import com.lealone.db.index.standard.StandardPrimaryIndex;
 import com.lealone.db.row.Row;
+import com.lealone.db.row.SearchRow;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Column;
+import com.lealone.db.table.StandardTable;
+import com.lealone.db.value.Value;
 import com.lealone.sql.SQLStatement;
+import com.lealone.sql.expression.Expression;
 
 /**
  * This class represents the statement
@@ -23,15 +37,54 @@ import com.lealone.sql.SQLStatement;
  */
 public class Insert extends MerSert {
 
+    private boolean bulkLoad;
+    private boolean bulkLoadDirect;
+
     public Insert(ServerSession session) {
         super(session);
     }
 
+    /**
+     * Use the given rows as one block of a bulk load. The statement must be
+     * a single VALUES row, each row has one value per parameter.
+     *
+     * @param rows the rows of the block, or null to end the bulk load
+     * @param direct whether the rows may be written without undo log
+     */
+    public void setBulkLoadRows(List<Value[]> rows, boolean direct) {
+        if (rows != null) {
+            if (query != null || list.size() != 1) {
+                throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "bulk load: " + getSQL());
+            }
+            if (!rows.isEmpty() && rows.get(0).length != getParameters().size()) {
+                throw DbException.get(ErrorCode.COLUMN_COUNT_DOES_NOT_MATCH);
+            }
+        }
+        setBatchParameterValues(rows);
+        bulkLoad = rows != null;
+        bulkLoadDirect = direct;
+    }
+
     @Override
     public int getType() {
         return SQLStatement.INSERT;
     }
 
+    @Override
+    public boolean isShareable() {
+        if (query != null && !query.isShareable())
+            return false;
+        HashSet<DbObject> dependencies = new HashSet<>();
+        dependencies.add(table);
+        for (Expression[] expr : list) {
+            for (Expression e : expr) {
+                if (e != null)
+                    e.getDependencies(dependencies);
+            }
+        }
+        return isShareable(dependencies);
+    }
+
     @Override
     public String getPlanSQL() {
         StatementBuilder buff = new StatementBuilder("INSERT INTO ");
@@ -58,13 +111,46 @@ public class Insert extends MerSert {
 
     private static class YieldableInsert extends YieldableMerSert {
 
+        // 批量导入时分三步: 先转换和检查所有记录，再按主键排序，最后才写入，
+        // 这样在写入之前就能发现类型、约束和同一批中主键重复的错误
+        private final boolean bulkLoad;
+        private boolean direct;
+        private Row[] rows;
+        private int rowCount;
+        private boolean sorted;
+        private int writeIndex;
+        private int writtenCount;
+
         public YieldableInsert(Insert statement, AsyncResultHandler<Integer> asyncHandler) {
             super(statement, asyncHandler);
+            bulkLoad = statement.bulkLoad;
+            if (bulkLoad) {
+                direct = statement.bulkLoadDirect && canLoadDirectly();
+                rows = new Row[listSize];
+            }
+        }
+
+        // 直接写入时不记undo log也不加行锁，只用于自动提交模式下没有其他索引、外键、触发器和大对象的表，
+        // 写入前所有检查都已经做完，写入后马上保存，写入的记录不能回滚，对其他事务也是马上可见的
+        private boolean canLoadDirectly() {
+            if (!session.isAutoCommit() || !(table instanceof StandardTable) || table.containsIndex()
+                    || table.containsLargeObject() || table.hasTrigger())
+                return false;
+            // 主键和CHECK约束在写入前已经检查过了，外键约束要在写入后检查
+            ArrayList<Constraint> constraints = table.getConstraints();
+            if (constraints != null) {
+                for (Constraint c : constraints) {
+                    if (Constraint.REFERENTIAL.equals(c.getConstraintType()))
+                        return false;
+                }
+            }
+            return true;
         }
 
         @Override
         protected boolean startInternal() {
-            if (!table.trySharedLock(session))
+            // 直接写入时不允许其他事务同时修改这张表
+            if (!(direct ? table.tryExclusiveLock(session) : table.trySharedLock(session)))
                 return true;
             session.getUser().checkRight(table, Right.INSERT);
             table.fire(session, Trigger.INSERT, true);
@@ -80,5 +166,88 @@ public class Insert extends MerSert {
         protected void merSert(Row row) {
             addRowInternal(row);
         }
+
+        @Override
+        protected void executeLoopUpdate0() {
+            if (!bulkLoad) {
+                super.executeLoopUpdate0();
+                return;
+            }
+            while (index < listSize) {
+                Row row = createNewRow();
+                table.validateConvertUpdateSequence(session, row);
+                if (!table.fireBeforeRow(session, null, row)) // INSTEAD OF触发器会返回true
+                    rows[rowCount++] = row;
+                if (yieldIfNeeded(++index)) {
+                    return;
+                }
+            }
+            if (!sorted) {
+                sortRows();
+                sorted = true;
+            }
+            if (direct)
+                session.setUndoLogEnabled(false);
+            try {
+                while (pendingException == null && writeIndex < rowCount) {
+                    addBulkLoadRow(rows[writeIndex]);
+                    rows[writeIndex++] = null;
+                    if (yieldIfNeeded(listSize + writeIndex)) {
+                        return;
+                    }
+                }
+            } finally {
+                if (direct)
+                    session.setUndoLogEnabled(true);
+            }
+            onLoopEnd();
+        }
+
+        // 按主键的顺序写入，相邻的记录大多落在同一个page上
+        private void sortRows() {
+            if (!(table instanceof StandardTable)) {
+                direct = false;
+                return;
+            }
+            StandardPrimaryIndex primaryIndex = ((StandardTable) table).getScanIndex(session);
+            int mainIndexColumn = primaryIndex.getMainIndexColumn();
+            if (mainIndexColumn < 0) // 没有主键时是追加写入，不需要排序
+                return;
+            Arrays.sort(rows, 0, rowCount, (r1, r2) -> Long.compare(
+                    r1.getValue(mainIndexColumn).getLong(), r2.getValue(mainIndexColumn).getLong()));
+            for (int i = 1; i < rowCount; i++) {
+                if (rows[i - 1].getValue(mainIndexColumn).getLong() == rows[i].getValue(mainIndexColumn)
+                        .getLong()) {
+                    Column c = table.getColumn(mainIndexColumn);
+                    throw DbException.get(ErrorCode.DUPLICATE_KEY_1,
+                            "PRIMARY KEY ON " + table.getSQL() + "(" + c.getSQL() + ")");
+                }
+            }
+            // 只有所有记录都排在已有记录的后面时才直接写入，这样不会覆盖已有的记录
+            if (direct && rowCount > 0) {
+                SearchRow last = primaryIndex.findFirstOrLast(session, false);
+                if (last != null && last.getKey() >= rows[0].getValue(mainIndexColumn).getLong())
+                    direct = false;
+            }
+        }
+
+        private void addBulkLoadRow(Row newRow) {
+            onPendingOperationStart();
+            table.addRow(session, newRow, ar -> {
+                if (ar.isSucceeded()) {
+                    try {
+                        table.fireAfterRow(session, null, newRow, false);
+                        // 没有redo log，写完最后一条记录就保存，返回给客户端之前就已经持久化了
+                        if (direct && ++writtenCount == rowCount) {
+                            ((StandardTable) table).getScanIndex(session).getDataMap().getRawMap()
+                                    .save();
+                        }
+                    } catch (Throwable e) {
+                        setPendingException(e);
+                    }
+                }
+                onPendingOperationComplete(ar);
+            });
+        }
     }
 }
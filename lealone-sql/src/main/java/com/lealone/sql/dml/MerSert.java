@@ -202,7 +202,7 @@ public abstract class MerSert extends ManipulationStatement {
             }
         }
 
-        private void executeLoopUpdate0() {
+        protected void executeLoopUpdate0() {
             if (yieldableQuery == null) {
                 while (pendingException == null && index < listSize) {
                     merSert(createNewRow());
@@ -270,6 +270,20 @@ public class SetDatabase extends SetStatement {
             }
             break;
         }
+        case SHARED_PLAN_CACHE_SIZE: {
+            int value = getAndValidateIntValue();
+            setDbSetting(value);
+            if (value <= 0)
+                database.getSharedPlanCache().clear();
+            break;
+        }
+        case SHARED_RESULT_CACHE_SIZE: {
+            int value = getAndValidateIntValue();
+            setDbSetting(value);
+            if (value <= 0)
+                database.getSharedResultCache().clear();
+            break;
+        }
         default:
             if (DbSetting.contains(name)) {
                 setDbSetting(getStringValue());
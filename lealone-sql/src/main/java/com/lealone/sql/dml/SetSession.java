@@ -81,6 +81,9 @@ public class SetSession extends SetStatement {
         case OLAP_BATCH_SIZE:
             session.setOlapBatchSize(getIntValue());
             break;
+        case STREAMING_RESULT:
+            session.setStreamingResult(getAndValidateBooleanValue());
+            break;
         default:
             DbException.throwInternalError("unknown setting type: " + setting);
         }
@@ -5,17 +5,24 @@
  */
 package com.lealone.sql.dml;
 
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+
 import com.lealone.common.util.StatementBuilder;
 import com.lealone.common.util.StringUtils;
 import com.lealone.db.DataHandler;
+import com.lealone.db.DbObject;
+import com.lealone.db.async.AsyncResult;
 import com.lealone.db.async.AsyncResultHandler;
+import com.lealone.db.command.CommandParameter;
 import com.lealone.db.lock.DbObjectLock;
 import com.lealone.db.row.Row;
 import com.lealone.db.session.ServerSession;
+import com.lealone.db.session.SessionStatus;
 import com.lealone.db.table.Table;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueNull;
-import com.lealone.sql.StatementBase;
 import com.lealone.sql.executor.YieldableLoopUpdateBase;
 import com.lealone.sql.expression.Expression;
 import com.lealone.sql.expression.evaluator.AlwaysTrueEvaluator;
@@ -35,6 +42,9 @@ public abstract class UpDel extends ManipulationStatement {
      */
     protected Expression limitExpr;
 
+    protected List<Value[]> batchParameterValues;
+    private int[] batchUpdateCounts;
+
     public UpDel(ServerSession session) {
         super(session);
     }
@@ -44,6 +54,21 @@ public abstract class UpDel extends ManipulationStatement {
         return true;
     }
 
+    @Override
+    public boolean isShareable() {
+        HashSet<DbObject> dependencies = new HashSet<>();
+        getDependencies(dependencies);
+        return isShareable(dependencies);
+    }
+
+    protected void getDependencies(HashSet<DbObject> dependencies) {
+        dependencies.add(tableFilter.getTable());
+        if (condition != null)
+            condition.getDependencies(dependencies);
+        if (limitExpr != null)
+            limitExpr.getDependencies(dependencies);
+    }
+
     public void setTableFilter(TableFilter tableFilter) {
         this.tableFilter = tableFilter;
     }
@@ -56,6 +81,24 @@ public abstract class UpDel extends ManipulationStatement {
         this.limitExpr = limit;
     }
 
+    @Override
+    public void setBatchParameterValues(List<Value[]> batchParameterValues) {
+        this.batchParameterValues = batchParameterValues;
+        batchUpdateCounts = null;
+    }
+
+    // 批量执行后每一组参数更新或删除的记录数
+    public int[] getBatchUpdateCounts() {
+        return batchUpdateCounts;
+    }
+
+    @Override
+    public void checkParameters() {
+        if (batchParameterValues == null) {
+            super.checkParameters();
+        }
+    }
+
     @Override
     public int getPriority() {
         if (getCurrentRowNumber() > 0)
@@ -82,32 +125,32 @@ public abstract class UpDel extends ManipulationStatement {
     protected static abstract class YieldableUpDel extends YieldableLoopUpdateBase {
 
         protected final Table table;
-        private final int limitRows; // 如果是0，表示不删除任何记录；如果小于0，表示没有限制
+        private final Expression limitExpr;
+        private int limitRows; // 如果是0，表示不删除任何记录；如果小于0，表示没有限制
+        private int upDelCount; // 当前这组参数已经更新或删除的记录数
         private final ExpressionEvaluator conditionEvaluator;
         private final TableIterator tableIterator;
 
-        public YieldableUpDel(StatementBase statement, AsyncResultHandler<Integer> asyncHandler,
+        // 批量执行时所有参数组在同一个循环中执行，每一组参数都从头开始遍历
+        private final List<Value[]> batchParameterValues;
+        private final int[] batchUpdateCounts;
+        protected int batchIndex;
+        private int batchSavepointId; // 当前这组参数开始执行时的保存点，出错时只回滚这一组
+        private Throwable batchException; // 当前这组参数执行时出现的异常
+        private boolean batchLoopEnd; // 当前这组参数已经遍历完，可能还在等异步的更新或删除完成
+
+        public YieldableUpDel(UpDel statement, AsyncResultHandler<Integer> asyncHandler,
                 TableFilter tableFilter, Expression limitExpr, Expression condition) {
             super(statement, asyncHandler);
             table = tableFilter.getTable();
-            int limitRows = -1;
-            if (limitExpr != null) {
-                Value v = limitExpr.getValue(session);
-                if (v != ValueNull.INSTANCE) {
-                    limitRows = v.getInt();
-                }
-            }
-            this.limitRows = limitRows;
-
-            if (limitRows == 0) {
-                tableIterator = new TableIterator(session, tableFilter) {
-                    @Override
-                    public boolean next() {
-                        return false;
-                    }
-                };
+            this.limitExpr = limitExpr;
+            tableIterator = new TableIterator(session, tableFilter);
+            batchParameterValues = statement.batchParameterValues;
+            if (batchParameterValues != null) {
+                batchUpdateCounts = new int[batchParameterValues.size()];
+                statement.batchUpdateCounts = batchUpdateCounts;
             } else {
-                tableIterator = new TableIterator(session, tableFilter);
+                batchUpdateCounts = null;
             }
 
             if (condition == null)
@@ -129,10 +172,78 @@ public abstract class UpDel extends ManipulationStatement {
             session.getUser().checkRight(table, getRightMask());
             table.fire(session, getTriggerType(), true);
             statement.setCurrentRowNumber(0);
-            tableIterator.start();
+            if (batchParameterValues != null) {
+                if (batchParameterValues.isEmpty()) {
+                    onLoopEnd();
+                    return false;
+                }
+                startBatch();
+            } else {
+                startLoop();
+            }
             return false;
         }
 
+        private void startBatch() {
+            batchSavepointId = session.getTransaction().getSavepointId();
+            batchException = null;
+            batchLoopEnd = false;
+            try {
+                setBatchParameters();
+                startLoop();
+            } catch (RuntimeException e) {
+                setPendingException(e);
+                batchLoopEnd = true;
+            }
+        }
+
+        // 出错的那组参数回滚到它开始时的保存点，返回EXECUTE_FAILED，其他组不受影响
+        private void endBatch() {
+            if (batchException != null) {
+                session.rollbackTo(batchSavepointId);
+                batchUpdateCounts[batchIndex] = Statement.EXECUTE_FAILED;
+            }
+        }
+
+        private void setBatchParameters() {
+            Value[] values = batchParameterValues.get(batchIndex);
+            List<? extends CommandParameter> params = statement.getParameters();
+            for (int i = 0; i < values.length; i++) {
+                params.get(i).setValue(values[i]);
+            }
+        }
+
+        // limit也可能是参数，所以每组参数都要重新计算
+        private void startLoop() {
+            limitRows = -1;
+            if (limitExpr != null) {
+                Value v = limitExpr.getValue(session);
+                if (v != ValueNull.INSTANCE) {
+                    limitRows = v.getInt();
+                }
+            }
+            upDelCount = 0;
+            tableIterator.start();
+        }
+
+        // 子类在记录更新或删除完成后调用，batchIndex是开始更新或删除这条记录时的值
+        protected void onRowComplete(int batchIndex, AsyncResult<Integer> ar) {
+            if (batchUpdateCounts != null && ar.isSucceeded())
+                batchUpdateCounts[batchIndex]++;
+            onPendingOperationComplete(ar);
+        }
+
+        // 批量执行时某一组参数出错只让这一组失败，不影响整条语句
+        @Override
+        protected void setPendingException(Throwable pendingException) {
+            if (batchParameterValues != null && pendingException != DbObjectLock.LOCKED_EXCEPTION) {
+                if (batchException == null)
+                    batchException = pendingException;
+            } else {
+                super.setPendingException(pendingException);
+            }
+        }
+
         @Override
         protected void stopInternal() {
             table.fire(session, getTriggerType(), false);
@@ -166,7 +277,37 @@ public abstract class UpDel extends ManipulationStatement {
         }
 
         private void executeLoopUpdate0() {
-            while (tableIterator.next() && pendingException == null) {
+            while (true) {
+                if (!batchLoopEnd) {
+                    try {
+                        if (!loop())
+                            return;
+                    } catch (RuntimeException e) {
+                        if (batchParameterValues == null || DbObjectLock.LOCKED_EXCEPTION == e)
+                            throw e;
+                        setPendingException(e);
+                    }
+                    batchLoopEnd = true;
+                }
+                if (batchParameterValues == null || pendingException != null)
+                    break;
+                // 这一组参数的异步更新或删除都完成后才执行下一组，出错时才能只回滚这一组
+                if (hasPendingOperations()) {
+                    session.setStatus(SessionStatus.STATEMENT_YIELDED);
+                    return;
+                }
+                endBatch();
+                if (++batchIndex >= batchParameterValues.size())
+                    break;
+                startBatch();
+            }
+            onLoopEnd();
+        }
+
+        // 返回false表示需要让出线程或者等待行锁，下次接着遍历
+        private boolean loop() {
+            while (limitRows != 0 && tableIterator.next() && pendingException == null
+                    && batchException == null) {
                 // 不能直接return，执行完一次后再return，否则执行next()得到的记录被跳过了，会产生严重的问题
                 boolean yield = yieldIfNeeded(++loopCount);
                 if (conditionEvaluator.getBooleanValue()) {
@@ -174,19 +315,19 @@ public abstract class UpDel extends ManipulationStatement {
                     if (ret < 0) {
                         continue;
                     } else if (ret == 0) { // 被其他事务锁住了
-                        return;
+                        return false;
                     }
                     Row row = tableIterator.getRow();
                     if (upDelRow(row)) {
-                        if (limitRows > 0 && updateCount.get() >= limitRows) {
+                        if (limitRows > 0 && ++upDelCount >= limitRows) {
                             break;
                         }
                     }
                 }
                 if (yield)
-                    return;
+                    return false;
             }
-            onLoopEnd();
+            return true;
         }
     }
 }
@@ -12,6 +12,7 @@ import java.util.HashSet;
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.StatementBuilder;
 import com.lealone.common.util.Utils;
+import com.lealone.db.DbObject;
 import com.lealone.db.api.ErrorCode;
 import com.lealone.db.api.Trigger;
 import com.lealone.db.async.AsyncResultHandler;
@@ -77,6 +78,14 @@ public class Update extends UpDel {
         return buff.toString();
     }
 
+    @Override
+    protected void getDependencies(HashSet<DbObject> dependencies) {
+        super.getDependencies(dependencies);
+        for (Expression e : expressionMap.values()) {
+            e.getDependencies(dependencies);
+        }
+    }
+
     @Override
     public PreparedSQLStatement prepare() {
         int size = columns.size();
@@ -86,6 +95,7 @@ public class Update extends UpDel {
             condition = condition.optimize(session);
             condition.createIndexConditions(session, tableFilter);
             condition.getColumns(columnSet);
+            tableFilter.setFullCondition(condition); // 用来判断能否使用部分索引
         }
         for (int i = 0; i < size; i++) {
             Column c = columns.get(i);
@@ -96,7 +106,7 @@ public class Update extends UpDel {
             columnSet.add(c);
             e.getColumns(columnSet); // 例如f1=f2*2;
         }
-        tableFilter.createColumnIndexes(columnSet);
+        tableFilter.setColumnIndexes(tableFilter.createColumnIndexes(columnSet));
         tableFilter.preparePlan(session, 1);
         return this;
     }
@@ -176,12 +186,13 @@ public class Update extends UpDel {
         }
 
         private void updateRow(Row oldRow, Row newRow) {
+            int batchIndex = this.batchIndex;
             onPendingOperationStart();
             table.updateRow(session, oldRow, newRow, updateColumnIndexes, true, ar -> {
                 if (ar.isSucceeded() && table.fireRow()) {
                     table.fireAfterRow(session, oldRow, newRow, false);
                 }
-                onPendingOperationComplete(ar);
+                onRowComplete(batchIndex, ar);
             });
         }
     }
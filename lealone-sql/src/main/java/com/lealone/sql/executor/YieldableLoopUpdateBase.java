@@ -51,6 +51,10 @@ public abstract class YieldableLoopUpdateBase extends YieldableUpdateBase {
         loopEnd = true;
     }
 
+    protected boolean hasPendingOperations() {
+        return pendingOperationCount > 0;
+    }
+
     protected void onPendingOperationStart() {
         pendingOperationCount++;
     }
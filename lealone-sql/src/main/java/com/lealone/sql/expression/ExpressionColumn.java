@@ -5,8 +5,6 @@
  */
 package com.lealone.sql.expression;
 
-import java.util.HashMap;
-
 import com.lealone.common.exceptions.DbException;
 import com.lealone.db.Database;
 import com.lealone.db.LealoneDatabase;
@@ -26,6 +24,7 @@ import com.lealone.sql.optimizer.AliasColumnResolver;
 import com.lealone.sql.optimizer.ColumnResolver;
 import com.lealone.sql.optimizer.IndexCondition;
 import com.lealone.sql.optimizer.TableFilter;
+import com.lealone.sql.query.GroupValues;
 import com.lealone.sql.query.Select;
 
 /**
@@ -41,6 +40,8 @@ public class ExpressionColumn extends Expression {
     private ColumnResolver columnResolver;
     private int queryLevel;
     private Column column;
+    private Select groupSlotOwner; // 分组查询时在哪个Select中分配了groupSlot
+    private int groupSlot;
 
     public ExpressionColumn(Database database, Column column) {
         this.database = database;
@@ -190,25 +191,34 @@ public class ExpressionColumn extends Expression {
         if (select == null) {
             throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, getSQL());
         }
-        HashMap<Expression, Object> values = select.getCurrentGroup();
+        GroupValues values = select.getCurrentGroup();
         if (values == null) {
             // this is a different level (the enclosing query)
             return;
         }
-        Value v = (Value) values.get(this);
+        int slot = getGroupSlot(select);
+        Value v = (Value) values.get(slot);
         if (v == null) { // 只取第一条
             Value now = columnResolver.getValue(column);
-            values.put(this, now);
+            values.put(slot, now);
+        }
+    }
+
+    private int getGroupSlot(Select select) {
+        if (groupSlotOwner != select) {
+            groupSlotOwner = select;
+            groupSlot = select.allocateGroupSlot();
         }
+        return groupSlot;
     }
 
     @Override
     public Value getValue(ServerSession session) {
         Select select = columnResolver.getSelect();
         if (select != null) {
-            HashMap<Expression, Object> values = select.getCurrentGroup();
+            GroupValues values = select.getCurrentGroup();
             if (values != null) {
-                Value v = (Value) values.get(this);
+                Value v = (Value) values.get(getGroupSlot(select));
                 if (v != null) {
                     return v;
                 }
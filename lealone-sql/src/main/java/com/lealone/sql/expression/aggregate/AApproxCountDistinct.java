@@ -0,0 +1,66 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.aggregate;
+
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueLong;
+import com.lealone.db.value.ValueNull;
+import com.lealone.sql.expression.Expression;
+import com.lealone.sql.query.Select;
+
+// APPROX_COUNT_DISTINCT(x)
+// 用HyperLogLog估算不重复值的个数，内存占用固定，不像COUNT(DISTINCT x)那样要保存所有不重复的值
+public class AApproxCountDistinct extends BuiltInAggregate {
+
+    public AApproxCountDistinct(int type, Expression on, Select select, boolean distinct) {
+        super(type, on, select, distinct);
+    }
+
+    @Override
+    public Expression optimize(ServerSession session) {
+        super.optimize(session);
+        dataType = Value.LONG;
+        scale = 0;
+        precision = ValueLong.PRECISION;
+        displaySize = ValueLong.DISPLAY_SIZE;
+        return this;
+    }
+
+    @Override
+    protected AggregateData createAggregateData() {
+        return new AggregateDataApproxCountDistinct();
+    }
+
+    @Override
+    public String getSQL() {
+        return getSQL("APPROX_COUNT_DISTINCT");
+    }
+
+    // 会忽略distinct
+    public class AggregateDataApproxCountDistinct extends AggregateData {
+
+        private final HyperLogLog hll = new HyperLogLog();
+
+        @Override
+        public void add(ServerSession session, Value v) {
+            if (v == ValueNull.INSTANCE) {
+                return;
+            }
+            hll.add(v);
+        }
+
+        @Override
+        public void merge(ServerSession session, AggregateData other) {
+            hll.merge(((AggregateDataApproxCountDistinct) other).hll);
+        }
+
+        @Override
+        Value getValue(ServerSession session) {
+            return ValueLong.get(hll.cardinality());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.aggregate;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueDouble;
+import com.lealone.db.value.ValueNull;
+import com.lealone.sql.expression.Expression;
+import com.lealone.sql.query.Select;
+
+// APPROX_PERCENTILE(x, p)
+// 用t-digest估算分位数，p必须是0到1之间的常量，比如0.5就是中位数
+public class AApproxPercentile extends BuiltInAggregate {
+
+    private Expression percentile;
+    private double p;
+
+    public AApproxPercentile(int type, Expression on, Select select, boolean distinct) {
+        super(type, on, select, distinct);
+    }
+
+    public void setPercentile(Expression percentile) {
+        this.percentile = percentile;
+    }
+
+    @Override
+    public Expression optimize(ServerSession session) {
+        super.optimize(session);
+        percentile = percentile.optimize(session);
+        if (!percentile.isConstant()) {
+            throw DbException.getInvalidValueException("percentile", percentile.getSQL());
+        }
+        Value v = percentile.getValue(session);
+        p = v == ValueNull.INSTANCE ? -1 : v.getDouble();
+        if (p < 0 || p > 1) {
+            throw DbException.getInvalidValueException("percentile", percentile.getSQL());
+        }
+        dataType = Value.DOUBLE;
+        scale = 0;
+        precision = ValueDouble.PRECISION;
+        displaySize = ValueDouble.DISPLAY_SIZE;
+        return this;
+    }
+
+    @Override
+    protected AggregateData createAggregateData() {
+        return new AggregateDataApproxPercentile();
+    }
+
+    @Override
+    public String getSQL() {
+        return "APPROX_PERCENTILE(" + on.getSQL() + ", " + percentile.getSQL() + ")";
+    }
+
+    // 会忽略distinct
+    public class AggregateDataApproxPercentile extends AggregateData {
+
+        private final TDigest digest = new TDigest();
+
+        @Override
+        public void add(ServerSession session, Value v) {
+            if (v == ValueNull.INSTANCE) {
+                return;
+            }
+            digest.add(v.getDouble());
+        }
+
+        @Override
+        public void merge(ServerSession session, AggregateData other) {
+            digest.merge(((AggregateDataApproxPercentile) other).digest);
+        }
+
+        @Override
+        Value getValue(ServerSession session) {
+            if (digest.getTotalWeight() == 0) {
+                return ValueNull.INSTANCE;
+            }
+            return ValueDouble.get(digest.quantile(p));
+        }
+    }
+}
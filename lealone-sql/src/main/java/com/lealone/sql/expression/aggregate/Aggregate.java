@@ -105,6 +105,16 @@ public abstract class Aggregate extends Expression {
      */
     public static final int HISTOGRAM = 16;
 
+    /**
+     * The aggregate type for APPROX_COUNT_DISTINCT(expression).
+     */
+    public static final int APPROX_COUNT_DISTINCT = 17;
+
+    /**
+     * The aggregate type for APPROX_PERCENTILE(expression, percentile).
+     */
+    public static final int APPROX_PERCENTILE = 18;
+
     private static final HashMap<String, Integer> AGGREGATES = new HashMap<>();
 
     static {
@@ -135,6 +145,8 @@ public abstract class Aggregate extends Expression {
         addAggregate("HISTOGRAM", HISTOGRAM);
         addAggregate("BIT_OR", BIT_OR);
         addAggregate("BIT_AND", BIT_AND);
+        addAggregate("APPROX_COUNT_DISTINCT", APPROX_COUNT_DISTINCT);
+        addAggregate("APPROX_PERCENTILE", APPROX_PERCENTILE);
     }
 
     private static void addAggregate(String name, int type) {
@@ -164,6 +176,10 @@ public abstract class Aggregate extends Expression {
             return new AHistogram(type, on, select, distinct);
         case Aggregate.SELECTIVITY:
             return new ASelectivity(type, on, select, distinct);
+        case Aggregate.APPROX_COUNT_DISTINCT:
+            return new AApproxCountDistinct(type, on, select, distinct);
+        case Aggregate.APPROX_PERCENTILE:
+            return new AApproxPercentile(type, on, select, distinct);
         default:
             return new ADefault(type, on, select, distinct);
         }
@@ -172,11 +188,20 @@ public abstract class Aggregate extends Expression {
     protected final Select select;
     protected int dataType;
     protected int lastGroupRowId;
+    protected int groupSlot = -1;
 
     public Aggregate(Select select) {
         this.select = select;
     }
 
+    // 聚合状态放在当前分组的哪个slot中
+    protected int getGroupSlot() {
+        if (groupSlot < 0) {
+            groupSlot = select.allocateGroupSlot();
+        }
+        return groupSlot;
+    }
+
     @Override
     public int getType() {
         return dataType;
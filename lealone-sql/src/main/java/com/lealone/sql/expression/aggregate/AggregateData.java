@@ -5,6 +5,7 @@
  */
 package com.lealone.sql.expression.aggregate;
 
+import com.lealone.common.exceptions.DbException;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.value.Value;
 
@@ -24,6 +25,18 @@ public abstract class AggregateData {
      */
     public abstract void add(ServerSession session, Value v);
 
+    /**
+     * Merge the state of another aggregate of the same type into this one.
+     * Only aggregates with a mergeable state (such as the approximate
+     * aggregates) support this.
+     *
+     * @param session the session
+     * @param other the other aggregate data
+     */
+    public void merge(ServerSession session, AggregateData other) {
+        throw DbException.getUnsupportedException("merge " + getClass().getSimpleName());
+    }
+
     /**
      * Get the aggregate result.
      *
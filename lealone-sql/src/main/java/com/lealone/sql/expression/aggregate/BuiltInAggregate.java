@@ -5,8 +5,6 @@
  */
 package com.lealone.sql.expression.aggregate;
 
-import java.util.HashMap;
-
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.StringUtils;
 import com.lealone.db.api.ErrorCode;
@@ -23,6 +21,7 @@ import com.lealone.sql.expression.Expression;
 import com.lealone.sql.expression.ExpressionColumn;
 import com.lealone.sql.expression.visitor.ExpressionVisitor;
 import com.lealone.sql.optimizer.TableFilter;
+import com.lealone.sql.query.GroupValues;
 import com.lealone.sql.query.Select;
 
 /**
@@ -60,6 +59,10 @@ public abstract class BuiltInAggregate extends Aggregate {
         return type;
     }
 
+    public boolean isDistinct() {
+        return distinct;
+    }
+
     @Override
     public Expression getOn() {
         return on;
@@ -99,8 +102,17 @@ public abstract class BuiltInAggregate extends Aggregate {
 
     protected abstract AggregateData createAggregateData();
 
+    // 给窗口函数用的，聚合状态不放在分组中，由窗口函数按frame自己维护
+    public AggregateData createWindowAggregateData() {
+        return createAggregateData();
+    }
+
+    public Value getWindowValue(ServerSession session, AggregateData data) {
+        return data.getValue(session);
+    }
+
     public AggregateData getAggregateData() {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        GroupValues group = select.getCurrentGroup();
         if (group == null) {
             // this is a different level (the enclosing query)
             return null;
@@ -113,10 +125,11 @@ public abstract class BuiltInAggregate extends Aggregate {
         }
         lastGroupRowId = groupRowId;
 
-        AggregateData data = (AggregateData) group.get(this);
+        int slot = getGroupSlot();
+        AggregateData data = (AggregateData) group.get(slot);
         if (data == null) {
             data = createAggregateData();
-            group.put(this, data);
+            group.put(slot, data);
         }
         return data;
     }
@@ -163,11 +176,11 @@ public abstract class BuiltInAggregate extends Aggregate {
     }
 
     private AggregateData getFinalAggregateData() {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        GroupValues group = select.getCurrentGroup();
         if (group == null) {
             throw DbException.get(ErrorCode.INVALID_USE_OF_AGGREGATE_FUNCTION_1, getSQL());
         }
-        AggregateData data = (AggregateData) group.get(this);
+        AggregateData data = (AggregateData) group.get(getGroupSlot());
         if (data == null) {
             data = createAggregateData();
         }
@@ -0,0 +1,178 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.aggregate;
+
+import com.lealone.db.value.Value;
+
+// HyperLogLog++的简化实现，用来估算不重复值的个数。
+// 不重复的值较少时使用稀疏模式，直接保存64位的hash，结果基本是精确的；
+// 超过阈值后转成2^p个寄存器，只占2^p个字节，跟不重复值的个数无关。
+// 估算值较小时用linear counting修正，没有使用论文中的经验偏差表。
+// 两个HyperLogLog可以合并，所以能用于分片或并行的部分聚合。
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14; // 标准误差约为1.04/sqrt(2^14)=0.81%
+
+    private final int precision;
+    private final int m;
+    private final int maxSparseSize;
+
+    private long[] sparse; // 开放寻址的hash集合，0表示空位
+    private int sparseSize;
+    private boolean hasZero; // hash值刚好为0的情况
+    private byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        this.precision = precision;
+        m = 1 << precision;
+        maxSparseSize = m / 16;
+        sparse = new long[16];
+    }
+
+    public void add(Value v) {
+        add(hash64(v));
+    }
+
+    public void add(long hash) {
+        if (registers != null) {
+            addToRegisters(hash);
+        } else if (hash == 0) {
+            hasZero = true;
+        } else if (addToSparse(hash) && ++sparseSize > maxSparseSize) {
+            toDense();
+        }
+    }
+
+    private boolean addToSparse(long hash) {
+        int mask = sparse.length - 1;
+        int index = (int) (hash ^ (hash >>> 32)) & mask;
+        while (sparse[index] != 0) {
+            if (sparse[index] == hash) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        sparse[index] = hash;
+        // 负载因子超过0.5时扩容
+        if ((sparseSize + 1) * 2 > sparse.length) {
+            long[] old = sparse;
+            sparse = new long[old.length * 2];
+            for (long h : old) {
+                if (h != 0) {
+                    addToSparse(h);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void toDense() {
+        registers = new byte[m];
+        for (long h : sparse) {
+            if (h != 0) {
+                addToRegisters(h);
+            }
+        }
+        if (hasZero) {
+            addToRegisters(0);
+        }
+        sparse = null;
+    }
+
+    private void addToRegisters(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        int rho = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rho > registers[index]) {
+            registers[index] = (byte) rho;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("precision " + other.precision + " != " + precision);
+        }
+        if (other.registers == null) {
+            for (long h : other.sparse) {
+                if (h != 0) {
+                    add(h);
+                }
+            }
+            if (other.hasZero) {
+                add(0);
+            }
+        } else {
+            if (registers == null) {
+                toDense();
+            }
+            for (int i = 0; i < m; i++) {
+                if (other.registers[i] > registers[i]) {
+                    registers[i] = other.registers[i];
+                }
+            }
+        }
+    }
+
+    public long cardinality() {
+        if (registers == null) {
+            return hasZero ? sparseSize + 1 : sparseSize;
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    // Value.hashCode只有32位，基数很大时冲突太多，所以常用的类型单独算64位的hash
+    static long hash64(Value v) {
+        long h;
+        switch (v.getType()) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            h = v.getLong();
+            break;
+        case Value.DOUBLE:
+        case Value.FLOAT:
+            h = Double.doubleToLongBits(v.getDouble());
+            break;
+        case Value.STRING:
+        case Value.STRING_FIXED: {
+            // FNV-1a
+            String s = v.getString();
+            h = 0xcbf29ce484222325L;
+            for (int i = 0, len = s.length(); i < len; i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            break;
+        }
+        default:
+            h = v.hashCode();
+        }
+        // MurmurHash3的fmix64，把输入的位充分打散
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -7,7 +7,6 @@ package com.lealone.sql.expression.aggregate;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.HashMap;
 
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.StatementBuilder;
@@ -21,6 +20,7 @@ import com.lealone.db.value.ValueNull;
 import com.lealone.sql.LealoneSQLParser;
 import com.lealone.sql.expression.Expression;
 import com.lealone.sql.expression.visitor.ExpressionVisitor;
+import com.lealone.sql.query.GroupValues;
 import com.lealone.sql.query.Select;
 
 /**
@@ -117,12 +117,12 @@ public class JavaAggregate extends com.lealone.sql.expression.aggregate.Aggregat
 
     @Override
     public Value getValue(ServerSession session) {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        GroupValues group = select.getCurrentGroup();
         if (group == null) {
             throw DbException.get(ErrorCode.INVALID_USE_OF_AGGREGATE_FUNCTION_1, getSQL());
         }
         try {
-            Aggregate agg = (Aggregate) group.get(this);
+            Aggregate agg = (Aggregate) group.get(getGroupSlot());
             if (agg == null) {
                 agg = getInstance();
             }
@@ -138,7 +138,7 @@ public class JavaAggregate extends com.lealone.sql.expression.aggregate.Aggregat
 
     @Override
     public void updateAggregate(ServerSession session) {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        GroupValues group = select.getCurrentGroup();
         if (group == null) {
             // this is a different level (the enclosing query)
             return;
@@ -151,11 +151,12 @@ public class JavaAggregate extends com.lealone.sql.expression.aggregate.Aggregat
         }
         lastGroupRowId = groupRowId;
 
-        Aggregate agg = (Aggregate) group.get(this);
+        int slot = getGroupSlot();
+        Aggregate agg = (Aggregate) group.get(slot);
         try {
             if (agg == null) {
                 agg = getInstance();
-                group.put(this, agg);
+                group.put(slot, agg);
             }
             Object[] argValues = new Object[args.length];
             Object arg = null;
@@ -0,0 +1,169 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.aggregate;
+
+import java.util.Arrays;
+
+// 合并式t-digest，用来估算分位数。
+// 新加入的值先放到缓冲区，缓冲区满了之后跟已有的centroid一起排序，
+// 再按k1尺度函数把相邻的centroid合并，两端的centroid小，中间的大，所以两端的分位数更精确。
+// centroid的个数只跟compression有关，跟值的个数无关，两个TDigest也可以合并。
+public class TDigest {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+
+    private double[] means;
+    private double[] weights;
+    private int centroidCount;
+
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int bufferSize;
+
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) * 2 + 10;
+        means = new double[capacity];
+        weights = new double[capacity];
+        int bufferCapacity = capacity * 5;
+        bufferMeans = new double[bufferCapacity];
+        bufferWeights = new double[bufferCapacity];
+    }
+
+    public void add(double x) {
+        add(x, 1);
+    }
+
+    private void add(double x, double w) {
+        if (bufferSize == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferSize] = x;
+        bufferWeights[bufferSize] = w;
+        bufferSize++;
+        totalWeight += w;
+        if (x < min) {
+            min = x;
+        }
+        if (x > max) {
+            max = x;
+        }
+    }
+
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroidCount; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        if (other.min < min) {
+            min = other.min;
+        }
+        if (other.max > max) {
+            max = other.max;
+        }
+    }
+
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    private void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+        int n = centroidCount + bufferSize;
+        double[] allMeans = new double[n];
+        double[] allWeights = new double[n];
+        System.arraycopy(means, 0, allMeans, 0, centroidCount);
+        System.arraycopy(weights, 0, allWeights, 0, centroidCount);
+        System.arraycopy(bufferMeans, 0, allMeans, centroidCount, bufferSize);
+        System.arraycopy(bufferWeights, 0, allWeights, centroidCount, bufferSize);
+        bufferSize = 0;
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(allMeans[a], allMeans[b]));
+
+        centroidCount = 0;
+        double weightSoFar = 0;
+        double mean = allMeans[order[0]];
+        double weight = allWeights[order[0]];
+        for (int i = 1; i < n; i++) {
+            int j = order[i];
+            double q0 = weightSoFar / totalWeight;
+            double q2 = (weightSoFar + weight + allWeights[j]) / totalWeight;
+            if (k(q2) - k(q0) <= 1) {
+                weight += allWeights[j];
+                mean += (allMeans[j] - mean) * allWeights[j] / weight;
+            } else {
+                addCentroid(mean, weight);
+                weightSoFar += weight;
+                mean = allMeans[j];
+                weight = allWeights[j];
+            }
+        }
+        addCentroid(mean, weight);
+    }
+
+    // k1尺度函数
+    private double k(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+    }
+
+    private void addCentroid(double mean, double weight) {
+        if (centroidCount == means.length) {
+            means = Arrays.copyOf(means, centroidCount * 2);
+            weights = Arrays.copyOf(weights, centroidCount * 2);
+        }
+        means[centroidCount] = mean;
+        weights[centroidCount] = weight;
+        centroidCount++;
+    }
+
+    /**
+     * 估算分位数，在相邻centroid的中心之间线性插值
+     *
+     * @param q the quantile, between 0 and 1
+     * @return the estimated value, or NaN if no value was added
+     */
+    public double quantile(double q) {
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (centroidCount == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double weightSoFar = weights[0] / 2;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double dw = (weights[i] + weights[i + 1]) / 2;
+            if (weightSoFar + dw > index) {
+                double t = (index - weightSoFar) / dw;
+                return means[i] + t * (means[i + 1] - means[i]);
+            }
+            weightSoFar += dw;
+        }
+        int last = centroidCount - 1;
+        double t = (index - weightSoFar) / (weights[last] / 2);
+        return Math.min(max, means[last] + t * (max - means[last]));
+    }
+}
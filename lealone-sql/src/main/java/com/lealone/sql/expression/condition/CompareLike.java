@@ -5,6 +5,7 @@
  */
 package com.lealone.sql.expression.condition;
 
+import java.util.ArrayList;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -14,6 +15,7 @@ import com.lealone.db.api.ErrorCode;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.value.CompareMode;
 import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueArray;
 import com.lealone.db.value.ValueBoolean;
 import com.lealone.db.value.ValueNull;
 import com.lealone.db.value.ValueString;
@@ -195,11 +197,7 @@ public class CompareLike extends Condition {
             DbException.throwInternalError();
         }
         initPattern(p, getEscapeChar(e));
-        if (invalidPattern) {
-            return;
-        }
-        if (patternLength <= 0 || patternTypes[0] != MATCH) {
-            // can't use an index
+        if (invalidPattern || patternLength <= 0) {
             return;
         }
         int dataType = l.getColumn().getType();
@@ -208,6 +206,11 @@ public class CompareLike extends Condition {
             // column is not a varchar - can't use the index
             return;
         }
+        addContainsCondition(filter, l);
+        if (patternTypes[0] != MATCH) {
+            // can't use a b-tree index
+            return;
+        }
         int maxMatch = 0;
         StringBuilder buff = new StringBuilder();
         while (maxMatch < patternLength && patternTypes[maxMatch] == MATCH) {
@@ -239,6 +242,27 @@ public class CompareLike extends Condition {
         }
     }
 
+    // 按通配符把模式切成多个子串，全文索引可以找出包含所有子串的记录，再由LIKE条件过滤，
+    // 子串都比trigram短时全文索引也找不出候选记录，就不用加了
+    private void addContainsCondition(TableFilter filter, ExpressionColumn l) {
+        ArrayList<Value> list = new ArrayList<>();
+        StringBuilder buff = new StringBuilder();
+        int maxLength = 0;
+        for (int i = 0; i <= patternLength; i++) {
+            if (i < patternLength && patternTypes[i] == MATCH) {
+                buff.append(patternChars[i]);
+            } else if (buff.length() > 0) {
+                maxLength = Math.max(maxLength, buff.length());
+                list.add(ValueString.get(buff.toString()));
+                buff.setLength(0);
+            }
+        }
+        if (maxLength >= 3) {
+            filter.addIndexCondition(IndexCondition.get(Comparison.CONTAINS, l,
+                    ValueExpression.get(ValueArray.get(list.toArray(new Value[0])))));
+        }
+    }
+
     @Override
     public Value getValue(ServerSession session) {
         Value l = left.getValue(session);
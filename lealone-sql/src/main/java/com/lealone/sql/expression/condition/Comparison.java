@@ -12,6 +12,7 @@ import com.lealone.common.exceptions.DbException;
 import com.lealone.db.Database;
 import com.lealone.db.SysProperties;
 import com.lealone.db.session.ServerSession;
+import com.lealone.db.table.Column;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueBoolean;
 import com.lealone.db.value.ValueNull;
@@ -19,6 +20,7 @@ import com.lealone.sql.expression.Expression;
 import com.lealone.sql.expression.ExpressionColumn;
 import com.lealone.sql.expression.Parameter;
 import com.lealone.sql.expression.ValueExpression;
+import com.lealone.sql.expression.visitor.BooleanExpressionVisitor;
 import com.lealone.sql.expression.visitor.ExpressionVisitor;
 import com.lealone.sql.expression.visitor.ExpressionVisitorFactory;
 import com.lealone.sql.expression.visitor.NotFromResolverVisitor;
@@ -105,6 +107,12 @@ public class Comparison extends Condition {
      */
     public static final int IN_QUERY = 10;
 
+    /**
+     * This is a pseudo comparison type that is only used for index conditions.
+     * It means contains all substrings of a list. Example: LIKE '%abc%def%'.
+     */
+    public static final int CONTAINS = 11;
+
     private final Database database;
     private int compareType;
     private Expression left;
@@ -378,6 +386,13 @@ public class Comparison extends Condition {
                 r = null;
             }
         }
+        if (l == null && r == null) {
+            // 表达式索引: 比如LOWER(name) = ?
+            l = getExpressionIndexColumn(session, filter, left);
+            if (l == null) {
+                r = getExpressionIndexColumn(session, filter, right);
+            }
+        }
         // one side must be from the current filter
         if (l == null && r == null) {
             return;
@@ -427,6 +442,29 @@ public class Comparison extends Condition {
         }
     }
 
+    private static ExpressionColumn getExpressionIndexColumn(ServerSession session,
+            TableFilter filter, Expression e) {
+        if (filter.getTable().getExpressionColumns().length == 0 || e instanceof ExpressionColumn
+                || e.isConstant()) {
+            return null;
+        }
+        // 表达式中的字段都要来自当前的filter
+        BooleanExpressionVisitor visitor = new BooleanExpressionVisitor() {
+            @Override
+            public Boolean visitExpressionColumn(ExpressionColumn c) {
+                return c.getColumnResolver() == filter;
+            }
+        };
+        if (!e.accept(visitor)) {
+            return null;
+        }
+        Column column = filter.getTable().findExpressionColumn(filter.getUnqualifiedSQL(e));
+        if (column == null) {
+            return null;
+        }
+        return new ExpressionColumn(session.getDatabase(), column);
+    }
+
     @Override
     public void addFilterConditions(TableFilter filter, boolean outerJoin) {
         if (compareType == IS_NULL && outerJoin) {
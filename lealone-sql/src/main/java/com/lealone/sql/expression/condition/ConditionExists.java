@@ -11,6 +11,7 @@ import com.lealone.db.session.ServerSession;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueBoolean;
 import com.lealone.sql.expression.Expression;
+import com.lealone.sql.expression.subquery.CorrelatedSubQuery;
 import com.lealone.sql.expression.visitor.ExpressionVisitor;
 import com.lealone.sql.query.Query;
 
@@ -20,6 +21,7 @@ import com.lealone.sql.query.Query;
 public class ConditionExists extends Condition {
 
     private final Query query;
+    private CorrelatedSubQuery correlated;
 
     public ConditionExists(Query query) {
         this.query = query;
@@ -31,6 +33,18 @@ public class ConditionExists extends Condition {
 
     @Override
     public Value getValue(ServerSession session) {
+        if (correlated != null) {
+            Value v = correlated.getValue(session, null);
+            if (v == null) {
+                v = getValue0(session);
+                correlated.setValue(session, v);
+            }
+            return v;
+        }
+        return getValue0(session);
+    }
+
+    private Value getValue0(ServerSession session) {
         query.setSession(session);
         Result result = query.query(1);
         session.addTemporaryResult(result);
@@ -41,6 +55,7 @@ public class ConditionExists extends Condition {
     @Override
     public Expression optimize(ServerSession session) {
         query.prepare();
+        correlated = CorrelatedSubQuery.create(session, query, CorrelatedSubQuery.EXISTS);
         return this;
     }
 
@@ -15,6 +15,7 @@ import com.lealone.db.value.ValueBoolean;
 import com.lealone.db.value.ValueNull;
 import com.lealone.sql.expression.Expression;
 import com.lealone.sql.expression.ExpressionColumn;
+import com.lealone.sql.expression.subquery.CorrelatedSubQuery;
 import com.lealone.sql.expression.subquery.SubQueryResult;
 import com.lealone.sql.expression.visitor.ExpressionVisitor;
 import com.lealone.sql.expression.visitor.ExpressionVisitorFactory;
@@ -34,6 +35,7 @@ public class ConditionInSelect extends Condition {
     private final boolean all;
     private final int compareType;
     private SubQueryResult rows;
+    private CorrelatedSubQuery correlated;
 
     public ConditionInSelect(Database database, Expression left, Query query, boolean all,
             int compareType) {
@@ -54,6 +56,22 @@ public class ConditionInSelect extends Condition {
 
     @Override
     public Value getValue(ServerSession session) {
+        if (correlated != null) {
+            // 相关子查询的结果跟外部记录有关，不能重用上一次的结果
+            Value l = left.getValue(session);
+            Value v = correlated.getValue(session, l);
+            if (v == null) {
+                query.setSession(session);
+                SubQueryResult rows = new SubQueryResult(query, 0);
+                try {
+                    v = getValue(session, rows, l);
+                } finally {
+                    rows.close();
+                }
+                correlated.setValue(session, v);
+            }
+            return v;
+        }
         if (rows == null) {
             query.setSession(session);
             rows = new SubQueryResult(query, 0);
@@ -61,7 +79,10 @@ public class ConditionInSelect extends Condition {
         } else {
             rows.reset();
         }
-        Value l = left.getValue(session);
+        return getValue(session, rows, left.getValue(session));
+    }
+
+    private Value getValue(ServerSession session, SubQueryResult rows, Value l) {
         if (rows.getRowCount() == 0) {
             return ValueBoolean.get(all);
         } else if (l == ValueNull.INSTANCE) {
@@ -122,6 +143,11 @@ public class ConditionInSelect extends Condition {
         if (query.getColumnCount() != 1) {
             throw DbException.get(ErrorCode.SUBQUERY_IS_NOT_SINGLE_COLUMN);
         }
+        if (!all && compareType == Comparison.EQUAL) {
+            correlated = CorrelatedSubQuery.create(session, query, CorrelatedSubQuery.IN);
+        } else {
+            correlated = CorrelatedSubQuery.create(session, query, CorrelatedSubQuery.OTHER);
+        }
         // Can not optimize: the data may change
         return this;
     }
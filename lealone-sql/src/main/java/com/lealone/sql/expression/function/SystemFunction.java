@@ -12,18 +12,24 @@ import java.io.Reader;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.List;
 import java.util.Map;
 
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.JdbcUtils;
+import com.lealone.common.util.MathUtils;
 import com.lealone.common.util.StatementBuilder;
 import com.lealone.common.util.StringUtils;
 import com.lealone.common.util.Utils;
 import com.lealone.db.Database;
 import com.lealone.db.Mode;
 import com.lealone.db.api.ErrorCode;
+import com.lealone.db.auth.Right;
 import com.lealone.db.command.Command;
+import com.lealone.db.index.Index;
+import com.lealone.db.result.SimpleResultSet;
+import com.lealone.db.row.Row;
 import com.lealone.db.schema.Schema;
 import com.lealone.db.schema.Sequence;
 import com.lealone.db.session.ServerSession;
@@ -66,7 +72,7 @@ public class SystemFunction extends BuiltInFunction {
             CSVWRITE = 211, MEMORY_FREE = 212, MEMORY_USED = 213, TRANSACTION_ISOLATION_LEVEL = 214,
             SCHEMA = 215, SESSION_ID = 216, ARRAY_LENGTH = 217, GREATEST = 218, LEAST = 219,
             CANCEL_SESSION = 220, SET = 221, FILE_READ = 222, TRANSACTION_ID = 223, TRUNCATE_VALUE = 224,
-            NVL2 = 225, DECODE = 226, ARRAY_CONTAINS = 227;
+            NVL2 = 225, DECODE = 226, ARRAY_CONTAINS = 227, MATCH = 228;
 
     public static final int VERSION = 229;
     public static final int ROW_NUMBER = 230;
@@ -101,6 +107,7 @@ public class SystemFunction extends BuiltInFunction {
         addFunction("ARRAY_CONTAINS", ARRAY_CONTAINS, 2, Value.BOOLEAN, false, true);
         addFunction("CSVREAD", CSVREAD, VAR_ARGS, Value.RESULT_SET, false, false);
         addFunction("CSVWRITE", CSVWRITE, VAR_ARGS, Value.INT, false, false);
+        addFunctionNotDeterministic("MATCH", MATCH, VAR_ARGS, Value.RESULT_SET);
         addFunctionNotDeterministic("MEMORY_FREE", MEMORY_FREE, 0, Value.INT);
         addFunctionNotDeterministic("MEMORY_USED", MEMORY_USED, 0, Value.INT);
         addFunctionNotDeterministic("TRANSACTION_ISOLATION_LEVEL", TRANSACTION_ISOLATION_LEVEL, 0,
@@ -235,6 +242,54 @@ public class SystemFunction extends BuiltInFunction {
         return table.getDiskSpaceUsed();
     }
 
+    // 用全文索引检索文本，返回表中的所有字段和相关度，按相关度从高到低排序
+    private static SimpleResultSet match(ServerSession session, Value tableName, Value columnName,
+            Value text, Value limit, boolean onlyColumnList) {
+        Table table = new LealoneSQLParser(session).parseTableName(tableName.getString());
+        session.getUser().checkRight(table, Right.SELECT);
+        String name = columnName.getString();
+        Column column = table.findColumn(name);
+        if (column == null) {
+            column = table.getColumn(StringUtils.toUpperEnglish(name));
+        }
+        Index index = null;
+        for (Index i : table.getIndexes()) {
+            if (i.getIndexType().isText() && i.getColumns()[0] == column) {
+                index = i;
+                break;
+            }
+        }
+        if (index == null) {
+            throw DbException.get(ErrorCode.INDEX_NOT_FOUND_1,
+                    table.getSQL() + "(" + column.getSQL() + ")");
+        }
+        Column[] columns = table.getColumns();
+        SimpleResultSet rs = new SimpleResultSet();
+        for (Column c : columns) {
+            rs.addColumn(c.getName(), DataType.convertTypeToSQLType(c.getType()),
+                    MathUtils.convertLongToInt(c.getPrecision()), c.getScale());
+        }
+        rs.addColumn("SCORE", Types.DOUBLE, 0, 0);
+        if (onlyColumnList) {
+            return rs;
+        }
+        int max = limit == null ? 0 : limit.getInt();
+        for (Map.Entry<Long, Double> e : index.searchText(session, text.getString(), max).entrySet()) {
+            Row row = table.getRow(session, e.getKey());
+            if (row == null) { // 当前事务看不到
+                continue;
+            }
+            Object[] list = new Object[columns.length + 1];
+            for (int i = 0; i < columns.length; i++) {
+                Value v = row.getValue(i);
+                list[i] = v == null ? null : v.getObject();
+            }
+            list[columns.length] = e.getValue();
+            rs.addRow(list);
+        }
+        return rs;
+    }
+
     private static boolean cancelStatement(ServerSession session, int targetSessionId) {
         session.getUser().checkAdmin();
         ServerSession[] sessions = session.getDatabase().getSessions(false);
@@ -304,6 +359,10 @@ public class SystemFunction extends BuiltInFunction {
             }
             break;
         }
+        case MATCH: {
+            result = ValueResultSet.get(match(session, v0, v1, v2, v3, false));
+            break;
+        }
         case CSVWRITE: {
             session.getUser().checkAdmin();
             Connection conn = session.createNestedConnection(false);
@@ -654,6 +713,10 @@ public class SystemFunction extends BuiltInFunction {
         case DECODE:
             min = 3;
             break;
+        case MATCH:
+            min = 3;
+            max = 4;
+            break;
         default:
             DbException.throwInternalError("type=" + info.type);
         }
@@ -839,6 +902,10 @@ public class SystemFunction extends BuiltInFunction {
                 JdbcUtils.closeSilently(rs);
             }
             return x;
+        } else if (info.type == MATCH) {
+            Value v0 = args[0].getValue(session);
+            Value v1 = args[1].getValue(session);
+            return ValueResultSet.get(match(session, v0, v1, null, null, true));
         }
         return super.getValueForColumnList(session, args);
     }
@@ -0,0 +1,420 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.subquery;
+
+import java.util.ArrayList;
+
+import com.lealone.common.util.SmallLRUCache;
+import com.lealone.common.util.StatementBuilder;
+import com.lealone.db.Database;
+import com.lealone.db.result.Result;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.util.ValueHashMap;
+import com.lealone.db.value.CompareMode;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueArray;
+import com.lealone.db.value.ValueBoolean;
+import com.lealone.db.value.ValueNull;
+import com.lealone.sql.expression.Expression;
+import com.lealone.sql.expression.ExpressionColumn;
+import com.lealone.sql.expression.Parameter;
+import com.lealone.sql.expression.condition.Comparison;
+import com.lealone.sql.expression.condition.ConditionAndOr;
+import com.lealone.sql.expression.visitor.ExpressionVisitorFactory;
+import com.lealone.sql.expression.visitor.OuterColumnsVisitor;
+import com.lealone.sql.query.Query;
+import com.lealone.sql.query.Select;
+
+// 相关子查询每遇到一条外部记录都要执行一次，这里用两种办法减少执行次数:
+//
+// 1. 子查询的结果只跟它引用的外部字段的值有关，所以按这些值缓存子查询的结果，外部字段的值重复时直接用缓存的结果。
+//
+// 2. 如果子查询和外部查询的关联条件都是"子查询中的表达式 = 外部表达式"，
+//    就把关联条件去掉，改写成一个只需执行一次的非相关子查询，把结果按关联字段放到hash表中，
+//    EXISTS和IN变成hash semi join(NOT EXISTS和NOT IN就是anti join)，聚合函数的标量子查询变成group by之后的join。
+//    建hash表要读取子查询的全部记录，所以只有在执行次数乘以每次执行的代价超过改写后的查询的代价时才去建。
+//
+// 缓存和hash表只在一条语句的执行期间有效，数据有变化时也会清空。
+public class CorrelatedSubQuery {
+
+    public static final int EXISTS = 0;
+    public static final int IN = 1;
+    public static final int SCALAR = 2;
+    public static final int OTHER = 3; // 比如ALL和SOME，只缓存结果，不改写
+
+    private final Query query;
+    private final int type;
+    private final ExpressionColumn[] outerColumns;
+    private final boolean deterministic;
+
+    // 可以改写时才有值
+    private Expression[] outerKeys;
+    private int inType;
+    private String decorrelatedSQL;
+    private ArrayList<Parameter> parameters;
+    private Query decorrelated;
+
+    private ServerSession session;
+    private long commandId = -1;
+    private long modificationDataId;
+    private SmallLRUCache<Value, Value> cache;
+    private Value currentKey;
+    private int executions;
+    private ValueHashMap<Value> hashTable;
+    private boolean hashTableFailed;
+
+    private CorrelatedSubQuery(Query query, int type, ExpressionColumn[] outerColumns,
+            boolean deterministic) {
+        this.query = query;
+        this.type = type;
+        this.outerColumns = outerColumns;
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * Create the helper for a correlated subquery.
+     *
+     * @param session the session
+     * @param query the prepared subquery
+     * @param type EXISTS, IN, SCALAR or OTHER
+     * @return the helper, or null if the subquery is not correlated
+     */
+    public static CorrelatedSubQuery create(ServerSession session, Query query, int type) {
+        OuterColumnsVisitor visitor = ExpressionVisitorFactory.getOuterColumnsVisitor(0);
+        query.accept(visitor);
+        ArrayList<ExpressionColumn> columns = visitor.getOuterColumns();
+        if (columns.isEmpty()) {
+            return null;
+        }
+        // 同一个外部字段可能被引用多次
+        ArrayList<ExpressionColumn> list = new ArrayList<>(columns.size());
+        for (ExpressionColumn c : columns) {
+            boolean found = false;
+            for (ExpressionColumn c2 : list) {
+                if (c.getColumnResolver() == c2.getColumnResolver()
+                        && c.getColumn() == c2.getColumn()) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                list.add(c);
+            }
+        }
+        boolean deterministic = query.accept(ExpressionVisitorFactory.getDeterministicVisitor());
+        CorrelatedSubQuery sq = new CorrelatedSubQuery(query, type,
+                list.toArray(new ExpressionColumn[0]), deterministic);
+        if (deterministic && type != OTHER && query instanceof Select) {
+            sq.decorrelate(session, (Select) query, visitor.getParameters());
+        }
+        return sq;
+    }
+
+    // 如果能改写就生成改写后的sql，真正需要时才去prepare
+    private void decorrelate(ServerSession session, Select select, ArrayList<Parameter> params) {
+        if (select.isForUpdate() || select.getLimit() != null || select.getOffset() != null
+                || select.getSampleSize() != null || select.hasWindowFunctions()
+                || select.getCondition() == null) {
+            return;
+        }
+        ArrayList<Expression> expressions = select.getExpressions();
+        if (type == SCALAR) {
+            // 只处理没有group by和having的聚合查询，这样每组关联字段的值正好对应一条记录
+            if (!select.isGroupQuery() || select.getColumnCount() != 1
+                    || expressions.size() != 1) {
+                return;
+            }
+        } else if (select.isGroupQuery()) {
+            return;
+        } else if (type == IN && select.getColumnCount() != 1) {
+            return;
+        }
+        if (type != EXISTS && hasOuterColumns(expressions.get(0))) {
+            return;
+        }
+
+        ArrayList<Expression> conditions = new ArrayList<>();
+        addConditions(select.getCondition(), conditions);
+        ArrayList<Expression> outer = new ArrayList<>();
+        ArrayList<Expression> inner = new ArrayList<>();
+        StatementBuilder where = new StatementBuilder();
+        Database db = session.getDatabase();
+        for (Expression c : conditions) {
+            if (!hasOuterColumns(c)) {
+                where.appendExceptFirst(" AND ");
+                where.append(c.getSQL());
+                continue;
+            }
+            if (!(c instanceof Comparison)) {
+                return;
+            }
+            Comparison comp = (Comparison) c;
+            if (comp.getCompareType() != Comparison.EQUAL) {
+                return;
+            }
+            Expression l = comp.getLeft(), r = comp.getRight();
+            if (isOuterOnly(r) && !hasOuterColumns(l)) {
+                inner.add(l);
+                outer.add(r);
+            } else if (isOuterOnly(l) && !hasOuterColumns(r)) {
+                inner.add(r);
+                outer.add(l);
+            } else {
+                return;
+            }
+            int t = l.getType();
+            if (t != r.getType() || !isHashable(db, t)) {
+                return;
+            }
+        }
+        if (inner.isEmpty()) {
+            return;
+        }
+        if (type == IN) {
+            inType = expressions.get(0).getType();
+            if (!isHashable(db, inType))
+                return;
+        }
+
+        StatementBuilder buff = new StatementBuilder("SELECT ");
+        if (type != SCALAR) {
+            buff.append("DISTINCT ");
+        }
+        for (Expression e : inner) {
+            buff.appendExceptFirst(", ");
+            buff.append(e.getSQL());
+        }
+        if (type != EXISTS) {
+            buff.append(", ").append(expressions.get(0).getSQL());
+        }
+        buff.append(" FROM ").append(select.getFromPlanSQL());
+        if (where.length() > 0) {
+            buff.append(" WHERE ").append(where.toString());
+        }
+        if (type == SCALAR) {
+            buff.append(" GROUP BY ");
+            buff.resetCount();
+            for (Expression e : inner) {
+                buff.appendExceptFirst(", ");
+                buff.append(e.getSQL());
+            }
+        }
+        outerKeys = outer.toArray(new Expression[0]);
+        decorrelatedSQL = buff.toString();
+        parameters = params;
+    }
+
+    private static void addConditions(Expression condition, ArrayList<Expression> conditions) {
+        if (condition instanceof ConditionAndOr) {
+            ConditionAndOr c = (ConditionAndOr) condition;
+            if (c.getAndOrType() == ConditionAndOr.AND) {
+                addConditions(c.getLeft(), conditions);
+                addConditions(c.getRight(), conditions);
+                return;
+            }
+        }
+        conditions.add(condition);
+    }
+
+    private static boolean hasOuterColumns(Expression e) {
+        OuterColumnsVisitor visitor = ExpressionVisitorFactory.getOuterColumnsVisitor(1);
+        e.accept(visitor);
+        return !visitor.getOuterColumns().isEmpty();
+    }
+
+    private static boolean isOuterOnly(Expression e) {
+        OuterColumnsVisitor visitor = ExpressionVisitorFactory.getOuterColumnsVisitor(1);
+        e.accept(visitor);
+        return !visitor.getOuterColumns().isEmpty() && !visitor.hasInnerColumns();
+    }
+
+    // 用hash表查找时相等的值必须有相同的hashCode，
+    // DECIMAL和DOUBLE这类类型值相等时equals也可能返回false，排序规则不是默认的字符串也一样
+    private static boolean isHashable(Database db, int type) {
+        switch (type) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DATE:
+        case Value.UUID:
+            return true;
+        case Value.STRING:
+            return CompareMode.OFF.equals(db.getCompareMode().getName());
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Get the result for the current outer row from the cache or the hash table.
+     *
+     * @param session the session
+     * @param left the left value of the IN, ALL or SOME condition, or null
+     * @return the result, or null if the subquery needs to be executed
+     */
+    public Value getValue(ServerSession session, Value left) {
+        Database db = session.getDatabase();
+        int cacheSize = db.getSettings().subqueryCacheSize;
+        if (!deterministic || cacheSize <= 0) {
+            currentKey = null;
+            return null;
+        }
+        long id = session.getCurrentCommandId();
+        long now = db.getModificationDataId();
+        // 语句可能被其他session重用，commandId只在同一个session中有意义
+        if (this.session != session || commandId != id || modificationDataId != now) {
+            this.session = session;
+            commandId = id;
+            modificationDataId = now;
+            if (cache != null) {
+                cache.clear();
+                cache.setMaxSize(cacheSize);
+            }
+            executions = 0;
+            hashTable = null;
+            hashTableFailed = false;
+        }
+        if (hashTable != null
+                || decorrelatedSQL != null && !hashTableFailed && buildHashTable(session)) {
+            Value v = lookup(session, left);
+            if (v != null) {
+                return v;
+            }
+        }
+        int len = outerColumns.length;
+        Value[] values = new Value[left == null ? len : len + 1];
+        for (int i = 0; i < len; i++) {
+            values[i] = outerColumns[i].getValue(session);
+        }
+        if (left != null) {
+            values[len] = left;
+        }
+        currentKey = ValueArray.get(values);
+        if (cache != null) {
+            Value v = cache.get(currentKey);
+            if (v != null) {
+                return v;
+            }
+        }
+        executions++;
+        return null;
+    }
+
+    /**
+     * Remember the result of the subquery for the current outer row.
+     *
+     * @param session the session
+     * @param v the result
+     */
+    public void setValue(ServerSession session, Value v) {
+        if (currentKey == null) {
+            return;
+        }
+        if (cache == null) {
+            cache = SmallLRUCache.newInstance(session.getDatabase().getSettings().subqueryCacheSize);
+        }
+        cache.put(currentKey, v);
+    }
+
+    private boolean buildHashTable(ServerSession session) {
+        // 至少已经执行过一次子查询才考虑改写，只有一条外部记录时不用多prepare一次
+        if (executions == 0) {
+            return false;
+        }
+        if (decorrelated == null) {
+            decorrelated = (Query) session.prepareStatement(decorrelatedSQL, true);
+        } else {
+            decorrelated.setSession(session);
+        }
+        if (executions * query.getCost() < decorrelated.getCost()) {
+            return false;
+        }
+        ArrayList<Parameter> list = decorrelated.getParameters();
+        for (Parameter p : parameters) {
+            // 参数在生成的sql中还是原来的序号
+            if (list != null && p.getIndex() < list.size())
+                list.get(p.getIndex()).setValue(p.getValue());
+        }
+        int keyCount = outerKeys.length;
+        int maxRows = session.getDatabase().getMaxMemoryRows();
+        ValueHashMap<Value> map = ValueHashMap.newInstance();
+        Result result = decorrelated.query(0);
+        try {
+            while (result.next()) {
+                if (map.size() > maxRows) {
+                    // 结果太多就不放在内存中了，还是一条条执行
+                    hashTableFailed = true;
+                    return false;
+                }
+                Value[] row = result.currentRow();
+                Value[] keys = new Value[keyCount];
+                boolean hasNull = false;
+                for (int i = 0; i < keyCount; i++) {
+                    keys[i] = row[i];
+                    hasNull |= row[i] == ValueNull.INSTANCE;
+                }
+                if (hasNull) {
+                    // 关联字段是null的记录在原来的子查询中不会被选中
+                    continue;
+                }
+                if (type == SCALAR) {
+                    map.put(ValueArray.get(keys), row[keyCount]);
+                } else {
+                    map.put(ValueArray.get(keys), ValueBoolean.get(true));
+                    if (type == IN) {
+                        Value[] keys2 = new Value[keyCount + 1];
+                        System.arraycopy(row, 0, keys2, 0, keyCount + 1);
+                        map.put(ValueArray.get(keys2), ValueBoolean.get(true));
+                    }
+                }
+            }
+        } finally {
+            result.close();
+        }
+        hashTable = map;
+        return true;
+    }
+
+    private Value lookup(ServerSession session, Value left) {
+        int keyCount = outerKeys.length;
+        Value[] keys = new Value[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            Value v = outerKeys[i].getValue(session);
+            if (v == ValueNull.INSTANCE) {
+                // 标量子查询还要算出聚合函数在没有记录时的值，比如count是0
+                return type == SCALAR ? null : ValueBoolean.get(false);
+            }
+            keys[i] = v;
+        }
+        Value v = hashTable.get(ValueArray.get(keys));
+        if (type == SCALAR) {
+            return v;
+        } else if (v == null) {
+            return ValueBoolean.get(false);
+        } else if (type == EXISTS) {
+            return v;
+        }
+        if (left == ValueNull.INSTANCE) {
+            return left;
+        }
+        if (left.getType() != inType) {
+            return null;
+        }
+        Value[] keys2 = new Value[keyCount + 1];
+        System.arraycopy(keys, 0, keys2, 0, keyCount);
+        keys2[keyCount] = left;
+        if (hashTable.get(ValueArray.get(keys2)) != null) {
+            return ValueBoolean.get(true);
+        }
+        keys2[keyCount] = ValueNull.INSTANCE;
+        if (hashTable.get(ValueArray.get(keys2)) != null) {
+            return ValueNull.INSTANCE;
+        }
+        return ValueBoolean.get(false);
+    }
+}
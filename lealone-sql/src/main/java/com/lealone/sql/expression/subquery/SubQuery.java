@@ -30,6 +30,7 @@ public class SubQuery extends Expression {
 
     private final Query query;
     private Expression expression;
+    private CorrelatedSubQuery correlated;
 
     public SubQuery(Query query) {
         this.query = query;
@@ -37,6 +38,18 @@ public class SubQuery extends Expression {
 
     @Override
     public Value getValue(ServerSession session) {
+        if (correlated != null) {
+            Value v = correlated.getValue(session, null);
+            if (v == null) {
+                v = getValue0(session);
+                correlated.setValue(session, v);
+            }
+            return v;
+        }
+        return getValue0(session);
+    }
+
+    private Value getValue0(ServerSession session) {
         query.setSession(session);
         Result result = query.query(2);
         try {
@@ -70,6 +83,7 @@ public class SubQuery extends Expression {
     @Override
     public Expression optimize(ServerSession session) {
         query.prepare();
+        correlated = CorrelatedSubQuery.create(session, query, CorrelatedSubQuery.SCALAR);
         return this;
     }
 
@@ -34,6 +34,7 @@ import com.lealone.sql.expression.function.Function;
 import com.lealone.sql.expression.function.JavaFunction;
 import com.lealone.sql.expression.function.TableFunction;
 import com.lealone.sql.expression.subquery.SubQuery;
+import com.lealone.sql.expression.window.WindowFunction;
 import com.lealone.sql.query.Query;
 import com.lealone.sql.query.Select;
 import com.lealone.sql.query.SelectUnion;
@@ -214,6 +215,12 @@ public abstract class BooleanExpressionVisitor extends ExpressionVisitorBase<Boo
         return visitFunction(e);
     }
 
+    @Override
+    public Boolean visitWindowFunction(WindowFunction e) {
+        // 窗口函数的参数都作为隐藏列放在select字段列表中了，会单独访问
+        return true;
+    }
+
     @Override
     public Boolean visitSelect(Select s) {
         ExpressionVisitor<Boolean> v2 = incrementQueryLevel(1);
@@ -34,6 +34,16 @@ public class ExpressionVisitorFactory {
         return new DependenciesVisitor(dependencies);
     }
 
+    /**
+     * Create a new visitor to collect the columns of outer queries.
+     *
+     * @param queryLevel the query level of the visited expressions plus one
+     * @return the new visitor
+     */
+    public static OuterColumnsVisitor getOuterColumnsVisitor(int queryLevel) {
+        return new OuterColumnsVisitor(queryLevel);
+    }
+
     public static MaxModificationIdVisitor getMaxModificationIdVisitor() {
         return new MaxModificationIdVisitor();
     }
@@ -101,6 +111,19 @@ public class ExpressionVisitorFactory {
         return INDEPENDENT_VISITOR;
     }
 
+    /**
+     * The visitor singleton for the type STREAMABLE.
+     */
+    private static final StreamableVisitor STREAMABLE_VISITOR = new StreamableVisitor();
+
+    /**
+     * Can the expression still be evaluated after the statement has ended
+     * (that means it doesn't contain subqueries)?
+     */
+    public static StreamableVisitor getStreamableVisitor() {
+        return STREAMABLE_VISITOR;
+    }
+
     /**
      * Create a new visitor to check if all aggregates are for the given table.
      *
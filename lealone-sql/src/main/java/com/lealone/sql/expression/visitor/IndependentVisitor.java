@@ -31,4 +31,10 @@ public class IndependentVisitor extends BooleanExpressionVisitor {
     public Boolean visitSequenceValue(SequenceValue e) {
         return false;
     }
+
+    // 访问子查询时要用新的对象记录层次，否则会改变单例的层次
+    @Override
+    protected ExpressionVisitorBase<Boolean> copy() {
+        return new IndependentVisitor();
+    }
 }
@@ -11,6 +11,7 @@ import com.lealone.sql.expression.Rownum;
 import com.lealone.sql.expression.aggregate.Aggregate;
 import com.lealone.sql.expression.aggregate.BuiltInAggregate;
 import com.lealone.sql.expression.aggregate.JavaAggregate;
+import com.lealone.sql.expression.window.WindowFunction;
 
 public class OptimizableVisitor extends BooleanExpressionVisitor {
 
@@ -40,4 +41,9 @@ public class OptimizableVisitor extends BooleanExpressionVisitor {
     public Boolean visitAggregate(Aggregate e) {
         return ((BuiltInAggregate) e).isOptimizable(table) && super.visitAggregate(e);
     }
+
+    @Override
+    public Boolean visitWindowFunction(WindowFunction e) {
+        return false;
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.visitor;
+
+import java.util.ArrayList;
+
+import com.lealone.sql.expression.ExpressionColumn;
+import com.lealone.sql.expression.Parameter;
+
+// 找出引用了外层查询的字段和用到的参数，queryLevel是被访问的表达式所在查询的层次加1
+public class OuterColumnsVisitor extends VoidExpressionVisitor {
+
+    // 访问嵌套的子查询时用的是copy出来的visitor，结果都记在root中
+    private final OuterColumnsVisitor root;
+    private final ArrayList<ExpressionColumn> outerColumns;
+    private final ArrayList<Parameter> parameters;
+    private boolean innerColumns;
+
+    public OuterColumnsVisitor(int queryLevel) {
+        root = this;
+        outerColumns = new ArrayList<>();
+        parameters = new ArrayList<>();
+        setQueryLevel(queryLevel);
+    }
+
+    private OuterColumnsVisitor(OuterColumnsVisitor root) {
+        this.root = root;
+        outerColumns = null;
+        parameters = null;
+    }
+
+    public ArrayList<ExpressionColumn> getOuterColumns() {
+        return outerColumns;
+    }
+
+    public ArrayList<Parameter> getParameters() {
+        return parameters;
+    }
+
+    // 是否引用了当前查询或嵌套子查询中的字段
+    public boolean hasInnerColumns() {
+        return innerColumns;
+    }
+
+    @Override
+    public Void visitExpressionColumn(ExpressionColumn e) {
+        if (e.getQueryLevel() >= getQueryLevel())
+            root.outerColumns.add(e);
+        else
+            root.innerColumns = true;
+        return null;
+    }
+
+    @Override
+    public Void visitParameter(Parameter e) {
+        root.parameters.add(e);
+        return null;
+    }
+
+    @Override
+    protected ExpressionVisitorBase<Void> copy() {
+        return new OuterColumnsVisitor(root);
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.visitor;
+
+import com.lealone.sql.query.Query;
+
+// 子查询的临时结果在语句结束时就关闭了，带子查询的表达式不能在语句结束后再计算
+public class StreamableVisitor extends BooleanExpressionVisitor {
+
+    @Override
+    protected Boolean visitQuery(Query query) {
+        return false;
+    }
+
+    @Override
+    protected ExpressionVisitorBase<Boolean> copy() {
+        return new StreamableVisitor();
+    }
+}
@@ -34,6 +34,7 @@ import com.lealone.sql.expression.function.Function;
 import com.lealone.sql.expression.function.JavaFunction;
 import com.lealone.sql.expression.function.TableFunction;
 import com.lealone.sql.expression.subquery.SubQuery;
+import com.lealone.sql.expression.window.WindowFunction;
 import com.lealone.sql.query.Query;
 import com.lealone.sql.query.Select;
 import com.lealone.sql.query.SelectUnion;
@@ -227,6 +228,12 @@ public class VoidExpressionVisitor extends ExpressionVisitorBase<Void> {
         return null;
     }
 
+    @Override
+    public Void visitWindowFunction(WindowFunction e) {
+        // 不需要访问参数，见BooleanExpressionVisitor.visitWindowFunction
+        return null;
+    }
+
     @Override
     public Void visitSelect(Select s) {
         ExpressionVisitor<Void> v2 = incrementQueryLevel(1);
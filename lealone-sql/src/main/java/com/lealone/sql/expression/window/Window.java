@@ -0,0 +1,209 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.window;
+
+import java.util.ArrayList;
+
+import com.lealone.common.util.StatementBuilder;
+import com.lealone.common.util.StringUtils;
+import com.lealone.db.Database;
+import com.lealone.db.result.SortOrder;
+import com.lealone.sql.expression.Expression;
+import com.lealone.sql.expression.SelectOrderBy;
+
+/**
+ * The window specification of a window function: OVER (PARTITION BY ... ORDER BY ... frame).
+ *
+ * The frame bounds are offsets relative to the current row,
+ * n PRECEDING is -n, CURRENT ROW is 0 and n FOLLOWING is n.
+ */
+public class Window {
+
+    public static final long UNBOUNDED_PRECEDING = Long.MIN_VALUE;
+    public static final long UNBOUNDED_FOLLOWING = Long.MAX_VALUE;
+
+    private final ArrayList<Expression> partitionBy;
+    private final ArrayList<SelectOrderBy> orderBy;
+    private final boolean hasFrame;
+    private final boolean rows; // ROWS还是RANGE
+    private final long frameStart;
+    private final long frameEnd;
+
+    // 以下字段在Select.init时设置，是PARTITION BY和ORDER BY表达式在select字段列表中的位置
+    private int[] partitionIndexes;
+    private int[] orderIndexes;
+
+    public Window(ArrayList<Expression> partitionBy, ArrayList<SelectOrderBy> orderBy) {
+        this(partitionBy, orderBy, false, false, UNBOUNDED_PRECEDING, UNBOUNDED_FOLLOWING);
+    }
+
+    public Window(ArrayList<Expression> partitionBy, ArrayList<SelectOrderBy> orderBy, boolean hasFrame,
+            boolean rows, long frameStart, long frameEnd) {
+        this.partitionBy = partitionBy;
+        this.orderBy = orderBy;
+        this.hasFrame = hasFrame;
+        this.rows = rows;
+        this.frameStart = frameStart;
+        this.frameEnd = frameEnd;
+    }
+
+    public ArrayList<Expression> getPartitionBy() {
+        return partitionBy;
+    }
+
+    public ArrayList<SelectOrderBy> getOrderBy() {
+        return orderBy;
+    }
+
+    public boolean isRows() {
+        return rows;
+    }
+
+    // 没有指定frame时，有ORDER BY就是RANGE UNBOUNDED PRECEDING，否则是整个分区
+    public long getFrameStart() {
+        return hasFrame || orderBy != null ? frameStart : UNBOUNDED_PRECEDING;
+    }
+
+    public long getFrameEnd() {
+        if (hasFrame)
+            return frameEnd;
+        return orderBy != null ? 0 : UNBOUNDED_FOLLOWING;
+    }
+
+    public int[] getPartitionIndexes() {
+        return partitionIndexes;
+    }
+
+    public void setPartitionIndexes(int[] partitionIndexes) {
+        this.partitionIndexes = partitionIndexes;
+    }
+
+    public int[] getOrderIndexes() {
+        return orderIndexes;
+    }
+
+    public void setOrderIndexes(int[] orderIndexes) {
+        this.orderIndexes = orderIndexes;
+    }
+
+    public int[] getOrderSortTypes() {
+        int size = orderBy == null ? 0 : orderBy.size();
+        int[] sortTypes = new int[size];
+        for (int i = 0; i < size; i++) {
+            SelectOrderBy o = orderBy.get(i);
+            int type = o.descending ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+            if (o.nullsFirst) {
+                type += SortOrder.NULLS_FIRST;
+            } else if (o.nullsLast) {
+                type += SortOrder.NULLS_LAST;
+            }
+            sortTypes[i] = type;
+        }
+        return sortTypes;
+    }
+
+    /**
+     * 窗口函数的计算顺序，先按PARTITION BY的字段排序，再按ORDER BY的字段排序
+     *
+     * @param database the database
+     * @return the sort order, or null if the window has no PARTITION BY and no ORDER BY
+     */
+    public SortOrder createSortOrder(Database database) {
+        int pSize = partitionIndexes.length;
+        int oSize = orderIndexes.length;
+        if (pSize + oSize == 0) {
+            return null;
+        }
+        int[] indexes = new int[pSize + oSize];
+        int[] sortTypes = new int[pSize + oSize];
+        System.arraycopy(partitionIndexes, 0, indexes, 0, pSize);
+        System.arraycopy(orderIndexes, 0, indexes, pSize, oSize);
+        System.arraycopy(getOrderSortTypes(), 0, sortTypes, pSize, oSize);
+        return new SortOrder(database, indexes, sortTypes, null);
+    }
+
+    public SortOrder createPartitionOrder(Database database) {
+        if (partitionIndexes.length == 0) {
+            return null;
+        }
+        return new SortOrder(database, partitionIndexes, new int[partitionIndexes.length], null);
+    }
+
+    public SortOrder createPeerOrder(Database database) {
+        if (orderIndexes.length == 0) {
+            return null;
+        }
+        return new SortOrder(database, orderIndexes, getOrderSortTypes(), null);
+    }
+
+    /**
+     * PARTITION BY和ORDER BY都一样的窗口函数可以在同一趟排序中计算
+     *
+     * @return the key of the sort order
+     */
+    public String getSortKey() {
+        StatementBuilder buff = new StatementBuilder();
+        if (partitionBy != null) {
+            for (Expression e : partitionBy) {
+                buff.appendExceptFirst(", ");
+                buff.append(e.getSQL());
+            }
+        }
+        buff.append(';');
+        if (orderBy != null) {
+            buff.resetCount();
+            for (SelectOrderBy o : orderBy) {
+                buff.appendExceptFirst(", ");
+                buff.append(o.getSQL());
+            }
+        }
+        return buff.toString();
+    }
+
+    public String getSQL() {
+        StatementBuilder buff = new StatementBuilder("OVER (");
+        if (partitionBy != null) {
+            buff.append("PARTITION BY ");
+            for (Expression e : partitionBy) {
+                buff.appendExceptFirst(", ");
+                buff.append(StringUtils.unEnclose(e.getSQL()));
+            }
+        }
+        if (orderBy != null) {
+            if (partitionBy != null)
+                buff.append(' ');
+            buff.append("ORDER BY ");
+            buff.resetCount();
+            for (SelectOrderBy o : orderBy) {
+                buff.appendExceptFirst(", ");
+                buff.append(StringUtils.unEnclose(o.getSQL()));
+            }
+        }
+        if (hasFrame) {
+            if (partitionBy != null || orderBy != null)
+                buff.append(' ');
+            buff.append(rows ? "ROWS" : "RANGE").append(" BETWEEN ");
+            appendBound(buff, frameStart);
+            buff.append(" AND ");
+            appendBound(buff, frameEnd);
+        }
+        return buff.append(')').toString();
+    }
+
+    private static void appendBound(StatementBuilder buff, long bound) {
+        if (bound == UNBOUNDED_PRECEDING) {
+            buff.append("UNBOUNDED PRECEDING");
+        } else if (bound == UNBOUNDED_FOLLOWING) {
+            buff.append("UNBOUNDED FOLLOWING");
+        } else if (bound == 0) {
+            buff.append("CURRENT ROW");
+        } else if (bound < 0) {
+            buff.append(-bound).append(" PRECEDING");
+        } else {
+            buff.append(bound).append(" FOLLOWING");
+        }
+    }
+}
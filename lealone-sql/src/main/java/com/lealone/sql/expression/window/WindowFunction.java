@@ -0,0 +1,345 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.expression.window;
+
+import com.lealone.common.util.StatementBuilder;
+import com.lealone.db.result.RowList;
+import com.lealone.db.result.SortOrder;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueLong;
+import com.lealone.db.value.ValueNull;
+import com.lealone.sql.expression.Expression;
+import com.lealone.sql.expression.aggregate.AggregateData;
+import com.lealone.sql.expression.aggregate.BuiltInAggregate;
+import com.lealone.sql.expression.visitor.ExpressionVisitor;
+
+/**
+ * A window function, such as RANK() OVER (PARTITION BY a ORDER BY b).
+ *
+ * The arguments, the PARTITION BY and the ORDER BY expressions are added to the select list
+ * as hidden columns, the value of the window function is computed by the window operator
+ * after a whole partition has been read.
+ */
+public class WindowFunction extends Expression {
+
+    public static final int ROW_NUMBER = 0;
+    public static final int RANK = 1;
+    public static final int DENSE_RANK = 2;
+    public static final int LAG = 3;
+    public static final int LEAD = 4;
+    public static final int AGGREGATE = 5;
+
+    private final int type;
+    private final Expression[] args;
+    private final BuiltInAggregate aggregate;
+    private final Window window;
+
+    // 以下字段在Select.init时设置
+    private int columnIndex;
+    private int[] argIndexes;
+
+    private int dataType;
+    private int scale;
+    private long precision;
+    private int displaySize;
+
+    public WindowFunction(int type, Expression[] args, Window window) {
+        this(type, args, null, window);
+    }
+
+    public WindowFunction(BuiltInAggregate aggregate, Window window) {
+        this(AGGREGATE, aggregate.getOn() == null ? new Expression[0]
+                : new Expression[] { aggregate.getOn() }, aggregate, window);
+    }
+
+    private WindowFunction(int type, Expression[] args, BuiltInAggregate aggregate, Window window) {
+        this.type = type;
+        this.args = args;
+        this.aggregate = aggregate;
+        this.window = window;
+    }
+
+    /**
+     * Get the window function type for this name, or -1 if not found.
+     * ROW_NUMBER is not included because it is also a normal function.
+     *
+     * @param name the function name
+     * @return the type or -1
+     */
+    public static int getWindowFunctionType(String name) {
+        switch (name) {
+        case "RANK":
+            return RANK;
+        case "DENSE_RANK":
+            return DENSE_RANK;
+        case "LAG":
+            return LAG;
+        case "LEAD":
+            return LEAD;
+        default:
+            return -1;
+        }
+    }
+
+    public int getWindowFunctionType() {
+        return type;
+    }
+
+    public Expression[] getArgs() {
+        return args;
+    }
+
+    public Window getWindow() {
+        return window;
+    }
+
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    public void setColumnIndex(int columnIndex) {
+        this.columnIndex = columnIndex;
+    }
+
+    public void setArgIndexes(int[] argIndexes) {
+        this.argIndexes = argIndexes;
+    }
+
+    @Override
+    public Value getValue(ServerSession session) {
+        // 真正的值由窗口算子在分区上计算后回填到记录中，扫描记录时只是占个位置
+        return ValueNull.INSTANCE;
+    }
+
+    @Override
+    public int getType() {
+        return dataType;
+    }
+
+    @Override
+    public Expression optimize(ServerSession session) {
+        for (int i = 0; i < args.length; i++) {
+            args[i] = args[i].optimize(session);
+        }
+        switch (type) {
+        case ROW_NUMBER:
+        case RANK:
+        case DENSE_RANK:
+            dataType = Value.LONG;
+            scale = 0;
+            precision = ValueLong.PRECISION;
+            displaySize = ValueLong.DISPLAY_SIZE;
+            break;
+        case LAG:
+        case LEAD:
+            dataType = args[0].getType();
+            scale = args[0].getScale();
+            precision = args[0].getPrecision();
+            displaySize = args[0].getDisplaySize();
+            break;
+        default:
+            aggregate.optimize(session);
+            dataType = aggregate.getType();
+            scale = aggregate.getScale();
+            precision = aggregate.getPrecision();
+            displaySize = aggregate.getDisplaySize();
+        }
+        return this;
+    }
+
+    @Override
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public long getPrecision() {
+        return precision;
+    }
+
+    @Override
+    public int getDisplaySize() {
+        return displaySize;
+    }
+
+    @Override
+    public String getSQL() {
+        StatementBuilder buff = new StatementBuilder();
+        switch (type) {
+        case ROW_NUMBER:
+            buff.append("ROW_NUMBER()");
+            break;
+        case RANK:
+            buff.append("RANK()");
+            break;
+        case DENSE_RANK:
+            buff.append("DENSE_RANK()");
+            break;
+        case LAG:
+        case LEAD:
+            buff.append(type == LAG ? "LAG(" : "LEAD(");
+            for (Expression e : args) {
+                buff.appendExceptFirst(", ");
+                buff.append(e.getSQL());
+            }
+            buff.append(')');
+            break;
+        default:
+            buff.append(aggregate.getSQL());
+        }
+        return buff.append(' ').append(window.getSQL()).toString();
+    }
+
+    @Override
+    public int getCost() {
+        int cost = 1;
+        for (Expression e : args) {
+            cost += e.getCost();
+        }
+        return cost;
+    }
+
+    @Override
+    public <R> R accept(ExpressionVisitor<R> visitor) {
+        return visitor.visitWindowFunction(this);
+    }
+
+    /**
+     * 计算分区中每条记录的窗口函数值，分区中的记录已经按ORDER BY排好序了
+     *
+     * @param session the session
+     * @param partition the rows of the partition, spilled to a temporary map if there are many
+     * @param peerOrder the ORDER BY of the window, null if there is no ORDER BY
+     */
+    public void compute(ServerSession session, RowList partition, SortOrder peerOrder) {
+        int size = partition.size();
+        switch (type) {
+        case ROW_NUMBER:
+            for (int i = 0; i < size; i++) {
+                partition.setValue(i, columnIndex, ValueLong.get(i + 1));
+            }
+            break;
+        case RANK:
+        case DENSE_RANK: {
+            long rank = 0;
+            long denseRank = 0;
+            for (int i = 0; i < size; i++) {
+                Value[] row = partition.get(i);
+                if (i == 0 || !isPeer(peerOrder, partition.get(i - 1), row)) {
+                    rank = i + 1;
+                    denseRank++;
+                }
+                partition.setValue(i, columnIndex, ValueLong.get(type == RANK ? rank : denseRank));
+            }
+            break;
+        }
+        case LAG:
+        case LEAD:
+            computeLagOrLead(partition);
+            break;
+        default:
+            computeAggregate(session, partition, peerOrder);
+        }
+    }
+
+    private static boolean isPeer(SortOrder peerOrder, Value[] a, Value[] b) {
+        // 没有ORDER BY时分区中的所有记录都是peer
+        return peerOrder == null || peerOrder.compare(a, b) == 0;
+    }
+
+    // LAG(x [, offset [, default]])，offset和default对每条记录单独求值
+    private void computeLagOrLead(RowList partition) {
+        int size = partition.size();
+        for (int i = 0; i < size; i++) {
+            Value[] row = partition.get(i);
+            Value v;
+            Value offset = argIndexes.length > 1 ? row[argIndexes[1]] : ValueLong.get(1);
+            if (offset == ValueNull.INSTANCE) {
+                v = ValueNull.INSTANCE;
+            } else {
+                long j = type == LAG ? i - offset.getLong() : i + offset.getLong();
+                if (j >= 0 && j < size) {
+                    v = partition.get((int) j)[argIndexes[0]];
+                } else {
+                    v = argIndexes.length > 2 ? row[argIndexes[2]] : ValueNull.INSTANCE;
+                }
+            }
+            partition.setValue(i, columnIndex, v == ValueNull.INSTANCE ? v : v.convertTo(dataType));
+        }
+    }
+
+    private void computeAggregate(ServerSession session, RowList partition,
+            SortOrder peerOrder) {
+        int size = partition.size();
+        long frameStart = window.getFrameStart();
+        long frameEnd = window.getFrameEnd();
+        int[] peerStart = null;
+        int[] peerEnd = null;
+        if (!window.isRows()) {
+            // RANGE的CURRENT ROW是指当前记录的所有peer
+            peerStart = new int[size];
+            peerEnd = new int[size];
+            int start = 0;
+            for (int i = 1; i <= size; i++) {
+                if (i == size || !isPeer(peerOrder, partition.get(i - 1), partition.get(i))) {
+                    for (int j = start; j < i; j++) {
+                        peerStart[j] = start;
+                        peerEnd[j] = i - 1;
+                    }
+                    start = i;
+                }
+            }
+        }
+        AggregateData data = null;
+        int added = 0; // 增量计算时已经加到data中的记录数
+        for (int i = 0; i < size; i++) {
+            int lo = getFrameBound(frameStart, i, size, peerStart);
+            int hi = getFrameBound(frameEnd, i, size, peerEnd);
+            Value v;
+            if (frameStart == Window.UNBOUNDED_PRECEDING) {
+                // 起点固定，窗口只会往后扩展，可以增量计算
+                if (data == null) {
+                    data = aggregate.createWindowAggregateData();
+                }
+                for (int end = Math.min(hi, size - 1); added <= end; added++) {
+                    data.add(session, getArgValue(partition.get(added)));
+                }
+                v = aggregate.getWindowValue(session, data);
+            } else {
+                AggregateData frameData = aggregate.createWindowAggregateData();
+                for (int j = Math.max(lo, 0), end = Math.min(hi, size - 1); j <= end; j++) {
+                    frameData.add(session, getArgValue(partition.get(j)));
+                }
+                v = aggregate.getWindowValue(session, frameData);
+            }
+            partition.setValue(i, columnIndex, v);
+        }
+    }
+
+    private Value getArgValue(Value[] row) {
+        return argIndexes.length == 0 ? null : row[argIndexes[0]];
+    }
+
+    // 返回的位置可能超出分区的范围，此时frame是空的
+    private static int getFrameBound(long bound, int i, int size, int[] peers) {
+        if (bound == Window.UNBOUNDED_PRECEDING) {
+            return 0;
+        } else if (bound == Window.UNBOUNDED_FOLLOWING) {
+            return size - 1;
+        } else if (peers != null) {
+            return peers[i];
+        } else {
+            long b = i + bound;
+            if (b < -1) {
+                return -1;
+            } else if (b > size) {
+                return size;
+            }
+            return (int) b;
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.StatementBuilder;
@@ -17,9 +18,11 @@ import com.lealone.db.index.IndexConditionType;
 import com.lealone.db.result.Result;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Column;
+import com.lealone.db.table.ColumnStatistics;
 import com.lealone.db.table.TableType;
 import com.lealone.db.value.CompareMode;
 import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueNull;
 import com.lealone.sql.expression.Expression;
 import com.lealone.sql.expression.ExpressionColumn;
 import com.lealone.sql.expression.condition.Comparison;
@@ -133,9 +136,11 @@ public class IndexCondition {
      * Get the current result of the expression. The rows may not be of the same
      * type, therefore the rows may not be unique.
      *
+     * @param session the session
      * @return the result
      */
-    public Result getCurrentResult() {
+    public Result getCurrentResult(ServerSession session) {
+        expressionQuery.setSession(session);
         return expressionQuery.query(0);
     }
 
@@ -182,6 +187,9 @@ public class IndexCondition {
             buff.append(expressionQuery.getPlanSQL());
             buff.append(')');
             break;
+        case Comparison.CONTAINS:
+            buff.append(" CONTAINS ");
+            break;
         default:
             DbException.throwInternalError("type=" + compareType);
         }
@@ -226,11 +234,138 @@ public class IndexCondition {
         case Comparison.SMALLER_EQUAL:
         case Comparison.SMALLER:
             return IndexConditionType.END;
+        case Comparison.CONTAINS:
+            return IndexConditionType.CONTAINS;
         default:
             throw DbException.getInternalError("type=" + compareType);
         }
     }
 
+    /**
+     * Estimate the fraction of rows that match the index conditions of each
+     * column, using the statistics of the columns.
+     *
+     * @param session the session
+     * @param indexConditions all index conditions
+     * @param columnCount the number of columns, including the virtual columns
+     * @return per-column selectivity, a negative element means unknown,
+     *          or null if no column has statistics
+     */
+    public static double[] getSelectivities(ServerSession session,
+            ArrayList<IndexCondition> indexConditions, int columnCount) {
+        double[] selectivities = null;
+        for (int i = 0, size = indexConditions.size(); i < size; i++) {
+            Column column = indexConditions.get(i).column;
+            if (column == null || column.getStatistics() == null) {
+                continue;
+            }
+            int id = column.getColumnId();
+            if (id < 0 || id >= columnCount) {
+                continue;
+            }
+            if (selectivities == null) {
+                selectivities = new double[columnCount];
+                Arrays.fill(selectivities, -1);
+            } else if (selectivities[id] != -1) {
+                continue; // 同一个字段的多个条件已经一起估算过了
+            }
+            selectivities[id] = getSelectivity(session, column, indexConditions);
+        }
+        return selectivities;
+    }
+
+    // 同一个字段上的多个等值条件取最小的选择率，范围条件合并成一个区间后再估算
+    private static double getSelectivity(ServerSession session, Column column,
+            ArrayList<IndexCondition> indexConditions) {
+        ColumnStatistics stats = column.getStatistics();
+        CompareMode mode = session.getDatabase().getCompareMode();
+        double equal = -1;
+        Value low = null, high = null;
+        boolean lowInclusive = true, highInclusive = true;
+        boolean range = false;
+        for (int i = 0, size = indexConditions.size(); i < size; i++) {
+            IndexCondition c = indexConditions.get(i);
+            if (c.column != column || !c.isEvaluatable()) {
+                continue;
+            }
+            double s;
+            switch (c.compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE: {
+                Value v = c.getConstantValue(session, c.expression);
+                if (v == null) {
+                    s = stats.getAverageEqualSelectivity();
+                } else if (v == ValueNull.INSTANCE && c.compareType == Comparison.EQUAL) {
+                    s = 0; // "字段 = NULL"总是不成立
+                } else {
+                    s = stats.getEqualSelectivity(v, mode);
+                }
+                break;
+            }
+            case Comparison.IN_LIST: {
+                s = 0;
+                for (Expression e : c.expressionList) {
+                    Value v = c.getConstantValue(session, e);
+                    s += v == null ? stats.getAverageEqualSelectivity()
+                            : stats.getEqualSelectivity(v, mode);
+                }
+                s = Math.min(s, 1);
+                break;
+            }
+            case Comparison.BIGGER_EQUAL:
+            case Comparison.BIGGER: {
+                Value v = c.getConstantValue(session, c.expression);
+                if (v == null || v == ValueNull.INSTANCE) {
+                    return -1;
+                }
+                int cmp = low == null ? 1 : v.compareTo(low, mode);
+                if (cmp > 0 || cmp == 0 && c.compareType == Comparison.BIGGER) {
+                    low = v;
+                    lowInclusive = c.compareType == Comparison.BIGGER_EQUAL;
+                }
+                range = true;
+                continue;
+            }
+            case Comparison.SMALLER_EQUAL:
+            case Comparison.SMALLER: {
+                Value v = c.getConstantValue(session, c.expression);
+                if (v == null || v == ValueNull.INSTANCE) {
+                    return -1;
+                }
+                int cmp = high == null ? -1 : v.compareTo(high, mode);
+                if (cmp < 0 || cmp == 0 && c.compareType == Comparison.SMALLER) {
+                    high = v;
+                    highInclusive = c.compareType == Comparison.SMALLER_EQUAL;
+                }
+                range = true;
+                continue;
+            }
+            default:
+                continue;
+            }
+            equal = equal < 0 ? s : Math.min(equal, s);
+        }
+        if (equal >= 0) {
+            return equal;
+        }
+        if (range) {
+            return stats.getRangeSelectivity(low, lowInclusive, high, highInclusive, mode);
+        }
+        return -1;
+    }
+
+    // 只有常量才能在生成执行计划时确定值，转换成字段的类型后才能跟统计信息中的值比较
+    private Value getConstantValue(ServerSession session, Expression e) {
+        if (e == null || !e.isConstant()) {
+            return null;
+        }
+        try {
+            return column.convert(e.getValue(session));
+        } catch (DbException ex) {
+            return null;
+        }
+    }
+
     /**
      * Check if the result is always false.
      *
@@ -289,6 +424,22 @@ public class IndexCondition {
         return column;
     }
 
+    /**
+     * Add the columns used by the expressions of this condition to the set.
+     *
+     * @param columns the set of columns
+     */
+    public void getColumns(Set<Column> columns) {
+        if (expression != null) {
+            expression.getColumns(columns);
+        }
+        if (expressionList != null) {
+            for (Expression e : expressionList) {
+                e.getColumns(columns);
+            }
+        }
+    }
+
     /**
      * Check if the expression can be evaluated.
      *
@@ -6,7 +6,7 @@
 package com.lealone.sql.optimizer;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 
 import com.lealone.db.index.Cursor;
 import com.lealone.db.index.Index;
@@ -18,6 +18,7 @@ import com.lealone.db.row.SearchRow;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Column;
 import com.lealone.db.table.Table;
+import com.lealone.db.value.CompareMode;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueNull;
 import com.lealone.sql.expression.condition.Comparison;
@@ -43,7 +44,9 @@ public class IndexCursor implements Cursor {
     private int inListIndex;
     private Value[] inList;
     private Result inResult;
-    private HashSet<Value> inResultTested;
+    private Cursor inCursor; // 所有IN值共用的cursor
+    private boolean indexOnly;
+    private Value containsValue; // LIKE '%abc%'中的子串，只用于全文索引
 
     public IndexCursor(TableFilter filter) {
         this.tableFilter = filter;
@@ -53,7 +56,8 @@ public class IndexCursor implements Cursor {
         this.index = index;
         this.table = index.getTable();
         Column[] columns = table.getColumns();
-        indexColumns = new IndexColumn[columns.length];
+        IndexColumn[] expressionColumns = table.getExpressionColumns();
+        indexColumns = new IndexColumn[columns.length + expressionColumns.length];
         IndexColumn[] idxCols = index.getIndexColumns();
         if (idxCols != null) {
             for (int i = 0, len = columns.length; i < len; i++) {
@@ -62,7 +66,24 @@ public class IndexCursor implements Cursor {
                     indexColumns[i] = idxCols[idx];
                 }
             }
+            // 表达式索引的虚拟字段排在普通字段之后
+            for (int i = 0, len = expressionColumns.length; i < len; i++) {
+                int idx = index.getColumnIndex(expressionColumns[i].column);
+                if (idx >= 0) {
+                    indexColumns[columns.length + i] = idxCols[idx];
+                }
+            }
         }
+        updateIndexOnly();
+    }
+
+    // 能否只读索引只跟索引和要读取的字段有关，换索引或者prepare阶段确定了要读取的字段时算一次就够了，
+    // 不用在每次find时(join的内表每读一条外表的记录就会find一次)重新计算
+    void updateIndexOnly() {
+        Select select = tableFilter.getSelect();
+        // for update要锁住表中的记录，不能只读索引
+        indexOnly = index != null && select != null && !select.isForUpdate()
+                && index.isCovering(tableFilter.getColumnIndexes());
     }
 
     /**
@@ -82,16 +103,18 @@ public class IndexCursor implements Cursor {
      */
     public void find(ServerSession session, ArrayList<IndexCondition> indexConditions) {
         parseIndexConditions(session, indexConditions);
+        int[] columnIndexes = tableFilter.getColumnIndexes(); // 在prepare阶段就设置好了
         if (inColumn != null) {
             return;
         }
         if (!alwaysFalse) {
-            Select select = tableFilter.getSelect();
-            int[] columnIndexes = null;
-            if (select != null) {
-                columnIndexes = tableFilter.createColumnIndexes(select.getReferencedColumns());
-            } else {
-                columnIndexes = tableFilter.getColumnIndexes(); // update和delete在prepare阶段就设置好了
+            if (index.getIndexType().isText()) {
+                // 全文索引只用LIKE '%abc%'这样的条件，没有时会遍历整个表
+                start = end = null;
+                if (containsValue != null) {
+                    start = getSearchRow(session, null, index.getColumns()[0].getColumnId(),
+                            containsValue, true);
+                }
             }
             CursorParameters<SearchRow> parameters = CursorParameters.create(start, end, columnIndexes);
             cursor = index.find(tableFilter.getSession(), parameters);
@@ -104,7 +127,9 @@ public class IndexCursor implements Cursor {
         inList = null;
         inColumn = null;
         inResult = null;
-        inResultTested = null;
+        inCursor = null;
+        containsValue = null;
+        boolean isTextIndex = index.getIndexType().isText();
         // don't use enhanced for loop to avoid creating objects
         for (int i = 0, size = indexConditions.size(); i < size; i++) {
             IndexCondition condition = indexConditions.get(i);
@@ -113,7 +138,14 @@ public class IndexCursor implements Cursor {
                 break;
             }
             Column column = condition.getColumn();
-            if (condition.getCompareType() == Comparison.IN_LIST) {
+            if (condition.getCompareType() == Comparison.CONTAINS) {
+                if (isTextIndex) {
+                    containsValue = condition.getCurrentValue(session);
+                }
+            } else if (isTextIndex) {
+                // 其他条件都不能用全文索引来查找
+                continue;
+            } else if (condition.getCompareType() == Comparison.IN_LIST) {
                 if (start == null && end == null) {
                     if (canUseIndexForIn(column)) {
                         this.inColumn = column;
@@ -125,7 +157,7 @@ public class IndexCursor implements Cursor {
                 if (start == null && end == null) {
                     if (canUseIndexForIn(column)) {
                         this.inColumn = column;
-                        inResult = condition.getCurrentResult();
+                        inResult = condition.getCurrentResult(session);
                     }
                 }
             } else {
@@ -166,6 +198,48 @@ public class IndexCursor implements Cursor {
                 }
             }
         }
+        if (inColumn != null) {
+            sortInList(session);
+        }
+    }
+
+    // 把IN(..)和IN(SELECT ...)的值去掉NULL、按索引的顺序排序并去掉重复值，
+    // 这样每个值对应的范围都在前一个范围之后，可以把多个范围当成一次扫描，
+    // cursor从上一个范围结束的位置继续往后找，不必每个值都从头开始查找
+    private void sortInList(ServerSession session) {
+        ArrayList<Value> values = new ArrayList<>();
+        if (inList != null) {
+            for (Value v : inList) {
+                if (v != ValueNull.INSTANCE) {
+                    values.add(inColumn.convert(v));
+                }
+            }
+        } else {
+            while (inResult.next()) {
+                Value v = inResult.currentRow()[0];
+                if (v != ValueNull.INSTANCE) {
+                    values.add(inColumn.convert(v));
+                }
+            }
+            inResult = null;
+        }
+        CompareMode compareMode = session.getDatabase().getCompareMode();
+        int id = inColumn.getColumnId();
+        IndexColumn idxCol = id >= 0 ? indexColumns[id] : null;
+        if (idxCol != null && (idxCol.sortType & SortOrder.DESCENDING) != 0) {
+            Collections.sort(values, (a, b) -> b.compareTo(a, compareMode));
+        } else {
+            Collections.sort(values, (a, b) -> a.compareTo(b, compareMode));
+        }
+        int size = 0;
+        for (int i = 0, len = values.size(); i < len; i++) {
+            Value v = values.get(i);
+            if (size == 0 || values.get(size - 1).compareTo(v, compareMode) != 0) {
+                values.set(size++, v);
+            }
+        }
+        inList = values.subList(0, size).toArray(new Value[size]);
+        inListIndex = 0;
     }
 
     private boolean canUseIndexForIn(Column column) {
@@ -187,7 +261,7 @@ public class IndexCursor implements Cursor {
 
     private SearchRow getSearchRow(ServerSession session, SearchRow row, int id, Value v, boolean max) {
         if (row == null) {
-            row = table.getTemplateRow();
+            row = table.getTemplateSearchRow();
         } else {
             v = getMax(session, row.getValue(id), v, max);
         }
@@ -229,6 +303,15 @@ public class IndexCursor implements Cursor {
         return comp > 0 ? a : b;
     }
 
+    /**
+     * Check if the rows can be read from the index alone.
+     *
+     * @return true if all columns used by the query are in the index
+     */
+    public boolean isIndexOnly() {
+        return indexOnly;
+    }
+
     @Override
     public Row get() {
         if (cursor == null)
@@ -267,38 +350,20 @@ public class IndexCursor implements Cursor {
     }
 
     private void nextCursor() {
-        if (inList != null) {
-            while (inListIndex < inList.length) {
-                Value v = inList[inListIndex++];
-                if (v != ValueNull.INSTANCE) {
-                    v = inColumn.convert(v);
-                    find(v);
-                    break;
-                }
-            }
-        } else if (inResult != null) {
-            while (inResult.next()) {
-                Value v = inResult.currentRow()[0];
-                if (v != ValueNull.INSTANCE) {
-                    v = inColumn.convert(v);
-                    if (inResultTested == null) {
-                        inResultTested = new HashSet<>();
-                    }
-                    if (inResultTested.add(v)) {
-                        find(v);
-                        break;
-                    }
-                }
-            }
+        if (inList != null && inListIndex < inList.length) {
+            find(inList[inListIndex++]);
         }
     }
 
     private void find(Value v) {
         int id = inColumn.getColumnId();
         if (start == null) {
-            start = table.getTemplateRow();
+            start = table.getTemplateSearchRow();
         }
         start.setValue(id, v);
-        cursor = index.find(tableFilter.getSession(), start, start);
+        if (inCursor == null || !inCursor.seek(start, start)) {
+            inCursor = index.find(tableFilter.getSession(), start, start);
+        }
+        cursor = inCursor;
     }
 }
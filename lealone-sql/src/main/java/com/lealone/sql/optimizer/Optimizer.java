@@ -6,13 +6,14 @@
 package com.lealone.sql.optimizer;
 
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.HashMap;
 
-import com.lealone.common.util.BitField;
 import com.lealone.db.index.Index;
 import com.lealone.db.result.SortOrder;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Table;
+import com.lealone.sql.IExpression;
+import com.lealone.sql.expression.Expression;
 
 /**
  * The optimizer is responsible to find the best execution plan
@@ -23,32 +24,17 @@ import com.lealone.db.table.Table;
  */
 public class Optimizer {
 
-    private static final int MAX_BRUTE_FORCE_FILTERS = 7;
-    private static final int MAX_BRUTE_FORCE = 2000;
-    private static final int MAX_GENETIC = 500;
+    // 动态规划最多枚举这么多个部分计划，超过后用贪心算法补全，
+    // 按个数而不是按时间限制，同一个查询不管机器忙不忙都会得到同样的执行计划
+    static final int MAX_SUB_PLANS = 2000;
 
-    // 后面的plan个数等于前面的plan个数乘以后面的filter数
-    // 比如第三行是6，等于第三行的filter 3 * 2 = 6
-    // possible plans for filters, if using brute force:
-    // 1 filter 1 plan
-    // 2 filters 2 plans
-    // 3 filters 6 plans
-    // 4 filters 24 plans
-    // 5 filters 120 plans
-    // 6 filters 720 plans
-    // 7 filters 5040 plans
-    // 8 filters 40320 plan
-    // 9 filters 362880 plans
-    // 10 filters 3628800 filters
     private final TableFilter[] filters;
     private final ServerSession session;
 
     private Plan bestPlan;
     private double cost;
-    private Random random;
 
-    private long start;
-    private BitField switched;
+    private int subPlanCount;
 
     public Optimizer(TableFilter[] filters, ServerSession session) {
         this.filters = filters; // join时才有多个TableFilter，正常只有一个TableFilter
@@ -84,13 +70,10 @@ public class Optimizer {
         if (filters.length == 1) {
             testPlan(filters);
         } else {
-            start = System.currentTimeMillis();
-            if (filters.length <= MAX_BRUTE_FORCE_FILTERS) {
-                calculateBruteForceAll();
+            if (filters.length < 64) {
+                calculateDynamicProgramming();
             } else {
-                calculateBruteForceSome();
-                random = new Random(0);
-                calculateGenetic();
+                testPlan(filters); // 用long表示表的集合，超过63个表时直接按原来的顺序
             }
         }
     }
@@ -106,148 +89,136 @@ public class Optimizer {
         return false;
     }
 
-    private boolean canStop(int x) {
-        if ((x & 127) == 0) {
-            long t = System.currentTimeMillis() - start;
-            // don't calculate for simple queries (no rows or so)
-            if (cost >= 0 && 10 * t > cost) {
-                return true;
-            }
-        }
-        return false;
-    }
+    // 一组表按某种顺序join的部分执行计划
+    private static class SubPlan {
+
+        final TableFilter[] list;
+        final long set; // 用到了哪些表，第i位是1表示用到了filters[i]
+        final double cost;
 
-    private void calculateBruteForceAll() {
-        TableFilter[] list = new TableFilter[filters.length];
-        Permutations<TableFilter> p = Permutations.create(filters, list);
-        for (int x = 0; !canStop(x) && p.next(); x++) {
-            testPlan(list);
+        SubPlan(TableFilter[] list, long set, double cost) {
+            this.list = list;
+            this.set = set;
+            this.cost = cost;
         }
     }
 
-    private void calculateBruteForceSome() {
-        int bruteForce = getMaxBruteForceFilters(filters.length);
-        TableFilter[] list = new TableFilter[filters.length];
-        Permutations<TableFilter> p = Permutations.create(filters, list, bruteForce);
-        for (int x = 0; !canStop(x) && p.next(); x++) {
-            // find out what filters are not used yet
-            for (TableFilter f : filters) {
-                f.setUsed(false);
-            }
-            for (int i = 0; i < bruteForce; i++) {
-                list[i].setUsed(true);
-            }
-            // fill the remaining elements with the unused elements (greedy)
-            for (int i = bruteForce; i < filters.length; i++) {
-                double costPart = -1.0;
-                int bestPart = -1;
-                for (int j = 0; j < filters.length; j++) {
-                    if (!filters[j].isUsed()) {
-                        if (i == filters.length - 1) {
-                            bestPart = j;
-                            break;
-                        }
-                        list[i] = filters[j];
-                        Plan part = new Plan(list, i + 1);
-                        double costNow = part.calculateCost(session);
-                        if (costPart < 0 || costNow < costPart) {
-                            costPart = costNow;
-                            bestPart = j;
-                        }
+    // 按表的个数从小到大枚举连通的表集合(动态规划)，每个集合只保留代价最小的join顺序。
+    // 执行器只支持left-deep的嵌套循环join，所以每次只在已有的集合后面加一个跟它相连的表，
+    // 没有相连的表时才做笛卡尔积。枚举的部分计划超过MAX_SUB_PLANS后，从当前代价最小的部分计划开始用贪心算法补全
+    private void calculateDynamicProgramming() {
+        int n = filters.length;
+        long[] neighbors = getJoinGraph();
+        HashMap<Long, SubPlan> level = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            SubPlan p = extend(new SubPlan(new TableFilter[0], 0, 0), i);
+            level.put(p.set, p);
+        }
+        for (int k = 2; k <= n; k++) {
+            HashMap<Long, SubPlan> next = new HashMap<>();
+            for (SubPlan p : level.values()) {
+                long candidates = getCandidates(p.set, neighbors);
+                for (int i = 0; i < n; i++) {
+                    if ((candidates & (1L << i)) == 0) {
+                        continue;
+                    }
+                    if (subPlanCount >= MAX_SUB_PLANS) {
+                        SubPlan best = getBest(next.isEmpty() ? level : next);
+                        testPlan(completeGreedy(best, neighbors));
+                        return;
+                    }
+                    SubPlan newPlan = extend(p, i);
+                    SubPlan old = next.get(newPlan.set);
+                    if (old == null || newPlan.cost < old.cost) {
+                        next.put(newPlan.set, newPlan);
                     }
                 }
-                filters[bestPart].setUsed(true);
-                list[i] = filters[bestPart];
             }
-            testPlan(list);
+            level = next;
         }
+        testPlan(getBest(level).list);
     }
 
-    private void calculateGenetic() {
-        TableFilter[] best = new TableFilter[filters.length];
-        TableFilter[] list = new TableFilter[filters.length];
-        for (int x = 0; x < MAX_GENETIC; x++) {
-            if (canStop(x)) {
-                break;
-            }
-            boolean generateRandom = (x & 127) == 0;
-            if (!generateRandom) {
-                System.arraycopy(best, 0, list, 0, filters.length);
-                if (!shuffleTwo(list)) {
-                    generateRandom = true;
+    private SubPlan extend(SubPlan p, int i) {
+        int len = p.list.length;
+        TableFilter[] list = new TableFilter[len + 1];
+        System.arraycopy(p.list, 0, list, 0, len);
+        list[len] = filters[i];
+        double cost = new Plan(list, len + 1).calculateCost(session);
+        subPlanCount++;
+        return new SubPlan(list, p.set | (1L << i), cost);
+    }
+
+    private TableFilter[] completeGreedy(SubPlan p, long[] neighbors) {
+        int n = filters.length;
+        while (p.list.length < n) {
+            long candidates = getCandidates(p.set, neighbors);
+            SubPlan best = null;
+            for (int i = 0; i < n; i++) {
+                if ((candidates & (1L << i)) != 0) {
+                    SubPlan newPlan = extend(p, i);
+                    if (best == null || newPlan.cost < best.cost) {
+                        best = newPlan;
+                    }
                 }
             }
-            if (generateRandom) {
-                switched = new BitField();
-                System.arraycopy(filters, 0, best, 0, filters.length);
-                shuffleAll(best);
-                System.arraycopy(best, 0, list, 0, filters.length);
-            }
-            if (testPlan(list)) {
-                switched = new BitField();
-                System.arraycopy(list, 0, best, 0, filters.length);
-            }
+            p = best;
         }
+        return p.list;
     }
 
-    private void shuffleAll(TableFilter[] f) { // 随机把数组中的两个元素兑换f.length-1次
-        for (int i = 0; i < f.length - 1; i++) {
-            int j = i + random.nextInt(f.length - i);
-            if (j != i) {
-                TableFilter temp = f[i];
-                f[i] = f[j];
-                f[j] = temp;
+    // 优先选跟已有的表相连的表，没有时才选其他的表
+    private long getCandidates(long set, long[] neighbors) {
+        int n = filters.length;
+        long unused = ((1L << n) - 1) & ~set;
+        long connected = 0;
+        for (int i = 0; i < n; i++) {
+            if ((set & (1L << i)) != 0) {
+                connected |= neighbors[i];
             }
         }
+        connected &= unused;
+        return connected != 0 ? connected : unused;
     }
 
-    private boolean shuffleTwo(TableFilter[] f) { // 随机把数组中的两个元素兑换1次
-        int a = 0, b = 0, i = 0;
-        for (; i < 20; i++) {
-            a = random.nextInt(f.length);
-            b = random.nextInt(f.length);
-            if (a == b) {
-                continue;
-            }
-            if (a < b) {
-                int temp = a;
-                a = b;
-                b = temp;
-            }
-            int s = a * f.length + b;
-            if (switched.get(s)) {
-                continue;
+    private static SubPlan getBest(HashMap<Long, SubPlan> plans) {
+        SubPlan best = null;
+        for (SubPlan p : plans.values()) {
+            if (best == null || p.cost < best.cost) {
+                best = p;
             }
-            switched.set(s);
-            break;
         }
-        if (i == 20) {
-            return false;
+        return best;
+    }
+
+    // 一个表的索引条件用到了另一个表的字段时(通常是join条件)，这两个表就是相连的
+    private long[] getJoinGraph() {
+        int n = filters.length;
+        long[] neighbors = new long[n];
+        for (int i = 0; i < n; i++) {
+            setEvaluatable(false);
+            filters[i].setEvaluatable(filters[i], true);
+            int count = filters[i].getEvaluatableIndexConditionCount();
+            for (int j = 0; j < n; j++) {
+                if (i == j) {
+                    continue;
+                }
+                filters[j].setEvaluatable(filters[j], true);
+                if (filters[i].getEvaluatableIndexConditionCount() > count) {
+                    neighbors[i] |= 1L << j;
+                    neighbors[j] |= 1L << i;
+                }
+                filters[j].setEvaluatable(filters[j], false);
+            }
         }
-        TableFilter temp = f[a];
-        f[a] = f[b];
-        f[b] = temp;
-        return true;
+        setEvaluatable(false);
+        return neighbors;
     }
 
-    /**
-     * How many filter to calculate using brute force. The remaining filters are
-     * selected using a greedy algorithm which has a runtime of (1 + 2 + ... +
-     * n) = (n * (n-1) / 2) for n filters. The brute force algorithm has a
-     * runtime of n * (n-1) * ... * (n-m) when calculating m brute force of n
-     * total. The combined runtime is (brute force) * (greedy).
-     *
-     * @param filterCount the number of filters total
-     * @return the number of filters to calculate using brute force
-     */
-    private static int getMaxBruteForceFilters(int filterCount) {
-        int i = 0, j = filterCount, total = filterCount;
-        while (j > 0 && total * (j * (j - 1) / 2) < MAX_BRUTE_FORCE) {
-            j--;
-            total *= j;
-            i++;
+    private void setEvaluatable(boolean b) {
+        for (TableFilter f : filters) {
+            f.setEvaluatable(f, b);
         }
-        return i;
     }
 
     /**
@@ -261,6 +232,31 @@ public class Optimizer {
     */
     public static PlanItem getBestPlanItem(ServerSession session, int[] masks, Table table,
             SortOrder sortOrder) {
+        return getBestPlanItem(session, masks, null, table, sortOrder, null, null);
+    }
+
+    /**
+    * Get the best plan for the given search mask and the columns read by the query.
+    *
+    * @param session the session
+    * @param masks per-column comparison bit masks, null means 'always false',
+    *              see constants in IndexCondition
+    * @param selectivities per-column estimated selectivity, null if unknown,
+    *              see IndexCondition.getSelectivities
+    * @param filter the table filter
+    * @param sortOrder the sort order
+    * @param columnIndexes the ids of the columns read by the query, null if unknown
+    * @return the plan item 
+    */
+    public static PlanItem getBestPlanItem(ServerSession session, int[] masks,
+            double[] selectivities, TableFilter filter, SortOrder sortOrder, int[] columnIndexes) {
+        return getBestPlanItem(session, masks, selectivities, filter.getTable(), sortOrder,
+                columnIndexes, filter);
+    }
+
+    private static PlanItem getBestPlanItem(ServerSession session, int[] masks,
+            double[] selectivities, Table table, SortOrder sortOrder, int[] columnIndexes,
+            TableFilter filter) {
         PlanItem item = new PlanItem();
         item.setIndex(table.getScanIndex(session));
         item.cost = item.getIndex().getCost(session, null, null);
@@ -269,7 +265,13 @@ public class Optimizer {
             // indexes[0]是ScanIndex，所以可以跳过，从1开始
             for (int i = 1, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
-                double cost = index.getCost(session, masks, sortOrder);
+                IExpression predicate = index.getPredicate();
+                if (predicate != null
+                        && (filter == null || !filter.impliesPredicate((Expression) predicate))) {
+                    continue;
+                }
+                double cost = index.getCost(session, masks, selectivities, sortOrder,
+                        columnIndexes);
                 if (cost < item.cost) {
                     item.cost = cost;
                     item.setIndex(index);
@@ -87,12 +87,15 @@ public class Plan {
      */
     public double calculateCost(ServerSession session) {
         double cost = 1;
+        double rows = 1;
         boolean invalidPlan = false;
         int level = 1;
         for (TableFilter tableFilter : allFilters) {
             PlanItem item = tableFilter.getBestPlanItem(session, level++);
             planItems.put(tableFilter, item);
-            cost += cost * item.cost;
+            // 前面的表join后返回多少行，当前表就要查找多少次
+            cost += rows * item.cost;
+            rows = Math.max(rows * item.rows, 1);
             setEvaluatable(tableFilter, true);
             Expression on = tableFilter.getJoinCondition();
             if (on != null && !on.isEvaluatable()) {
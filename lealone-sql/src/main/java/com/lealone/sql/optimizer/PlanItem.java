@@ -20,6 +20,11 @@ public class PlanItem {
      */
     double cost;
 
+    /**
+     * The estimated number of rows returned by one lookup.
+     */
+    double rows = 1;
+
     private Index index;
     private PlanItem joinPlan;
     private PlanItem nestedJoinPlan;
@@ -28,6 +33,10 @@ public class PlanItem {
         return cost;
     }
 
+    public double getRows() {
+        return rows;
+    }
+
     void setIndex(Index index) {
         this.index = index;
     }
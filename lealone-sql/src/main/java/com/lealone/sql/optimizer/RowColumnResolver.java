@@ -0,0 +1,86 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.optimizer;
+
+import com.lealone.db.row.Row;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.session.Session;
+import com.lealone.db.table.Column;
+import com.lealone.db.table.Table;
+import com.lealone.db.value.Value;
+import com.lealone.sql.IExpression;
+import com.lealone.sql.query.Select;
+
+// 用于表达式索引和部分索引，按传入的记录计算表达式的值
+// 多个事务会同时增删改记录，所以当前记录不能放在共享的字段中，而是放在调用线程自己的变量里，
+// 计算表达式的过程不会让出线程，这样不需要加锁
+public class RowColumnResolver extends ColumnResolverBase {
+
+    private final ThreadLocal<Row> currentRow = new ThreadLocal<>();
+    private final TableFilter filter;
+
+    public RowColumnResolver(ServerSession session, Table table) {
+        filter = new TableFilter(session, table, null, false, null);
+    }
+
+    @Override
+    public String getSchemaName() {
+        return filter.getSchemaName();
+    }
+
+    @Override
+    public String getTableAlias() {
+        return filter.getTableAlias();
+    }
+
+    @Override
+    public Column[] getColumns() {
+        return filter.getColumns();
+    }
+
+    @Override
+    public Column getRowIdColumn() {
+        return filter.getRowIdColumn();
+    }
+
+    @Override
+    public Value getValue(Column column) {
+        Row row = currentRow.get();
+        if (row == null) {
+            return null;
+        }
+        int columnId = column.getColumnId();
+        if (columnId == -1) {
+            return row.getPrimaryKey();
+        }
+        return row.getValue(columnId);
+    }
+
+    @Override
+    public TableFilter getTableFilter() {
+        return filter;
+    }
+
+    @Override
+    public Select getSelect() {
+        return null;
+    }
+
+    @Override
+    public Value getExpressionValue(Session session, IExpression e, Object data) {
+        // 表达式里调用的函数有可能又触发了其他记录的计算，所以用完后要恢复原来的记录
+        Row old = currentRow.get();
+        currentRow.set((Row) data);
+        try {
+            return e.getValue(session);
+        } finally {
+            if (old == null)
+                currentRow.remove();
+            else
+                currentRow.set(old);
+        }
+    }
+}
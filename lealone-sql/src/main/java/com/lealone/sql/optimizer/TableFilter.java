@@ -7,6 +7,7 @@ package com.lealone.sql.optimizer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -14,9 +15,11 @@ import com.lealone.common.exceptions.DbException;
 import com.lealone.common.util.StatementBuilder;
 import com.lealone.common.util.StringUtils;
 import com.lealone.common.util.Utils;
+import com.lealone.db.Constants;
 import com.lealone.db.SysProperties;
 import com.lealone.db.auth.Right;
 import com.lealone.db.index.Index;
+import com.lealone.db.index.IndexConditionType;
 import com.lealone.db.result.SortOrder;
 import com.lealone.db.row.Row;
 import com.lealone.db.row.SearchRow;
@@ -27,6 +30,7 @@ import com.lealone.db.table.Table;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueNull;
 import com.lealone.sql.IExpression;
+import com.lealone.sql.LealoneSQLParser;
 import com.lealone.sql.expression.Expression;
 import com.lealone.sql.expression.condition.Comparison;
 import com.lealone.sql.expression.condition.ConditionAndOr;
@@ -171,8 +175,10 @@ public class TableFilter extends ColumnResolverBase {
             item = new PlanItem();
             item.setIndex(table.getScanIndex(s));
             item.cost = item.getIndex().getCost(s, null, null);
+            item.rows = table.getRowCountApproximation();
         } else {
-            int len = table.getColumns().length;
+            // 表达式索引的虚拟字段排在普通字段之后
+            int len = table.getColumns().length + table.getExpressionColumns().length;
             int[] masks = new int[len];
             for (int i = 0, size = indexConditions.size(); i < size; i++) {
                 IndexCondition condition = indexConditions.get(i);
@@ -190,10 +196,17 @@ public class TableFilter extends ColumnResolverBase {
                 }
             }
             SortOrder sortOrder = null;
+            int[] columnIndexes = null;
             if (select != null) {
                 sortOrder = select.getSortOrder();
+                columnIndexes = getIndexOnlyColumnIndexes();
             }
-            item = Optimizer.getBestPlanItem(s, masks, table, sortOrder);
+            // 用字段的统计信息估算每个字段上的条件的选择率
+            double[] selectivities = masks == null ? null
+                    : IndexCondition.getSelectivities(s, indexConditions, len);
+            item = Optimizer.getBestPlanItem(s, masks, selectivities, this, sortOrder,
+                    columnIndexes);
+            item.rows = estimateRows(masks, selectivities);
             // The more index conditions, the earlier the table.
             // This is to ensure joins without indexes run quickly:
             // x (x.a=10); y (x.b=y.b) - see issue 113
@@ -202,20 +215,55 @@ public class TableFilter extends ColumnResolverBase {
         if (nestedJoin != null) {
             setEvaluatable(true);
             item.setNestedJoinPlan(nestedJoin.getBestPlanItem(s, level));
-            // TODO optimizer: calculate cost of a join: should use separate
-            // expected row number and lookup cost
-            item.cost += item.cost * item.getNestedJoinPlan().cost;
+            // 当前表返回多少行，嵌套的join就要查找多少次
+            item.cost += item.rows * item.getNestedJoinPlan().cost;
+            item.rows *= item.getNestedJoinPlan().rows;
         }
         if (join != null) {
             setEvaluatable(true);
             item.setJoinPlan(join.getBestPlanItem(s, level));
-            // TODO optimizer: calculate cost of a join: should use separate
-            // expected row number and lookup cost
-            item.cost += item.cost * item.getJoinPlan().cost;
+            item.cost += item.rows * item.getJoinPlan().cost;
+            item.rows *= item.getJoinPlan().rows;
+        }
+        if (joinOuter && item.rows < 1) {
+            item.rows = 1; // 外连接找不到记录时也会返回一行
         }
         return item;
     }
 
+    // 估算满足所有索引条件的行数，不管用不用索引，TableFilter都会用这些条件过滤记录，
+    // 有统计信息时用估算的选择率，没有时用跟IndexBase.getCostRangeIndex一样的经验值
+    private double estimateRows(int[] masks, double[] selectivities) {
+        if (masks == null) {
+            return 0;
+        }
+        long rowCount = table.getRowCountApproximation();
+        Column[] columns = table.getColumns();
+        double rows = rowCount;
+        for (int id = 0; id < masks.length; id++) {
+            int mask = masks[id];
+            if (mask == 0) {
+                continue;
+            }
+            double s = selectivities == null ? -1 : selectivities[id];
+            if (s < 0) {
+                if ((mask & IndexConditionType.EQUALITY) == IndexConditionType.EQUALITY) {
+                    int selectivity = id < columns.length ? columns[id].getSelectivity()
+                            : Constants.SELECTIVITY_DEFAULT;
+                    s = 1.0 / Math.max(rowCount * selectivity / 100, 1);
+                } else if ((mask & IndexConditionType.RANGE) == IndexConditionType.RANGE) {
+                    s = 1.0 / 4;
+                } else if ((mask & (IndexConditionType.START | IndexConditionType.END)) != 0) {
+                    s = 1.0 / 3;
+                } else {
+                    s = 1.0 / 10;
+                }
+            }
+            rows *= s;
+        }
+        return rows;
+    }
+
     /**
      * Set what plan item (index, cost) to use use.
      *
@@ -432,7 +480,10 @@ public class TableFilter extends ColumnResolverBase {
      */
     public Row get() {
         if (current == null && currentSearchRow != null) {
-            current = cursor.get(getColumnIndexes());
+            if (cursor.isIndexOnly())
+                current = (Row) currentSearchRow; // 覆盖索引已经包含了所有用到的字段，不用回表
+            else
+                current = cursor.get(getColumnIndexes());
         }
         return current;
     }
@@ -687,6 +738,24 @@ public class TableFilter extends ColumnResolverBase {
         cursor.setIndex(index);
     }
 
+    /**
+     * Get the number of index conditions that can be evaluated now, including
+     * the conditions of the joined tables.
+     *
+     * @return the number of index conditions
+     */
+    int getEvaluatableIndexConditionCount() {
+        int[] count = new int[1];
+        visit(f -> {
+            for (IndexCondition c : f.indexConditions) {
+                if (c.isEvaluatable()) {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+
     public void setUsed(boolean used) {
         this.used = used;
     }
@@ -987,6 +1056,91 @@ public class TableFilter extends ColumnResolverBase {
         return columnIndexes;
     }
 
+    // 要读取的字段在prepare阶段确定，为null时读取所有字段
+    public void setColumnIndexes(int[] columnIndexes) {
+        this.columnIndexes = columnIndexes;
+        cursor.updateIndexOnly();
+    }
+
+    /**
+     * Get the SQL of the expression without the alias of this table,
+     * so that it can be compared with the expressions of an index.
+     *
+     * @param e the expression
+     * @return the SQL
+     */
+    public String getUnqualifiedSQL(Expression e) {
+        String sql = e.getSQL();
+        String alias = getTableAlias();
+        if (alias == null) {
+            return sql;
+        }
+        if (session.getDatabase().getSettings().databaseToUpper) {
+            alias = LealoneSQLParser.quoteIdentifier(alias);
+        }
+        String prefix = alias + ".";
+        StringBuilder buff = new StringBuilder(sql.length());
+        boolean inString = false;
+        for (int i = 0, len = sql.length(); i < len; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                inString = !inString;
+            } else if (!inString && sql.startsWith(prefix, i)
+                    && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))) {
+                i += prefix.length() - 1;
+                continue;
+            }
+            buff.append(c);
+        }
+        return buff.toString();
+    }
+
+    // 部分索引只包含满足索引条件的记录，只有查询条件蕴含索引条件时才能使用。
+    // 这里只做简单的判断: 索引条件中用AND连接的每个条件都要在查询条件中以AND的方式出现
+    boolean impliesPredicate(Expression predicate) {
+        if (isJoinOuter() || isJoinOuterIndirect()) {
+            return false;
+        }
+        HashSet<String> conditions = new HashSet<>();
+        Expression condition = fullCondition;
+        if (condition == null && select != null) {
+            condition = select.getCondition();
+        }
+        addConjuncts(condition, conditions, true);
+        addConjuncts(joinCondition, conditions, true);
+        ArrayList<String> list = new ArrayList<>();
+        addConjuncts(predicate, list, false);
+        return conditions.containsAll(list);
+    }
+
+    private void addConjuncts(Expression e, Collection<String> conditions,
+            boolean unqualified) {
+        if (e == null) {
+            return;
+        }
+        if (e instanceof ConditionAndOr && ((ConditionAndOr) e).getAndOrType() == ConditionAndOr.AND) {
+            addConjuncts(((ConditionAndOr) e).getExpression(true), conditions, unqualified);
+            addConjuncts(((ConditionAndOr) e).getExpression(false), conditions, unqualified);
+        } else {
+            conditions.add(unqualified ? getUnqualifiedSQL(e) : e.getSQL());
+        }
+    }
+
+    // join时其他表的索引条件会用到当前表的字段(比如t2.id = t1.f1)，
+    // 这样的条件可能已经从where条件中删除了，所以要单独加上
+    public void getIndexConditionColumns(Set<Column> columns) {
+        for (IndexCondition c : indexConditions) {
+            c.getColumns(columns);
+        }
+    }
+
+    // 只有普通的select才能只读索引，for update要锁住表中的记录，update和delete也要读取完整的记录
+    int[] getIndexOnlyColumnIndexes() {
+        if (select == null || select.isForUpdate())
+            return null;
+        return createColumnIndexes(select.getReferencedColumns());
+    }
+
     public int[] createColumnIndexes(Expression... expressionArray) {
         int len = expressionArray.length;
         HashSet<Column> columnSet = new HashSet<>(len);
@@ -1012,7 +1166,6 @@ public class TableFilter extends ColumnResolverBase {
         }
 
         Arrays.sort(columnIndexes);
-        this.columnIndexes = columnIndexes;
         return columnIndexes;
     }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.query;
+
+import com.lealone.db.Constants;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueNull;
+
+// group by专用的哈希表，采用开放寻址(线性探测)，分组key、hash和聚合状态都放在数组中，
+// 只有出现新的分组时才会复制key和创建GroupValues，处理每条记录时不再创建ValueArray。
+// 只有一个整数类型的分组字段时直接用long比较key，不需要调用Value.equals。
+// 分组占用的内存超过MAX_OPERATION_MEMORY后就不再创建新的分组，由QGroup把新分组的记录写到临时map中
+public class GroupHashTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Select select;
+    private final boolean longKey;
+    private final int maxMemory; // 0表示不限制
+    private long memory;
+
+    private int mask;
+    private int size;
+    private int[] hashes;
+    private long[] longKeys;
+    private Value[][] keys;
+    private GroupValues[] groups;
+
+    // 分组字段是整数类型时，null值单独作为一个分组
+    private Value[] nullKey;
+    private GroupValues nullGroup;
+
+    GroupHashTable(Select select) {
+        this.select = select;
+        longKey = isLongKey(select);
+        maxMemory = select.getSession().getDatabase().getMaxOperationMemory();
+        reset(INITIAL_CAPACITY);
+    }
+
+    private static boolean isLongKey(Select select) {
+        if (select.groupIndex.length != 1) {
+            return false;
+        }
+        switch (select.expressions.get(select.groupIndex[0]).getType()) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    // 内存中的分组都输出后就可以释放了
+    public void clear() {
+        reset(INITIAL_CAPACITY);
+        size = 0;
+        memory = 0;
+        nullKey = null;
+        nullGroup = null;
+    }
+
+    private void reset(int capacity) {
+        mask = capacity - 1;
+        hashes = new int[capacity];
+        if (longKey)
+            longKeys = new long[capacity];
+        keys = new Value[capacity][];
+        groups = new GroupValues[capacity];
+    }
+
+    public int size() {
+        return nullGroup == null ? size : size + 1;
+    }
+
+    // 分组占用的内存是否超过了MAX_OPERATION_MEMORY
+    public boolean isFull() {
+        return maxMemory > 0 && memory > maxMemory;
+    }
+
+    /**
+     * 查找分组，如果不存在就创建一个新的分组
+     *
+     * @param keyValues 分组key，会被复用，所以新的分组需要复制一份
+     * @return 分组对应的聚合状态
+     */
+    public GroupValues getOrCreateGroup(Value[] keyValues) {
+        return getGroup(keyValues, true);
+    }
+
+    /**
+     * 查找已经存在的分组
+     *
+     * @param keyValues 分组key
+     * @return 分组对应的聚合状态，不存在时返回null
+     */
+    public GroupValues getGroup(Value[] keyValues) {
+        return getGroup(keyValues, false);
+    }
+
+    private GroupValues getGroup(Value[] keyValues, boolean create) {
+        if (longKey) {
+            Value v = keyValues[0];
+            if (v == ValueNull.INSTANCE) {
+                if (nullGroup == null && create) {
+                    nullKey = keyValues.clone();
+                    nullGroup = select.createGroup();
+                    memory += getMemory(nullKey);
+                }
+                return nullGroup;
+            }
+            long k = v.getLong();
+            int hash = hash(Long.hashCode(k));
+            int index = hash & mask;
+            while (groups[index] != null) {
+                if (longKeys[index] == k) {
+                    return groups[index];
+                }
+                index = (index + 1) & mask;
+            }
+            if (!create)
+                return null;
+            longKeys[index] = k;
+            return addGroup(index, hash, keyValues);
+        } else {
+            int h = 1;
+            for (Value v : keyValues) {
+                h = h * 31 + v.hashCode();
+            }
+            int hash = hash(h);
+            int index = hash & mask;
+            while (groups[index] != null) {
+                if (hashes[index] == hash && equalsKey(keys[index], keyValues)) {
+                    return groups[index];
+                }
+                index = (index + 1) & mask;
+            }
+            if (!create)
+                return null;
+            return addGroup(index, hash, keyValues);
+        }
+    }
+
+    private GroupValues addGroup(int index, int hash, Value[] keyValues) {
+        GroupValues group = select.createGroup();
+        hashes[index] = hash;
+        keys[index] = keyValues.clone();
+        groups[index] = group;
+        memory += getMemory(keyValues);
+        // 负载因子超过0.75时扩容
+        if (++size > (mask + 1) * 3 / 4) {
+            rehash();
+        }
+        return group;
+    }
+
+    // 聚合状态的大小无法准确计算，每个表达式按一个对象估算
+    private int getMemory(Value[] keyValues) {
+        int memory = Constants.MEMORY_OBJECT * (2 + select.expressions.size());
+        for (Value v : keyValues) {
+            memory += v.getMemory() + Constants.MEMORY_POINTER;
+        }
+        return memory;
+    }
+
+    private void rehash() {
+        int[] oldHashes = hashes;
+        long[] oldLongKeys = longKeys;
+        Value[][] oldKeys = keys;
+        GroupValues[] oldGroups = groups;
+        reset((mask + 1) * 2);
+        for (int i = 0, len = oldGroups.length; i < len; i++) {
+            if (oldGroups[i] != null) {
+                int index = oldHashes[i] & mask;
+                while (groups[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                hashes[index] = oldHashes[i];
+                if (longKey)
+                    longKeys[index] = oldLongKeys[i];
+                keys[index] = oldKeys[i];
+                groups[index] = oldGroups[i];
+            }
+        }
+    }
+
+    private static boolean equalsKey(Value[] a, Value[] b) {
+        for (int i = 0, len = a.length; i < len; i++) {
+            if (!a[i].equals(b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 打散低位，避免连续的整数key都落在相邻的位置上
+    private static int hash(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 遍历所有分组
+     *
+     * @param visitor 分组访问者
+     */
+    public void forEach(GroupVisitor visitor) {
+        for (int i = 0, len = groups.length; i < len; i++) {
+            if (groups[i] != null) {
+                visitor.visit(keys[i], groups[i]);
+            }
+        }
+        if (nullGroup != null) {
+            visitor.visit(nullKey, nullGroup);
+        }
+    }
+
+    public static interface GroupVisitor {
+        void visit(Value[] keyValues, GroupValues group);
+    }
+}
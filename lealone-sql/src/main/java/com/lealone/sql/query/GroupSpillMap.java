@@ -0,0 +1,141 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.query;
+
+import java.util.ArrayList;
+
+import com.lealone.db.Database;
+import com.lealone.db.index.standard.StandardDataType;
+import com.lealone.db.result.SortOrder;
+import com.lealone.db.row.Row;
+import com.lealone.db.value.Value;
+import com.lealone.db.value.ValueArray;
+import com.lealone.db.value.ValueLong;
+import com.lealone.db.value.ValueNull;
+import com.lealone.sql.optimizer.TableFilter;
+import com.lealone.storage.Storage;
+import com.lealone.storage.StorageMap;
+import com.lealone.storage.StorageMapCursor;
+
+// 分组占用的内存超过MAX_OPERATION_MEMORY后，不在内存中的分组的记录都写到这个临时map中，
+// key是分组key加上记录的序号，value是每个TableFilter当前记录中要用到的字段。
+// 所有记录读完后按分组key的顺序重放这些记录，每次只需要在内存中保留一个分组
+class GroupSpillMap {
+
+    private final TableFilter[] filters;
+    private final int[][] columnIndexes; // 每个TableFilter要保存的字段，包括查询用到的所有字段
+    private final int[] columnCounts;
+    private final int valueLength;
+    private final StorageMap<Value, ValueArray> storageMap;
+    private StorageMapCursor<Value, ValueArray> cursor;
+    private long rowCount;
+
+    GroupSpillMap(Select select, int keyLength) {
+        ArrayList<TableFilter> list = new ArrayList<>();
+        select.getTopTableFilter().visit(f -> list.add(f));
+        int size = list.size();
+        filters = list.toArray(new TableFilter[size]);
+        columnIndexes = new int[size][];
+        columnCounts = new int[size];
+        int valueLength = 0;
+        for (int i = 0; i < size; i++) {
+            TableFilter f = filters[i];
+            int columnCount = f.getTable().getColumns().length;
+            int[] indexes = f.getColumnIndexes();
+            if (indexes == null) {
+                indexes = new int[columnCount];
+                for (int j = 0; j < columnCount; j++) {
+                    indexes[j] = j;
+                }
+            }
+            columnIndexes[i] = indexes;
+            columnCounts[i] = columnCount;
+            valueLength += indexes.length + 1; // 还有记录的key
+        }
+        this.valueLength = valueLength;
+        storageMap = openMap(select.getSession().getDatabase(), keyLength + 1, valueLength);
+    }
+
+    private static StorageMap<Value, ValueArray> openMap(Database db, int keyLength,
+            int valueLength) {
+        StandardDataType keyType = new StandardDataType(db, db.getCompareMode(),
+                getSortTypes(keyLength));
+        StandardDataType valueType = new StandardDataType(db, db.getCompareMode(),
+                getSortTypes(valueLength));
+        Storage storage = db.getStorage(db.getDefaultStorageEngineName());
+        return storage.openMap(storage.nextTemporaryMapName(), keyType, valueType, null);
+    }
+
+    private static int[] getSortTypes(int length) {
+        int[] sortTypes = new int[length];
+        for (int i = 0; i < length; i++) {
+            sortTypes[i] = SortOrder.ASCENDING;
+        }
+        return sortTypes;
+    }
+
+    // 保存所有TableFilter的当前记录
+    void addRow(Value[] keyValues) {
+        Value[] key = new Value[keyValues.length + 1];
+        System.arraycopy(keyValues, 0, key, 0, keyValues.length);
+        key[keyValues.length] = ValueLong.get(rowCount++); // 分组key相同的记录按读取的顺序排列
+        Value[] values = new Value[valueLength];
+        int pos = 0;
+        for (int i = 0; i < filters.length; i++) {
+            TableFilter f = filters[i];
+            values[pos++] = getValue(f, -1);
+            for (int columnId : columnIndexes[i]) {
+                values[pos++] = getValue(f, columnId);
+            }
+        }
+        storageMap.put(ValueArray.get(key), ValueArray.get(values));
+    }
+
+    private static Value getValue(TableFilter f, int columnId) {
+        Value v = f.getValue(columnId);
+        return v == null ? ValueNull.INSTANCE : v;
+    }
+
+    void startReplay() {
+        cursor = storageMap.cursor();
+    }
+
+    boolean isReplaying() {
+        return cursor != null;
+    }
+
+    /**
+     * 按分组key的顺序取下一条记录，并把它设为每个TableFilter的当前记录
+     *
+     * @return 没有记录时返回null，否则返回分组key
+     */
+    Value[] next() {
+        if (!cursor.next()) {
+            return null;
+        }
+        Value[] values = cursor.getValue().getList();
+        int pos = 0;
+        for (int i = 0; i < filters.length; i++) {
+            Value key = values[pos++];
+            Value[] columns = new Value[columnCounts[i]];
+            for (int columnId : columnIndexes[i]) {
+                columns[columnId] = values[pos++];
+            }
+            Row row = new Row(columns);
+            if (key != ValueNull.INSTANCE)
+                row.setKey(key.getLong());
+            filters[i].set(row);
+        }
+        Value[] key = ((ValueArray) cursor.getKey()).getList();
+        Value[] keyValues = new Value[key.length - 1];
+        System.arraycopy(key, 0, keyValues, 0, keyValues.length);
+        return keyValues;
+    }
+
+    void close() {
+        storageMap.remove();
+    }
+}
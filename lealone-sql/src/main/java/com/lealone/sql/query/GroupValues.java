@@ -0,0 +1,30 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.query;
+
+import java.util.Arrays;
+
+// 一个分组的聚合状态，按Select分配给表达式的slot存放，代替每个分组一个HashMap<Expression, Object>
+public class GroupValues {
+
+    private Object[] values;
+
+    GroupValues(int slotCount) {
+        values = new Object[slotCount];
+    }
+
+    public Object get(int slot) {
+        return slot < values.length ? values[slot] : null;
+    }
+
+    public void put(int slot, Object value) {
+        if (slot >= values.length) {
+            // 第一个分组创建时还有表达式没有分配slot
+            values = Arrays.copyOf(values, slot + 1);
+        }
+        values[slot] = value;
+    }
+}
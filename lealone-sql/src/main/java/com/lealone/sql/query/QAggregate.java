@@ -5,8 +5,6 @@
  */
 package com.lealone.sql.query;
 
-import java.util.HashMap;
-
 import com.lealone.db.value.Value;
 import com.lealone.sql.expression.Expression;
 
@@ -15,7 +13,7 @@ class QAggregate extends QOperator {
 
     QAggregate(Select select) {
         super(select);
-        select.currentGroup = new HashMap<>();
+        select.currentGroup = select.createGroup();
     }
 
     @Override
@@ -6,32 +6,37 @@
 package com.lealone.sql.query;
 
 import java.util.Arrays;
-import java.util.HashMap;
 
 import com.lealone.db.result.ResultTarget;
-import com.lealone.db.util.ValueHashMap;
 import com.lealone.db.value.Value;
-import com.lealone.db.value.ValueArray;
 import com.lealone.db.value.ValueNull;
 import com.lealone.sql.expression.Expression;
 
 // 只处理group by，且group by的字段没有索引
 public class QGroup extends QOperator {
 
-    private final ValueHashMap<HashMap<Expression, Object>> groups;
+    private final GroupHashTable groups;
+    private final Value[] keyValues; // 每条记录都复用，只有新的分组才会复制
+    private GroupSpillMap spillMap; // 内存中的分组太多时，新分组的记录先写到临时map中
+    private Value[] previousKeyValues; // 重放临时map中的记录时上一个分组的key
 
     QGroup(Select select) {
         super(select);
         select.currentGroup = null;
-        groups = ValueHashMap.newInstance();
+        groups = new GroupHashTable(select);
+        keyValues = new Value[select.groupIndex.length];
     }
 
-    public ValueHashMap<HashMap<Expression, Object>> getGroups() {
+    public GroupHashTable getGroups() {
         return groups;
     }
 
     @Override
     public void run() {
+        if (spillMap != null && spillMap.isReplaying()) {
+            replay();
+            return;
+        }
         while (next()) {
             boolean yield = yieldIfNeeded(++loopCount);
             if (conditionEvaluator.getBooleanValue()) {
@@ -39,10 +44,27 @@ public class QGroup extends QOperator {
                     return; // 锁记录失败
                 }
                 rowCount++;
-                Value key = getKey(select);
-                select.currentGroup = getOrCreateGroup(groups, key);
-                select.currentGroupRowId++;
-                updateAggregate(select, columnCount);
+                // 避免在ExpressionColumn.getValue中取到旧值
+                // 例如SELECT id/3 AS A, COUNT(*) FROM mytable GROUP BY A HAVING A>=0
+                select.currentGroup = null;
+                getKeyValues(select, keyValues);
+                if (groups.isFull()) {
+                    // 内存中已有的分组继续在内存中聚合，其他分组的记录写到临时map中
+                    GroupValues group = groups.getGroup(keyValues);
+                    if (group == null) {
+                        if (spillMap == null)
+                            spillMap = new GroupSpillMap(select, keyValues.length);
+                        spillMap.addRow(keyValues);
+                    } else {
+                        select.currentGroup = group;
+                        select.currentGroupRowId++;
+                        updateAggregate(select, columnCount);
+                    }
+                } else {
+                    select.currentGroup = groups.getOrCreateGroup(keyValues);
+                    select.currentGroupRowId++;
+                    updateAggregate(select, columnCount);
+                }
                 if (sampleSize > 0 && rowCount >= sampleSize) {
                     break;
                 }
@@ -52,19 +74,61 @@ public class QGroup extends QOperator {
         }
         // 把分组后的记录放到result中
         addGroupRows(groups, select, columnCount, result);
+        if (spillMap == null) {
+            loopEnd = true;
+        } else {
+            groups.clear();
+            spillMap.startReplay();
+            replay();
+        }
+    }
+
+    // 临时map中的记录已经按分组key排好序了，跟QGroupSorted一样一个分组一个分组地聚合
+    private void replay() {
+        Value[] keyValues;
+        while ((keyValues = spillMap.next()) != null) {
+            boolean yield = yieldIfNeeded(++loopCount);
+            if (previousKeyValues == null || !Arrays.equals(previousKeyValues, keyValues)) {
+                if (previousKeyValues != null)
+                    addGroupRow(select, previousKeyValues, columnCount, result);
+                previousKeyValues = keyValues;
+                select.currentGroup = select.createGroup();
+            }
+            select.currentGroupRowId++;
+            updateAggregate(select, columnCount);
+            if (yield)
+                return;
+        }
+        if (previousKeyValues != null) {
+            addGroupRow(select, previousKeyValues, columnCount, result);
+        }
+        closeSpillMap();
         loopEnd = true;
     }
 
-    public static Value getKey(Select select) {
-        // 避免在ExpressionColumn.getValue中取到旧值
-        // 例如SELECT id/3 AS A, COUNT(*) FROM mytable GROUP BY A HAVING A>=0
-        select.currentGroup = null;
-        return ValueArray.get(getKeyValues(select));
+    private void closeSpillMap() {
+        if (spillMap != null) {
+            spillMap.close();
+            spillMap = null;
+        }
+    }
+
+    @Override
+    public void stop() {
+        // 出现异常时临时map也要删除
+        try {
+            closeSpillMap();
+        } finally {
+            super.stop();
+        }
     }
 
     // 分组key，包括一到多个字段
     public static Value[] getKeyValues(Select select) {
-        Value[] keyValues = new Value[select.groupIndex.length];
+        return getKeyValues(select, new Value[select.groupIndex.length]);
+    }
+
+    public static Value[] getKeyValues(Select select, Value[] keyValues) {
         for (int i = 0; i < select.groupIndex.length; i++) {
             int idx = select.groupIndex[i];
             Expression expr = select.expressions.get(idx);
@@ -73,24 +137,12 @@ public class QGroup extends QOperator {
         return keyValues;
     }
 
-    public static HashMap<Expression, Object> getOrCreateGroup(
-            ValueHashMap<HashMap<Expression, Object>> groups, Value key) {
-        HashMap<Expression, Object> values = groups.get(key);
-        if (values == null) {
-            values = new HashMap<>();
-            groups.put(key, values);
-        }
-        return values;
-    }
-
-    public static void addGroupRows(ValueHashMap<HashMap<Expression, Object>> groups, Select select,
-            int columnCount, ResultTarget result) {
-        for (Value v : groups.keys()) {
-            ValueArray key = (ValueArray) v;
-            select.currentGroup = groups.get(key);
-            Value[] keyValues = key.getList();
+    public static void addGroupRows(GroupHashTable groups, Select select, int columnCount,
+            ResultTarget result) {
+        groups.forEach((keyValues, group) -> {
+            select.currentGroup = group;
             addGroupRow(select, keyValues, columnCount, result);
-        }
+        });
     }
 
     public static void addGroupRow(Select select, Value[] keyValues, int columnCount,
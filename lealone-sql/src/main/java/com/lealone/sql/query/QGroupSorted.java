@@ -6,7 +6,6 @@
 package com.lealone.sql.query;
 
 import java.util.Arrays;
-import java.util.HashMap;
 
 import com.lealone.db.value.Value;
 
@@ -36,11 +35,11 @@ public class QGroupSorted extends QOperator {
                 Value[] keyValues = QGroup.getKeyValues(select);
                 if (previousKeyValues == null) {
                     previousKeyValues = keyValues;
-                    select.currentGroup = new HashMap<>();
+                    select.currentGroup = select.createGroup();
                 } else if (!Arrays.equals(previousKeyValues, keyValues)) {
                     QGroup.addGroupRow(select, previousKeyValues, columnCount, result);
                     previousKeyValues = keyValues;
-                    select.currentGroup = new HashMap<>();
+                    select.currentGroup = select.createGroup();
                 }
                 select.currentGroupRowId++;
                 QGroup.updateAggregate(select, columnCount);
@@ -29,6 +29,7 @@ public abstract class QOperator implements Operator {
     protected ResultTarget target;
     protected ResultTarget result;
     protected LocalResult localResult;
+    protected WindowOperator windowOperator;
     protected int maxRows; // 实际返回的最大行数
     protected long limitRows; // 有可能超过maxRows
     protected int sampleSize;
@@ -62,7 +63,9 @@ public abstract class QOperator implements Operator {
 
     public boolean canBreakLoop() {
         // 不需要排序时，如果超过行数限制了可以退出循环
-        if ((select.sort == null || select.sortUsingIndex) && limitRows > 0 && rowCount >= limitRows) {
+        // 有窗口函数时需要读完所有记录才能算出窗口函数的值
+        if ((select.sort == null || select.sortUsingIndex) && limitRows > 0 && rowCount >= limitRows
+                && !select.hasWindowFunctions()) {
             return true;
         }
         // 超过采样数也可以退出循环
@@ -110,6 +113,9 @@ public abstract class QOperator implements Operator {
 
     @Override
     public void stop() {
+        if (windowOperator != null && loopEnd) {
+            windowOperator.finish();
+        }
         if (select.offsetExpr != null) {
             localResult.setOffset(select.offsetExpr.getValue(session).getInt());
         }
@@ -160,6 +166,7 @@ public abstract class QOperator implements Operator {
         o.target = target;
         o.result = result;
         o.localResult = localResult;
+        o.windowOperator = windowOperator;
         o.maxRows = maxRows;
         o.limitRows = limitRows;
         o.sampleSize = sampleSize;
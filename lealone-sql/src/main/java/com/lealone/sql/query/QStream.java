@@ -0,0 +1,65 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.query;
+
+import com.lealone.db.value.Value;
+
+// 边执行边返回结果的普通查询，每次只生成客户端下一次要取的记录，
+// 缓冲区满了就暂停，客户端再来取记录时接着往下执行
+class QStream extends QOperator {
+
+    private final StreamingResult streamingResult;
+    private boolean resumed;
+
+    QStream(Select select, StreamingResult streamingResult) {
+        super(select);
+        this.streamingResult = streamingResult;
+        streamingResult.setOperator(this);
+    }
+
+    @Override
+    public void run() {
+        while (next()) {
+            boolean yield = yieldIfNeeded(++loopCount);
+            if (conditionEvaluator.getBooleanValue()) {
+                Value[] row = createRow();
+                result.addRow(row);
+                rowCount++;
+                if (canBreakLoop()) {
+                    break;
+                }
+                if (streamingResult.isFull()) {
+                    return;
+                }
+            }
+            if (yield)
+                return;
+        }
+        loopEnd = true;
+    }
+
+    // 在处理客户端的取记录请求时执行，语句已经结束了，不能再让出执行权
+    void resume() {
+        resumed = true;
+        while (!loopEnd && !streamingResult.isFull()) {
+            run();
+        }
+    }
+
+    @Override
+    public boolean yieldIfNeeded(int rowNumber) {
+        if (resumed) {
+            select.setCurrentRowNumber(rowNumber, false);
+            return false;
+        }
+        return super.yieldIfNeeded(rowNumber);
+    }
+
+    @Override
+    public void stop() {
+        // 没有LocalResult，也不需要处理limit和offset
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.query;
+
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+import com.lealone.db.result.SortOrder;
+import com.lealone.db.value.Value;
+
+// 处理order by + limit，且不能通过索引排序的查询
+// 扫描过程中只保留offset+limit条记录，避免把所有满足条件的记录都放到result中再排序
+class QTopN extends QOperator {
+
+    private final SortOrder sort;
+    private PriorityQueue<Value[]> topRows; // 堆顶是当前保留的记录中排在最后的那一条
+
+    QTopN(Select select) {
+        super(select);
+        sort = select.sort;
+    }
+
+    // 只有limit+offset不超过内存中允许的最大行数时才使用，否则还是交给LocalResult去排序
+    static boolean isApplicable(Select select, int limitRows) {
+        if (select.sort == null || select.sortUsingIndex || select.distinct || limitRows <= 0
+                || select.hasWindowFunctions()) {
+            return false;
+        }
+        long topN = limitRows;
+        if (select.offsetExpr != null) {
+            int offset = select.offsetExpr.getValue(select.getSession()).getInt();
+            if (offset > 0) {
+                topN += offset;
+            }
+        }
+        return topN <= select.getSession().getDatabase().getMaxMemoryRows();
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        // 堆中的记录没有放到localResult，所以无需从oltp转到olap
+        yieldableSelect.disableOlap();
+        int initialCapacity = (int) Math.min(limitRows, 1024);
+        topRows = new PriorityQueue<>(initialCapacity + 1, Collections.reverseOrder(sort));
+    }
+
+    @Override
+    public void run() {
+        while (next()) {
+            boolean yield = yieldIfNeeded(++loopCount);
+            if (conditionEvaluator.getBooleanValue()) {
+                if (select.isForUpdate && !tryLockRow()) {
+                    return; // 锁记录失败
+                }
+                Value[] row = createRow();
+                if (topRows.size() < limitRows) {
+                    topRows.add(row);
+                } else if (sort.compare(row, topRows.peek()) < 0) {
+                    topRows.poll();
+                    topRows.add(row);
+                }
+                rowCount++;
+                if (canBreakLoop()) {
+                    break;
+                }
+            }
+            if (yield)
+                return;
+        }
+        // 最后只有offset+limit条记录会放到result中，由LocalResult完成排序
+        for (Value[] row : topRows) {
+            result.addRow(row);
+        }
+        topRows = null;
+        loopEnd = true;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 
 import com.lealone.common.exceptions.DbException;
 import com.lealone.db.Database;
+import com.lealone.db.DbObject;
 import com.lealone.db.api.ErrorCode;
 import com.lealone.db.async.AsyncResultHandler;
 import com.lealone.db.command.CommandParameter;
@@ -122,6 +123,15 @@ public abstract class Query extends ManipulationStatement implements com.lealone
     @Override
     public abstract HashSet<Table> getTables();
 
+    @Override
+    public boolean isShareable() {
+        if (isForUpdate)
+            return false;
+        HashSet<DbObject> dependencies = new HashSet<>(getTables());
+        accept(ExpressionVisitorFactory.getDependenciesVisitor(dependencies));
+        return isShareable(dependencies);
+    }
+
     /**
      * Set the order by list.
      *
@@ -283,6 +293,10 @@ public abstract class Query extends ManipulationStatement implements com.lealone
         this.sampleSizeExpr = sampleSize;
     }
 
+    public Expression getSampleSize() {
+        return sampleSizeExpr;
+    }
+
     /**
      * Get the sample size, if set.
      *
@@ -304,6 +318,11 @@ public abstract class Query extends ManipulationStatement implements com.lealone
     public final long getMaxDataModificationId() {
         MaxModificationIdVisitor visitor = ExpressionVisitorFactory.getMaxModificationIdVisitor();
         accept(visitor);
+        // 像count(*)这样的查询不会访问表中的字段，所以要单独加上当前查询用到的表
+        List<TableFilter> filters = getFilters();
+        for (int i = 0, size = filters.size(); i < size; i++) {
+            visitor.setMaxDataModificationId(filters.get(i).getTable().getMaxDataModificationId());
+        }
         return visitor.getMaxDataModificationId();
     }
 
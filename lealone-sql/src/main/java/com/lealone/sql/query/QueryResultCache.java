@@ -5,6 +5,7 @@
  */
 package com.lealone.sql.query;
 
+import java.sql.Connection;
 import java.util.ArrayList;
 
 import com.lealone.db.Database;
@@ -17,14 +18,15 @@ import com.lealone.sql.expression.visitor.ExpressionVisitorFactory;
 class QueryResultCache {
 
     private final Select select;
-    private final ServerSession session;
+    private ServerSession session;
 
     private boolean noCache;
     private int lastLimit;
     private long lastEvaluated;
     private Value[] lastParameters;
     private LocalResult lastResult;
-    private boolean cacheableChecked;
+    private boolean fromSharedCache;
+    private int shareable; // 0: 未检查，1: 可以共享，-1: 不能共享
 
     QueryResultCache(Select select) {
         this.select = select;
@@ -43,19 +45,37 @@ class QueryResultCache {
     void setResult(LocalResult r) {
         if (isNotCachable())
             return;
-        if (!isDeterministic())
+        if (!isDeterministic()) {
             disable();
-        else
+        } else {
             lastResult = r;
+            if (!fromSharedCache && isShared()) {
+                session.getDatabase().getSharedResultCache().put(session, select.getSQL(),
+                        lastParameters, lastLimit, lastEvaluated, r);
+            }
+        }
     }
 
     LocalResult getResult(int limit) {
+        // 语句被其他session重用时，上一个session的结果可能包含未提交的数据，不能再用
+        if (session != select.getSession()) {
+            session = select.getSession();
+            if (lastResult != null) {
+                lastResult.close();
+                lastResult = null;
+            }
+        }
+        fromSharedCache = false;
         if (isNotCachable()) {
             return null;
         } else {
             Value[] params = getParameterValues();
-            long now = session.getDatabase().getModificationDataId();
-            // 当lastEvaluated != now时，说明数据已经有变化，缓存的结果不能用了
+            // 只看查询用到的那些表的修改id，其他表的写操作不会让缓存的结果失效
+            long now = select.getMaxDataModificationId();
+            if (now == Long.MAX_VALUE) {
+                disable();
+                return null;
+            }
             if (lastEvaluated == now && lastResult != null && !lastResult.isClosed()
                     && limit == lastLimit) {
                 if (sameResultAsLast(params)) {
@@ -73,10 +93,32 @@ class QueryResultCache {
                 lastResult.close();
                 lastResult = null;
             }
+            if (isShared()) {
+                LocalResult r = session.getDatabase().getSharedResultCache().get(session,
+                        select.getSQL(), params, limit, now);
+                if (r != null) {
+                    fromSharedCache = true;
+                    r.reset();
+                    return r;
+                }
+            }
             return null;
         }
     }
 
+    // 只有读已提交的事务，并且还没有修改过数据时，才能使用和保存其他session也能看到的结果
+    private boolean isShared() {
+        if (shareable == 0) {
+            shareable = select.getSQL() != null && select.isShareable()
+                    && select.accept(ExpressionVisitorFactory.getIndependentVisitor()) ? 1 : -1;
+        }
+        Database db = session.getDatabase();
+        return shareable > 0 && db.getSettings().sharedResultCacheSize > 0
+                && select.getModificationMetaId() == db.getModificationMetaId()
+                && session.getTransactionIsolationLevel() == Connection.TRANSACTION_READ_COMMITTED
+                && !session.containsModifiedTables();
+    }
+
     private boolean isDeterministic() {
         return select.accept(ExpressionVisitorFactory.getDeterministicVisitor());
     }
@@ -95,25 +137,9 @@ class QueryResultCache {
     }
 
     private boolean sameResultAsLast(Value[] params) {
-        if (!cacheableChecked) {
-            long max = select.getMaxDataModificationId();
-            noCache = max == Long.MAX_VALUE;
-            cacheableChecked = true;
-        }
-        if (noCache) {
+        if (!sameParamsAsLast(session.getDatabase(), params))
             return false;
-        }
-        Database db = session.getDatabase();
-        if (!sameParamsAsLast(db, params))
-            return false;
-        if (!select.accept(ExpressionVisitorFactory.getIndependentVisitor())) {
-            return false;
-        }
-        if (db.getModificationDataId() > lastEvaluated
-                && select.getMaxDataModificationId() > lastEvaluated) {
-            return false;
-        }
-        return true;
+        return select.accept(ExpressionVisitorFactory.getIndependentVisitor());
     }
 
     private boolean sameParamsAsLast(Database db, Value[] params) {
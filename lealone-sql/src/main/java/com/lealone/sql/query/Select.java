@@ -5,8 +5,8 @@
  */
 package com.lealone.sql.query;
 
+import java.sql.Connection;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 
 import com.lealone.common.exceptions.DbException;
@@ -30,6 +30,7 @@ import com.lealone.db.result.SortOrder;
 import com.lealone.db.session.ServerSession;
 import com.lealone.db.table.Column;
 import com.lealone.db.table.Table;
+import com.lealone.db.table.TableType;
 import com.lealone.db.value.Value;
 import com.lealone.db.value.ValueNull;
 import com.lealone.sql.PreparedSQLStatement;
@@ -43,6 +44,8 @@ import com.lealone.sql.expression.condition.Comparison;
 import com.lealone.sql.expression.condition.ConditionAndOr;
 import com.lealone.sql.expression.visitor.ExpressionVisitor;
 import com.lealone.sql.expression.visitor.ExpressionVisitorFactory;
+import com.lealone.sql.expression.window.Window;
+import com.lealone.sql.expression.window.WindowFunction;
 import com.lealone.sql.optimizer.ColumnResolver;
 import com.lealone.sql.optimizer.Optimizer;
 import com.lealone.sql.optimizer.PlanItem;
@@ -73,8 +76,9 @@ public class Select extends Query {
     int[] groupIndex;
     boolean[] groupByExpression;
     int havingIndex;
-    HashMap<Expression, Object> currentGroup;
+    GroupValues currentGroup;
     int currentGroupRowId;
+    private int groupSlotCount;
     Expression condition;
     int visibleColumnCount;
     int resultColumnCount; // 不包含having和group by中加入的列
@@ -83,9 +87,12 @@ public class Select extends Query {
     boolean isQuickAggregateQuery;
     boolean isDistinctQuery;
     boolean sortUsingIndex;
+    private ArrayList<WindowFunction> windowFunctions;
     private double cost;
 
     final QueryResultCache resultCache = new QueryResultCache(this);
+    // 还没有读完的流式结果集，读完或关闭之前语句不能重用
+    StreamingResult streamingResult;
 
     public Select(ServerSession session) {
         super(session);
@@ -140,14 +147,27 @@ public class Select extends Query {
         return having;
     }
 
-    public HashMap<Expression, Object> getCurrentGroup() {
+    public GroupValues getCurrentGroup() {
         return currentGroup;
     }
 
-    public void setCurrentGroup(HashMap<Expression, Object> currentGroup) {
+    public void setCurrentGroup(GroupValues currentGroup) {
         this.currentGroup = currentGroup;
     }
 
+    /**
+     * Allocate a slot in the group values for an aggregate or a grouped column.
+     *
+     * @return the slot index
+     */
+    public int allocateGroupSlot() {
+        return groupSlotCount++;
+    }
+
+    public GroupValues createGroup() {
+        return new GroupValues(groupSlotCount);
+    }
+
     public int getCurrentGroupRowId() {
         return currentGroupRowId;
     }
@@ -156,6 +176,21 @@ public class Select extends Query {
         currentGroupRowId++;
     }
 
+    public void addWindowFunction(WindowFunction function) {
+        if (windowFunctions == null) {
+            windowFunctions = Utils.newSmallArrayList();
+        }
+        windowFunctions.add(function);
+    }
+
+    public ArrayList<WindowFunction> getWindowFunctions() {
+        return windowFunctions;
+    }
+
+    public boolean hasWindowFunctions() {
+        return windowFunctions != null;
+    }
+
     public int[] getGroupIndex() {
         return groupIndex;
     }
@@ -232,6 +267,9 @@ public class Select extends Query {
                     filters);
             // prepare阶段还用到orderList，所以先不置null
         }
+        if (windowFunctions != null) {
+            initWindow();
+        }
         resultColumnCount = expressions.size();
 
         if (having != null) {
@@ -362,6 +400,49 @@ public class Select extends Query {
         }
     }
 
+    // 窗口函数的参数、PARTITION BY和ORDER BY中的表达式都作为隐藏列加到select字段列表中，
+    // 这样扫描记录(或分组)时就能算出它们的值，窗口函数的值最后由WindowOperator按分区计算。
+    // 目前窗口函数只能直接出现在select字段列表或order by中，不能嵌套在其他表达式里
+    private void initWindow() {
+        for (WindowFunction function : windowFunctions) {
+            int index = -1;
+            for (int i = 0, size = expressions.size(); i < size; i++) {
+                if (expressions.get(i).getNonAliasExpression() == function) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                throw DbException.getUnsupportedException("nested window function " + function.getSQL());
+            }
+            function.setColumnIndex(index);
+            Expression[] args = function.getArgs();
+            int[] argIndexes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                argIndexes[i] = addHiddenColumn(args[i]);
+            }
+            function.setArgIndexes(argIndexes);
+            Window window = function.getWindow();
+            ArrayList<Expression> partitionBy = window.getPartitionBy();
+            int[] partitionIndexes = new int[partitionBy == null ? 0 : partitionBy.size()];
+            for (int i = 0; i < partitionIndexes.length; i++) {
+                partitionIndexes[i] = addHiddenColumn(partitionBy.get(i));
+            }
+            window.setPartitionIndexes(partitionIndexes);
+            ArrayList<SelectOrderBy> orderBy = window.getOrderBy();
+            int[] orderIndexes = new int[orderBy == null ? 0 : orderBy.size()];
+            for (int i = 0; i < orderIndexes.length; i++) {
+                orderIndexes[i] = addHiddenColumn(orderBy.get(i).expression);
+            }
+            window.setOrderIndexes(orderIndexes);
+        }
+    }
+
+    private int addHiddenColumn(Expression expr) {
+        expressions.add(expr);
+        return expressions.size() - 1;
+    }
+
     @Override
     public PreparedSQLStatement prepare() {
         if (isPrepared) {
@@ -410,14 +491,18 @@ public class Select extends Query {
         // 以下3个if为特殊的distinct、sort、group by选择更合适的索引
         // 1. distinct
         if (distinct && session.getDatabase().getSettings().optimizeDistinct && !isGroupQuery
-                && filters.size() == 1 && condition == null) {
+                && filters.size() == 1 && condition == null && windowFunctions == null) {
             optimizeDistinct();
         }
         // 2. sort
         if (sort != null && !isQuickAggregateQuery && !isGroupQuery) {
             optimizeSort();
         }
-        // 3. group by
+        // 3. window
+        if (windowFunctions != null && !isGroupQuery) {
+            optimizeWindowSort();
+        }
+        // 4. group by
         if (groupIndex != null) {
             Index index = getGroupSortedIndex();
             if (index != null) {
@@ -430,6 +515,11 @@ public class Select extends Query {
         }
         expressionArray = new Expression[expressions.size()];
         expressions.toArray(expressionArray);
+        // 执行计划已经定下来了，每个表要读取的字段也不会再变，执行时不用每次都重新计算
+        HashSet<Column> columnSet = getReferencedColumns();
+        for (TableFilter f : filters) {
+            f.setColumnIndexes(f.createColumnIndexes(columnSet));
+        }
         isPrepared = true;
 
         return this;
@@ -536,6 +626,37 @@ public class Select extends Query {
         }
     }
 
+    // 如果有索引能满足第一个窗口的排序要求，就换成这个索引，计算窗口函数时就不用再排序了
+    private void optimizeWindowSort() {
+        Window window = windowFunctions.get(0).getWindow();
+        Index index = getWindowSortIndex(window);
+        if (index != null && topTableFilter.getIndex().getIndexType().isScan()) {
+            topTableFilter.setIndex(index);
+        }
+    }
+
+    private Index getWindowSortIndex(Window window) {
+        SortOrder windowSort = window.createSortOrder(session.getDatabase());
+        if (windowSort == null) {
+            return null;
+        }
+        return getSortIndex(windowSort.getQueryColumnIndexes(), windowSort.getSortTypes());
+    }
+
+    /**
+     * 记录是否已经按窗口的PARTITION BY和ORDER BY的顺序返回
+     *
+     * @param window the window
+     * @return true if the rows are sorted by the index of the top table filter
+     */
+    public boolean isSortedByIndex(Window window) {
+        if (isGroupQuery || topTableFilter.hasInComparisons()) {
+            return false;
+        }
+        Index index = getWindowSortIndex(window);
+        return index != null && index == topTableFilter.getIndex();
+    }
+
     private double preparePlan() {
         // 优化单表查询
         if (filters.size() == 1) {
@@ -592,8 +713,12 @@ public class Select extends Query {
         if (sort == null) {
             return null;
         }
+        return getSortIndex(sort.getQueryColumnIndexes(), sort.getSortTypes());
+    }
+
+    private Index getSortIndex(int[] queryColumnIndexes, int[] sortTypes) {
         ArrayList<Column> sortColumns = new ArrayList<>();
-        for (int idx : sort.getQueryColumnIndexes()) {
+        for (int idx : queryColumnIndexes) {
             if (idx < 0 || idx >= expressions.size()) {
                 throw DbException.getInvalidValueException("ORDER BY", idx + 1);
             }
@@ -612,7 +737,6 @@ public class Select extends Query {
             sortColumns.add(exprCol.getColumn());
         }
         Column[] sortCols = sortColumns.toArray(new Column[sortColumns.size()]);
-        int[] sortTypes = sort.getSortTypes();
         if (sortCols.length == 0) {
             // sort just on constants - can use scan index
             return topTableFilter.getTable().getScanIndex(session);
@@ -628,6 +752,9 @@ public class Select extends Query {
                 if (index.getIndexType().isHash()) {
                     continue;
                 }
+                if (!canUseForSort(index)) {
+                    continue;
+                }
                 IndexColumn[] indexCols = index.getIndexColumns();
                 if (indexCols.length < sortCols.length) {
                     continue;
@@ -664,6 +791,15 @@ public class Select extends Query {
         return null;
     }
 
+    // 部分索引不包含所有记录，只有查询条件蕴含索引条件时才被选中，没被选中的不能用来排序，
+    // 全文索引中的key是token，不是按字段值排序的
+    private boolean canUseForSort(Index index) {
+        if (index.getIndexType().isText()) {
+            return false;
+        }
+        return index.getPredicate() == null || index == topTableFilter.getIndex();
+    }
+
     private Index getGroupSortedIndex() {
         ArrayList<Index> indexes = topTableFilter.getTable().getIndexes();
         if (indexes != null) {
@@ -676,6 +812,9 @@ public class Select extends Query {
                     // does not allow scanning entries
                     continue;
                 }
+                if (!canUseForSort(index)) {
+                    continue;
+                }
                 if (isGroupSortedIndex(topTableFilter, index)) {
                     return index;
                 }
@@ -769,26 +908,7 @@ public class Select extends Query {
             buff.append(StringUtils.indent(exprList[i].getSQL(), 4, false));
         }
         buff.append("\nFROM ");
-        TableFilter filter = topTableFilter;
-        if (filter != null) {
-            buff.resetCount();
-            int i = 0;
-            do {
-                buff.appendExceptFirst("\n");
-                buff.append(filter.getPlanSQL(i++ > 0));
-                filter = filter.getJoin();
-            } while (filter != null);
-        } else {
-            buff.resetCount();
-            int i = 0;
-            for (TableFilter f : topFilters) {
-                do {
-                    buff.appendExceptFirst("\n");
-                    buff.append(f.getPlanSQL(i++ > 0));
-                    f = f.getJoin();
-                } while (f != null);
-            }
-        }
+        appendFromPlanSQL(buff);
         if (condition != null) {
             buff.append("\nWHERE ").append(StringUtils.unEnclose(condition.getSQL()));
         }
@@ -881,6 +1001,36 @@ public class Select extends Query {
         return isForUpdate;
     }
 
+    private void appendFromPlanSQL(StatementBuilder buff) {
+        TableFilter filter = topTableFilter;
+        if (filter != null) {
+            buff.resetCount();
+            int i = 0;
+            do {
+                buff.appendExceptFirst("\n");
+                buff.append(filter.getPlanSQL(i++ > 0));
+                filter = filter.getJoin();
+            } while (filter != null);
+        } else {
+            buff.resetCount();
+            int i = 0;
+            for (TableFilter f : topFilters) {
+                do {
+                    buff.appendExceptFirst("\n");
+                    buff.append(f.getPlanSQL(i++ > 0));
+                    f = f.getJoin();
+                } while (f != null);
+            }
+        }
+    }
+
+    // 返回FROM子句的SQL(不含FROM)，改写子查询时用来生成新的查询语句
+    public String getFromPlanSQL() {
+        StatementBuilder buff = new StatementBuilder();
+        appendFromPlanSQL(buff);
+        return buff.toString();
+    }
+
     @Override
     public void mapColumns(ColumnResolver resolver, int level) {
         for (Expression e : expressions) {
@@ -997,14 +1147,29 @@ public class Select extends Query {
     }
 
     public HashSet<Column> getReferencedColumns() {
-        int len = expressionArray.length;
-        HashSet<Column> columnSet = new HashSet<>(len);
-        for (int i = 0; i < len; i++) {
-            expressionArray[i].getColumns(columnSet);
+        HashSet<Column> columnSet;
+        if (expressionArray == null) { // 在prepare阶段选择索引时expressionArray还没有创建
+            columnSet = new HashSet<>(expressions.size());
+            for (Expression e : expressions) {
+                e.getColumns(columnSet);
+            }
+        } else {
+            int len = expressionArray.length;
+            columnSet = new HashSet<>(len);
+            for (int i = 0; i < len; i++) {
+                expressionArray[i].getColumns(columnSet);
+            }
         }
         if (condition != null)
             condition.getColumns(columnSet);
-
+        // 外连接的ON条件和过滤条件没有合并到where条件中
+        for (TableFilter f : filters) {
+            if (f.getJoinCondition() != null)
+                f.getJoinCondition().getColumns(columnSet);
+            if (f.getFilterCondition() != null)
+                f.getFilterCondition().getColumns(columnSet);
+            f.getIndexConditionColumns(columnSet);
+        }
         return columnSet;
     }
 
@@ -1017,6 +1182,38 @@ public class Select extends Query {
         resultCache.disable();
     }
 
+    @Override
+    public void close() {
+        if (streamingResult == null)
+            super.close();
+    }
+
+    // 重新执行语句时上一次的流式结果集就不能再读了
+    void closeStreamingResult() {
+        StreamingResult r = streamingResult;
+        if (r != null) {
+            streamingResult = null;
+            r.close();
+        }
+    }
+
+    // 只有不需要排序、分组、去重并且只查一个普通表的查询才能边执行边返回结果，
+    // 语句结束后事务已经提交了，所以只支持读已提交
+    boolean isStreamable() {
+        if (isGroupQuery || isQuickAggregateQuery || distinct || isForUpdate || offsetExpr != null
+                || sort != null && !sortUsingIndex || hasWindowFunctions()
+                || topTableFilter.getJoin() != null) {
+            return false;
+        }
+        Table table = topTableFilter.getTable();
+        if (table.isTemporary() || table.getTableType() != TableType.STANDARD_TABLE
+                && table.getTableType() != TableType.RANGE_TABLE) {
+            return false;
+        }
+        return session.getTransactionIsolationLevel() == Connection.TRANSACTION_READ_COMMITTED
+                && accept(ExpressionVisitorFactory.getStreamableVisitor());
+    }
+
     @Override
     public Result query(int maxRows, ResultTarget target) {
         YieldableSelect yieldable = new YieldableSelect(this, maxRows, false, null, target);
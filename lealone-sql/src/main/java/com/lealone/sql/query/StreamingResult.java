@@ -0,0 +1,166 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.query;
+
+import java.util.ArrayDeque;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.db.api.ErrorCode;
+import com.lealone.db.result.DelegatedResult;
+import com.lealone.db.result.LocalResult;
+import com.lealone.db.result.ResultTarget;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.table.Table;
+import com.lealone.db.value.Value;
+
+// 服务器端的游标，最多缓存bufferSize条记录，客户端取完后才让QStream接着生成下一批记录，
+// 所以服务器端占用的内存跟结果集的大小无关，客户端取记录的速度也决定了查询执行的速度。
+// 列的元数据由一个空的LocalResult提供，结果集不大时也直接用它返回所有记录。
+class StreamingResult extends DelegatedResult implements ResultTarget {
+
+    private final Select select;
+    private final LocalResult localResult;
+    private int bufferSize;
+    private final ArrayDeque<Value[]> rows;
+    // 流式结果集不持有表锁，每次接着生成记录前检查表有没有被删除或修改过结构
+    private final Table table;
+    private final String tableName;
+    private final long tableModificationId;
+    private QStream operator;
+    private Value[] currentRow;
+    private int rowId = -1;
+    private boolean closed;
+
+    StreamingResult(Select select, LocalResult localResult, int bufferSize) {
+        this.select = select;
+        this.localResult = localResult;
+        this.bufferSize = bufferSize;
+        result = localResult;
+        rows = new ArrayDeque<>();
+        table = select.getTopTableFilter().getTable();
+        tableName = table.getSQL();
+        tableModificationId = table.getModificationId();
+    }
+
+    void setOperator(QStream operator) {
+        this.operator = operator;
+    }
+
+    boolean isFull() {
+        return rows.size() >= bufferSize;
+    }
+
+    // 查询在第一批记录内就结束了，跟原来一样返回行数确定的结果集
+    LocalResult toLocalResult() {
+        closed = true;
+        for (Value[] row : rows) {
+            localResult.addRow(row);
+        }
+        rows.clear();
+        localResult.done();
+        return localResult;
+    }
+
+    @Override
+    public boolean addRow(Value[] values) {
+        rows.add(values);
+        return true;
+    }
+
+    @Override
+    public int getRowCount() {
+        return -1; // 读完才知道
+    }
+
+    @Override
+    public void reset() {
+        throw DbException.get(ErrorCode.RESULT_SET_NOT_SCROLLABLE);
+    }
+
+    @Override
+    public Value[] currentRow() {
+        return currentRow;
+    }
+
+    @Override
+    public boolean next() {
+        if (closed)
+            return false;
+        if (rows.isEmpty() && !operator.isStopped())
+            fetch();
+        currentRow = rows.poll();
+        if (currentRow == null) {
+            close();
+            return false;
+        }
+        rowId++;
+        return true;
+    }
+
+    // 在处理客户端的取记录请求时先生成要返回的记录，执行查询时出错可以直接给客户端返回异常，
+    // 不会在编码响应包的过程中才出错
+    @Override
+    public void prepareNextRows(int count) {
+        if (closed)
+            return;
+        // 客户端会自适应地调大fetchSize，缓冲区也跟着变大，这样编码时不会再执行查询
+        if (count > bufferSize)
+            bufferSize = count;
+        if (rows.size() < count && !operator.isStopped())
+            fetch();
+    }
+
+    private void fetch() {
+        checkTable();
+        ServerSession session = select.getSession();
+        // 语句结束时已经提交了事务，通过二级索引读记录时会开始新的事务，取完这一批记录就提交
+        boolean autoCommit = session.isAutoCommit() && !session.hasTransaction();
+        try {
+            operator.resume();
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        } finally {
+            if (autoCommit)
+                session.commit();
+        }
+    }
+
+    private void checkTable() {
+        if (table.isInvalid()) {
+            close();
+            throw DbException.get(ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1, tableName);
+        }
+        if (table.getModificationId() != tableModificationId) {
+            close();
+            throw DbException.get(ErrorCode.OBJECT_CLOSED);
+        }
+    }
+
+    @Override
+    public int getRowId() {
+        return rowId;
+    }
+
+    @Override
+    public boolean needToClose() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        rows.clear();
+        currentRow = null;
+        localResult.close();
+        if (select.streamingResult == this) {
+            select.streamingResult = null;
+            select.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.sql.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import com.lealone.db.Database;
+import com.lealone.db.result.LocalResult;
+import com.lealone.db.result.ResultTarget;
+import com.lealone.db.result.RowList;
+import com.lealone.db.result.SortOrder;
+import com.lealone.db.session.ServerSession;
+import com.lealone.db.value.Value;
+import com.lealone.sql.expression.window.Window;
+import com.lealone.sql.expression.window.WindowFunction;
+
+// 计算窗口函数，夹在QOperator和最终的result之间。
+// PARTITION BY和ORDER BY都相同的窗口函数放在同一个stage中一起计算，
+// 每个stage先把记录按窗口的顺序排好(由LocalResult完成，记录太多时会写到临时map中)，
+// 然后一个分区一个分区地计算，算完的分区马上交给下一个stage或最终的result，只保留当前分区，
+// 分区太大时(比如OVER ()会把所有记录放在一个分区中)也会写到临时map中。
+// 如果第一个stage的顺序跟顶层表使用的索引一样，记录到来时就已经排好序了，不需要再排序。
+class WindowOperator implements ResultTarget {
+
+    private final ServerSession session;
+    private final ResultTarget target;
+    private final Stage[] stages;
+    private final int visibleColumnCount; // distinct查询要把隐藏列去掉后再交给result
+    private int rowCount;
+
+    WindowOperator(Select select, ResultTarget target) {
+        this.session = select.getSession();
+        this.target = target;
+        visibleColumnCount = select.distinct ? select.visibleColumnCount : -1;
+
+        LinkedHashMap<String, ArrayList<WindowFunction>> map = new LinkedHashMap<>();
+        for (WindowFunction f : select.getWindowFunctions()) {
+            String key = f.getWindow().getSortKey();
+            ArrayList<WindowFunction> functions = map.get(key);
+            if (functions == null) {
+                functions = new ArrayList<>();
+                map.put(key, functions);
+            }
+            functions.add(f);
+        }
+        stages = new Stage[map.size()];
+        int i = 0;
+        for (ArrayList<WindowFunction> functions : map.values()) {
+            // 只有第一个stage的输入顺序才可能是索引的顺序
+            boolean sorted = i == 0 && select.isSortedByIndex(functions.get(0).getWindow());
+            stages[i] = new Stage(select, functions, sorted);
+            if (i > 0) {
+                stages[i - 1].next = stages[i];
+            }
+            i++;
+        }
+    }
+
+    @Override
+    public boolean addRow(Value[] values) {
+        stages[0].addRow(values);
+        return false;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    // 所有记录都已经加进来了，前一个stage算完后下一个stage才有完整的输入
+    void finish() {
+        for (Stage stage : stages) {
+            stage.finish();
+        }
+    }
+
+    private void output(Value[] row) {
+        if (visibleColumnCount >= 0 && row.length > visibleColumnCount) {
+            row = Arrays.copyOf(row, visibleColumnCount);
+        }
+        target.addRow(row);
+        rowCount++;
+    }
+
+    private class Stage {
+
+        private final WindowFunction[] functions;
+        private final SortOrder partitionOrder;
+        private final SortOrder peerOrder;
+        private final LocalResult buffer; // 为null时说明记录已经是有序的
+        private final RowList partition;
+        private Stage next;
+
+        Stage(Select select, ArrayList<WindowFunction> functions, boolean sorted) {
+            this.functions = functions.toArray(new WindowFunction[functions.size()]);
+            Window window = this.functions[0].getWindow();
+            Database db = session.getDatabase();
+            partitionOrder = window.createPartitionOrder(db);
+            peerOrder = window.createPeerOrder(db);
+            partition = new RowList(session);
+            SortOrder sort = window.createSortOrder(db);
+            if (sort == null || sorted) {
+                buffer = null;
+            } else {
+                buffer = new LocalResult(session, select.expressionArray, select.visibleColumnCount);
+                buffer.setSortOrder(sort);
+            }
+        }
+
+        void addRow(Value[] row) {
+            if (buffer != null) {
+                buffer.addRow(row);
+            } else {
+                addToPartition(row);
+            }
+        }
+
+        private void addToPartition(Value[] row) {
+            if (!partition.isEmpty() && partitionOrder != null
+                    && partitionOrder.compare(partition.get(0), row) != 0) {
+                computePartition();
+            }
+            partition.add(row);
+        }
+
+        private void computePartition() {
+            for (WindowFunction f : functions) {
+                f.compute(session, partition, peerOrder);
+            }
+            for (int i = 0, size = partition.size(); i < size; i++) {
+                Value[] row = partition.get(i);
+                if (next != null) {
+                    next.addRow(row);
+                } else {
+                    output(row);
+                }
+            }
+            partition.clear();
+        }
+
+        void finish() {
+            if (buffer != null) {
+                buffer.done();
+                while (buffer.next()) {
+                    addToPartition(buffer.currentRow());
+                }
+                buffer.close();
+            }
+            if (!partition.isEmpty()) {
+                computePartition();
+            }
+        }
+    }
+}
@@ -24,6 +24,8 @@ public class YieldableSelect extends YieldableQueryBase {
     private final int olapThreshold;
     private boolean olapDisabled;
     private Operator queryOperator;
+    private int streamingFetchSize;
+    private StreamingResult streamingResult;
 
     public YieldableSelect(Select select, int maxRows, boolean scrollable,
             AsyncResultHandler<Result> asyncHandler, ResultTarget target) {
@@ -49,6 +51,11 @@ public class YieldableSelect extends YieldableQueryBase {
         return super.yieldIfNeeded(rowNumber);
     }
 
+    @Override
+    public void enableStreaming(int fetchSize) {
+        streamingFetchSize = fetchSize;
+    }
+
     // 一些像QDistinct这样的Operator无需从oltp转到olap，可以禁用olap
     public void disableOlap() {
         olapDisabled = true;
@@ -74,6 +81,7 @@ public class YieldableSelect extends YieldableQueryBase {
     protected boolean startInternal() {
         // select.getTopTableFilter().lock(session, select.isForUpdate);
         select.fireBeforeSelectTriggers();
+        select.closeStreamingResult();
         queryOperator = createQueryOperator();
         queryOperator.start();
         return false;
@@ -84,6 +92,11 @@ public class YieldableSelect extends YieldableQueryBase {
         // 执行startInternal抛异常时queryOperator可能为null
         if (queryOperator != null)
             queryOperator.stop();
+        // 出现异常时还没有交给客户端的流式结果集要关闭
+        if (streamingResult != null) {
+            streamingResult.close();
+            streamingResult = null;
+        }
     }
 
     @Override
@@ -99,6 +112,20 @@ public class YieldableSelect extends YieldableQueryBase {
                     throw e;
                 }
             }
+            if (streamingResult != null && (queryOperator.isStopped() || streamingResult.isFull())) {
+                if (queryOperator.isStopped()) {
+                    LocalResult r = streamingResult.toLocalResult();
+                    setResult(r, r.getRowCount());
+                    select.resultCache.setResult(r);
+                } else {
+                    // 剩下的记录等客户端来取时再生成
+                    select.streamingResult = streamingResult;
+                    setResult(streamingResult, -1);
+                }
+                streamingResult = null;
+                session.setStatus(SessionStatus.STATEMENT_COMPLETED);
+                break;
+            }
             if (queryOperator.isStopped()) {
                 // 查询结果已经增加到target了
                 if (target != null) {
@@ -121,6 +148,7 @@ public class YieldableSelect extends YieldableQueryBase {
     private QOperator createQueryOperator() {
         LocalResult result;
         ResultTarget to;
+        WindowOperator windowOperator = null;
         QOperator queryOperator;
         int limitRows = getLimitRows(maxRows);
         LocalResult cachedResult = select.resultCache.getResult(maxRows); // 不直接用limitRows
@@ -128,9 +156,21 @@ public class YieldableSelect extends YieldableQueryBase {
             result = cachedResult;
             to = cachedResult;
             queryOperator = new QCache(select, cachedResult);
+        } else if (isStreamable(limitRows)) {
+            result = null;
+            streamingResult = new StreamingResult(select, createLocalResult(null), streamingFetchSize);
+            to = streamingResult;
+            queryOperator = new QStream(select, streamingResult);
+            disableOlap();
         } else {
             result = createLocalResultIfNeeded(limitRows);
             to = result != null ? result : target;
+            if (select.hasWindowFunctions()) {
+                // 窗口函数的中间结果不在localResult中，所以也无需从oltp转到olap
+                windowOperator = new WindowOperator(select, to);
+                to = windowOperator;
+                disableOlap();
+            }
             if (limitRows != 0) {
                 if (select.isQuickAggregateQuery) {
                     queryOperator = new QAggregateQuick(select);
@@ -146,6 +186,8 @@ public class YieldableSelect extends YieldableQueryBase {
                     }
                 } else if (select.isDistinctQuery) {
                     queryOperator = new QDistinct(select);
+                } else if (QTopN.isApplicable(select, limitRows)) {
+                    queryOperator = new QTopN(select);
                 } else {
                     queryOperator = new QFlat(select);
                 }
@@ -158,10 +200,16 @@ public class YieldableSelect extends YieldableQueryBase {
         queryOperator.target = target;
         queryOperator.result = to;
         queryOperator.localResult = result;
+        queryOperator.windowOperator = windowOperator;
         queryOperator.yieldableSelect = this;
         return queryOperator;
     }
 
+    private boolean isStreamable(int limitRows) {
+        return streamingFetchSize > 0 && !scrollable && target == null && limitRows != 0
+                && session.isStreamingResult() && select.isStreamable();
+    }
+
     private int getLimitRows(int maxRows) {
         // 按JDBC规范的要求，当调用java.sql.Statement.setMaxRows时，
         // 如果maxRows是0，表示不限制行数，相当于没有调用过setMaxRows一样，
@@ -188,7 +236,9 @@ public class YieldableSelect extends YieldableQueryBase {
                 || target != null && !target.optimizeInsertFromSelect()) {
             result = createLocalResult(result);
         }
-        if (select.sort != null && (!select.sortUsingIndex || select.distinct)) {
+        // 计算窗口函数时会打乱索引的顺序，所以还要排序
+        if (select.sort != null
+                && (!select.sortUsingIndex || select.distinct || select.hasWindowFunctions())) {
             result = createLocalResult(result);
             result.setSortOrder(select.sort);
         }
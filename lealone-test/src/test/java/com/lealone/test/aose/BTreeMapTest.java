@@ -22,6 +22,7 @@ public class BTreeMapTest extends AoseTestBase {
         testSyncOperations();
         testAsyncOperations();
         testSplit();
+        testSeek();
         testRemove();
         testSave();
         testAppend();
@@ -188,6 +189,48 @@ public class BTreeMapTest extends AoseTestBase {
         // map.printPage();
     }
 
+    // seek会重用cursor当前的位置，结果要跟重新创建cursor一样
+    void testSeek() {
+        openMap();
+        map.clear();
+        for (int i = 1; i <= 5000; i++) {
+            map.put(i * 2, "value" + i);
+        }
+        StorageMapCursor<Integer, String> cursor = map.cursor();
+        int[] keys = { 1, 2, 3, 100, 101, 2000, 2001, 2002, 9999, 10000, 10001, 500, 0, 7000 };
+        for (int key : keys) {
+            assertTrue(cursor.seek(key));
+            Integer expected = map.ceilingKey(key);
+            if (expected == null) {
+                assertFalse(cursor.next());
+            } else {
+                assertTrue(cursor.next());
+                assertEquals(expected, cursor.getKey());
+                if (expected < 10000) {
+                    assertTrue(cursor.next());
+                    assertEquals(expected + 2, cursor.getKey().intValue());
+                }
+            }
+        }
+        // 读完之后还能重新定位
+        while (cursor.next()) {
+        }
+        assertTrue(cursor.seek(10));
+        assertTrue(cursor.next());
+        assertEquals(10, cursor.getKey().intValue());
+
+        // 读完之后换了新的root page，重新定位时要从新的root page开始
+        while (cursor.next()) {
+        }
+        map.clear();
+        for (int i = 1; i <= 5000; i++) {
+            map.put(i * 2 + 1, "value" + i);
+        }
+        assertTrue(cursor.seek(10));
+        assertTrue(cursor.next());
+        assertEquals(11, cursor.getKey().intValue());
+    }
+
     // remove相对比较复杂，单独拿来重点测
     void testRemove() {
         openMap();
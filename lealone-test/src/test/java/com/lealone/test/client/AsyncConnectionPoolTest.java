@@ -0,0 +1,122 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.client;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.lealone.db.ConnectionSetting;
+import com.lealone.db.SysProperties;
+import com.lealone.net.AsyncConnection;
+import com.lealone.net.AsyncConnectionPool;
+import com.lealone.net.NetBuffer;
+import com.lealone.test.UnitTestBase;
+
+public class AsyncConnectionPoolTest extends UnitTestBase {
+
+    @Test
+    public void run() {
+        testLoadAware();
+        testLatency();
+        testHot();
+        testFull();
+    }
+
+    private static HashMap<String, String> config(int maxPoolSize) {
+        HashMap<String, String> config = new HashMap<>();
+        config.put(ConnectionSetting.MAX_SHARED_SIZE.name(), "10");
+        config.put(ConnectionSetting.MAX_POOL_SIZE.name(), String.valueOf(maxPoolSize));
+        return config;
+    }
+
+    // 服务器端调度器的负载和未完成的请求都算进去，而不只是看共享的session数
+    private void testLoadAware() {
+        AsyncConnectionPool pool = new AsyncConnectionPool();
+        TestConnection c1 = new TestConnection(1, 10, 0, 0);
+        TestConnection c2 = new TestConnection(2, 1, 0, 0);
+        TestConnection c3 = new TestConnection(0, 5, 20, 0);
+        pool.addConnection(c1);
+        pool.addConnection(c2);
+        pool.addConnection(c3);
+        assertTrue(pool.getConnection(config(3)) == c2);
+    }
+
+    private void testLatency() {
+        AsyncConnectionPool pool = new AsyncConnectionPool();
+        TestConnection c1 = new TestConnection(1, 2, 0, 50);
+        TestConnection c2 = new TestConnection(1, 4, 0, 1);
+        pool.addConnection(c1);
+        pool.addConnection(c2);
+        assertTrue(pool.getConnection(config(2)) == c2);
+    }
+
+    // 所有连接都很忙时新开连接，直到达到上限
+    private void testHot() {
+        long hot = SysProperties.CLIENT_POOL_HOT_LOAD;
+        AsyncConnectionPool pool = new AsyncConnectionPool();
+        TestConnection c1 = new TestConnection(1, hot, 0, 0);
+        pool.addConnection(c1);
+        assertNull(pool.getConnection(config(2)));
+        TestConnection c2 = new TestConnection(1, hot + 1, 0, 0);
+        pool.addConnection(c2);
+        assertTrue(pool.getConnection(config(2)) == c1);
+        c2.serverLoad = 0;
+        assertTrue(pool.getConnection(config(3)) == c2);
+    }
+
+    private void testFull() {
+        AsyncConnectionPool pool = new AsyncConnectionPool();
+        TestConnection c1 = new TestConnection(10, 0, 0, 0);
+        pool.addConnection(c1);
+        assertNull(pool.getConnection(config(1)));
+    }
+
+    private static class TestConnection extends AsyncConnection {
+
+        int sharedSize;
+        long serverLoad;
+        int inFlightCount;
+        long latency;
+
+        TestConnection(int sharedSize, long serverLoad, int inFlightCount, long latency) {
+            super(null, false);
+            this.sharedSize = sharedSize;
+            this.serverLoad = serverLoad;
+            this.inFlightCount = inFlightCount;
+            this.latency = latency;
+        }
+
+        @Override
+        public void handle(NetBuffer buffer, boolean autoRecycle) {
+        }
+
+        @Override
+        public int getSharedSize() {
+            return sharedSize;
+        }
+
+        @Override
+        public int getMaxSharedSize() {
+            return 10;
+        }
+
+        @Override
+        public long getServerLoad() {
+            return serverLoad;
+        }
+
+        @Override
+        public int getInFlightCount() {
+            return inFlightCount;
+        }
+
+        @Override
+        public long getAverageLatency() {
+            return latency;
+        }
+    }
+}
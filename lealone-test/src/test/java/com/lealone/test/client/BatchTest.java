@@ -24,6 +24,8 @@ public class BatchTest extends ClientTestBase {
         for (int i = 1; i <= count; i++) {
             testPreparedStatementBatch();
         }
+        testPreparedUpdateBatch();
+        testPreparedDeleteBatch();
         // testConcurrentBatch();
     }
 
@@ -80,6 +82,90 @@ public class BatchTest extends ClientTestBase {
         ps.close();
     }
 
+    void initUpDelTable() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BatchUpDelTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BatchUpDelTest(id int PRIMARY KEY, v int)");
+        for (int i = 1; i <= 10; i++) {
+            executeUpdate("INSERT INTO BatchUpDelTest(id, v) VALUES(" + i + "," + i + ")");
+        }
+    }
+
+    int[] executeBatch(String sql, int[][] parameters) throws Exception {
+        PreparedStatement ps = conn.prepareStatement(sql);
+        for (int[] p : parameters) {
+            for (int i = 0; i < p.length; i++) {
+                ps.setInt(i + 1, p[i]);
+            }
+            ps.addBatch();
+        }
+        int[] result = ps.executeBatch();
+        ps.close();
+        return result;
+    }
+
+    int getSum() throws Exception {
+        sql = "SELECT sum(v) FROM BatchUpDelTest";
+        return getIntValue(1, true);
+    }
+
+    // 每一组参数返回各自更新的记录数
+    void testPreparedUpdateBatch() throws Exception {
+        initUpDelTable();
+        int[] result = executeBatch("UPDATE BatchUpDelTest SET v = ? WHERE id = ?",
+                new int[][] { { 100, 1 }, { 200, 2 }, { 300, 99 } });
+        assertArrayEquals(new int[] { 1, 1, 0 }, result);
+        assertEquals(55 - 3 + 300, getSum());
+
+        result = executeBatch("UPDATE BatchUpDelTest SET v = v + 1 WHERE id BETWEEN ? AND ?",
+                new int[][] { { 1, 5 }, { 3, 10 } });
+        assertArrayEquals(new int[] { 5, 8 }, result);
+        assertEquals(55 - 3 + 300 + 13, getSum());
+
+        result = executeBatch("UPDATE BatchUpDelTest SET v = 0 WHERE id > ? LIMIT ?",
+                new int[][] { { 0, 3 }, { 0, 0 } });
+        assertArrayEquals(new int[] { 3, 0 }, result);
+
+        // 只有出错的那组参数失败，其他组的修改照常生效
+        PreparedStatement ps = conn.prepareStatement("UPDATE BatchUpDelTest SET v = ? WHERE id = ?");
+        ps.setInt(1, 1000);
+        ps.setInt(2, 9);
+        ps.addBatch();
+        ps.setString(1, "abc");
+        ps.setInt(2, 10);
+        ps.addBatch();
+        ps.setInt(1, 2000);
+        ps.setInt(2, 10);
+        ps.addBatch();
+        result = ps.executeBatch();
+        assertArrayEquals(new int[] { 1, Statement.EXECUTE_FAILED, 1 }, result);
+        ps.close();
+        sql = "SELECT v FROM BatchUpDelTest WHERE id = 9";
+        assertEquals(1000, getIntValue(1, true));
+        sql = "SELECT v FROM BatchUpDelTest WHERE id = 10";
+        assertEquals(2000, getIntValue(1, true));
+
+        // 出错的那组参数在出错前已经更新的记录也要回滚
+        result = executeBatch("UPDATE BatchUpDelTest SET v = 10 / (id - ?) WHERE id >= ?",
+                new int[][] { { 2, 8 }, { 9, 8 }, { 0, 10 } });
+        assertArrayEquals(new int[] { 3, Statement.EXECUTE_FAILED, 1 }, result);
+        sql = "SELECT v FROM BatchUpDelTest WHERE id = 8";
+        assertEquals(10 / (8 - 2), getIntValue(1, true));
+        sql = "SELECT v FROM BatchUpDelTest WHERE id = 10";
+        assertEquals(10 / 10, getIntValue(1, true));
+    }
+
+    void testPreparedDeleteBatch() throws Exception {
+        initUpDelTable();
+        int[] result = executeBatch("DELETE FROM BatchUpDelTest WHERE id = ?",
+                new int[][] { { 1 }, { 1 }, { 2 } });
+        assertArrayEquals(new int[] { 1, 0, 1 }, result);
+        result = executeBatch("DELETE FROM BatchUpDelTest WHERE id >= ? AND id <= ?",
+                new int[][] { { 5, 6 }, { 8, 20 } });
+        assertArrayEquals(new int[] { 2, 3 }, result);
+        sql = "SELECT count(*) FROM BatchUpDelTest";
+        assertEquals(3, getIntValue(1, true));
+    }
+
     Connection getConn() {
         try {
             return getConnection(dbName);
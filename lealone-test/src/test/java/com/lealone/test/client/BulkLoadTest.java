@@ -0,0 +1,165 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.client;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.lealone.client.jdbc.JdbcBulkLoader;
+import com.lealone.client.jdbc.JdbcConnection;
+import com.lealone.db.api.ErrorCode;
+
+public class BulkLoadTest extends ClientTestBase {
+
+    private static final int ROW_COUNT = 10000;
+
+    @Test
+    public void run() throws Exception {
+        testUnsortedRows();
+        testDuplicateKey();
+        testCheckConstraint();
+        testDirect();
+        testWithoutPrimaryKey();
+    }
+
+    private JdbcBulkLoader createBulkLoader(String tableName, String... columnNames) throws Exception {
+        return ((JdbcConnection) conn).createBulkLoader(tableName, columnNames);
+    }
+
+    // 乱序的记录，表上还有二级索引
+    private void testUnsortedRows() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BulkLoadTest1");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BulkLoadTest1 (id int PRIMARY KEY, name varchar, v int)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS BulkLoadTest1_v ON BulkLoadTest1(v)");
+        ArrayList<Integer> ids = new ArrayList<>(ROW_COUNT);
+        for (int i = 1; i <= ROW_COUNT; i++)
+            ids.add(i);
+        Collections.shuffle(ids, new Random(1));
+        try (JdbcBulkLoader loader = createBulkLoader("BulkLoadTest1", "id", "name", "v")) {
+            loader.setBlockSize(1000);
+            for (int id : ids) {
+                loader.addRow(id, "name-" + id, id % 100);
+            }
+            loader.flush();
+            assertEquals(ROW_COUNT, loader.getRowCount());
+        }
+        checkRows("BulkLoadTest1", ROW_COUNT);
+        ResultSet rs = stmt.executeQuery("SELECT count(*) FROM BulkLoadTest1 WHERE v = 7");
+        assertTrue(rs.next());
+        assertEquals(ROW_COUNT / 100, rs.getInt(1));
+        rs.close();
+    }
+
+    private void checkRows(String tableName, int count) throws Exception {
+        ResultSet rs = stmt.executeQuery("SELECT id, name FROM " + tableName + " ORDER BY id");
+        for (int i = 1; i <= count; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals("name-" + i, rs.getString(2));
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    private int getRowCount(String tableName) throws Exception {
+        ResultSet rs = stmt.executeQuery("SELECT count(*) FROM " + tableName);
+        assertTrue(rs.next());
+        int count = rs.getInt(1);
+        rs.close();
+        return count;
+    }
+
+    // 同一块中的重复主键在写入前就能发现，跟已有记录重复时整块回滚
+    private void testDuplicateKey() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BulkLoadTest2");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BulkLoadTest2 (id int PRIMARY KEY, name varchar)");
+        JdbcBulkLoader loader = createBulkLoader("BulkLoadTest2");
+        loader.addRow(1, "name-1");
+        loader.addRow(2, "name-2");
+        assertEquals(2, loader.flush());
+
+        loader.addRow(3, "name-3");
+        loader.addRow(3, "name-3");
+        assertDuplicateKey(loader);
+        assertEquals(2, getRowCount("BulkLoadTest2"));
+
+        loader.addRow(3, "name-3");
+        loader.addRow(2, "name-2");
+        assertDuplicateKey(loader);
+        assertEquals(2, getRowCount("BulkLoadTest2"));
+
+        loader.addRow(3, "name-3");
+        loader.close();
+        checkRows("BulkLoadTest2", 3);
+    }
+
+    private static void assertDuplicateKey(JdbcBulkLoader loader) {
+        try {
+            loader.flush();
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getErrorCode());
+        }
+    }
+
+    private void testCheckConstraint() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BulkLoadTest3");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BulkLoadTest3 (id int PRIMARY KEY, v int CHECK v > 0)");
+        try (JdbcBulkLoader loader = createBulkLoader("BulkLoadTest3")) {
+            for (int i = 1; i <= 100; i++)
+                loader.addRow(i, i == 50 ? 0 : i);
+            try {
+                loader.flush();
+                fail();
+            } catch (SQLException e) {
+                assertEquals(ErrorCode.CHECK_CONSTRAINT_VIOLATED_1, e.getErrorCode());
+            }
+        }
+        assertEquals(0, getRowCount("BulkLoadTest3"));
+    }
+
+    // 空表直接写入，后面的块还是排在已有记录之后，最后一块有排在前面的记录时不再直接写入
+    private void testDirect() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BulkLoadTest4");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BulkLoadTest4 (id int PRIMARY KEY, name varchar)");
+        try (JdbcBulkLoader loader = createBulkLoader("BulkLoadTest4", "id", "name")) {
+            loader.setDirect(true);
+            loader.setBlockSize(500);
+            for (int i = 101; i <= ROW_COUNT; i++)
+                loader.addRow(i, "name-" + i);
+            loader.flush();
+            for (int i = 1; i <= 100; i++)
+                loader.addRow(i, "name-" + i);
+            loader.addRow(101, "name-101");
+            try {
+                loader.flush();
+                fail();
+            } catch (SQLException e) {
+                assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getErrorCode());
+            }
+            assertEquals(ROW_COUNT - 100, getRowCount("BulkLoadTest4"));
+            for (int i = 1; i <= 100; i++)
+                loader.addRow(i, "name-" + i);
+        }
+        checkRows("BulkLoadTest4", ROW_COUNT);
+    }
+
+    private void testWithoutPrimaryKey() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BulkLoadTest5");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BulkLoadTest5 (id int, name varchar)");
+        try (JdbcBulkLoader loader = createBulkLoader("BulkLoadTest5")) {
+            loader.setDirect(true);
+            for (int i = 1; i <= ROW_COUNT; i++)
+                loader.addRow(i, "name-" + i);
+        }
+        checkRows("BulkLoadTest5", ROW_COUNT);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.client;
+
+import java.sql.ResultSet;
+
+import org.junit.Test;
+
+import com.lealone.client.jdbc.JdbcResultSet;
+import com.lealone.db.SysProperties;
+
+public class ClientResultPrefetchTest extends ClientTestBase {
+
+    private static final int ROW_COUNT = 5000;
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ClientResultPrefetchTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS ClientResultPrefetchTest (id int PRIMARY KEY, v int)");
+        executeUpdate("INSERT INTO ClientResultPrefetchTest SELECT x, x * 2 FROM SYSTEM_RANGE(1, "
+                + ROW_COUNT + ")");
+        // 行数确定的结果集
+        testRead("SELECT * FROM ClientResultPrefetchTest ORDER BY v DESC", false);
+        // 行数不确定的结果集
+        testRead("SELECT * FROM ClientResultPrefetchTest", true);
+        testEarlyClose();
+    }
+
+    private void testRead(String sql, boolean asc) throws Exception {
+        stmt.setFetchSize(10);
+        JdbcResultSet rs = (JdbcResultSet) stmt.executeQuery(sql);
+        int maxBatchSize = 0;
+        for (int i = 1; i <= ROW_COUNT; i++) {
+            assertTrue(rs.next());
+            int id = asc ? i : ROW_COUNT + 1 - i;
+            assertEquals(id, rs.getInt(1));
+            assertEquals(id * 2, rs.getInt(2));
+            maxBatchSize = Math.max(maxBatchSize, rs.getCurrentRowCount());
+        }
+        assertFalse(rs.next());
+        rs.close();
+        // 读得比取得快，每一批的记录数会变大，但不会超过上限
+        assertTrue(maxBatchSize > 10);
+        assertTrue(maxBatchSize <= SysProperties.CLIENT_RESULT_SET_MAX_FETCH_SIZE);
+    }
+
+    // 预取的记录还没读就关闭结果集，后面的语句不受影响
+    private void testEarlyClose() throws Exception {
+        for (int n = 0; n < 10; n++) {
+            stmt.setFetchSize(10);
+            ResultSet rs = stmt.executeQuery("SELECT * FROM ClientResultPrefetchTest ORDER BY v");
+            for (int i = 1; i <= 6 + n; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+            }
+            rs.close();
+            rs = stmt.executeQuery("SELECT count(*) FROM ClientResultPrefetchTest");
+            assertTrue(rs.next());
+            assertEquals(ROW_COUNT, rs.getInt(1));
+            rs.close();
+        }
+    }
+}
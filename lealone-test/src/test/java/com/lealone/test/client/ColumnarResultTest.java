@@ -0,0 +1,148 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.client;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class ColumnarResultTest extends ClientTestBase {
+
+    private static final int ROW_COUNT = 1000;
+
+    @Test
+    public void run() throws Exception {
+        createTable();
+        testFetchSize(100);
+        testFetchSize(7);
+        testFetchSize(ROW_COUNT * 2);
+        testOtherColumns();
+        testEmptyResult();
+    }
+
+    private void createTable() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ColumnarResultTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS ColumnarResultTest (id int PRIMARY KEY, "
+                + "l bigint, s smallint, t tinyint, b boolean, d double, r real, dec decimal(20, 2), "
+                + "v1 varchar, v2 varchar, v3 varchar_ignorecase, c char(3), "
+                + "dt date, tm time, ts timestamp, u uuid, bs binary)");
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO ColumnarResultTest "
+                + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        for (int i = 1; i <= ROW_COUNT; i++) {
+            Object[] row = getRow(i);
+            for (int j = 0; j < row.length; j++) {
+                ps.setObject(j + 1, row[j]);
+            }
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        ps.close();
+    }
+
+    // 每隔7行除了id之外的列都是null
+    private static Object[] getRow(int i) {
+        Object[] row = new Object[17];
+        row[0] = i;
+        if (i % 7 == 0)
+            return row;
+        row[1] = (i % 2 == 0 ? 1 : -1) * i * 10_000_000_000L;
+        row[2] = (short) (i % 100 - 50);
+        row[3] = (byte) (i % 100 - 50);
+        row[4] = i % 3 == 0;
+        row[5] = i / 4.0d;
+        row[6] = i / 2.0f;
+        row[7] = new BigDecimal(i).multiply(new BigDecimal("1.25")).setScale(2);
+        row[8] = "v" + (i % 5); // 字典编码
+        row[9] = "row-" + i + "-中文"; // 不重复的值
+        row[10] = "Abc" + (i % 3);
+        row[11] = "c" + (i % 10);
+        row[12] = Date.valueOf(LocalDate.of(2020, 1, 1).plusDays(i)).toString();
+        row[13] = Time.valueOf(LocalTime.of(10, 0).plusSeconds(i * 13)).toString();
+        row[14] = Timestamp.valueOf(LocalDateTime.of(2020, 1, 1, 0, 0, 0, 123_000_000).plusMinutes(i * 97))
+                .toString();
+        row[15] = new UUID(i, -i);
+        row[16] = new byte[] { (byte) i, (byte) (i >> 8) };
+        return row;
+    }
+
+    private void testFetchSize(int fetchSize) throws Exception {
+        stmt.setFetchSize(fetchSize);
+        // 按id降序读，整数列的差值就有正有负
+        ResultSet rs = stmt.executeQuery("SELECT * FROM ColumnarResultTest ORDER BY id DESC");
+        int count = 0;
+        for (int i = ROW_COUNT; i >= 1; i--) {
+            assertTrue(rs.next());
+            checkRow(rs, getRow(i));
+            count++;
+        }
+        assertFalse(rs.next());
+        assertEquals(ROW_COUNT, count);
+        rs.close();
+    }
+
+    private static void checkRow(ResultSet rs, Object[] row) throws Exception {
+        assertEquals(row[0], rs.getInt(1));
+        if (row[1] == null) {
+            for (int j = 2; j <= row.length; j++) {
+                assertNull(rs.getObject(j));
+                assertTrue(rs.wasNull());
+            }
+            return;
+        }
+        assertEquals(row[1], rs.getLong(2));
+        assertEquals(row[2], rs.getShort(3));
+        assertEquals(row[3], rs.getByte(4));
+        assertEquals(row[4], rs.getBoolean(5));
+        assertEquals((Double) row[5], rs.getDouble(6), 0);
+        assertEquals((Float) row[6], rs.getFloat(7), 0);
+        assertEquals(row[7], rs.getBigDecimal(8));
+        assertEquals(row[8], rs.getString(9));
+        assertEquals(row[9], rs.getString(10));
+        assertEquals(row[10], rs.getString(11));
+        assertEquals(row[11], rs.getString(12));
+        assertEquals(row[12], rs.getDate(13).toString());
+        assertEquals(row[13], rs.getTime(14).toString());
+        assertEquals(Timestamp.valueOf((String) row[14]), rs.getTimestamp(15));
+        assertEquals(row[15], rs.getObject(16));
+        assertArrayEquals((byte[]) row[16], rs.getBytes(17));
+    }
+
+    // 全是null的列和不支持按列编码的类型
+    private void testOtherColumns() throws Exception {
+        stmt.setFetchSize(10);
+        ResultSet rs = stmt.executeQuery("SELECT id, CASE WHEN id % 2 = 0 THEN id ELSE NULL END, "
+                + "CAST(NULL AS INT), (id, 'a') FROM ColumnarResultTest WHERE id <= 30 ORDER BY id");
+        for (int i = 1; i <= 30; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            if (i % 2 == 0)
+                assertEquals(i, rs.getInt(2));
+            else
+                assertNull(rs.getObject(2));
+            assertNull(rs.getObject(3));
+            Object[] array = (Object[]) rs.getArray(4).getArray();
+            assertEquals(2, array.length);
+            assertEquals("a", array[1]);
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    private void testEmptyResult() throws Exception {
+        ResultSet rs = stmt.executeQuery("SELECT * FROM ColumnarResultTest WHERE id < 0");
+        assertFalse(rs.next());
+        rs.close();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.client;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.lealone.client.LealoneClient;
+import com.lealone.client.jdbc.JdbcConnection;
+import com.lealone.client.jdbc.JdbcPipeline;
+import com.lealone.db.api.ErrorCode;
+import com.lealone.db.async.Future;
+
+public class PipelineTest extends ClientTestBase {
+
+    private static final int ROW_COUNT = 1000;
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS PipelineTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS PipelineTest (id int PRIMARY KEY, v int)");
+        testInOrder();
+        testFailure();
+        testClosed();
+    }
+
+    // 同一个session中的语句按发送的顺序执行，后面的语句能看到前面语句的结果
+    private void testInOrder() throws Exception {
+        JdbcConnection conn = (JdbcConnection) this.conn;
+        try (JdbcPipeline pipeline = LealoneClient.createPipeline(conn)) {
+            ArrayList<Future<Integer>> updates = new ArrayList<>(ROW_COUNT);
+            ArrayList<Future<ResultSet>> queries = new ArrayList<>();
+            for (int i = 1; i <= ROW_COUNT; i++) {
+                updates.add(pipeline.executeUpdate("INSERT INTO PipelineTest VALUES(" + i + ", 0)"));
+                if (i % 100 == 0)
+                    queries.add(pipeline.executeQuery("SELECT count(*) FROM PipelineTest"));
+            }
+            updates.add(pipeline.executeUpdate("UPDATE PipelineTest SET v = 1"));
+            Future<ResultSet> last = pipeline.executeQuery("SELECT sum(v) FROM PipelineTest");
+            assertTrue(pipeline.getInFlightCount() <= pipeline.getMaxInFlight());
+            pipeline.sync();
+            assertEquals(0, pipeline.getInFlightCount());
+
+            for (int i = 0; i < ROW_COUNT; i++)
+                assertEquals(1, updates.get(i).get().intValue());
+            assertEquals(ROW_COUNT, updates.get(ROW_COUNT).get().intValue());
+            for (int i = 0; i < queries.size(); i++) {
+                ResultSet rs = queries.get(i).get();
+                assertTrue(rs.next());
+                assertEquals((i + 1) * 100, rs.getInt(1));
+                rs.close();
+            }
+            ResultSet rs = last.get();
+            assertTrue(rs.next());
+            assertEquals(ROW_COUNT, rs.getInt(1));
+            rs.close();
+        }
+    }
+
+    // 失败的语句不影响后面的语句，sync时抛出第一个错误
+    private void testFailure() throws Exception {
+        JdbcPipeline pipeline = ((JdbcConnection) conn).createPipeline(4);
+        Future<Integer> f1 = pipeline.executeUpdate("DELETE FROM PipelineTest WHERE id = 1");
+        Future<Integer> f2 = pipeline.executeUpdate("INSERT INTO PipelineTest VALUES(2, 0)");
+        Future<Integer> f3 = pipeline.executeUpdate("INSERT INTO PipelineTest VALUES(3, 0)");
+        Future<Integer> f4 = pipeline.executeUpdate("INSERT INTO PipelineTest VALUES(1, 0)");
+        try {
+            pipeline.sync();
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getErrorCode());
+        }
+        assertEquals(1, f1.get().intValue());
+        assertEquals(1, f4.get().intValue());
+        // f2和f3都是重复的主键
+        assertFailed(f2);
+        assertFailed(f3);
+        pipeline.sync(); // 错误只报告一次
+        pipeline.close();
+        assertEquals(ROW_COUNT, getRowCount());
+    }
+
+    private static void assertFailed(Future<Integer> f) {
+        try {
+            f.get();
+            fail();
+        } catch (Exception e) {
+        }
+    }
+
+    private void testClosed() throws Exception {
+        JdbcPipeline pipeline = ((JdbcConnection) conn).createPipeline();
+        pipeline.close();
+        try {
+            pipeline.executeUpdate("DELETE FROM PipelineTest");
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.OBJECT_CLOSED, e.getErrorCode());
+        }
+        assertEquals(ROW_COUNT, getRowCount());
+    }
+
+    private int getRowCount() throws Exception {
+        ResultSet rs = stmt.executeQuery("SELECT count(*) FROM PipelineTest");
+        assertTrue(rs.next());
+        int count = rs.getInt(1);
+        rs.close();
+        return count;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.db;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.lealone.db.BufferPool;
+import com.lealone.db.DataBuffer;
+import com.lealone.test.UnitTestBase;
+
+public class BufferPoolTest extends UnitTestBase {
+
+    @Test
+    public void run() {
+        testSizeClass();
+        testAcquireAndRelease();
+        testMaxSize();
+        testGrow();
+        testLeakDetection();
+    }
+
+    private void testSizeClass() {
+        assertEquals(1024, BufferPool.getSizeClassCapacity(1));
+        assertEquals(1024, BufferPool.getSizeClassCapacity(1024));
+        assertEquals(2048, BufferPool.getSizeClassCapacity(1025));
+        assertEquals(4 * 1024 * 1024, BufferPool.getSizeClassCapacity(3 * 1024 * 1024));
+        // 太大的不放到池中
+        assertEquals(5 * 1024 * 1024, BufferPool.getSizeClassCapacity(5 * 1024 * 1024));
+    }
+
+    private void testAcquireAndRelease() {
+        BufferPool pool = new BufferPool(null, 1024 * 1024, false);
+        ByteBuffer b1 = pool.acquire(3000);
+        assertTrue(b1.isDirect());
+        assertEquals(4096, b1.capacity());
+        b1.putInt(10);
+        pool.release(b1);
+        assertEquals(4096, pool.getPooledBytes());
+
+        ByteBuffer b2 = pool.acquire(4000);
+        assertTrue(b1 == b2);
+        assertEquals(0, b2.position());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(0, pool.getPooledBytes());
+
+        // 不是某个级别大小的buffer直接丢弃
+        pool.release(ByteBuffer.allocateDirect(3000));
+        pool.release(ByteBuffer.allocate(4096));
+        assertEquals(2, pool.getDiscardCount());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    private void testMaxSize() {
+        BufferPool pool = new BufferPool(null, 8 * 1024, false);
+        ByteBuffer b1 = pool.acquire(4096);
+        ByteBuffer b2 = pool.acquire(4096);
+        ByteBuffer b3 = pool.acquire(4096);
+        pool.release(b1);
+        pool.release(b2);
+        pool.release(b3);
+        assertEquals(8 * 1024, pool.getPooledBytes());
+        assertEquals(1, pool.getDiscardCount());
+    }
+
+    private void testGrow() {
+        BufferPool pool = new BufferPool(null, 1024 * 1024, false);
+        DataBuffer buff = DataBuffer.createDirect(pool);
+        for (int i = 0; i < 10000; i++)
+            buff.putInt(i);
+        ByteBuffer bb = buff.getBuffer();
+        assertEquals(BufferPool.getSizeClassCapacity(bb.capacity()), bb.capacity());
+        // 扩容时被替换的buffer要等到clear时才还给池
+        assertEquals(0, pool.getPooledBytes());
+        buff.clear();
+        assertTrue(pool.getPooledBytes() > 0);
+        assertTrue(buff.getBuffer() == bb);
+        for (int i = 0; i < 10000; i++)
+            assertEquals(0, buff.putInt(i).position() % 4);
+        assertTrue(buff.getBuffer() == bb);
+        buff.getAndFlipBuffer();
+        for (int i = 0; i < 10000; i++)
+            assertEquals(i, buff.getInt());
+    }
+
+    private void testLeakDetection() {
+        BufferPool pool = new BufferPool(null, 1024 * 1024, true);
+        ByteBuffer b1 = pool.acquire(100);
+        ByteBuffer b2 = pool.acquire(100);
+        assertEquals(2, pool.getLeakedBufferCount());
+        pool.release(b1);
+        assertEquals(1, pool.getLeakedBufferCount());
+        try {
+            pool.release(b1);
+            fail();
+        } catch (RuntimeException e) {
+            // 重复回收
+        }
+        pool.forget(b2);
+        assertEquals(0, pool.getLeakedBufferCount());
+        assertEquals(-1, new BufferPool(null, 1024, false).getLeakedBufferCount());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.db;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.lealone.common.exceptions.DbException;
+import com.lealone.db.api.ErrorCode;
+import com.lealone.db.util.ExpiringIntMap;
+import com.lealone.test.UnitTestBase;
+
+public class ExpiringIntMapTest extends UnitTestBase {
+
+    @Test
+    public void run() {
+        testPutGetRemove();
+        testCollision();
+        testRandom();
+    }
+
+    private void testPutGetRemove() {
+        ExpiringIntMap<String> map = new ExpiringIntMap<>(null, 0, null);
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.get(1));
+        assertTrue(map.containsValue("b"));
+        assertEquals(1, map.size());
+        assertEquals("b", map.remove(1, true));
+        assertNull(map.remove(1, true));
+        assertNull(map.get(1, true));
+        try {
+            map.get(1);
+            fail();
+        } catch (DbException e) {
+            assertEquals(ErrorCode.OBJECT_CLOSED, e.getErrorCode());
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    // 低位相同的id落在同一个槽，删除前面的元素后后面的元素依然能找到
+    private void testCollision() {
+        ExpiringIntMap<Integer> map = new ExpiringIntMap<>(null, 0, null);
+        int[] ids = { 3, 3 + 16, 3 + 32, 4, -13 };
+        for (int id : ids)
+            map.put(id, id);
+        map.remove(3);
+        for (int i = 1; i < ids.length; i++)
+            assertEquals(ids[i], map.get(ids[i]).intValue());
+        map.remove(3 + 32);
+        assertEquals(3 + 16, map.get(3 + 16).intValue());
+        assertEquals(4, map.get(4).intValue());
+        assertEquals(-13, map.get(-13).intValue());
+        assertFalse(map.containsKey(3));
+        assertEquals(3, map.size());
+    }
+
+    // 跟HashMap对比，模拟客户端递增的id和乱序的关闭
+    private void testRandom() {
+        ExpiringIntMap<Integer> map = new ExpiringIntMap<>(null, 0, null);
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(1);
+        int nextId = Integer.MAX_VALUE - 5000; // 也覆盖id溢出后变成负数的情况
+        for (int i = 0; i < 20000; i++) {
+            if (random.nextInt(3) > 0 || expected.isEmpty()) {
+                int id = nextId++;
+                map.put(id, i);
+                expected.put(id, i);
+            } else {
+                Integer id = expected.keySet().iterator().next();
+                assertEquals(expected.remove(id), map.remove(id));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Integer id : expected.keySet())
+            assertEquals(expected.get(id), map.get(id));
+    }
+}
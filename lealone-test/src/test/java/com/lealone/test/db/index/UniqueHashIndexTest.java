@@ -8,6 +8,9 @@ package com.lealone.test.db.index;
 import org.junit.Test;
 
 import com.lealone.db.api.ErrorCode;
+import com.lealone.db.index.IndexType;
+import com.lealone.db.index.standard.StandardSecondaryIndex;
+import com.lealone.db.table.StandardTable;
 
 public class UniqueHashIndexTest extends IndexTestBase {
     @Test
@@ -36,5 +39,33 @@ public class UniqueHashIndexTest extends IndexTestBase {
 
         executeUpdate("DROP INDEX IF EXISTS UniqueHashIndex1");
         assertNotFound("UniqueHashIndexTest", "UniqueHashIndex1");
+
+        testOldLayout();
+    }
+
+    // 老版本中多字段的hash索引跟普通索引一样，key是[f1, f2, row key]，
+    // 升级后按新的格式打开同一个map时要清空后重建
+    private void testOldLayout() {
+        executeUpdate("DROP TABLE IF EXISTS UniqueHashIndexOldLayoutTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS UniqueHashIndexOldLayoutTest (f1 int, f2 int)");
+        executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS UniqueHashIndexOldLayout1"
+                + " ON UniqueHashIndexOldLayoutTest(f1, f2)");
+        executeUpdate("CREATE UNIQUE HASH INDEX IF NOT EXISTS UniqueHashIndexOldLayout2"
+                + " ON UniqueHashIndexOldLayoutTest(f2, f1)");
+        executeUpdate("insert into UniqueHashIndexOldLayoutTest(f1, f2) values(1, 2), (10, 20)");
+
+        // 新格式的多字段hash索引不需要重建
+        assertFalse(getIndex("UniqueHashIndexOldLayout2").needRebuild());
+
+        StandardSecondaryIndex old = (StandardSecondaryIndex) getIndex("UniqueHashIndexOldLayout1");
+        assertFalse(old.needRebuild());
+        StandardTable table = old.getTable();
+        db.getStorage(table.getStorageEngine()).closeMap(old.getMapName());
+        StandardSecondaryIndex index = new StandardSecondaryIndex(session, table, old.getId(),
+                old.getName(), IndexType.createUnique(true), old.getIndexColumns());
+        assertTrue(index.needRebuild());
+        assertEquals(0, index.getDataMap().getRawSize());
+        index.remove(session);
+        executeUpdate("DROP TABLE IF EXISTS UniqueHashIndexOldLayoutTest");
     }
 }
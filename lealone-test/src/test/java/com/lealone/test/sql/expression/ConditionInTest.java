@@ -83,5 +83,37 @@ public class ConditionInTest extends SqlTestBase {
         // ps.setInt(1, 2);
         // ps.addBatch();
         // ps.executeBatch();
+
+        testSortedInList();
+    }
+
+    // IN的值会排好序并去掉重复值，然后按索引的顺序依次查找，多个范围共用一个cursor
+    private void testSortedInList() throws Exception {
+        stmt.executeUpdate("drop table IF EXISTS SortedInListTest");
+        stmt.executeUpdate("create table IF NOT EXISTS SortedInListTest(pk int primary key, f1 int, f2 int)");
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS SortedInListTestIndex ON SortedInListTest(f1)");
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS SortedInListTestIndex2 ON SortedInListTest(f2 desc)");
+        for (int i = 1; i <= 3000; i++) {
+            stmt.executeUpdate("insert into SortedInListTest values(" + i + ", " + i % 1000 + ", " + i + ")");
+        }
+        sql = "select count(*) from SortedInListTest where pk in(2900, 5, null, 1200, 5, 3001, 1)";
+        assertEquals(4, getIntValue(1, true));
+        sql = "select count(*) from SortedInListTest where f1 in(999, 0, 500, 0, -1, 1, null)";
+        assertEquals(12, getIntValue(1, true));
+        sql = "select count(*) from SortedInListTest where f2 in(3000, 1, 2999, 1500, 1500)";
+        assertEquals(4, getIntValue(1, true));
+        sql = "select count(*) from SortedInListTest where f1 in(select f2 from SortedInListTest where pk > 2990)";
+        assertEquals(0, getIntValue(1, true));
+        sql = "select count(*) from SortedInListTest where f1 in(select f1 from SortedInListTest where pk < 11)";
+        assertEquals(30, getIntValue(1, true));
+        sql = "select pk from SortedInListTest where f1 in(7, 3) order by pk";
+        rs = stmt.executeQuery(sql);
+        int[] expected = { 3, 7, 1003, 1007, 2003, 2007 };
+        for (int pk : expected) {
+            assertTrue(rs.next());
+            assertEquals(pk, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        closeResultSet();
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.expression;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.junit.Test;
+
+import com.lealone.test.sql.SqlTestBase;
+
+public class CorrelatedSubQueryTest extends SqlTestBase {
+
+    private static final String[] QUERIES = {
+            // semi join和anti join
+            "SELECT count(*) FROM CorrelatedSubQueryTest_o o"
+                    + " WHERE EXISTS(SELECT 1 FROM CorrelatedSubQueryTest_d d WHERE d.k = o.k AND d.v > 2)",
+            "SELECT count(*) FROM CorrelatedSubQueryTest_o o"
+                    + " WHERE NOT EXISTS(SELECT 1 FROM CorrelatedSubQueryTest_d d WHERE o.k = d.k)",
+            "SELECT count(*) FROM CorrelatedSubQueryTest_o o"
+                    + " WHERE o.v IN(SELECT d.v FROM CorrelatedSubQueryTest_d d WHERE d.k = o.k)",
+            "SELECT count(*) FROM CorrelatedSubQueryTest_o o"
+                    + " WHERE o.v NOT IN(SELECT d.v FROM CorrelatedSubQueryTest_d d WHERE d.k = o.k)",
+            // 聚合函数的标量子查询，没有记录时count是0
+            "SELECT sum(c), sum(m) FROM (SELECT"
+                    + " (SELECT count(*) FROM CorrelatedSubQueryTest_d d WHERE d.k = o.k) c,"
+                    + " (SELECT max(d.v) FROM CorrelatedSubQueryTest_d d WHERE d.k = o.k) m"
+                    + " FROM CorrelatedSubQueryTest_o o)",
+            // 不能改写的只缓存结果
+            "SELECT count(*) FROM CorrelatedSubQueryTest_o o"
+                    + " WHERE o.v > ALL(SELECT d.v FROM CorrelatedSubQueryTest_d d WHERE d.k = o.k)",
+            "SELECT count(*) FROM CorrelatedSubQueryTest_o o"
+                    + " WHERE EXISTS(SELECT 1 FROM CorrelatedSubQueryTest_d d WHERE d.k < o.k AND d.v = o.v)",
+            "SELECT count(*) FROM CorrelatedSubQueryTest_o o"
+                    + " WHERE o.v = (SELECT d.v FROM CorrelatedSubQueryTest_d d WHERE d.id = o.id)" };
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS CorrelatedSubQueryTest_o");
+        executeUpdate("DROP TABLE IF EXISTS CorrelatedSubQueryTest_d");
+        executeUpdate("CREATE TABLE IF NOT EXISTS CorrelatedSubQueryTest_o"
+                + " (id int PRIMARY KEY, k int, v int)");
+        executeUpdate("CREATE TABLE IF NOT EXISTS CorrelatedSubQueryTest_d"
+                + " (id int PRIMARY KEY, k int, v int)");
+        executeUpdate("INSERT INTO CorrelatedSubQueryTest_o SELECT x,"
+                + " CASE WHEN x % 97 = 0 THEN NULL ELSE x % 50 END, x % 7 FROM SYSTEM_RANGE(1, 500)");
+        executeUpdate("INSERT INTO CorrelatedSubQueryTest_d SELECT x, x % 40,"
+                + " CASE WHEN x % 23 = 0 THEN NULL ELSE x % 5 END FROM SYSTEM_RANGE(1, 200)");
+
+        testExpectedResults();
+        testSameResultsWithoutCache();
+        testParameters();
+
+        // 数据变化后缓存的结果不能再用
+        executeUpdate("DELETE FROM CorrelatedSubQueryTest_d WHERE k = 1");
+        testSameResultsWithoutCache();
+    }
+
+    private void testExpectedResults() throws Exception {
+        int exists = 0, notExists = 0, count = 0;
+        for (int i = 1; i <= 500; i++) {
+            if (i % 97 == 0) {
+                notExists++;
+                continue;
+            }
+            // d表中k相同的5条记录的v也相同，都是k % 5(或null)
+            int k = i % 50;
+            if (k < 40) {
+                if (k % 5 > 2)
+                    exists++;
+                count += 5;
+            } else {
+                notExists++;
+            }
+        }
+        sql = QUERIES[0];
+        assertEquals(exists, getIntValue(1, true));
+        sql = QUERIES[1];
+        assertEquals(notExists, getIntValue(1, true));
+        sql = QUERIES[4];
+        assertEquals(count, getIntValue(1, true));
+    }
+
+    private void testSameResultsWithoutCache() throws Exception {
+        String[] results = new String[QUERIES.length];
+        for (int i = 0; i < QUERIES.length; i++) {
+            results[i] = getResult(QUERIES[i]);
+        }
+        executeUpdate("SET SUBQUERY_CACHE_SIZE 0");
+        try {
+            for (int i = 0; i < QUERIES.length; i++) {
+                assertEquals(QUERIES[i], results[i], getResult(QUERIES[i]));
+            }
+        } finally {
+            executeUpdate("SET SUBQUERY_CACHE_SIZE 1024");
+        }
+    }
+
+    private String getResult(String sql) throws Exception {
+        ResultSet rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        StringBuilder buff = new StringBuilder();
+        for (int i = 1, count = rs.getMetaData().getColumnCount(); i <= count; i++) {
+            buff.append(rs.getString(i)).append(',');
+        }
+        rs.close();
+        return buff.toString();
+    }
+
+    private void testParameters() throws Exception {
+        sql = "SELECT count(*) FROM CorrelatedSubQueryTest_o o WHERE EXISTS(SELECT 1"
+                + " FROM CorrelatedSubQueryTest_d d WHERE d.k = o.k AND d.v > ?) AND o.v < ?";
+        PreparedStatement ps = conn.prepareStatement(sql);
+        int[] counts = new int[6];
+        for (int i = 0; i < counts.length; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, 7);
+            ResultSet rs = ps.executeQuery();
+            assertTrue(rs.next());
+            counts[i] = rs.getInt(1);
+            rs.close();
+        }
+        ps.close();
+        // v的取值是0到4，所以d.v > 4时没有记录
+        sql = QUERIES[0];
+        assertEquals(getIntValue(1, true), counts[2]);
+        assertEquals(0, counts[4]);
+        assertEquals(0, counts[5]);
+        assertTrue(counts[0] >= counts[1] && counts[1] >= counts[2] && counts[3] > 0);
+    }
+}
@@ -7,6 +7,7 @@ package com.lealone.test.sql.function;
 
 import org.junit.Test;
 
+import com.lealone.db.api.ErrorCode;
 import com.lealone.test.db.schema.UserAggregateTest.MedianString;
 import com.lealone.test.sql.SqlTestBase;
 
@@ -23,6 +24,8 @@ public class AggregateFunctionTest extends SqlTestBase {
         testSelectivity();
         testGroupConcat();
         testJavaAggregate();
+        testApproxCountDistinct();
+        testApproxPercentile();
     }
 
     void init() throws Exception {
@@ -206,4 +209,53 @@ public class AggregateFunctionTest extends SqlTestBase {
         sql = "DROP AGGREGATE " + name;
         executeUpdate(sql);
     }
+
+    void testApproxCountDistinct() throws Exception {
+        // 不重复的值较少时是精确的
+        sql = "select APPROX_COUNT_DISTINCT(f1) from AggregateData";
+        assertEquals(3, getIntValue(1, true));
+        sql = "select APPROX_COUNT_DISTINCT(name), APPROX_COUNT_DISTINCT(null) from AggregateData";
+        assertEquals(3, getIntValue(1));
+        assertEquals(0, getIntValue(2, true));
+
+        sql = "SELECT APPROX_COUNT_DISTINCT(X / 2) FROM SYSTEM_RANGE(1, 200000)";
+        long count = getLongValue(1, true);
+        assertTrue(Math.abs(count - 100001) < 100001 * 0.05);
+
+        // ANALYZE基于APPROX_COUNT_DISTINCT计算字段的SELECTIVITY
+        executeUpdate("ANALYZE");
+        sql = "select SELECTIVITY from INFORMATION_SCHEMA.COLUMNS"
+                + " where TABLE_NAME='AGGREGATEDATA' and COLUMN_NAME='F1'";
+        assertEquals(50, getIntValue(1, true));
+        sql = "select SELECTIVITY from INFORMATION_SCHEMA.COLUMNS"
+                + " where TABLE_NAME='AGGREGATEDATA' and COLUMN_NAME='F2'";
+        assertEquals(16, getIntValue(1, true));
+
+        // 有NULL时NULL也算一个值，跟以前的SELECTIVITY一样
+        executeUpdate("DROP TABLE IF EXISTS AggregateNullData");
+        executeUpdate("CREATE TABLE AggregateNullData(f1 int)");
+        executeUpdate("INSERT INTO AggregateNullData VALUES(1),(2),(NULL),(NULL),(NULL),"
+                + "(NULL),(NULL),(NULL),(NULL),(NULL)");
+        executeUpdate("ANALYZE");
+        sql = "select SELECTIVITY from INFORMATION_SCHEMA.COLUMNS"
+                + " where TABLE_NAME='AGGREGATENULLDATA' and COLUMN_NAME='F1'";
+        assertEquals(30, getIntValue(1, true));
+    }
+
+    void testApproxPercentile() throws Exception {
+        sql = "SELECT APPROX_PERCENTILE(X, 0.5), APPROX_PERCENTILE(X, 0),"
+                + " APPROX_PERCENTILE(X, 1) FROM SYSTEM_RANGE(1, 10000)";
+        assertEquals(5000.5, getDoubleValue(1), 50);
+        assertEquals(1, getDoubleValue(2), 0.00000001);
+        assertEquals(10000, getDoubleValue(3, true), 0.00000001);
+
+        sql = "SELECT f2, APPROX_PERCENTILE(f1, 0.5) FROM AggregateData GROUP BY f2";
+        assertEquals(2, getDoubleValue(2, true), 0.5);
+
+        sql = "SELECT APPROX_PERCENTILE(X, 0.5) FROM SYSTEM_RANGE(1, 10) WHERE X > 10";
+        assertNull(getStringValue(1, true));
+
+        executeQueryThanAssertErrorCode("SELECT APPROX_PERCENTILE(X, 2) FROM SYSTEM_RANGE(1, 10)",
+                ErrorCode.INVALID_VALUE_2);
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.index;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+import com.lealone.db.api.ErrorCode;
+import com.lealone.test.sql.SqlTestBase;
+
+public class CoveringIndexTest extends SqlTestBase {
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS CoveringIndexTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS CoveringIndexTest"
+                + " (pk int PRIMARY KEY, f1 int, f2 int, f3 varchar, f4 varchar)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS CoveringIndexTest_i1 ON CoveringIndexTest(f1)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS CoveringIndexTest_i2 ON CoveringIndexTest(f1)"
+                + " INCLUDE(f2, f3)");
+        executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS CoveringIndexTest_ui"
+                + " ON CoveringIndexTest(f4) INCLUDE(f1)");
+
+        for (int i = 1; i <= 100; i++) {
+            executeUpdate("INSERT INTO CoveringIndexTest VALUES(" + i + ", " + i % 10 + ", " + i
+                    + ", 'v" + i + "', 'u" + i + "')");
+        }
+
+        sql = "SELECT sql FROM information_schema.indexes WHERE index_name='COVERINGINDEXTEST_I2'";
+        assertTrue(getStringValue(1, true).contains("INCLUDE(F2, F3)"));
+
+        // 查询用到的字段都在索引中，选择覆盖索引
+        sql = "EXPLAIN SELECT pk, f2, f3 FROM CoveringIndexTest WHERE f1 = 3";
+        assertTrue(getStringValue(1, true).contains("COVERINGINDEXTEST_I2"));
+        sql = "SELECT sum(f2), count(f3), sum(pk) FROM CoveringIndexTest WHERE f1 = 3";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(480, rs.getInt(1));
+        assertEquals(10, rs.getInt(2));
+        assertEquals(480, rs.getInt(3));
+        closeResultSet();
+        sql = "SELECT f3 FROM CoveringIndexTest WHERE f1 = 3 AND f2 > 90";
+        assertEquals("v93", getStringValue(1, true));
+
+        // f4不在覆盖索引中，需要回表
+        sql = "SELECT f4 FROM CoveringIndexTest WHERE f1 = 3 AND f2 = 43";
+        assertEquals("u43", getStringValue(1, true));
+
+        // include字段被更新后索引中的值也要更新
+        executeUpdate("UPDATE CoveringIndexTest SET f3 = 'x' WHERE pk = 43");
+        sql = "SELECT f3 FROM CoveringIndexTest WHERE f1 = 3 AND f2 = 43";
+        assertEquals("x", getStringValue(1, true));
+        executeUpdate("DELETE FROM CoveringIndexTest WHERE pk = 53");
+        sql = "SELECT count(f3) FROM CoveringIndexTest WHERE f1 = 3";
+        assertEquals(9, getIntValue(1, true));
+
+        // include字段不影响唯一性
+        sql = "SELECT f1 FROM CoveringIndexTest WHERE f4 = 'u20'";
+        assertEquals(0, getIntValue(1, true));
+        try {
+            executeUpdate("INSERT INTO CoveringIndexTest VALUES(1000, 1, 1, 'v', 'u20')");
+            fail("insert duplicate key: u20");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.DUPLICATE_KEY_1);
+        }
+
+        try {
+            executeUpdate("CREATE INDEX CoveringIndexTest_i3 ON CoveringIndexTest(f1) INCLUDE(f1)");
+            fail("duplicate column: f1");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.DUPLICATE_COLUMN_NAME_1);
+        }
+        try {
+            executeUpdate("ALTER TABLE CoveringIndexTest DROP COLUMN f3");
+            fail("column f3 is referenced");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.COLUMN_IS_REFERENCED_1);
+        }
+        testJoin();
+        testUncommittedIncludeValues();
+    }
+
+    // t.f4是j的索引条件用到的字段，t不能只读不包含f4的索引
+    private void testJoin() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS CoveringIndexJoinTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS CoveringIndexJoinTest (name varchar PRIMARY KEY)");
+        executeUpdate("INSERT INTO CoveringIndexJoinTest VALUES('u3'), ('u13'), ('u53'), ('x')");
+        sql = "SELECT count(*) FROM CoveringIndexTest t, CoveringIndexJoinTest j"
+                + " WHERE t.f1 = 3 AND t.f2 < 50 AND j.name = t.f4";
+        assertEquals(2, getIntValue(1, true));
+        sql = "EXPLAIN " + sql;
+        assertTrue(getStringValue(1, true).contains("NAME = T.F4"));
+        executeUpdate("DROP TABLE IF EXISTS CoveringIndexJoinTest");
+    }
+
+    // 唯一索引的include字段被其他事务更新但还没提交时，当前事务读到的还是老值
+    private void testUncommittedIncludeValues() throws Exception {
+        Connection conn2 = getConnection();
+        try {
+            conn2.setAutoCommit(false);
+            Statement stmt2 = conn2.createStatement();
+            stmt2.executeUpdate("UPDATE CoveringIndexTest SET f1 = 999 WHERE pk = 30");
+            ResultSet rs2 = stmt2.executeQuery("SELECT f1 FROM CoveringIndexTest WHERE f4 = 'u30'");
+            assertTrue(rs2.next());
+            assertEquals(999, rs2.getInt(1));
+            rs2.close();
+
+            sql = "SELECT f1 FROM CoveringIndexTest WHERE f4 = 'u30'";
+            assertEquals(0, getIntValue(1, true));
+            sql = "SELECT * FROM CoveringIndexTest WHERE f4 = 'u30'";
+            rs = stmt.executeQuery(sql);
+            assertTrue(rs.next());
+            assertEquals(30, rs.getInt("pk"));
+            assertEquals(0, rs.getInt("f1"));
+            assertFalse(rs.next());
+            closeResultSet();
+            conn2.rollback();
+        } finally {
+            conn2.close();
+        }
+        sql = "SELECT f1 FROM CoveringIndexTest WHERE f4 = 'u30'";
+        assertEquals(0, getIntValue(1, true));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.index;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.lealone.db.api.ErrorCode;
+import com.lealone.test.sql.SqlTestBase;
+
+public class ExpressionIndexTest extends SqlTestBase {
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ExpressionIndexTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS ExpressionIndexTest"
+                + " (pk int PRIMARY KEY, email varchar, status varchar, amount int)");
+        // 先建索引再插入记录，避免查询时索引还在后台构建
+        executeUpdate("CREATE INDEX IF NOT EXISTS ExpressionIndexTest_lower"
+                + " ON ExpressionIndexTest(LOWER(email))");
+        executeUpdate("CREATE INDEX IF NOT EXISTS ExpressionIndexTest_open"
+                + " ON ExpressionIndexTest(amount) WHERE status = 'OPEN'");
+        executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS ExpressionIndexTest_upper"
+                + " ON ExpressionIndexTest(UPPER(email))");
+        for (int i = 1; i <= 100; i++) {
+            executeUpdate("INSERT INTO ExpressionIndexTest VALUES(" + i + ", 'User" + i
+                    + "@Mail.com', '" + (i % 10 == 0 ? "OPEN" : "CLOSED") + "', " + i + ")");
+        }
+        testExpressionIndex();
+        testPartialIndex();
+        testConcurrentWrites();
+    }
+
+    private void testExpressionIndex() throws Exception {
+        sql = "SELECT sql FROM information_schema.indexes"
+                + " WHERE index_name='EXPRESSIONINDEXTEST_LOWER'";
+        assertTrue(getStringValue(1, true).contains("(LOWER(EMAIL))"));
+
+        sql = "EXPLAIN SELECT pk FROM ExpressionIndexTest WHERE LOWER(email) = 'user20@mail.com'";
+        assertTrue(getStringValue(1, true).contains("EXPRESSIONINDEXTEST_LOWER"));
+        sql = "EXPLAIN SELECT pk FROM ExpressionIndexTest t WHERE LOWER(t.email) = 'user20@mail.com'";
+        assertTrue(getStringValue(1, true).contains("EXPRESSIONINDEXTEST_LOWER"));
+        sql = "SELECT pk FROM ExpressionIndexTest WHERE LOWER(email) = 'user20@mail.com'";
+        assertEquals(20, getIntValue(1, true));
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE LOWER(email) >= 'user9'";
+        assertEquals(11, getIntValue(1, true));
+
+        // 更新和删除记录后索引中的表达式值也要跟着变
+        executeUpdate("UPDATE ExpressionIndexTest SET email = 'NEW20@Mail.com' WHERE pk = 20");
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE LOWER(email) = 'user20@mail.com'";
+        assertEquals(0, getIntValue(1, true));
+        sql = "SELECT pk FROM ExpressionIndexTest WHERE LOWER(email) = 'new20@mail.com'";
+        assertEquals(20, getIntValue(1, true));
+        executeUpdate("DELETE FROM ExpressionIndexTest WHERE LOWER(email) = 'new20@mail.com'");
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE LOWER(email) = 'new20@mail.com'";
+        assertEquals(0, getIntValue(1, true));
+        executeUpdate("INSERT INTO ExpressionIndexTest VALUES(20, 'User20@Mail.com', 'OPEN', 20)");
+
+        try {
+            executeUpdate("INSERT INTO ExpressionIndexTest VALUES(1000, 'user1@mail.com', 'OPEN', 0)");
+            fail("insert duplicate key: USER1@MAIL.COM");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.DUPLICATE_KEY_1);
+        }
+        executeUpdate("DROP INDEX ExpressionIndexTest_upper");
+        sql = "SELECT pk FROM ExpressionIndexTest WHERE LOWER(email) = 'user30@mail.com'";
+        assertEquals(30, getIntValue(1, true));
+
+        try {
+            executeUpdate("CREATE INDEX ExpressionIndexTest_rand ON ExpressionIndexTest(amount + RAND())");
+            fail("non-deterministic expression");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.FEATURE_NOT_SUPPORTED_1);
+        }
+        try {
+            executeUpdate("ALTER TABLE ExpressionIndexTest DROP COLUMN email");
+            fail("column email is referenced");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.COLUMN_IS_REFERENCED_1);
+        }
+    }
+
+    private void testPartialIndex() throws Exception {
+        sql = "SELECT sql FROM information_schema.indexes"
+                + " WHERE index_name='EXPRESSIONINDEXTEST_OPEN'";
+        assertTrue(getStringValue(1, true).contains("WHERE"));
+
+        // 查询条件蕴含索引条件时才能用部分索引
+        sql = "EXPLAIN SELECT pk FROM ExpressionIndexTest WHERE status = 'OPEN' AND amount > 50";
+        assertTrue(getStringValue(1, true).contains("EXPRESSIONINDEXTEST_OPEN"));
+        sql = "EXPLAIN SELECT pk FROM ExpressionIndexTest WHERE amount > 50";
+        assertFalse(getStringValue(1, true).contains("EXPRESSIONINDEXTEST_OPEN"));
+
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE status = 'OPEN' AND amount > 50";
+        assertEquals(5, getIntValue(1, true));
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE amount > 50";
+        assertEquals(50, getIntValue(1, true));
+        sql = "SELECT max(amount) FROM ExpressionIndexTest";
+        assertEquals(100, getIntValue(1, true));
+
+        // 记录的状态变化后要加入或移出部分索引
+        executeUpdate("UPDATE ExpressionIndexTest SET status = 'OPEN' WHERE pk = 55");
+        executeUpdate("UPDATE ExpressionIndexTest SET status = 'CLOSED' WHERE pk = 60");
+        executeUpdate("UPDATE ExpressionIndexTest SET amount = 1000 WHERE pk = 70");
+        executeUpdate("DELETE FROM ExpressionIndexTest WHERE pk = 80");
+        sql = "SELECT sum(pk) FROM ExpressionIndexTest WHERE status = 'OPEN' AND amount > 50";
+        assertEquals(55 + 70 + 90 + 100, getIntValue(1, true));
+        executeUpdate("DELETE FROM ExpressionIndexTest WHERE status = 'OPEN' AND amount > 50");
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE status = 'OPEN'";
+        assertEquals(5, getIntValue(1, true));
+    }
+
+    // 多个事务同时写记录时各自计算索引表达式和部分索引条件，不能互相干扰
+    private void testConcurrentWrites() throws Exception {
+        int threadCount = 4;
+        int rowCount = 200;
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+                    for (int i = 0; i < rowCount; i++) {
+                        int pk = 1000 * (id + 1) + i;
+                        stmt.executeUpdate("INSERT INTO ExpressionIndexTest VALUES(" + pk + ", 'C" + pk
+                                + "@Mail.com', '" + (i % 2 == 0 ? "OPEN" : "CLOSED") + "', " + pk
+                                + ")");
+                    }
+                } catch (Exception e) {
+                    error.set(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (error.get() != null)
+            throw error.get();
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE LOWER(email) >= 'c' AND LOWER(email) < 'd'";
+        assertEquals(threadCount * rowCount, getIntValue(1, true));
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE LOWER(email) = 'c3005@mail.com'";
+        assertEquals(1, getIntValue(1, true));
+        sql = "SELECT count(*) FROM ExpressionIndexTest WHERE status = 'OPEN' AND amount >= 1000";
+        assertEquals(threadCount * rowCount / 2, getIntValue(1, true));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.index;
+
+import org.junit.Test;
+
+import com.lealone.db.api.ErrorCode;
+import com.lealone.test.sql.SqlTestBase;
+
+public class HashIndexTest extends SqlTestBase {
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS HashIndexTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS HashIndexTest (f1 int NOT NULL, f2 int, f3 varchar)");
+        // 支持多个字段
+        executeUpdate("CREATE HASH INDEX IF NOT EXISTS HashIndexTest_hi ON HashIndexTest(f2, f3)");
+        executeUpdate("CREATE UNIQUE HASH INDEX IF NOT EXISTS HashIndexTest_uhi ON HashIndexTest(f1)");
+
+        for (int i = 1; i <= 1000; i++) {
+            executeUpdate("INSERT INTO HashIndexTest(f1, f2, f3) VALUES(" + i + ", " + i % 10 + ", 'v"
+                    + i % 20 + "')");
+        }
+
+        sql = "EXPLAIN SELECT * FROM HashIndexTest WHERE f2 = 3 AND f3 = 'v13'";
+        assertTrue(getStringValue(1, true).contains("HASHINDEXTEST_HI"));
+        sql = "SELECT count(*) FROM HashIndexTest WHERE f2 = 3 AND f3 = 'v13'";
+        assertEquals(50, getIntValue(1, true));
+        sql = "SELECT count(*) FROM HashIndexTest WHERE f2 = 3 AND f3 = 'v14'";
+        assertEquals(0, getIntValue(1, true));
+        sql = "SELECT f2 FROM HashIndexTest WHERE f1 = 567";
+        assertEquals(7, getIntValue(1, true));
+        sql = "SELECT count(*) FROM HashIndexTest WHERE f1 in(5, 500, 5000, 5)";
+        assertEquals(2, getIntValue(1, true));
+
+        // 只给出部分字段的值时无法计算hash值
+        sql = "SELECT count(*) FROM HashIndexTest WHERE f2 in(3, 4) AND f3 = 'v13'";
+        assertEquals(50, getIntValue(1, true));
+
+        try {
+            executeUpdate("INSERT INTO HashIndexTest(f1, f2, f3) VALUES(10, 0, 'a')");
+            fail("insert duplicate key: 10");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.DUPLICATE_KEY_1);
+        }
+
+        executeUpdate("UPDATE HashIndexTest SET f3 = 'x' WHERE f1 = 13");
+        sql = "SELECT count(*) FROM HashIndexTest WHERE f2 = 3 AND f3 = 'v13'";
+        assertEquals(49, getIntValue(1, true));
+        sql = "SELECT f1 FROM HashIndexTest WHERE f2 = 3 AND f3 = 'x'";
+        assertEquals(13, getIntValue(1, true));
+
+        // 索引是事务性的，回滚后看不到新的记录
+        conn.setAutoCommit(false);
+        try {
+            executeUpdate("INSERT INTO HashIndexTest(f1, f2, f3) VALUES(2000, 3, 'x')");
+            conn.rollback();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        sql = "SELECT count(*) FROM HashIndexTest WHERE f2 = 3 AND f3 = 'x'";
+        assertEquals(1, getIntValue(1, true));
+
+        executeUpdate("DELETE FROM HashIndexTest WHERE f2 = 3 AND f3 = 'v13'");
+        sql = "SELECT count(*) FROM HashIndexTest WHERE f2 = 3 AND f3 = 'v13'";
+        assertEquals(0, getIntValue(1, true));
+        testDecimal();
+        assertTrue(new HashIndexCollationTest().runTest());
+    }
+
+    // 值相等但scale不同的DECIMAL要有相同的hash值
+    private void testDecimal() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS HashIndexDecimalTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS HashIndexDecimalTest (id int, d DECIMAL(10, 2))");
+        executeUpdate("CREATE HASH INDEX IF NOT EXISTS HashIndexDecimalTest_hi ON HashIndexDecimalTest(d)");
+        executeUpdate("INSERT INTO HashIndexDecimalTest VALUES(1, 1.5), (2, 2), (3, 0)");
+
+        sql = "EXPLAIN SELECT id FROM HashIndexDecimalTest WHERE d = 1.5";
+        assertTrue(getStringValue(1, true).contains("HASHINDEXDECIMALTEST_HI"));
+        sql = "SELECT id FROM HashIndexDecimalTest WHERE d = 1.5";
+        assertEquals(1, getIntValue(1, true));
+        sql = "SELECT id FROM HashIndexDecimalTest WHERE d = 1.50";
+        assertEquals(1, getIntValue(1, true));
+        sql = "SELECT id FROM HashIndexDecimalTest WHERE d = 2";
+        assertEquals(2, getIntValue(1, true));
+        sql = "SELECT id FROM HashIndexDecimalTest WHERE d = 0.000";
+        assertEquals(3, getIntValue(1, true));
+        sql = "SELECT count(*) FROM HashIndexDecimalTest WHERE d = 1.51";
+        assertEquals(0, getIntValue(1, true));
+    }
+
+    // 设置了collation后，按collation相等的字符串hash值可能不同，不能在字符串字段上建hash索引。
+    // collation只能在没有表时修改，所以用一个单独的数据库
+    private static class HashIndexCollationTest extends SqlTestBase {
+
+        public HashIndexCollationTest() {
+            super("HashIndexCollationTest");
+        }
+
+        @Override
+        protected void test() throws Exception {
+            executeUpdate("DROP TABLE IF EXISTS HashIndexCollationTest");
+            executeUpdate("SET COLLATION ENGLISH STRENGTH PRIMARY");
+            executeUpdate("CREATE TABLE IF NOT EXISTS HashIndexCollationTest (f1 int, f2 varchar)");
+            try {
+                executeUpdate("CREATE HASH INDEX HashIndexCollationTest_hi"
+                        + " ON HashIndexCollationTest(f2)");
+                fail("hash index on a collated string column");
+            } catch (Exception e) {
+                assertErrorCode(e, ErrorCode.FEATURE_NOT_SUPPORTED_1);
+            }
+            // 其他类型的字段不受影响
+            executeUpdate("CREATE HASH INDEX HashIndexCollationTest_hi ON HashIndexCollationTest(f1)");
+            executeUpdate("INSERT INTO HashIndexCollationTest VALUES(1, 'a'), (2, 'A')");
+            sql = "SELECT count(*) FROM HashIndexCollationTest WHERE f2 = 'a'";
+            assertEquals(2, getIntValue(1, true));
+            executeUpdate("DROP TABLE HashIndexCollationTest");
+            executeUpdate("SET COLLATION OFF");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.index;
+
+import org.junit.Test;
+
+import com.lealone.test.sql.SqlTestBase;
+
+public class MultiRangeReadTest extends SqlTestBase {
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS MultiRangeReadTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS MultiRangeReadTest (pk int PRIMARY KEY, f1 int, f2 int)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS MultiRangeReadTest_i1 ON MultiRangeReadTest(f1)");
+        // 索引的顺序跟row key的顺序不一样
+        for (int i = 0; i < 1000; i++) {
+            executeUpdate("INSERT INTO MultiRangeReadTest VALUES(" + i + ", " + (i * 37 % 1000) + ", "
+                    + i * 2 + ")");
+        }
+        executeUpdate("DELETE FROM MultiRangeReadTest WHERE pk % 10 = 3");
+
+        // 批量回表后仍然按索引的顺序返回
+        sql = "SELECT pk, f1, f2 FROM MultiRangeReadTest WHERE f1 BETWEEN 100 AND 600 ORDER BY f1";
+        rs = stmt.executeQuery(sql);
+        int count = 0;
+        int lastF1 = -1;
+        while (rs.next()) {
+            int pk = rs.getInt(1);
+            int f1 = rs.getInt(2);
+            assertTrue(f1 > lastF1);
+            assertEquals(pk * 37 % 1000, f1);
+            assertEquals(pk * 2, rs.getInt(3));
+            assertTrue(pk % 10 != 3);
+            lastF1 = f1;
+            count++;
+        }
+        closeResultSet();
+        assertEquals(451, count);
+
+        // f1=501对应的pk=473已经删除了，f1=502对应的pk=446
+        sql = "SELECT f2 FROM MultiRangeReadTest WHERE f1 > 500 ORDER BY f1 LIMIT 2";
+        assertEquals(446 * 2, getIntValue(1, true));
+
+        // f1=111对应的pk=3已经删除了，f1=3对应的pk=919
+        sql = "SELECT sum(f2) FROM MultiRangeReadTest WHERE f1 IN(0, 37, 74, 111, 3)";
+        assertEquals(2 * (0 + 1 + 2 + 919), getIntValue(1, true));
+
+        // join时内表每次查找都会批量回表，读取的字段在prepare阶段就确定了
+        int expectedSum = 0;
+        int expectedCount = 0;
+        for (int pk = 0; pk < 1000; pk++) {
+            int f1 = pk * 37 % 1000;
+            if (pk % 10 != 3 && f1 < 100 && f1 % 10 != 3) {
+                expectedSum += pk * 2;
+                expectedCount++;
+            }
+        }
+        sql = "SELECT sum(t2.f2), count(*) FROM MultiRangeReadTest t1, MultiRangeReadTest t2"
+                + " WHERE t1.pk < 100 AND t2.f1 = t1.pk";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(expectedSum, rs.getInt(1));
+        assertEquals(expectedCount, rs.getInt(2));
+        closeResultSet();
+        sql = "SELECT t2.f2, count(*) FROM MultiRangeReadTest t1, MultiRangeReadTest t2"
+                + " WHERE t1.pk < 100 AND t2.f1 = t1.pk GROUP BY t2.f2";
+        rs = stmt.executeQuery(sql);
+        count = 0;
+        while (rs.next()) {
+            assertEquals(1, rs.getInt(2));
+            count++;
+        }
+        closeResultSet();
+        assertEquals(expectedCount, count);
+
+        executeUpdate("UPDATE MultiRangeReadTest SET f2 = -1 WHERE f1 BETWEEN 100 AND 600");
+        sql = "SELECT count(*) FROM MultiRangeReadTest WHERE f2 = -1";
+        assertEquals(451, getIntValue(1, true));
+    }
+}
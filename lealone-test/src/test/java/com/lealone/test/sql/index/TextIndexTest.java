@@ -0,0 +1,120 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.index;
+
+import org.junit.Test;
+
+import com.lealone.db.api.ErrorCode;
+import com.lealone.test.sql.SqlTestBase;
+
+public class TextIndexTest extends SqlTestBase {
+
+    private static final String[] WORDS = { "apple", "banana", "cherry", "durian", "elderberry" };
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS TextIndexTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS TextIndexTest"
+                + " (pk int PRIMARY KEY, title varchar, body varchar)");
+        // 先建索引再插入记录，避免查询时索引还在后台构建
+        executeUpdate("CREATE INDEX IF NOT EXISTS TextIndexTest_ngram"
+                + " ON TextIndexTest(title) USING NGRAM");
+        executeUpdate("CREATE INDEX IF NOT EXISTS TextIndexTest_fulltext"
+                + " ON TextIndexTest(body) USING FULLTEXT");
+        for (int i = 1; i <= 100; i++) {
+            String title = "Title-" + i + "-" + WORDS[i % 5];
+            String body = WORDS[i % 5] + " " + WORDS[i % 3] + " " + WORDS[i % 3];
+            executeUpdate("INSERT INTO TextIndexTest VALUES(" + i + ", '" + title + "', '" + body
+                    + "')");
+        }
+        testLike();
+        testMatch();
+        testErrors();
+    }
+
+    private void testLike() throws Exception {
+        sql = "SELECT sql FROM information_schema.indexes WHERE index_name='TEXTINDEXTEST_NGRAM'";
+        assertTrue(getStringValue(1, true).contains("USING NGRAM"));
+
+        sql = "EXPLAIN SELECT pk FROM TextIndexTest WHERE title LIKE '%nana%'";
+        assertTrue(getStringValue(1, true).contains("TEXTINDEXTEST_NGRAM"));
+        sql = "SELECT count(*) FROM TextIndexTest WHERE title LIKE '%nana%'";
+        assertEquals(20, getIntValue(1, true));
+        // 索引只负责找出候选记录，大小写和通配符由LIKE条件判断
+        sql = "SELECT count(*) FROM TextIndexTest WHERE title LIKE '%NANA%'";
+        assertEquals(0, getIntValue(1, true));
+        sql = "SELECT count(*) FROM TextIndexTest WHERE title LIKE '%-1_-cherry'";
+        assertEquals(2, getIntValue(1, true));
+        sql = "SELECT count(*) FROM TextIndexTest WHERE title LIKE '%e-%' AND title LIKE '%apple%'";
+        assertEquals(20, getIntValue(1, true));
+
+        // 子串太短，不能用全文索引
+        sql = "EXPLAIN SELECT pk FROM TextIndexTest WHERE title LIKE '%ap%'";
+        assertFalse(getStringValue(1, true).contains("TEXTINDEXTEST_NGRAM"));
+        sql = "SELECT count(*) FROM TextIndexTest WHERE title LIKE '%ap%'";
+        assertEquals(20, getIntValue(1, true));
+
+        // 排序不能用全文索引
+        sql = "SELECT title FROM TextIndexTest WHERE title LIKE '%rian%' ORDER BY title LIMIT 1";
+        assertEquals("Title-13-durian", getStringValue(1, true));
+
+        executeUpdate("UPDATE TextIndexTest SET title = 'mango' WHERE pk = 2");
+        executeUpdate("DELETE FROM TextIndexTest WHERE pk = 7");
+        sql = "SELECT count(*) FROM TextIndexTest WHERE title LIKE '%cherry%'";
+        assertEquals(18, getIntValue(1, true));
+        sql = "SELECT pk FROM TextIndexTest WHERE title LIKE '%ang%'";
+        assertEquals(2, getIntValue(1, true));
+    }
+
+    private void testMatch() throws Exception {
+        // banana比apple出现在更少的记录中，所以'apple banana banana'的相关度最高，
+        // 相关度相同时按row key排序，pk=10是第一条这样的记录
+        sql = "SELECT pk, body, score FROM MATCH('TextIndexTest', 'body', 'apple banana', 2)";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(10, rs.getInt(1));
+        assertEquals("apple banana banana", rs.getString(2));
+        double score = rs.getDouble(3);
+        assertTrue(rs.next());
+        assertTrue(score >= rs.getDouble(3));
+        assertFalse(rs.next());
+        closeResultSet();
+
+        sql = "SELECT count(*) FROM MATCH('TextIndexTest', 'body', 'Durian')";
+        assertEquals(20, getIntValue(1, true));
+        sql = "SELECT count(*) FROM MATCH('TextIndexTest', 'body', 'dur')";
+        assertEquals(0, getIntValue(1, true));
+
+        executeUpdate("UPDATE TextIndexTest SET body = 'kiwi' WHERE pk = 4");
+        sql = "SELECT pk FROM MATCH('TextIndexTest', 'body', 'KIWI')";
+        assertEquals(4, getIntValue(1, true));
+
+        // NGRAM索引也可以检索，按trigram计算相关度，cherry只有两个trigram相同
+        sql = "SELECT title FROM MATCH('TextIndexTest', 'title', 'elderberry', 1)";
+        assertTrue(getStringValue(1, true).endsWith("-elderberry"));
+    }
+
+    private void testErrors() throws Exception {
+        try {
+            executeUpdate("CREATE INDEX TextIndexTest_pk ON TextIndexTest(pk) USING NGRAM");
+            fail("not a string column");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.FEATURE_NOT_SUPPORTED_1);
+        }
+        try {
+            executeUpdate("CREATE UNIQUE INDEX TextIndexTest_u ON TextIndexTest(body) USING NGRAM");
+            fail("unique full-text index");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.SYNTAX_ERROR_2);
+        }
+        try {
+            executeQuery("SELECT * FROM MATCH('TextIndexTest', 'pk', 'apple')");
+            fail("no full-text index");
+        } catch (Exception e) {
+            assertErrorCode(e, ErrorCode.INDEX_NOT_FOUND_1);
+        }
+    }
+}
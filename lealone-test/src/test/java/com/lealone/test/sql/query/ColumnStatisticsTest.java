@@ -0,0 +1,66 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.query;
+
+import org.junit.Test;
+
+import com.lealone.test.sql.SqlTestBase;
+
+public class ColumnStatisticsTest extends SqlTestBase {
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ColumnStatisticsTest");
+        executeUpdate("DROP TABLE IF EXISTS ColumnStatisticsTest2");
+        executeUpdate("CREATE TABLE IF NOT EXISTS ColumnStatisticsTest"
+                + " (pk int PRIMARY KEY, status varchar, amount int)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS ColumnStatisticsTest_status"
+                + " ON ColumnStatisticsTest(status)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS ColumnStatisticsTest_amount"
+                + " ON ColumnStatisticsTest(amount)");
+        // status的分布很不均匀，1000条记录中只有10条是NEW
+        for (int i = 1; i <= 1000; i++) {
+            String status = i % 100 == 1 ? "NEW" : "DONE";
+            String amount = i % 50 == 0 ? "NULL" : Integer.toString(i);
+            executeUpdate("INSERT INTO ColumnStatisticsTest VALUES(" + i + ", '" + status + "', "
+                    + amount + ")");
+        }
+        executeUpdate("ANALYZE");
+
+        testSkewedData();
+        testPersistence();
+    }
+
+    private void testSkewedData() throws Exception {
+        // 没有统计信息时status = 'DONE'会被当成选择率很高的条件
+        sql = "EXPLAIN SELECT pk FROM ColumnStatisticsTest WHERE status = 'DONE' AND amount < 100";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_AMOUNT"));
+        sql = "EXPLAIN SELECT pk FROM ColumnStatisticsTest WHERE status = 'NEW' AND amount < 100";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_STATUS"));
+        sql = "EXPLAIN SELECT pk FROM ColumnStatisticsTest WHERE status = 'NEW' AND amount > 10";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_STATUS"));
+        sql = "EXPLAIN SELECT pk FROM ColumnStatisticsTest WHERE status = 'DONE' AND amount > 990";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_AMOUNT"));
+
+        sql = "SELECT count(*) FROM ColumnStatisticsTest WHERE status = 'DONE' AND amount < 100";
+        assertEquals(97, getIntValue(1, true));
+        sql = "SELECT count(*) FROM ColumnStatisticsTest WHERE status = 'NEW' AND amount > 10";
+        assertEquals(9, getIntValue(1, true));
+    }
+
+    private void testPersistence() throws Exception {
+        sql = "SELECT sql FROM information_schema.tables WHERE table_name='COLUMNSTATISTICSTEST'";
+        String createSQL = getStringValue(1, true);
+        assertTrue(createSQL.contains("STATISTICS"));
+
+        // 统计信息保存在建表语句中，重新解析后还能用
+        createSQL = createSQL.replace("COLUMNSTATISTICSTEST", "COLUMNSTATISTICSTEST2");
+        executeUpdate(createSQL);
+        sql = "SELECT sql FROM information_schema.tables WHERE table_name='COLUMNSTATISTICSTEST2'";
+        String createSQL2 = getStringValue(1, true);
+        assertEquals(createSQL, createSQL2);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.query;
+
+import java.sql.ResultSet;
+
+import org.junit.Test;
+
+import com.lealone.test.sql.SqlTestBase;
+
+public class GroupQueryTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("drop table IF EXISTS GroupQueryTest");
+        stmt.executeUpdate("create table IF NOT EXISTS GroupQueryTest"
+                + "(pk int primary key, f1 int, f2 varchar, f3 int)");
+        // 分组数超过GroupHashTable的初始容量，会触发扩容
+        for (int i = 1; i <= 500; i++) {
+            String f1 = i % 10 == 0 ? "null" : String.valueOf(i % 200);
+            stmt.executeUpdate("insert into GroupQueryTest(pk, f1, f2, f3) values(" + i + "," + f1
+                    + ",'v" + (i % 3) + "'," + i + ")");
+        }
+
+        // 单个整数字段分组，null值单独一组
+        sql = "select f1, count(*) from GroupQueryTest group by f1";
+        int count = printResultSet();
+        assertEquals(181, count);
+
+        sql = "select count(*) from GroupQueryTest where f1 is null";
+        assertEquals(50, getIntValue(1, true));
+
+        sql = "select f1, sum(f3) from GroupQueryTest where f1 = 7 group by f1";
+        assertEquals(7 + 207 + 407, getIntValue(2, true));
+
+        // 多个字段分组
+        sql = "select f2, f1, count(*) from GroupQueryTest group by f2, f1";
+        count = printResultSet();
+        assertEquals(500 - 50 + 3, count);
+
+        sql = "select f2, count(*), max(f3) from GroupQueryTest group by f2 having count(*) > 166";
+        count = printResultSet();
+        assertEquals(2, count);
+        testSpill();
+    }
+
+    // 分组占用的内存超过MAX_OPERATION_MEMORY(默认100000字节)后，新分组的记录写到临时map中，
+    // 最后再按分组key的顺序聚合，结果要跟全部在内存中聚合一样
+    private void testSpill() throws Exception {
+        stmt.executeUpdate("drop table IF EXISTS GroupSpillTest");
+        stmt.executeUpdate("create table IF NOT EXISTS GroupSpillTest"
+                + "(pk int primary key, f1 int, f2 varchar, f3 int)");
+        stmt.executeUpdate("insert into GroupSpillTest select x, mod(x, 5000), 'v' || mod(x, 3000), x"
+                + " from system_range(1, 20000)");
+
+        sql = "select f1, count(*), sum(f3) from GroupSpillTest group by f1";
+        ResultSet rs = stmt.executeQuery(sql);
+        int count = 0;
+        while (rs.next()) {
+            int f1 = rs.getInt(1);
+            assertEquals(4, rs.getInt(2));
+            // f1相同的4条记录是f1, f1+5000, f1+10000, f1+15000，f1为0时是5000到20000
+            int first = f1 == 0 ? 5000 : f1;
+            assertEquals(first * 4 + 30000, rs.getInt(3));
+            count++;
+        }
+        rs.close();
+        assertEquals(5000, count);
+
+        sql = "select count(*) from (select f2, f1, count(distinct f3) c from GroupSpillTest"
+                + " group by f2, f1 having c = 2)";
+        assertEquals(5000, getIntValue(1, true));
+
+        sql = "select sum(c) from (select f2, count(*) c from GroupSpillTest group by f2)";
+        assertEquals(20000, getIntValue(1, true));
+
+        // 关联查询时每个表的当前记录都要写到临时map中
+        sql = "select count(*), sum(s) from (select a.f1, sum(b.f3) s from GroupSpillTest a"
+                + " join GroupSpillTest b on a.pk = b.pk where b.f3 > 100 group by a.f1)";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(5000, rs.getInt(1));
+        assertEquals(20000 * 20001 / 2 - 100 * 101 / 2, rs.getLong(2));
+        rs.close();
+    }
+}
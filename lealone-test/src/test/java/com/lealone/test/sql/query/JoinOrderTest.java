@@ -0,0 +1,66 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.query;
+
+import org.junit.Test;
+
+import com.lealone.test.sql.SqlTestBase;
+
+public class JoinOrderTest extends SqlTestBase {
+
+    @Test
+    public void run() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            executeUpdate("DROP TABLE IF EXISTS JoinOrderTest_d" + i);
+            executeUpdate("CREATE TABLE IF NOT EXISTS JoinOrderTest_d" + i
+                    + " (id int PRIMARY KEY, name varchar)");
+        }
+        executeUpdate("DROP TABLE IF EXISTS JoinOrderTest_f");
+        executeUpdate("CREATE TABLE IF NOT EXISTS JoinOrderTest_f"
+                + " (id int PRIMARY KEY, d1 int, d2 int, d3 int, amount int)");
+        for (int i = 1; i <= 3; i++) {
+            executeUpdate("CREATE INDEX IF NOT EXISTS JoinOrderTest_f_d" + i
+                    + " ON JoinOrderTest_f(d" + i + ")");
+        }
+        for (int i = 1; i <= 3; i++) {
+            executeUpdate("INSERT INTO JoinOrderTest_d" + i
+                    + " SELECT x, 'n' || x FROM SYSTEM_RANGE(1, 20)");
+        }
+        executeUpdate("INSERT INTO JoinOrderTest_f SELECT x, x % 20 + 1, x / 100 + 1, x % 7 + 1, x"
+                + " FROM SYSTEM_RANGE(0, 1999)");
+        executeUpdate("ANALYZE");
+
+        String where = " WHERE f.d1 = d1.id AND f.d2 = d2.id AND f.d3 = d3.id";
+        String from = " FROM JoinOrderTest_f f, JoinOrderTest_d1 d1, JoinOrderTest_d2 d2,"
+                + " JoinOrderTest_d3 d3";
+        // 先查有过滤条件的维度表，再通过索引查事实表
+        sql = "EXPLAIN SELECT count(*)" + from + where + " AND d2.name = 'n5'";
+        String plan = getStringValue(1, true);
+        assertTrue(plan.indexOf("JOINORDERTEST_D2 D2") < plan.indexOf("JOINORDERTEST_F F"));
+        assertTrue(plan.contains("JOINORDERTEST_F_D2"));
+        sql = "SELECT count(*)" + from + where + " AND d2.name = 'n5'";
+        assertEquals(100, getIntValue(1, true));
+
+        // 没有join条件的表最后才做笛卡尔积
+        sql = "SELECT count(*)" + from + ", JoinOrderTest_d3 d4" + where
+                + " AND d2.name = 'n5' AND d4.id < 3";
+        assertEquals(200, getIntValue(1, true));
+
+        // 表很多时枚举的部分计划会超过Optimizer.MAX_SUB_PLANS，剩下的表用贪心算法补全
+        StringBuilder buff = new StringBuilder(from);
+        StringBuilder cond = new StringBuilder(where);
+        for (int i = 1; i <= 8; i++) {
+            buff.append(", JoinOrderTest_d3 e").append(i);
+            cond.append(" AND e").append(i).append(".id = 1");
+        }
+        sql = "EXPLAIN SELECT count(*)" + buff + cond + " AND d1.name = 'n5'";
+        plan = getStringValue(1, true);
+        assertTrue(plan.indexOf("JOINORDERTEST_D1 D1") < plan.indexOf("JOINORDERTEST_F F"));
+        assertTrue(plan.contains("JOINORDERTEST_F_D1"));
+        sql = "SELECT count(*)" + buff + cond + " AND d1.name = 'n5'";
+        assertEquals(100, getIntValue(1, true));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+import com.lealone.test.sql.SqlTestBase;
+
+public class SharedPlanCacheTest extends SqlTestBase {
+
+    private Connection conn2;
+    private Statement stmt2;
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS SharedPlanCacheTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS SharedPlanCacheTest (id int PRIMARY KEY, v int)");
+        executeUpdate("INSERT INTO SharedPlanCacheTest SELECT x, x * 10 FROM SYSTEM_RANGE(1, 10)");
+        conn2 = getConnection();
+        stmt2 = conn2.createStatement();
+        try {
+            testSameResults();
+            testUncommittedData();
+            testTemporaryTable();
+            testSchema();
+            testDDL();
+        } finally {
+            stmt2.close();
+            conn2.close();
+        }
+    }
+
+    private static String getQuery(int i) {
+        return "SELECT count(*), sum(v) FROM SharedPlanCacheTest WHERE id > " + i;
+    }
+
+    // 超过QUERY_CACHE_SIZE的语句会被挤到共享缓存，让另一个session去用
+    private void evict(Statement stmt) throws Exception {
+        for (int i = 0; i < 10; i++) {
+            getResult(stmt, getQuery(i));
+        }
+    }
+
+    private void testSameResults() throws Exception {
+        for (int n = 0; n < 2; n++) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals((10 - i) + "," + (55 - i * (i + 1) / 2) * 10 + ",",
+                        getResult(stmt2, getQuery(i)));
+                assertEquals(getResult(stmt2, getQuery(i)), getResult(stmt, getQuery(i)));
+            }
+        }
+
+        sql = "SELECT v FROM SharedPlanCacheTest WHERE id = ?";
+        PreparedStatement ps = conn.prepareStatement(sql);
+        PreparedStatement ps2 = conn2.prepareStatement(sql);
+        for (int i = 1; i <= 10; i++) {
+            evict(stmt);
+            ps.setInt(1, i);
+            ps2.setInt(1, 11 - i);
+            assertEquals(i * 10 + ",", getResult(ps.executeQuery()));
+            assertEquals((11 - i) * 10 + ",", getResult(ps2.executeQuery()));
+        }
+        ps.close();
+        ps2.close();
+    }
+
+    // 被其他session重用的语句不能返回上一个session缓存的结果
+    private void testUncommittedData() throws Exception {
+        String query = "SELECT count(*) FROM SharedPlanCacheTest";
+        conn2.setAutoCommit(false);
+        try {
+            stmt2.executeUpdate("INSERT INTO SharedPlanCacheTest VALUES(100, 1000)");
+            assertEquals("11,", getResult(stmt2, query));
+            evict(stmt2);
+            assertEquals("10,", getResult(stmt, query));
+            evict(stmt);
+            assertEquals("11,", getResult(stmt2, query));
+        } finally {
+            conn2.rollback();
+            conn2.setAutoCommit(true);
+        }
+        assertEquals("10,", getResult(stmt, query));
+    }
+
+    // 临时表只属于创建它的session，用到临时表的语句不能共享
+    private void testTemporaryTable() throws Exception {
+        String query = "SELECT count(*) FROM SharedPlanCacheTest_tmp";
+        executeUpdate("CREATE LOCAL TEMPORARY TABLE SharedPlanCacheTest_tmp(id int)");
+        executeUpdate("INSERT INTO SharedPlanCacheTest_tmp VALUES(1)");
+        stmt2.executeUpdate("CREATE LOCAL TEMPORARY TABLE SharedPlanCacheTest_tmp(id int)");
+        stmt2.executeUpdate("INSERT INTO SharedPlanCacheTest_tmp VALUES(1),(2)");
+        assertEquals("1,", getResult(stmt, query));
+        evict(stmt);
+        assertEquals("2,", getResult(stmt2, query));
+        evict(stmt2);
+        assertEquals("1,", getResult(stmt, query));
+        executeUpdate("DROP TABLE SharedPlanCacheTest_tmp");
+        stmt2.executeUpdate("DROP TABLE SharedPlanCacheTest_tmp");
+    }
+
+    private void testSchema() throws Exception {
+        String query = "SELECT count(*) FROM SharedPlanCacheTest";
+        executeUpdate("CREATE SCHEMA IF NOT EXISTS SharedPlanCacheTest_s");
+        executeUpdate("DROP TABLE IF EXISTS SharedPlanCacheTest_s.SharedPlanCacheTest");
+        executeUpdate("CREATE TABLE SharedPlanCacheTest_s.SharedPlanCacheTest (id int, v int)");
+        executeUpdate("INSERT INTO SharedPlanCacheTest_s.SharedPlanCacheTest VALUES(1, 1)");
+        assertEquals("10,", getResult(stmt, query));
+        evict(stmt);
+        stmt2.executeUpdate("SET SCHEMA SharedPlanCacheTest_s");
+        try {
+            assertEquals("1,", getResult(stmt2, query));
+            evict(stmt2);
+            assertEquals("10,", getResult(stmt, query));
+        } finally {
+            stmt2.executeUpdate("SET SCHEMA PUBLIC");
+        }
+        assertEquals("10,", getResult(stmt2, query));
+    }
+
+    // 执行DDL后缓存的语句都要重新编译
+    private void testDDL() throws Exception {
+        String query = "SELECT * FROM SharedPlanCacheTest WHERE id = 1";
+        assertEquals("1,10,", getResult(stmt, query));
+        evict(stmt);
+        executeUpdate("ALTER TABLE SharedPlanCacheTest ADD COLUMN IF NOT EXISTS v2 int DEFAULT 3");
+        assertEquals("1,10,3,", getResult(stmt2, query));
+    }
+
+    private static String getResult(Statement stmt, String sql) throws Exception {
+        return getResult(stmt.executeQuery(sql));
+    }
+
+    private static String getResult(ResultSet rs) throws Exception {
+        assertTrue(rs.next());
+        StringBuilder buff = new StringBuilder();
+        for (int i = 1, count = rs.getMetaData().getColumnCount(); i <= count; i++) {
+            buff.append(rs.getString(i)).append(',');
+        }
+        rs.close();
+        return buff.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+import com.lealone.test.sql.SqlTestBase;
+
+public class SharedResultCacheTest extends SqlTestBase {
+
+    private static final String QUERY = "SELECT count(*), sum(v) FROM SharedResultCacheTest_ref";
+
+    private Connection conn2;
+    private Statement stmt2;
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS SharedResultCacheTest_ref");
+        executeUpdate("DROP TABLE IF EXISTS SharedResultCacheTest_hot");
+        executeUpdate("CREATE TABLE IF NOT EXISTS SharedResultCacheTest_ref (id int PRIMARY KEY, v int)");
+        executeUpdate("CREATE TABLE IF NOT EXISTS SharedResultCacheTest_hot (id int PRIMARY KEY, v int)");
+        executeUpdate("INSERT INTO SharedResultCacheTest_ref SELECT x, x FROM SYSTEM_RANGE(1, 100)");
+        conn2 = getConnection();
+        stmt2 = conn2.createStatement();
+        try {
+            testWritesToOtherTables();
+            testUncommittedData();
+            testParameters();
+        } finally {
+            stmt2.close();
+            conn2.close();
+        }
+    }
+
+    // 写其他表时缓存的结果还能用，写查询用到的表之后就要重新查
+    private void testWritesToOtherTables() throws Exception {
+        assertEquals("100,5050,", getResult(stmt, QUERY));
+        for (int i = 1; i <= 10; i++) {
+            executeUpdate("INSERT INTO SharedResultCacheTest_hot VALUES(" + i + ", " + i + ")");
+            assertEquals("100,5050,", getResult(stmt2, QUERY));
+            assertEquals("100,5050,", getResult(stmt, QUERY));
+        }
+        executeUpdate("UPDATE SharedResultCacheTest_ref SET v = v + 1 WHERE id = 1");
+        assertEquals("100,5051,", getResult(stmt2, QUERY));
+        assertEquals("100,5051,", getResult(stmt, QUERY));
+    }
+
+    // 其他session不能看到未提交的数据，提交或回滚后缓存的结果要失效
+    private void testUncommittedData() throws Exception {
+        conn2.setAutoCommit(false);
+        try {
+            stmt2.executeUpdate("INSERT INTO SharedResultCacheTest_ref VALUES(101, 101)");
+            assertEquals("101,5152,", getResult(stmt2, QUERY));
+            assertEquals("100,5051,", getResult(stmt, QUERY));
+            assertEquals("101,5152,", getResult(stmt2, QUERY));
+            conn2.commit();
+            assertEquals("101,5152,", getResult(stmt, QUERY));
+            assertEquals("101,5152,", getResult(stmt2, QUERY));
+
+            stmt2.executeUpdate("DELETE FROM SharedResultCacheTest_ref WHERE id = 101");
+            assertEquals("100,5051,", getResult(stmt2, QUERY));
+            assertEquals("101,5152,", getResult(stmt, QUERY));
+            conn2.rollback();
+            assertEquals("101,5152,", getResult(stmt2, QUERY));
+            assertEquals("101,5152,", getResult(stmt, QUERY));
+        } finally {
+            conn2.setAutoCommit(true);
+        }
+        executeUpdate("DELETE FROM SharedResultCacheTest_ref WHERE id = 101");
+        assertEquals("100,5051,", getResult(stmt2, QUERY));
+    }
+
+    private void testParameters() throws Exception {
+        sql = "SELECT count(*), sum(v) FROM SharedResultCacheTest_ref WHERE id <= ?";
+        PreparedStatement ps = conn.prepareStatement(sql);
+        PreparedStatement ps2 = conn2.prepareStatement(sql);
+        for (int i = 1; i <= 10; i++) {
+            ps.setInt(1, i * 10);
+            ps2.setInt(1, i * 10);
+            String result = getResult(ps.executeQuery());
+            assertEquals(result, getResult(ps2.executeQuery()));
+            int sum = i * 10 * (i * 10 + 1) / 2 + 1;
+            assertEquals(i * 10 + "," + sum + ",", result);
+        }
+        ps.close();
+        ps2.close();
+    }
+
+    private static String getResult(Statement stmt, String sql) throws Exception {
+        return getResult(stmt.executeQuery(sql));
+    }
+
+    private static String getResult(ResultSet rs) throws Exception {
+        assertTrue(rs.next());
+        StringBuilder buff = new StringBuilder();
+        for (int i = 1, count = rs.getMetaData().getColumnCount(); i <= count; i++) {
+            buff.append(rs.getString(i)).append(',');
+        }
+        rs.close();
+        return buff.toString();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+import com.lealone.client.jdbc.JdbcResultSet;
+import com.lealone.db.api.ErrorCode;
+import com.lealone.db.session.SessionSetting;
+import com.lealone.test.sql.SqlTestBase;
+
+public class StreamingResultTest extends SqlTestBase {
+
+    // 流式结果集默认是关闭的，每个连接需要单独打开
+    public StreamingResultTest() {
+        addConnectionParameter(SessionSetting.STREAMING_RESULT.name(), "1");
+    }
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS StreamingResultTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS StreamingResultTest (id int PRIMARY KEY, v int)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS StreamingResultTest_v ON StreamingResultTest(v)");
+        executeUpdate("INSERT INTO StreamingResultTest SELECT x, x * 10 FROM SYSTEM_RANGE(1, 100)");
+        testFetch();
+        testSecondaryIndex();
+        testInterleavedStatements();
+        testPreparedStatement();
+        testWritesWhileFetching();
+        testErrorWhileFetching();
+        testDdlWhileFetching("ALTER TABLE StreamingResultDdlTest DROP COLUMN v", ErrorCode.OBJECT_CLOSED);
+        // 删表时如果刚好在取下一批记录，表已经标记为修改但还没有删掉，此时得到的是OBJECT_CLOSED
+        testDdlWhileFetching("DROP TABLE StreamingResultDdlTest", ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1,
+                ErrorCode.OBJECT_CLOSED);
+    }
+
+    private void testFetch() throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.setFetchSize(10);
+        assertEquals(100, count(stmt.executeQuery("SELECT * FROM StreamingResultTest"), 100));
+        assertEquals(25, count(stmt.executeQuery("SELECT * FROM StreamingResultTest LIMIT 25"), 25));
+        assertEquals(5, count(stmt.executeQuery("SELECT * FROM StreamingResultTest WHERE id <= 5"), 5));
+        // 排序和分组的查询不走流式结果集
+        ResultSet rs = stmt.executeQuery("SELECT id FROM StreamingResultTest ORDER BY v DESC");
+        for (int i = 100; i >= 1; i--) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        // 没读完就关闭，语句还能接着用
+        rs = stmt.executeQuery("SELECT * FROM StreamingResultTest");
+        assertTrue(rs.next());
+        rs.close();
+        assertEquals(100, count(stmt.executeQuery("SELECT * FROM StreamingResultTest"), 100));
+
+        // 流式结果集读完之前不知道总行数，关闭流式结果集后又能知道了
+        JdbcResultSet jrs = (JdbcResultSet) stmt.executeQuery("SELECT * FROM StreamingResultTest");
+        assertEquals(Integer.MAX_VALUE, jrs.getRowCount());
+        jrs.close();
+        stmt.executeUpdate("SET STREAMING_RESULT 0");
+        jrs = (JdbcResultSet) stmt.executeQuery("SELECT * FROM StreamingResultTest");
+        assertEquals(100, jrs.getRowCount());
+        jrs.close();
+        stmt.executeUpdate("SET STREAMING_RESULT 1");
+        stmt.close();
+    }
+
+    // 通过二级索引读记录时，每次取记录都要有事务，取完后不能影响后续的手动提交事务
+    private void testSecondaryIndex() throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.setFetchSize(10);
+        assertEquals(50, count(stmt.executeQuery("SELECT * FROM StreamingResultTest WHERE v > 500"), 50));
+        conn.setAutoCommit(false);
+        try {
+            stmt.executeUpdate("INSERT INTO StreamingResultTest VALUES(1000, 10000)");
+            conn.rollback();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        assertEquals(100, count(stmt.executeQuery("SELECT * FROM StreamingResultTest"), 100));
+        stmt.close();
+    }
+
+    // 一个结果集没读完时同一个连接还能执行其他语句
+    private void testInterleavedStatements() throws Exception {
+        Statement stmt1 = conn.createStatement();
+        Statement stmt2 = conn.createStatement();
+        stmt1.setFetchSize(10);
+        stmt2.setFetchSize(10);
+        ResultSet rs1 = stmt1.executeQuery("SELECT id, v FROM StreamingResultTest");
+        ResultSet rs2 = stmt2.executeQuery("SELECT id, v FROM StreamingResultTest");
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(rs1.next());
+            assertTrue(rs2.next());
+            assertEquals(i * 10, rs1.getInt(2));
+            assertEquals(i * 10, rs2.getInt(2));
+            if (i % 30 == 0)
+                assertEquals(100, getCount());
+        }
+        assertFalse(rs1.next());
+        assertFalse(rs2.next());
+        stmt1.close();
+        stmt2.close();
+    }
+
+    // 重新执行PreparedStatement时上一次的结果集就关闭了
+    private void testPreparedStatement() throws Exception {
+        PreparedStatement ps = conn.prepareStatement("SELECT id FROM StreamingResultTest WHERE id > ?");
+        ps.setFetchSize(10);
+        ps.setInt(1, 20);
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(21, rs.getInt(1));
+        ps.setInt(1, 60);
+        assertEquals(40, count(ps.executeQuery(), 40));
+        ps.close();
+    }
+
+    // 取记录的过程中其他事务修改了表，剩下的记录还能正常读到
+    private void testWritesWhileFetching() throws Exception {
+        Connection conn2 = getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.setFetchSize(10);
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT id, v FROM StreamingResultTest");
+            for (int i = 1; i <= 10; i++) {
+                assertTrue(rs.next());
+            }
+            Statement stmt2 = conn2.createStatement();
+            stmt2.executeUpdate("INSERT INTO StreamingResultTest VALUES(101, 1010)");
+            stmt2.executeUpdate("UPDATE StreamingResultTest SET v = v + 1 WHERE id = 50");
+            for (int i = 11; i <= 100; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals(i == 50 ? 501 : i * 10, rs.getInt(2));
+            }
+            rs.close();
+        } finally {
+            stmt.close();
+            conn2.close();
+        }
+        executeUpdate("DELETE FROM StreamingResultTest WHERE id = 101");
+        executeUpdate("UPDATE StreamingResultTest SET v = 500 WHERE id = 50");
+    }
+
+    // 第一批之后的记录出错时，客户端要能收到异常，而不是一直等待
+    private void testErrorWhileFetching() throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.setFetchSize(10);
+        ResultSet rs = stmt.executeQuery("SELECT id, 10 / (v - 500) FROM StreamingResultTest");
+        int count = 0;
+        try {
+            while (rs.next()) {
+                count++;
+            }
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.DIVISION_BY_ZERO_1, e.getErrorCode());
+        }
+        assertTrue(count >= 10 && count < 50);
+        rs.close();
+        assertEquals(100, count(stmt.executeQuery("SELECT * FROM StreamingResultTest"), 100));
+        stmt.close();
+    }
+
+    // 取记录的过程中其他连接删除了表或者修改了表结构，再取记录时要返回异常
+    private void testDdlWhileFetching(String ddl, int... errorCodes) throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS StreamingResultDdlTest");
+        executeUpdate("CREATE TABLE StreamingResultDdlTest (id int PRIMARY KEY, v int, w int)");
+        executeUpdate("INSERT INTO StreamingResultDdlTest SELECT x, x, x FROM SYSTEM_RANGE(1, 100)");
+        Connection conn2 = getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.setFetchSize(10);
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT id, v FROM StreamingResultDdlTest");
+            int count = 0;
+            for (; count < 10; count++) {
+                assertTrue(rs.next());
+            }
+            conn2.createStatement().executeUpdate(ddl);
+            try {
+                while (rs.next()) {
+                    count++;
+                }
+                fail();
+            } catch (SQLException e) {
+                boolean found = false;
+                for (int errorCode : errorCodes) {
+                    if (errorCode == e.getErrorCode())
+                        found = true;
+                }
+                assertTrue("unexpected error code: " + e.getErrorCode(), found);
+            }
+            assertTrue(count < 100);
+            rs.close();
+        } finally {
+            stmt.close();
+            conn2.close();
+        }
+        executeUpdate("DROP TABLE IF EXISTS StreamingResultDdlTest");
+    }
+
+    private int getCount() throws Exception {
+        ResultSet rs = stmt.executeQuery("SELECT count(*) FROM StreamingResultTest");
+        assertTrue(rs.next());
+        int count = rs.getInt(1);
+        rs.close();
+        return count;
+    }
+
+    private static int count(ResultSet rs, int expected) throws Exception {
+        int count = 0;
+        while (rs.next()) {
+            count++;
+        }
+        rs.close();
+        assertEquals(expected, count);
+        return count;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.query;
+
+import org.junit.Test;
+
+import com.lealone.test.sql.SqlTestBase;
+
+public class TopNQueryTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("drop table IF EXISTS TopNQueryTest");
+        stmt.executeUpdate("create table IF NOT EXISTS TopNQueryTest(f1 int primary key, f2 int)");
+        for (int i = 1; i <= 100; i++) {
+            // f2没有索引，order by f2时只能走QTopN
+            stmt.executeUpdate(
+                    "insert into TopNQueryTest(f1, f2) values(" + i + "," + (i * 37 % 101) + ")");
+        }
+
+        sql = "select f2 from TopNQueryTest order by f2 limit 3";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        assertFalse(rs.next());
+        closeResultSet();
+
+        sql = "select f2 from TopNQueryTest order by f2 desc limit 2 offset 3";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(97, rs.getInt(1));
+        assertTrue(rs.next());
+        assertEquals(96, rs.getInt(1));
+        assertFalse(rs.next());
+        closeResultSet();
+
+        sql = "select f1, f2 from TopNQueryTest where f1 > 90 order by f2 limit 20";
+        int count = printResultSet();
+        assertEquals(10, count);
+
+        sql = "select f2 from TopNQueryTest order by f2 limit 5 offset 98";
+        count = printResultSet();
+        assertEquals(2, count);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package com.lealone.test.sql.query;
+
+import org.junit.Test;
+
+import com.lealone.db.Constants;
+import com.lealone.test.sql.SqlTestBase;
+
+public class WindowFunctionTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("drop table IF EXISTS WindowFunctionTest");
+        stmt.executeUpdate("create table IF NOT EXISTS WindowFunctionTest"
+                + "(pk int primary key, dept varchar, salary int)");
+        stmt.executeUpdate("create index IF NOT EXISTS WindowFunctionTest_dept"
+                + " on WindowFunctionTest(dept, salary)");
+        stmt.executeUpdate("insert into WindowFunctionTest values(1, 'a', 100)");
+        stmt.executeUpdate("insert into WindowFunctionTest values(2, 'a', 200)");
+        stmt.executeUpdate("insert into WindowFunctionTest values(3, 'a', 200)");
+        stmt.executeUpdate("insert into WindowFunctionTest values(4, 'a', 300)");
+        stmt.executeUpdate("insert into WindowFunctionTest values(5, 'b', 50)");
+        stmt.executeUpdate("insert into WindowFunctionTest values(6, 'b', 150)");
+
+        testRanking();
+        testLagAndLead();
+        testAggregate();
+        testFrame();
+        testGroupBy();
+
+        // 记录数超过MAX_MEMORY_ROWS时排序的中间结果和分区中的记录都会写到临时map中
+        stmt.executeUpdate("set MAX_MEMORY_ROWS 2");
+        try {
+            testRanking();
+            testLagAndLead();
+            testAggregate();
+            testFrame();
+            testGroupBy();
+        } finally {
+            stmt.executeUpdate("set MAX_MEMORY_ROWS " + Constants.DEFAULT_MAX_MEMORY_ROWS);
+        }
+    }
+
+    private void testRanking() throws Exception {
+        sql = "select pk, row_number() over (partition by dept order by salary, pk) rn,"
+                + " rank() over (partition by dept order by salary) r,"
+                + " dense_rank() over (partition by dept order by salary) dr"
+                + " from WindowFunctionTest order by pk";
+        rs = stmt.executeQuery(sql);
+        int[][] expected = { { 1, 1, 1, 1 }, { 2, 2, 2, 2 }, { 3, 3, 2, 2 }, { 4, 4, 4, 3 },
+                { 5, 1, 1, 1 }, { 6, 2, 2, 2 } };
+        for (int[] row : expected) {
+            assertTrue(rs.next());
+            for (int i = 0; i < row.length; i++) {
+                assertEquals(row[i], rs.getInt(i + 1));
+            }
+        }
+        assertFalse(rs.next());
+        closeResultSet();
+
+        // 窗口函数先于limit计算
+        sql = "select pk, row_number() over (order by salary desc, pk) rn"
+                + " from WindowFunctionTest order by pk limit 2";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(5, rs.getInt(2));
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(2));
+        assertFalse(rs.next());
+        closeResultSet();
+
+        // 按窗口函数排序
+        sql = "select pk from WindowFunctionTest"
+                + " order by rank() over (order by salary desc), pk limit 1";
+        assertEquals(4, getIntValue(1, true));
+    }
+
+    private void testLagAndLead() throws Exception {
+        sql = "select pk, lag(salary) over (partition by dept order by pk),"
+                + " lead(salary, 2, -1) over (partition by dept order by pk)"
+                + " from WindowFunctionTest order by pk";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertNull(rs.getObject(2));
+        assertEquals(200, rs.getInt(3));
+        assertTrue(rs.next());
+        assertEquals(100, rs.getInt(2));
+        assertEquals(300, rs.getInt(3));
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        assertEquals(200, rs.getInt(2));
+        assertEquals(-1, rs.getInt(3));
+        assertTrue(rs.next());
+        assertNull(rs.getObject(2));
+        assertEquals(-1, rs.getInt(3));
+        closeResultSet();
+    }
+
+    private void testAggregate() throws Exception {
+        // 有ORDER BY时默认是累计值，peer的值相同
+        sql = "select pk, sum(salary) over (partition by dept order by salary),"
+                + " count(*) over (partition by dept), avg(salary) over ()"
+                + " from WindowFunctionTest order by pk";
+        rs = stmt.executeQuery(sql);
+        int[][] expected = { { 1, 100, 4 }, { 2, 500, 4 }, { 3, 500, 4 }, { 4, 800, 4 },
+                { 5, 50, 2 }, { 6, 200, 2 } };
+        for (int[] row : expected) {
+            assertTrue(rs.next());
+            for (int i = 0; i < row.length; i++) {
+                assertEquals(row[i], rs.getInt(i + 1));
+            }
+            assertEquals(1000 / 6, rs.getInt(4));
+        }
+        assertFalse(rs.next());
+        closeResultSet();
+    }
+
+    private void testFrame() throws Exception {
+        sql = "select pk, sum(salary) over (order by pk rows between 1 preceding and 1 following),"
+                + " max(salary) over (order by pk rows between unbounded preceding and current row)"
+                + " from WindowFunctionTest where pk <= 4 order by pk";
+        rs = stmt.executeQuery(sql);
+        int[][] expected = { { 1, 300, 100 }, { 2, 500, 200 }, { 3, 700, 200 }, { 4, 500, 300 } };
+        for (int[] row : expected) {
+            assertTrue(rs.next());
+            for (int i = 0; i < row.length; i++) {
+                assertEquals(row[i], rs.getInt(i + 1));
+            }
+        }
+        assertFalse(rs.next());
+        closeResultSet();
+    }
+
+    private void testGroupBy() throws Exception {
+        // 窗口函数在分组之后计算
+        sql = "select dept, sum(salary), rank() over (order by sum(salary) desc)"
+                + " from WindowFunctionTest group by dept order by dept";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(800, rs.getInt(2));
+        assertEquals(1, rs.getInt(3));
+        assertTrue(rs.next());
+        assertEquals(200, rs.getInt(2));
+        assertEquals(2, rs.getInt(3));
+        assertFalse(rs.next());
+        closeResultSet();
+
+        sql = "select distinct dept, count(*) over (partition by dept)"
+                + " from WindowFunctionTest order by dept";
+        int count = printResultSet();
+        assertEquals(2, count);
+    }
+}